@@ -0,0 +1,39 @@
+package com.kolade.backt;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Input for the benchmarks that looks like what backt actually moves: dump output made of INSERT statements, which
+ * compresses about as well as a real mysqldump or pg_dump stream.
+ */
+public final class BenchmarkData {
+
+	private BenchmarkData() {
+	}
+
+	public static byte[] sqlDump(int size) {
+		Random random = new Random(42);
+		ByteArrayOutputStream dump = new ByteArrayOutputStream(size + 256);
+		long id = 0;
+		while (dump.size() < size) {
+			String row = String.format("INSERT INTO `orders` VALUES (%d,%d,'%s',%d.%02d,'2024-%02d-%02d %02d:%02d:%02d','%s');%n",
+					++id, random.nextInt(100_000), randomWord(random, 12), random.nextInt(10_000), random.nextInt(100),
+					1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60),
+					random.nextBoolean() ? "SHIPPED" : "PENDING");
+			dump.writeBytes(row.getBytes(StandardCharsets.UTF_8));
+		}
+		byte[] bytes = dump.toByteArray();
+		return bytes.length == size ? bytes : Arrays.copyOf(bytes, size);
+	}
+
+	private static String randomWord(Random random, int length) {
+		char[] word = new char[length];
+		for (int i = 0; i < length; i++) {
+			word[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(word);
+	}
+}
@@ -0,0 +1,124 @@
+package com.kolade.backt.pipeline;
+
+import com.kolade.backt.BenchmarkData;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.crypto.BackupEncryption;
+import com.kolade.backt.crypto.EncryptionProperties;
+import com.kolade.backt.crypto.MasterKeyStore;
+import com.kolade.backt.metrics.BackupMetrics;
+import com.kolade.backt.metrics.MetricsProperties;
+import com.kolade.backt.storage.BackupStorages;
+import com.kolade.backt.storage.S3Properties;
+import com.kolade.backt.throttle.DumpThrottle;
+import com.kolade.backt.throttle.ThrottleProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A 64 MB dump written to disk through {@link BackupFileWriter}, with every combination of compression and
+ * encryption, and read back the way a restore reads it: read ahead, decrypted and inflated. Checksumming, phase
+ * timing and the final fsync are part of every write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BackupPipelineBenchmark {
+
+	private static final int INPUT_SIZE = 64 * 1024 * 1024;
+	private static final int BLOCK_SIZE = 1024 * 1024;
+
+	@Param({"false", "true"})
+	public boolean compress;
+
+	@Param({"false", "true"})
+	public boolean encrypt;
+
+	private Path directory;
+	private Path backupFile;
+	private byte[] input;
+	private ParallelCompressor compressor;
+	private BackupEncryption encryption;
+	private BackupFileWriter writer;
+	private ExecutorService readers;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("backt-jmh-");
+		backupFile = directory.resolve(compress ? "orders.sql.gz" : "orders.sql");
+		input = BenchmarkData.sqlDump(INPUT_SIZE);
+		EncryptionProperties encryptionProperties = new EncryptionProperties(encrypt, directory.resolve("keys.p12").toString(),
+				"benchmark", "backt-master", BLOCK_SIZE, 0);
+		compressor = new ParallelCompressor(new CompressionProperties(6, BLOCK_SIZE, 0));
+		encryption = new BackupEncryption(encryptionProperties, new MasterKeyStore(encryptionProperties));
+		//no catalog, the timings of the benchmark backup are never finished and saved
+		BackupMetrics metrics = new BackupMetrics(new SimpleMeterRegistry(), new MetricsProperties(new double[]{0.5, 0.95, 0.99}, true), null);
+		metrics.start("benchmark", DatabaseType.MYSQL, directory);
+		//unthrottled, the benchmark measures what the pipeline can do; never probing, the throttle needs no connections
+		DumpThrottle throttle = new DumpThrottle(new ThrottleProperties(false, 0, 0, null, false, 0, Duration.ofSeconds(2), Duration.ofSeconds(5),
+				2.0, Duration.ofMillis(2), Duration.ZERO, 0.5, 0.1), null);
+		//S3 disabled, the files go to the local filesystem
+		BackupStorages storages = new BackupStorages(new S3Properties(false, "", "us-east-1", "", "", "", "", true, 16 * 1024 * 1024, 4, 4, Duration.ofMillis(500)));
+		writer = new BackupFileWriter(compressor, encryption, new ChecksumRegistry(new ChecksumProperties(BLOCK_SIZE, 0, 64 * 1024 * 1024)), metrics, throttle, storages);
+		readers = Executors.newCachedThreadPool();
+		write();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		compressor.shutdown();
+		encryption.shutdown();
+		readers.shutdownNow();
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		return writer.write(new ByteArrayInputStream(input), backupFile, compress, 0, 0);
+	}
+
+	@Benchmark
+	public long read() throws IOException {
+		InputStream in = new ReadAheadInputStream(Files.newInputStream(backupFile), readers, BLOCK_SIZE, 8);
+		if (encrypt) {
+			in = encryption.decrypt(in);
+		}
+		if (compress) {
+			in = compressor.gunzip(in, 0);
+		}
+		try (in) {
+			return in.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.kolade.backt.pipeline;
+
+import com.kolade.backt.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The inline CRC32C and SHA-256 of a backup file being written, across CRC block sizes and write sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChecksumBenchmark {
+
+	private static final int INPUT_SIZE = 64 * 1024 * 1024;
+
+	@Param({"65536", "1048576", "4194304"})
+	public int blockSize;
+
+	@Param({"8192", "262144"})
+	public int writeSize;
+
+	private byte[] input;
+
+	@Setup
+	public void setUp() {
+		input = BenchmarkData.sqlDump(INPUT_SIZE);
+	}
+
+	@Benchmark
+	public FileChecksum checksum() throws IOException {
+		FileChecksum[] result = new FileChecksum[1];
+		try (ChecksumOutputStream out = new ChecksumOutputStream(OutputStream.nullOutputStream(), blockSize, checksum -> result[0] = checksum)) {
+			for (int off = 0; off < input.length; off += writeSize) {
+				out.write(input, off, Math.min(writeSize, input.length - off));
+			}
+		}
+		return result[0];
+	}
+}
@@ -0,0 +1,84 @@
+package com.kolade.backt.pipeline;
+
+import com.kolade.backt.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parallel gzip and gunzip of a 64 MB dump across block sizes and levels, on a pool of every available core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompressionBenchmark {
+
+	private static final int INPUT_SIZE = 64 * 1024 * 1024;
+	private static final int WRITE_SIZE = 256 * 1024;
+
+	@Param({"262144", "1048576", "4194304"})
+	public int blockSize;
+
+	@Param({"1", "6"})
+	public int level;
+
+	private ForkJoinPool pool;
+	private byte[] input;
+	private byte[] compressed;
+
+	@Setup
+	public void setUp() throws IOException {
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		input = BenchmarkData.sqlDump(INPUT_SIZE);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(INPUT_SIZE / 4);
+		compress(out);
+		compressed = out.toByteArray();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	@Benchmark
+	public long gzip() throws IOException {
+		return compress(OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public long gunzip() throws IOException {
+		try (InputStream in = new ParallelGunzipInputStream(new ByteArrayInputStream(compressed), pool, pool.getParallelism() * 2, 64 * 1024 * 1024)) {
+			return in.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	private long compress(OutputStream target) throws IOException {
+		ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(target, pool, level, blockSize, pool.getParallelism() * 2);
+		try (gzip) {
+			for (int off = 0; off < input.length; off += WRITE_SIZE) {
+				gzip.write(input, off, Math.min(WRITE_SIZE, input.length - off));
+			}
+		}
+		return gzip.getBytesOut();
+	}
+}
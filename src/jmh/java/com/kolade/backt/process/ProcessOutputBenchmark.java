@@ -0,0 +1,67 @@
+package com.kolade.backt.process;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draining a dump tool's stdout through {@link ProcessRunner}, the way the backup services run their dump commands.
+ * {@code head -c} stands in for the tool, so the numbers are the cost of the pipe and the reading loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessOutputBenchmark {
+
+	@Param({"67108864"})
+	public long outputSize;
+
+	@Param({"8192", "65536", "262144"})
+	public int bufferSize;
+
+	private ProcessRunner processRunner;
+
+	@Setup
+	public void setUp() {
+		processRunner = new ProcessRunner();
+	}
+
+	@TearDown
+	public void tearDown() {
+		processRunner.shutdown();
+	}
+
+	@Benchmark
+	public long drainStdout() {
+		return processRunner.run(ProcessSpec.builder()
+				.arg("head").arg("-c").arg(String.valueOf(outputSize)).arg("/dev/zero")
+				.stdoutHandler(this::drain)
+				.build()).stdoutBytes();
+	}
+
+	private long drain(InputStream stdout) throws IOException {
+		byte[] buffer = new byte[bufferSize];
+		long total = 0;
+		int n;
+		while ((n = stdout.read(buffer)) != -1) {
+			total += n;
+		}
+		return total;
+	}
+}
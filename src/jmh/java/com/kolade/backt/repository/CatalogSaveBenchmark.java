@@ -0,0 +1,98 @@
+package com.kolade.backt.repository;
+
+import com.kolade.backt.BacktApplication;
+import com.kolade.backt.common.BackupFormat;
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recording and looking up backups in the catalog through JPA, on an in-memory H2 database with the application's
+ * schema and indexes. The catalog starts with {@value #CATALOG_SIZE} backups and grows by one per save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CatalogSaveBenchmark {
+
+	private static final int CATALOG_SIZE = 10_000;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private ConfigurableApplicationContext context;
+	private BackupMetadataRepository metadataRepository;
+
+	@Setup
+	public void setUp() {
+		context = new SpringApplicationBuilder(BacktApplication.class)
+				.web(WebApplicationType.NONE)
+				.properties(
+						"spring.shell.interactive.enabled=false",
+						"spring.shell.script.enabled=false",
+						"spring.datasource.url=jdbc:h2:mem:backt-benchmark;DB_CLOSE_DELAY=-1",
+						"logging.level.root=WARN")
+				.run();
+		metadataRepository = context.getBean(BackupMetadataRepository.class);
+		List<BackupMetadata> catalog = new ArrayList<>(CATALOG_SIZE);
+		for (int i = 0; i < CATALOG_SIZE; i++) {
+			catalog.add(backup(sequence.incrementAndGet()));
+		}
+		metadataRepository.saveAll(catalog);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public BackupMetadata save() {
+		return metadataRepository.save(backup(sequence.incrementAndGet()));
+	}
+
+	@Benchmark
+	public Optional<BackupMetadata> findByBackupId() {
+		return metadataRepository.findByBackupId(backupId(ThreadLocalRandom.current().nextLong(1, CATALOG_SIZE + 1)));
+	}
+
+	private static BackupMetadata backup(long n) {
+		return BackupMetadata.builder()
+				.backupId(backupId(n))
+				.databaseType(DatabaseType.MYSQL)
+				.backupType(BackupType.FULL)
+				.databaseName("orders")
+				.backupPath("/var/backups/orders/" + n + ".sql.gz")
+				.creationTime(LocalDateTime.now())
+				.backupFormat(BackupFormat.SQL)
+				.checksum("0".repeat(64))
+				.build();
+	}
+
+	private static String backupId(long n) {
+		return "ORDERS_FULL_BENCHMARK_" + n;
+	}
+}
@@ -0,0 +1,35 @@
+package com.kolade.backt.util;
+
+import com.kolade.backt.common.BackupRequest;
+import com.kolade.backt.common.BackupType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackupIdBenchmark {
+
+	private final BackupRequest request = new BackupRequest("orders_production", BackupType.FULL, Path.of("/var/backups"), true, Map.of());
+	private final LocalDateTime startTime = LocalDateTime.of(2024, 5, 17, 3, 30);
+
+	@Benchmark
+	public String generateBackupId() {
+		return BackupUtil.generateBackupId(request, startTime);
+	}
+}
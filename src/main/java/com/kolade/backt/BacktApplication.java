@@ -3,8 +3,10 @@ package com.kolade.backt;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication(exclude = {MongoAutoConfiguration.class})
+@ConfigurationPropertiesScan
 public class BacktApplication {
 
 	public static void main(String[] args) {
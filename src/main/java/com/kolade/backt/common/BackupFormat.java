@@ -0,0 +1,19 @@
+package com.kolade.backt.common;
+
+/**
+ * On-disk layout of a backup, needed to pick the right restore path.
+ */
+public enum BackupFormat {
+    SQL,
+    CUSTOM,
+    DIRECTORY,
+    TAR,
+    ARCHIVE,
+    RECIPE,
+    //one binary COPY file per table plus a schema-only pg_dump
+    BINARY_COPY,
+    //raw binary log files fetched with mysqlbinlog --raw, listed in a binlogs index
+    BINLOG,
+    //oplog entries as concatenated BSON, one or more rolled segment files
+    OPLOG
+}
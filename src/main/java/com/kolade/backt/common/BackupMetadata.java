@@ -1,16 +1,30 @@
 package com.kolade.backt.common;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_backup_metadata_backup_id", columnList = "backup_id", unique = true),
+        //latest full / chain lookups when planning incrementals
+        @Index(name = "idx_backup_metadata_db_type_time", columnList = "database_name, backup_type, creation_time"),
+        //catalog listings per engine
+        @Index(name = "idx_backup_metadata_engine_time", columnList = "database_type, creation_time"),
+        //retention, which walks the catalog database by database
+        @Index(name = "idx_backup_metadata_engine_db_time", columnList = "database_type, database_name, creation_time")
+})
+@Getter
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
@@ -21,7 +35,22 @@ public class BackupMetadata {
     String backupId;
     DatabaseType databaseType;
     String backupPath;
+    //storage the files are kept in, see BackupStorages; null for backups taken before there was a choice, which are local
+    String storage;
     BackupType backupType;
     String databaseName;
     LocalDateTime creationTime;
+    BackupFormat backupFormat;
+    //number of parallel jobs the backup was taken with, a good default for restoring it
+    Integer parallelism;
+    //MySQL: binary log position the backup is consistent with, the next incremental starts here
+    String binlogFile;
+    Long binlogPosition;
+    @Column(length = 4096)
+    String gtidSet;
+    //MongoDB: last oplog timestamp covered by the backup, as (seconds << 32 | increment)
+    Long oplogTimestamp;
+    //SHA-256 of the backup's manifest, which holds the checksums of every file, so the manifest itself can be trusted
+    @Column(length = 64)
+    String checksum;
 }
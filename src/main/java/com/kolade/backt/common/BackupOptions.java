@@ -0,0 +1,121 @@
+package com.kolade.backt.common;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Well-known keys for {@link BackupRequest#otherOptions()} and helpers to read them.
+ */
+public final class BackupOptions {
+
+    /**
+     * When "false", the dump tool writes into a temporary directory and the result is moved to the destination.
+     * Otherwise the dump is streamed from the tool's stdout straight into the final backup file.
+     */
+    public static final String STREAMING = "streaming";
+
+    /**
+     * Deflate level (1-9) used when {@link BackupRequest#compress()} is set. Defaults to {@code backt.compression.level}.
+     */
+    public static final String COMPRESSION_LEVEL = "compressionLevel";
+
+    /**
+     * Number of blocks compressed in parallel for this backup. Defaults to the whole compression pool.
+     */
+    public static final String COMPRESSION_WORKERS = "compressionWorkers";
+
+    /**
+     * When "true", the dump is stored in the deduplicating chunk repository and the backup file is its recipe.
+     * Takes precedence over compression, since compressed streams do not deduplicate.
+     */
+    public static final String DEDUPLICATE = "deduplicate";
+
+    /**
+     * Kills the dump tool once this many minutes have passed. No limit when absent or 0.
+     */
+    public static final String TIMEOUT_MINUTES = "timeoutMinutes";
+
+    /**
+     * Postgres: directory the server writes WAL segments to, archived during incremental backups.
+     */
+    public static final String WAL_SOURCE_PATH = "walSourcePath";
+
+    /**
+     * Postgres: directory WAL segments are archived into.
+     */
+    public static final String WAL_ARCHIVE_PATH = "walArchivePath";
+
+    /**
+     * Dump engine. "jdbc" (MySQL, Postgres) or "native" (MongoDB driver) selects the in-process parallel exporter,
+     * otherwise the external dump tool is used.
+     */
+    public static final String ENGINE = "engine";
+
+    public static final String ENGINE_JDBC = "jdbc";
+
+    public static final String ENGINE_NATIVE = "native";
+
+    /**
+     * MongoDB native engine: collections with more documents than this are split into _id ranges read in parallel.
+     */
+    public static final String SPLIT_THRESHOLD_DOCS = "splitThresholdDocs";
+
+    /**
+     * Number of parallel connections or jobs used by engines that support it.
+     */
+    public static final String PARALLELISM = "parallelism";
+
+    /**
+     * Postgres: "directory" dumps with pg_dump -F d, which allows parallel dump and restore jobs.
+     * The number of jobs is taken from {@link #PARALLELISM} or planned from the table sizes.
+     */
+    public static final String FORMAT = "format";
+
+    public static final String FORMAT_DIRECTORY = "directory";
+
+    /**
+     * Where the backup is kept: "local", the default, or "s3" to stream it into the configured bucket. Only backups
+     * streamed into a single file can be stored in S3.
+     */
+    public static final String STORAGE = "storage";
+
+    /**
+     * MySQL: when "false", tables the server keeps no update time for are not checksummed. Full backups then cost
+     * no table scans, and differentials dump such tables every time. Defaults to "true".
+     */
+    public static final String TABLE_CHECKSUMS = "tableChecksums";
+
+    private BackupOptions() {
+    }
+
+    public static String getString(BackupRequest request, String key, String defaultValue) {
+        Map<String, String> options = request.otherOptions();
+        if (options == null) {
+            return defaultValue;
+        }
+        String value = options.get(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static boolean getBoolean(BackupRequest request, String key, boolean defaultValue) {
+        String value = getString(request, key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    public static int getInt(BackupRequest request, String key, int defaultValue) {
+        String value = getString(request, key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Option %s must be a number, got: %s", key, value));
+        }
+    }
+
+    public static Duration getTimeout(BackupRequest request) {
+        int minutes = getInt(request, TIMEOUT_MINUTES, 0);
+        return minutes > 0 ? Duration.ofMinutes(minutes) : null;
+    }
+}
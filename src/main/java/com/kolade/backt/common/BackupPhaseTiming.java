@@ -0,0 +1,37 @@
+package com.kolade.backt.common;
+
+import com.kolade.backt.metrics.BackupPhase;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * How long one phase of a backup took, kept in the catalog next to its {@link BackupMetadata}.
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_backup_phase_timing_backup_id", columnList = "backup_id")
+})
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BackupPhaseTiming {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+    String backupId;
+    BackupPhase phase;
+    long bytes;
+    //summed over the threads that ran the phase
+    long durationNanos;
+    long stallNanos;
+    long operations;
+}
@@ -1,9 +1,11 @@
 package com.kolade.backt.common;
 
+import com.kolade.backt.metrics.PhaseStats;
 import lombok.Builder;
 
 import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Builder
 public record BackupResult(
@@ -13,6 +15,10 @@ public record BackupResult(
         LocalDateTime endTime,
         long sizeInBytes,
         Path backupFilePath,
+        //binary manifest written next to the backup, see BackupManifest
+        Path manifestPath,
         BackupStatus backupStatus,
-        String errorMessage
+        String errorMessage,
+        //time spent in each phase of a successful backup, see BackupMetrics
+        List<PhaseStats> phases
 ) {}
@@ -3,5 +3,6 @@ package com.kolade.backt.common;
 public enum BackupStatus {
     SUCCESS,
     FAILED,
-    IN_PROGRESS
+    IN_PROGRESS,
+    CANCELLED
 }
@@ -1,7 +1,5 @@
 package com.kolade.backt.common;
 
-import com.kolade.backt.exception.DatabaseConnectionException;
-
 import java.sql.SQLException;
 
 public interface DatabaseConnection {
@@ -0,0 +1,43 @@
+package com.kolade.backt.common;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * What a MySQL table looked like when a backup was taken, kept in the catalog next to its {@link BackupMetadata}.
+ * Differential backups compare the tables against the fingerprints of their full backup and dump only those that
+ * changed.
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_table_fingerprint_backup_id", columnList = "backup_id")
+})
+@Getter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TableFingerprint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+    String backupId;
+    String tableName;
+    //from information_schema.TABLES, in the time zone of the server
+    LocalDateTime createTime;
+    //null when the server does not know, e.g. for InnoDB tables not written to since the server started
+    LocalDateTime updateTime;
+    long dataLength;
+    long tableRows;
+    //CHECKSUM TABLE, only taken for tables without an update time
+    Long checksum;
+}
@@ -0,0 +1,367 @@
+package com.kolade.backt.connection;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out database connections to everything that talks to a database: the shell, the exporters, the scheduler's
+ * backups and the throttle's latency probes.
+ * <p>
+ * Databases are registered under a name. Connections are pooled per server and login, whether the server is
+ * registered or not: JDBC connections in a bounded HikariCP pool that validates them when they are borrowed and
+ * closes them when they sit idle, MongoDB in one shared client per cluster, which pools its connections itself.
+ * Callers borrow a JDBC connection and close it to give it back, and lease the MongoDB client and close the lease.
+ * Pools of servers that are not registered are closed once nothing has used them for the idle timeout, so a nightly
+ * backup does not keep connections open all day.
+ */
+@Component
+public class ConnectionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionManager.class);
+    private static final long EVICTION_INTERVAL_SECONDS = 60;
+
+    private final ConnectionProperties properties;
+    private final ScheduledThreadPoolExecutor housekeeper;
+    private final AtomicInteger poolCounter = new AtomicInteger();
+    //guarded by this
+    private final Map<String, ConnectionTarget> targets = new HashMap<>();
+    private final Map<PoolKey, Pool> pools = new HashMap<>();
+    private final Map<String, SharedClient> mongoClients = new HashMap<>();
+
+    /**
+     * The password is part of the key so a changed password gets a new pool, but is kept out of {@link #toString()}.
+     */
+    private record PoolKey(String url, String username, String password) {
+
+        @Override
+        public String toString() {
+            return username + "@" + url;
+        }
+    }
+
+    private static final class Pool {
+        private final HikariDataSource dataSource;
+        private volatile long lastUsed = System.nanoTime();
+
+        Pool(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        int activeConnections() {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            return pool == null ? 0 : pool.getActiveConnections();
+        }
+    }
+
+    private static final class SharedClient {
+        private final MongoClient client;
+        //guarded by the manager
+        private int leases;
+        private long lastUsed = System.nanoTime();
+
+        SharedClient(MongoClient client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * Use of the shared MongoDB client of a cluster. Closing the lease does not close the client.
+     */
+    public final class MongoLease implements AutoCloseable {
+        private final SharedClient shared;
+        private boolean closed;
+
+        private MongoLease(SharedClient shared) {
+            this.shared = shared;
+        }
+
+        public MongoClient client() {
+            return shared.client;
+        }
+
+        @Override
+        public void close() {
+            synchronized (ConnectionManager.this) {
+                if (!closed) {
+                    closed = true;
+                    shared.leases--;
+                    shared.lastUsed = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param active  connections borrowed right now; for MongoDB, the leases of the shared client
+     * @param idle    open connections waiting in the pool
+     * @param waiting callers waiting for a connection
+     */
+    public record PoolStatus(int active, int idle, int waiting) {
+    }
+
+    public ConnectionManager(ConnectionProperties properties) {
+        this.properties = properties;
+        this.housekeeper = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "backt-connection-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.setRemoveOnCancelPolicy(true);
+        housekeeper.scheduleWithFixedDelay(this::evictIdle, EVICTION_INTERVAL_SECONDS, EVICTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registers a database under {@code name}, replacing the target registered under it before.
+     *
+     * @return the replaced target, or null
+     */
+    public ConnectionTarget register(String name, DatabaseType databaseType, DatabaseDetails databaseDetails) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("A connection target needs a name");
+        }
+        ConnectionTarget target = ConnectionTarget.builder()
+                .name(name)
+                .databaseType(databaseType)
+                .databaseDetails(databaseDetails)
+                .build();
+        ConnectionTarget previous;
+        synchronized (this) {
+            previous = targets.put(name, target);
+        }
+        logger.info("Registered connection target {} ({} at {})", name, databaseType, target.hostKey());
+        if (previous != null) {
+            release(previous.databaseDetails());
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the target and closes its pool, unless another target or a running backup still uses it.
+     */
+    public Optional<ConnectionTarget> unregister(String name) {
+        ConnectionTarget removed;
+        synchronized (this) {
+            removed = targets.remove(name);
+        }
+        if (removed != null) {
+            release(removed.databaseDetails());
+        }
+        return Optional.ofNullable(removed);
+    }
+
+    public synchronized Optional<ConnectionTarget> find(String name) {
+        return Optional.ofNullable(targets.get(name));
+    }
+
+    public synchronized List<ConnectionTarget> targets() {
+        return targets.values().stream()
+                .sorted(Comparator.comparing(ConnectionTarget::name))
+                .toList();
+    }
+
+    public int maxPoolSize() {
+        return properties.maxPoolSize();
+    }
+
+    /**
+     * Caps the workers of a parallel export or restore of one server so each can borrow a connection, leaving one for
+     * the coordinator and one for the throttle's latency probe.
+     */
+    public int workerLimit(int workers) {
+        return Math.max(1, Math.min(workers, properties.maxPoolSize() - 2));
+    }
+
+    /**
+     * Borrows a connection to the database of {@code databaseDetails}. Closing it returns it to the pool.
+     */
+    public Connection getConnection(DatabaseDetails databaseDetails) throws SQLException {
+        return getConnection(databaseDetails.getConnectionUrl(), databaseDetails);
+    }
+
+    /**
+     * Borrows a connection to {@code url} with the login of {@code credentials}, for callers that connect to another
+     * database of the same server.
+     */
+    public Connection getConnection(String url, DatabaseDetails credentials) throws SQLException {
+        PoolKey key = new PoolKey(url, credentials.getUsername(), credentials.getPassword());
+        while (true) {
+            HikariDataSource dataSource = pool(key);
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                //released between the lookup and the borrow, the next lookup opens a new pool
+                if (!dataSource.isClosed()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Leases the shared client of the cluster of {@code databaseDetails}, creating it on first use.
+     */
+    public synchronized MongoLease mongoClient(DatabaseDetails databaseDetails) {
+        SharedClient shared = mongoClients.computeIfAbsent(databaseDetails.getConnectionUrl(), this::createMongoClient);
+        shared.leases++;
+        shared.lastUsed = System.nanoTime();
+        return new MongoLease(shared);
+    }
+
+    /**
+     * @return the state of the pool of {@code databaseDetails}, empty if none is open
+     */
+    public synchronized Optional<PoolStatus> poolStatus(DatabaseType databaseType, DatabaseDetails databaseDetails) {
+        if (databaseType == DatabaseType.MONGODB) {
+            SharedClient shared = mongoClients.get(databaseDetails.getConnectionUrl());
+            return shared == null ? Optional.empty() : Optional.of(new PoolStatus(shared.leases, 0, 0));
+        }
+        Pool pool = pools.get(keyOf(databaseDetails));
+        HikariPoolMXBean bean = pool == null ? null : pool.dataSource.getHikariPoolMXBean();
+        if (bean == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new PoolStatus(bean.getActiveConnections(), bean.getIdleConnections(), bean.getThreadsAwaitingConnection()));
+    }
+
+    /**
+     * Closes the pool or client of {@code databaseDetails} right away if no registered target uses it and nothing
+     * borrowed from it is still out. Otherwise it is left to be closed once idle.
+     */
+    public void release(DatabaseDetails databaseDetails) {
+        evict(databaseDetails.getConnectionUrl(), 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<AutoCloseable> closing = new ArrayList<>();
+        synchronized (this) {
+            pools.values().forEach(pool -> closing.add(pool.dataSource));
+            mongoClients.values().forEach(shared -> closing.add(shared.client));
+            pools.clear();
+            mongoClients.clear();
+        }
+        closing.forEach(ConnectionManager::closeQuietly);
+        housekeeper.shutdownNow();
+    }
+
+    void evictIdle() {
+        evict(null, properties.idleTimeout().toNanos());
+    }
+
+    /**
+     * Closes the pools and clients no registered target uses, that have nothing borrowed and that have not been used
+     * for {@code idleNanos}.
+     *
+     * @param url only evict pools of this URL, or any if null
+     */
+    private void evict(String url, long idleNanos) {
+        List<AutoCloseable> closing = new ArrayList<>();
+        long now = System.nanoTime();
+        synchronized (this) {
+            for (Iterator<Map.Entry<PoolKey, Pool>> entries = pools.entrySet().iterator(); entries.hasNext(); ) {
+                Map.Entry<PoolKey, Pool> entry = entries.next();
+                Pool pool = entry.getValue();
+                if ((url == null || url.equals(entry.getKey().url())) && !isRegistered(entry.getKey())
+                        && now - pool.lastUsed >= idleNanos && pool.activeConnections() == 0) {
+                    entries.remove();
+                    closing.add(pool.dataSource);
+                    logger.debug("Closing connection pool of {}", entry.getKey());
+                }
+            }
+            for (Iterator<Map.Entry<String, SharedClient>> entries = mongoClients.entrySet().iterator(); entries.hasNext(); ) {
+                Map.Entry<String, SharedClient> entry = entries.next();
+                SharedClient shared = entry.getValue();
+                if ((url == null || url.equals(entry.getKey())) && !isRegistered(entry.getKey())
+                        && now - shared.lastUsed >= idleNanos && shared.leases == 0) {
+                    entries.remove();
+                    closing.add(shared.client);
+                }
+            }
+        }
+        closing.forEach(ConnectionManager::closeQuietly);
+    }
+
+    private synchronized HikariDataSource pool(PoolKey key) {
+        Pool pool = pools.computeIfAbsent(key, this::createPool);
+        pool.lastUsed = System.nanoTime();
+        return pool.dataSource;
+    }
+
+    private Pool createPool(PoolKey key) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("backt-" + poolCounter.incrementAndGet());
+        config.setJdbcUrl(key.url());
+        config.setUsername(key.username());
+        config.setPassword(key.password());
+        config.setMaximumPoolSize(properties.maxPoolSize());
+        config.setMinimumIdle(properties.minIdle());
+        config.setConnectionTimeout(properties.connectionTimeout().toMillis());
+        config.setIdleTimeout(properties.idleTimeout().toMillis());
+        config.setMaxLifetime(properties.maxLifetime().toMillis());
+        config.setValidationTimeout(properties.validationTimeout().toMillis());
+        config.setKeepaliveTime(properties.keepaliveTime().toMillis());
+        //an unreachable server fails the borrow, not the creation of the pool
+        config.setInitializationFailTimeout(-1);
+        //one housekeeping thread for all pools instead of one per pool
+        config.setScheduledExecutor(housekeeper);
+        logger.info("Opening connection pool {} to {}", config.getPoolName(), key);
+        return new Pool(new HikariDataSource(config));
+    }
+
+    private SharedClient createMongoClient(String connectionUrl) {
+        long idleMillis = properties.idleTimeout().toMillis();
+        long lifetimeMillis = properties.maxLifetime().toMillis();
+        return new SharedClient(MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(connectionUrl))
+                .applyToConnectionPoolSettings(pool -> pool
+                        .maxSize(properties.mongoMaxPoolSize())
+                        .maxConnectionIdleTime(idleMillis, TimeUnit.MILLISECONDS)
+                        .maxConnectionLifeTime(lifetimeMillis, TimeUnit.MILLISECONDS))
+                .build()));
+    }
+
+    //callers hold the lock
+    private boolean isRegistered(PoolKey key) {
+        return targets.values().stream().anyMatch(target -> key.equals(keyOf(target.databaseDetails())));
+    }
+
+    private boolean isRegistered(String connectionUrl) {
+        return targets.values().stream().anyMatch(target -> connectionUrl.equals(target.databaseDetails().getConnectionUrl()));
+    }
+
+    private static PoolKey keyOf(DatabaseDetails databaseDetails) {
+        return new PoolKey(databaseDetails.getConnectionUrl(), databaseDetails.getUsername(), databaseDetails.getPassword());
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            logger.warn("Unable to close connection pool: {}", e.getMessage());
+        }
+    }
+}
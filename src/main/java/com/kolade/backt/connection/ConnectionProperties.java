@@ -0,0 +1,34 @@
+package com.kolade.backt.connection;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Sizes and timeouts of the database connection pools, bound from {@code backt.connection.*}. Every database server
+ * gets a pool of its own, so the limits apply per server.
+ *
+ * @param maxPoolSize        JDBC connections open to one server at most; a parallel export needs one per worker plus
+ *                           one for its coordinator and one for the latency probe, so workers beyond this are cut back
+ * @param minIdle            idle JDBC connections kept open to a registered server
+ * @param connectionTimeout  how long a caller waits for a free connection before failing
+ * @param idleTimeout        idle connections are closed after this, and so are whole pools of servers that are not
+ *                           registered and have not been used for this long
+ * @param maxLifetime        connections are replaced after this, once they are returned
+ * @param validationTimeout  how long a connection may take to prove it is alive when it is borrowed
+ * @param keepaliveTime      how often idle connections are pinged so firewalls do not drop them, 0 to disable
+ * @param mongoMaxPoolSize   connections the shared client of one MongoDB cluster opens to each of its members at most
+ */
+@ConfigurationProperties(prefix = "backt.connection")
+public record ConnectionProperties(
+        @DefaultValue("16") int maxPoolSize,
+        @DefaultValue("0") int minIdle,
+        @DefaultValue("30s") Duration connectionTimeout,
+        @DefaultValue("10m") Duration idleTimeout,
+        @DefaultValue("30m") Duration maxLifetime,
+        @DefaultValue("5s") Duration validationTimeout,
+        @DefaultValue("2m") Duration keepaliveTime,
+        @DefaultValue("100") int mongoMaxPoolSize
+) {
+}
@@ -0,0 +1,22 @@
+package com.kolade.backt.connection;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import lombok.Builder;
+
+/**
+ * A database registered with the {@link ConnectionManager} under a name.
+ *
+ * @param name unique name of the target
+ */
+@Builder
+public record ConnectionTarget(
+        String name,
+        DatabaseType databaseType,
+        DatabaseDetails databaseDetails
+) {
+
+    public String hostKey() {
+        return databaseDetails.getHost() + ":" + databaseDetails.getPort();
+    }
+}
@@ -0,0 +1,157 @@
+package com.kolade.backt.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+/**
+ * Reads a file written by {@link EncryptingOutputStream}, decrypting up to {@code maxPendingBlocks} blocks ahead in
+ * parallel on the given executor. Every block is authenticated before any of its bytes are returned; a file that
+ * was altered or cut off fails with an {@link IOException}.
+ */
+public class DecryptingInputStream extends InputStream {
+
+    private final DataInputStream in;
+    private final Executor executor;
+    private final int maxPendingBlocks;
+    private final Deque<CompletableFuture<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private final byte[] header;
+    private final SecretKey key;
+    private final int blockSize;
+
+    private byte[] current = new byte[0];
+    private int position;
+    private long blockIndex;
+    private boolean lastBlockRead;
+    private boolean closed;
+
+    /**
+     * @param keyResolver unwraps the data key of the file, given the alias of its master key and the wrapped key
+     */
+    public DecryptingInputStream(InputStream in, Executor executor, BiFunction<String, byte[], SecretKey> keyResolver,
+                                 int maxPendingBlocks) throws IOException {
+        this.in = new DataInputStream(in);
+        this.executor = executor;
+        this.maxPendingBlocks = maxPendingBlocks;
+
+        byte[] magic = this.in.readNBytes(EncryptingOutputStream.MAGIC.length);
+        if (!EncryptingOutputStream.startsWithMagic(magic, magic.length)) {
+            throw new IOException("Not an encrypted backup file");
+        }
+        String alias = new String(this.in.readNBytes(this.in.readUnsignedShort()), StandardCharsets.UTF_8);
+        byte[] wrappedKey = this.in.readNBytes(this.in.readUnsignedShort());
+        this.blockSize = this.in.readInt();
+        this.header = EncryptingOutputStream.header(alias, wrappedKey, blockSize);
+        this.key = keyResolver.apply(alias, wrappedKey);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pendingBlocks.forEach(block -> block.cancel(false));
+        pendingBlocks.clear();
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        while (pendingBlocks.size() < maxPendingBlocks && !lastBlockRead) {
+            submitBlock();
+        }
+        if (pendingBlocks.isEmpty()) {
+            return false;
+        }
+        try {
+            current = pendingBlocks.removeFirst().join();
+            position = 0;
+            return true;
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("Failed to decrypt block", e.getCause());
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        int length;
+        byte flags;
+        try {
+            length = in.readInt();
+            flags = in.readByte();
+        } catch (EOFException e) {
+            throw new IOException("Encrypted backup file is truncated after block " + blockIndex);
+        }
+        if (length < 0 || length > blockSize || (flags & ~EncryptingOutputStream.LAST_BLOCK) != 0) {
+            throw new IOException("Corrupt header of encrypted block " + blockIndex);
+        }
+        byte[] encrypted = in.readNBytes(length + EncryptingOutputStream.TAG_LENGTH);
+        if (encrypted.length < length + EncryptingOutputStream.TAG_LENGTH) {
+            throw new IOException("Encrypted backup file is truncated in block " + blockIndex);
+        }
+        long index = blockIndex++;
+        if (flags == EncryptingOutputStream.LAST_BLOCK) {
+            lastBlockRead = true;
+            if (in.read() != -1) {
+                throw new IOException("Unexpected data after the last encrypted block");
+            }
+        }
+        pendingBlocks.addLast(CompletableFuture.supplyAsync(() -> decryptBlock(index, length, flags, encrypted), executor));
+    }
+
+    private byte[] decryptBlock(long index, int length, byte flags, byte[] encrypted) {
+        try {
+            Cipher cipher = EncryptingOutputStream.init(Cipher.DECRYPT_MODE, key, header, index, length, flags);
+            return cipher.doFinal(encrypted);
+        } catch (AEADBadTagException e) {
+            throw new CompletionException(new IOException("Encrypted block " + index + " failed authentication"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM decryption failed", e);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
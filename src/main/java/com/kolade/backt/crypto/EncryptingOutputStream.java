@@ -0,0 +1,220 @@
+package com.kolade.backt.crypto;
+
+import com.kolade.backt.metrics.BackupPhase;
+import com.kolade.backt.metrics.PhaseTimings;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Splits the written bytes into fixed-size blocks and encrypts them with AES-GCM in parallel on the given executor.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * header  magic "BKTENC01", master key alias (u16 length + UTF-8), wrapped data key (u16 length + bytes),
+ *         block size (int)
+ * blocks  plaintext length (int), flags (byte, 1 on the last block), ciphertext, 16-byte GCM tag
+ * </pre>
+ * Every block is encrypted under the file's own data key with its index as nonce, and authenticates the file header,
+ * its index, length and flags, so blocks cannot be altered, reordered, moved between files or cut off without the
+ * decryption failing. All blocks but the last are full, so block {@code i} starts at
+ * {@code header + i * (blockSize + 21)} and can be decrypted on its own.
+ * <p>
+ * Encrypted blocks are written in submission order, with at most {@code maxPendingBlocks} in flight.
+ */
+public class EncryptingOutputStream extends OutputStream {
+
+    static final byte[] MAGIC = "BKTENC01".getBytes(StandardCharsets.US_ASCII);
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int TAG_LENGTH = 16;
+    static final int BLOCK_HEADER_SIZE = 5;
+    static final byte LAST_BLOCK = 1;
+
+    private final OutputStream out;
+    private final Executor executor;
+    private final SecretKey key;
+    private final byte[] header;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final Deque<CompletableFuture<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+    private byte[] buffer;
+    private int count;
+    private long blockIndex;
+    private long bytesIn;
+    private boolean closed;
+    private PhaseTimings timings = PhaseTimings.NONE;
+
+    public EncryptingOutputStream(OutputStream out, Executor executor, SecretKey key, String keyAlias, byte[] wrappedKey,
+                                  int blockSize, int maxPendingBlocks) throws IOException {
+        if (blockSize <= 0 || maxPendingBlocks <= 0) {
+            throw new IllegalArgumentException("Block size and pending block count must be positive");
+        }
+        this.out = out;
+        this.executor = executor;
+        this.key = key;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.buffer = new byte[blockSize];
+        this.header = header(keyAlias, wrappedKey, blockSize);
+        out.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            //a full buffer is only submitted once more data arrives, so close can still mark it as the last block
+            if (count == blockSize) {
+                submitBlock(false);
+            }
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes out every block already submitted. The partially filled block is kept until it is full or the stream
+     * is closed, so that all blocks but the last stay full.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        while (!pendingBlocks.isEmpty()) {
+            writeOldestBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            //an empty input still ends with a (empty) last block, which marks the file as complete
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty()) {
+                writeOldestBlock();
+            }
+            out.flush();
+        } finally {
+            closed = true;
+            pendingBlocks.forEach(block -> block.cancel(false));
+            out.close();
+        }
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * Records the time spent sealing blocks, and waiting for them, under {@link BackupPhase#ENCRYPT}.
+     */
+    public void setTimings(PhaseTimings timings) {
+        this.timings = timings;
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        byte[] block = buffer;
+        int length = count;
+        long index = blockIndex++;
+        bytesIn += length;
+        buffer = last ? null : new byte[blockSize];
+        count = 0;
+
+        PhaseTimings blockTimings = timings;
+        pendingBlocks.addLast(CompletableFuture.supplyAsync(() -> {
+            long startTime = System.nanoTime();
+            byte[] encrypted = encryptBlock(key, header, index, block, length, last);
+            blockTimings.record(BackupPhase.ENCRYPT, length, System.nanoTime() - startTime);
+            return encrypted;
+        }, executor));
+        while (pendingBlocks.size() > maxPendingBlocks) {
+            writeOldestBlock();
+        }
+    }
+
+    private void writeOldestBlock() throws IOException {
+        long startTime = System.nanoTime();
+        try {
+            byte[] encrypted = pendingBlocks.removeFirst().join();
+            timings.stall(BackupPhase.ENCRYPT, System.nanoTime() - startTime);
+            out.write(encrypted);
+        } catch (CompletionException e) {
+            throw new IOException("Failed to encrypt block", e.getCause());
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * @return the block header followed by ciphertext and tag, ready to be written
+     */
+    static byte[] encryptBlock(SecretKey key, byte[] header, long index, byte[] data, int length, boolean last) {
+        byte flags = last ? LAST_BLOCK : 0;
+        byte[] encrypted = new byte[BLOCK_HEADER_SIZE + length + TAG_LENGTH];
+        ByteBuffer.wrap(encrypted).putInt(length).put(flags);
+        try {
+            Cipher cipher = init(Cipher.ENCRYPT_MODE, key, header, index, length, flags);
+            cipher.doFinal(data, 0, length, encrypted, BLOCK_HEADER_SIZE);
+            return encrypted;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM encryption failed", e);
+        }
+    }
+
+    static Cipher init(int mode, SecretKey key, byte[] header, long index, int length, byte flags) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        //unique per block, and every file has its own key
+        byte[] nonce = ByteBuffer.allocate(12).putInt(0).putLong(index).array();
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(header);
+        cipher.updateAAD(ByteBuffer.allocate(13).putLong(index).putInt(length).put(flags).array());
+        return cipher;
+    }
+
+    static byte[] header(String keyAlias, byte[] wrappedKey, int blockSize) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(64 + wrappedKey.length);
+        DataOutputStream data = new DataOutputStream(header);
+        data.write(MAGIC);
+        byte[] alias = keyAlias.getBytes(StandardCharsets.UTF_8);
+        data.writeShort(alias.length);
+        data.write(alias);
+        data.writeShort(wrappedKey.length);
+        data.write(wrappedKey);
+        data.writeInt(blockSize);
+        return header.toByteArray();
+    }
+
+    static boolean startsWithMagic(byte[] bytes, int length) {
+        return length >= MAGIC.length && Arrays.equals(bytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+}
@@ -0,0 +1,29 @@
+package com.kolade.backt.crypto;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Encryption at rest, bound from {@code backt.encryption.*}.
+ *
+ * @param enabled          encrypt every backup file backt writes
+ * @param keystorePath     PKCS12 keystore holding the master keys, created with a new key if it does not exist
+ * @param keystorePassword password of the keystore and its keys
+ * @param keyAlias         master key new data keys are wrapped with; older keys stay in the keystore for restores
+ * @param blockSize        bytes encrypted as one independently authenticated block
+ * @param workers          size of the encryption pool, 0 means one worker per available core
+ */
+@ConfigurationProperties(prefix = "backt.encryption")
+public record EncryptionProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("./data/backt-keys.p12") String keystorePath,
+        @DefaultValue("") String keystorePassword,
+        @DefaultValue("backt-master") String keyAlias,
+        @DefaultValue("1048576") int blockSize,
+        @DefaultValue("0") int workers
+) {
+
+    public int effectiveWorkers() {
+        return workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,128 @@
+package com.kolade.backt.crypto;
+
+import com.kolade.backt.exception.BackupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+
+/**
+ * Master keys kept in a local PKCS12 keystore. They never encrypt backup data themselves, they only wrap the
+ * data keys generated for every encrypted file (AES key wrap, RFC 3394).
+ */
+@Component
+public class MasterKeyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MasterKeyStore.class);
+    private static final String KEY_WRAP = "AESWrap";
+
+    private final EncryptionProperties properties;
+    private KeyStore keyStore;
+
+    public MasterKeyStore(EncryptionProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Alias of the master key new data keys are wrapped with.
+     */
+    public String currentAlias() {
+        return properties.keyAlias();
+    }
+
+    public byte[] wrap(SecretKey dataKey) {
+        try {
+            Cipher cipher = Cipher.getInstance(KEY_WRAP);
+            cipher.init(Cipher.WRAP_MODE, masterKey(currentAlias()));
+            return cipher.wrap(dataKey);
+        } catch (GeneralSecurityException e) {
+            throw new BackupException("Unable to wrap data key with master key " + currentAlias(), e);
+        }
+    }
+
+    public SecretKey unwrap(String alias, byte[] wrappedKey) {
+        try {
+            Cipher cipher = Cipher.getInstance(KEY_WRAP);
+            cipher.init(Cipher.UNWRAP_MODE, masterKey(alias));
+            return (SecretKey) cipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
+        } catch (GeneralSecurityException e) {
+            throw new BackupException("Unable to unwrap data key with master key " + alias, e);
+        }
+    }
+
+    private synchronized Key masterKey(String alias) {
+        try {
+            Key key = load().getKey(alias, password());
+            if (key == null) {
+                throw new BackupException(String.format("Master key %s is not in keystore %s", alias, properties.keystorePath()));
+            }
+            return key;
+        } catch (GeneralSecurityException e) {
+            throw new BackupException("Unable to read master key " + alias, e);
+        }
+    }
+
+    private KeyStore load() {
+        if (keyStore != null) {
+            return keyStore;
+        }
+        Path path = Paths.get(properties.keystorePath());
+        try {
+            KeyStore store = KeyStore.getInstance("PKCS12");
+            if (Files.exists(path)) {
+                try (InputStream in = Files.newInputStream(path)) {
+                    store.load(in, password());
+                }
+            } else {
+                store.load(null, password());
+            }
+            if (!store.containsAlias(currentAlias())) {
+                createMasterKey(store, path);
+            }
+            keyStore = store;
+            return store;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new BackupException("Unable to open keystore " + path, e);
+        }
+    }
+
+    private void createMasterKey(KeyStore store, Path path) throws IOException, GeneralSecurityException {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        store.setEntry(currentAlias(), new KeyStore.SecretKeyEntry(generator.generateKey()), new KeyStore.PasswordProtection(password()));
+
+        Path absolute = path.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path tempFile = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            store.store(out, password());
+        }
+        if (Files.getFileStore(tempFile).supportsFileAttributeView("posix")) {
+            Files.setPosixFilePermissions(tempFile, PosixFilePermissions.fromString("rw-------"));
+        }
+        Files.move(tempFile, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logger.warn("Created master key {} in {}, back this keystore up separately: encrypted backups cannot be restored without it",
+                currentAlias(), absolute);
+    }
+
+    private char[] password() {
+        if (properties.keystorePassword() == null || properties.keystorePassword().isEmpty()) {
+            throw new BackupException("backt.encryption.keystore-password must be set to use encryption");
+        }
+        return properties.keystorePassword().toCharArray();
+    }
+}
@@ -0,0 +1,7 @@
+package com.kolade.backt.dedup;
+
+/**
+ * One entry of a backup recipe: the SHA-256 of a stored chunk and its length in bytes.
+ */
+public record ChunkReference(String hash, int length) {
+}
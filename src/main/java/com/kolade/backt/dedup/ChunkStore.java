@@ -0,0 +1,278 @@
+package com.kolade.backt.dedup;
+
+import com.kolade.backt.exception.BackupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Deduplicating backup repository. Dump streams are cut into content-defined chunks and each chunk is
+ * stored once under its SHA-256. A backup is then a recipe file listing the chunks in stream order.
+ * <p>
+ * Chunks no recipe refers to any more are deleted by {@link #collectGarbage}, which waits for running stores and
+ * holds off new ones while it runs, so a chunk is never deleted just as a backup finds it already stored.
+ */
+@Component
+public class ChunkStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkStore.class);
+    private static final String RECIPE_HEADER = "# backt-recipe v1";
+    //a chunk, or the temporary file it is written to
+    private static final Pattern CHUNK_FILE = Pattern.compile("([0-9a-f]{64})(\\d*\\.tmp)?");
+
+    private final DedupProperties properties;
+    private final FastCdcChunker chunker;
+    private final ReadWriteLock collectionLock = new ReentrantReadWriteLock();
+    //recipes of backups that may not be in the catalog yet when garbage is collected
+    private final Set<Path> writtenRecipes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param chunks chunks deleted
+     * @param bytes  bytes freed
+     */
+    public record CollectedGarbage(long chunks, long bytes) {
+    }
+
+    public ChunkStore(DedupProperties properties) {
+        this.properties = properties;
+        this.chunker = new FastCdcChunker(properties.minChunkSize(), properties.avgChunkSize(), properties.maxChunkSize());
+    }
+
+    /**
+     * Chunks {@code source}, stores every chunk that is not in the repository yet and writes the recipe to {@code recipePath}.
+     */
+    public DedupResult store(InputStream source, Path recipePath) throws IOException {
+        collectionLock.readLock().lock();
+        try {
+            return storeChunks(source, recipePath);
+        } finally {
+            collectionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes every chunk that none of {@code liveRecipes}, nor a recipe this store wrote that still exists, refers
+     * to, along with temporary files left by a crash.
+     *
+     * @param liveRecipes recipes of every backup that is kept
+     */
+    public CollectedGarbage collectGarbage(Collection<Path> liveRecipes) throws IOException {
+        collectionLock.writeLock().lock();
+        try {
+            writtenRecipes.removeIf(recipe -> !Files.exists(recipe));
+            Set<Path> recipes = new HashSet<>(writtenRecipes);
+            liveRecipes.forEach(recipe -> recipes.add(recipe.toAbsolutePath()));
+            Set<String> referenced = new HashSet<>();
+            for (Path recipe : recipes) {
+                if (!Files.exists(recipe)) {
+                    logger.warn("Recipe {} of a kept backup is missing", recipe);
+                    continue;
+                }
+                readRecipe(recipe).forEach(chunk -> referenced.add(chunk.hash()));
+            }
+
+            Path repository = properties.repositoryPath();
+            if (!Files.isDirectory(repository)) {
+                return new CollectedGarbage(0, 0);
+            }
+            long chunks = 0;
+            long bytes = 0;
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(repository)) {
+                files = walk.filter(Files::isRegularFile).toList();
+            }
+            for (Path file : files) {
+                Matcher name = CHUNK_FILE.matcher(file.getFileName().toString());
+                if (!name.matches()) {
+                    continue;
+                }
+                if (name.group(2) != null) {
+                    //no store is running, this one was left by a store that crashed
+                    Files.deleteIfExists(file);
+                } else if (!referenced.contains(name.group(1))) {
+                    long size = Files.size(file);
+                    Files.delete(file);
+                    chunks++;
+                    bytes += size;
+                }
+            }
+            logger.info("Deleted {} unreferenced chunks ({} bytes), {} recipes still refer to {} chunks", chunks, bytes, recipes.size(), referenced.size());
+            return new CollectedGarbage(chunks, bytes);
+        } finally {
+            collectionLock.writeLock().unlock();
+        }
+    }
+
+    private DedupResult storeChunks(InputStream source, Path recipePath) throws IOException {
+        MessageDigest digest = sha256();
+        List<ChunkReference> recipe = new ArrayList<>();
+        long[] logicalBytes = {0};
+        long[] storedBytes = {0};
+        int[] newChunks = {0};
+
+        chunker.chunk(source, (buffer, offset, length) -> {
+            digest.update(buffer, offset, length);
+            String hash = HexFormat.of().formatHex(digest.digest());
+            if (writeChunkIfAbsent(hash, buffer, offset, length)) {
+                storedBytes[0] += length;
+                newChunks[0]++;
+            }
+            logicalBytes[0] += length;
+            recipe.add(new ChunkReference(hash, length));
+        });
+
+        writeRecipe(recipePath, recipe);
+        writtenRecipes.add(recipePath.toAbsolutePath());
+        storedBytes[0] += Files.size(recipePath);
+
+        logger.info("Stored {} bytes as {} chunks ({} new, {} bytes written)", logicalBytes[0], recipe.size(), newChunks[0], storedBytes[0]);
+        return DedupResult.builder()
+                .recipePath(recipePath)
+                .logicalBytes(logicalBytes[0])
+                .storedBytes(storedBytes[0])
+                .chunkCount(recipe.size())
+                .newChunkCount(newChunks[0])
+                .build();
+    }
+
+    public List<ChunkReference> readRecipe(Path recipePath) throws IOException {
+        List<ChunkReference> recipe = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(recipePath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(" ");
+                recipe.add(new ChunkReference(parts[0], Integer.parseInt(parts[1])));
+            }
+        }
+        return recipe;
+    }
+
+    /**
+     * Reassembles the original dump stream of a recipe, reading chunks lazily in order.
+     */
+    public InputStream openRecipe(Path recipePath) throws IOException {
+        Iterator<ChunkReference> chunks = readRecipe(recipePath).iterator();
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                ChunkReference chunk = chunks.next();
+                try {
+                    return Files.newInputStream(chunkPath(chunk.hash()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Missing chunk " + chunk.hash(), e);
+                }
+            }
+        });
+    }
+
+    public Path chunkPath(String hash) {
+        return properties.repositoryPath().resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    /**
+     * A chunk is synced before it is moved under its hash, so a name in the repository never stands for a chunk cut
+     * short by a crash. One that was, before chunks were synced, is written again.
+     */
+    private boolean writeChunkIfAbsent(String hash, byte[] buffer, int offset, int length) throws IOException {
+        Path chunkPath = chunkPath(hash);
+        if (Files.exists(chunkPath) && Files.size(chunkPath) == length) {
+            return false;
+        }
+        Files.createDirectories(chunkPath.getParent());
+        Path tempFile = Files.createTempFile(chunkPath.getParent(), hash, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, offset, length);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile, chunkPath, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(chunkPath.getParent());
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            //a concurrent backup stored the same chunk first
+            return false;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Writes the recipe next to its final name and moves it into place once it is synced, after all of its chunks.
+     */
+    private void writeRecipe(Path recipePath, List<ChunkReference> recipe) throws IOException {
+        Path tempFile = recipePath.resolveSibling(recipePath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+            writer.write(RECIPE_HEADER);
+            writer.newLine();
+            for (ChunkReference chunk : recipe) {
+                writer.write(chunk.hash() + " " + chunk.length());
+                writer.newLine();
+            }
+            writer.flush();
+            channel.force(true);
+        }
+        Files.move(tempFile, recipePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(recipePath.toAbsolutePath().getParent());
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //not every platform can sync a directory
+            logger.debug("Unable to sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BackupException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.kolade.backt.dedup;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for the deduplicating chunk repository, bound from {@code backt.dedup.*}.
+ *
+ * @param repositoryPath directory that holds the content-addressed chunks
+ * @param minChunkSize   no cut point is considered before this many bytes
+ * @param avgChunkSize   target average chunk size, must be a power of two
+ * @param maxChunkSize   a chunk is cut here even without a content-defined boundary
+ */
+@ConfigurationProperties(prefix = "backt.dedup")
+public record DedupProperties(
+        @DefaultValue("./data/chunks") Path repositoryPath,
+        @DefaultValue("262144") int minChunkSize,
+        @DefaultValue("1048576") int avgChunkSize,
+        @DefaultValue("4194304") int maxChunkSize
+) {
+}
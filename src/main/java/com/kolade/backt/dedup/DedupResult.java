@@ -0,0 +1,21 @@
+package com.kolade.backt.dedup;
+
+import lombok.Builder;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of storing one dump stream in the chunk repository.
+ *
+ * @param logicalBytes size of the dump stream
+ * @param storedBytes  bytes actually written: new chunks plus the recipe file
+ */
+@Builder
+public record DedupResult(
+        Path recipePath,
+        long logicalBytes,
+        long storedBytes,
+        int chunkCount,
+        int newChunkCount
+) {
+}
@@ -0,0 +1,101 @@
+package com.kolade.backt.dedup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunker following FastCDC: a gear rolling hash with normalized chunking,
+ * i.e. a stricter mask before the average size and a looser one after it.
+ * Boundaries depend only on nearby content, so an insert or delete only changes the chunks around it.
+ */
+public class FastCdcChunker {
+
+    //the gear table must never change, otherwise existing repositories stop deduplicating against new backups
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x6261636b74L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        /**
+         * Receives the next chunk. The array is reused after this call returns.
+         */
+        void accept(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long strictMask;
+    private final long looseMask;
+
+    public FastCdcChunker(int minSize, int avgSize, int maxSize) {
+        if (Integer.bitCount(avgSize) != 1 || minSize <= 0 || minSize >= avgSize || avgSize >= maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min < avg < max with avg a power of two");
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = Integer.numberOfTrailingZeros(avgSize);
+        //masks use the high bits, which carry the widest window of the gear hash
+        this.strictMask = highBitsMask(bits + 2);
+        this.looseMask = highBitsMask(bits - 2);
+    }
+
+    public void chunk(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] buffer = new byte[maxSize];
+        int filled = 0;
+        boolean endOfStream = false;
+
+        while (true) {
+            while (!endOfStream && filled < maxSize) {
+                int n = in.read(buffer, filled, maxSize - filled);
+                if (n == -1) {
+                    endOfStream = true;
+                } else {
+                    filled += n;
+                }
+            }
+            if (filled == 0) {
+                return;
+            }
+
+            int cut = cutPoint(buffer, filled);
+            consumer.accept(buffer, 0, cut);
+            System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+            filled -= cut;
+        }
+    }
+
+    int cutPoint(byte[] data, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int normalSize = Math.min(avgSize, length);
+        long fingerprint = 0;
+        int i = minSize;
+        for (; i < normalSize; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xff];
+            if ((fingerprint & strictMask) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[i] & 0xff];
+            if ((fingerprint & looseMask) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static long highBitsMask(int bits) {
+        return -1L << (64 - bits);
+    }
+}
@@ -0,0 +1,31 @@
+package com.kolade.backt.exception;
+
+import lombok.Getter;
+
+@Getter
+public class ProcessExecutionException extends BackupException {
+
+    public enum Reason {
+        FAILED,
+        TIMED_OUT,
+        CANCELLED
+    }
+
+    private final String processName;
+    private final int exitCode;
+    private final Reason reason;
+
+    public ProcessExecutionException(String processName, int exitCode, Reason reason, String message) {
+        super(message);
+        this.processName = processName;
+        this.exitCode = exitCode;
+        this.reason = reason;
+    }
+
+    public ProcessExecutionException(String processName, String message, Throwable cause) {
+        super(message, cause);
+        this.processName = processName;
+        this.exitCode = -1;
+        this.reason = Reason.FAILED;
+    }
+}
@@ -2,24 +2,33 @@ package com.kolade.backt.factory;
 
 import com.kolade.backt.common.DatabaseConnection;
 import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.mongodb.MongoDBConnection;
+import com.kolade.backt.mysql.MySQLConnection;
+import com.kolade.backt.postgres.PostgresConnection;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
-
 
+/**
+ * Creates a new connection object per connected database, so several databases can be connected at once.
+ */
 @Component
 @RequiredArgsConstructor
 public class DatabaseConnectionFactory {
 
-    private final Map<String, DatabaseConnection> connectionMap;
+    private final ConnectionManager connectionManager;
 
     public DatabaseConnection getConnection(String databaseType) {
-        if (DatabaseType.isTypeValid(databaseType)) {
-            return connectionMap.get(databaseType);
-        } else {
+        if (!DatabaseType.isTypeValid(databaseType)) {
             throw new IllegalArgumentException("Unsupported database type: " + databaseType);
         }
+        return switch (DatabaseType.valueOf(databaseType.toUpperCase())) {
+            case MYSQL -> new MySQLConnection(connectionManager);
+            case POSTGRES -> new PostgresConnection(connectionManager);
+            case MONGODB -> new MongoDBConnection(connectionManager);
+            default -> throw new IllegalArgumentException("Unsupported database type: " + databaseType);
+        };
     }
 
 
@@ -0,0 +1,269 @@
+package com.kolade.backt.job;
+
+import com.kolade.backt.common.BackupRequest;
+import com.kolade.backt.common.BackupResult;
+import com.kolade.backt.common.BackupStatus;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.factory.BackupServiceFactory;
+import com.kolade.backt.manifest.ManifestBuilder;
+import com.kolade.backt.service.BackupService;
+import com.kolade.backt.util.BackupUtil;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs backups started from the shell in the background, so the shell gets a job id back right away and can follow
+ * the backup with {@code backup status}.
+ * <p>
+ * Cancelling a job interrupts its worker. The backup services already give up on an interrupt: a waiting dump tool is
+ * killed together with everything it spawned, the parallel exporters stop their workers, and the partial backup is
+ * removed with its manifest before the service returns.
+ */
+@Component
+public class BackupJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupJobService.class);
+
+    private final BackupServiceFactory backupServiceFactory;
+    private final ManifestBuilder manifestBuilder;
+    private final JobProperties properties;
+    private final Map<String, BackupJob> jobs = new ConcurrentHashMap<>();
+    //ids of finished jobs, oldest first, guarded by itself
+    private final Deque<String> finished = new ArrayDeque<>();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService sampler;
+
+    private static class BackupJob {
+        private final String id;
+        private final DatabaseType databaseType;
+        private final BackupRequest request;
+        private final DatabaseDetails databaseDetails;
+        private final BackupProgress progress;
+        private final LocalDateTime submitTime = LocalDateTime.now();
+        private volatile LocalDateTime startTime;
+        private volatile LocalDateTime endTime;
+        private volatile BackupStatus status = BackupStatus.IN_PROGRESS;
+        private volatile BackupResult result;
+        private volatile String errorMessage;
+        //guarded by this
+        private boolean cancelRequested;
+        private Future<?> future;
+
+        BackupJob(String id, DatabaseType databaseType, BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress) {
+            this.id = id;
+            this.databaseType = databaseType;
+            this.request = request;
+            this.databaseDetails = databaseDetails;
+            this.progress = progress;
+        }
+    }
+
+    public BackupJobService(BackupServiceFactory backupServiceFactory, ManifestBuilder manifestBuilder, JobProperties properties) {
+        this.backupServiceFactory = backupServiceFactory;
+        this.manifestBuilder = manifestBuilder;
+        this.properties = properties;
+        this.workers = Executors.newFixedThreadPool(properties.workers(), namedThreads("backt-job-", false));
+        this.sampler = Executors.newSingleThreadScheduledExecutor(namedThreads("backt-job-progress-", true));
+        long interval = properties.sampleInterval().toMillis();
+        sampler.scheduleWithFixedDelay(this::sampleRunning, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a backup and returns at once.
+     *
+     * @return the id of the job
+     * @throws IllegalArgumentException if the request is invalid
+     */
+    public String start(DatabaseType databaseType, BackupRequest request, DatabaseDetails databaseDetails) {
+        BackupService backupService = backupServiceFactory.getBackupService(databaseType.getDisplayName());
+        backupService.validateBackupRequest(request);
+        String id = UUID.randomUUID().toString().substring(0, 8);
+        BackupJob job = new BackupJob(id, databaseType, request, databaseDetails, new BackupProgress(properties.rateWindow()));
+        jobs.put(id, job);
+        synchronized (job) {
+            job.future = workers.submit(() -> run(job, backupService));
+        }
+        logger.info("Queued backup job {}: {} backup of {} {}", id, request.backupType(), databaseType.getDisplayName(), request.databaseName());
+        return id;
+    }
+
+    public Optional<BackupJobStatus> status(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(BackupJobService::status);
+    }
+
+    /**
+     * @return every running and queued job and the most recently finished ones, oldest first
+     */
+    public List<BackupJobStatus> list() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing((BackupJob job) -> job.submitTime).thenComparing(job -> job.id))
+                .map(BackupJobService::status)
+                .toList();
+    }
+
+    /**
+     * Cancels a queued or running job. A running job ends once its backup service has stopped and cleaned up.
+     *
+     * @return false if the job has already finished
+     * @throws IllegalArgumentException if there is no such job
+     */
+    public boolean cancel(String jobId) {
+        BackupJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new IllegalArgumentException("No backup job " + jobId);
+        }
+        synchronized (job) {
+            if (job.status != BackupStatus.IN_PROGRESS || job.cancelRequested) {
+                return job.status == BackupStatus.IN_PROGRESS;
+            }
+            job.cancelRequested = true;
+            job.future.cancel(true);
+            if (job.startTime == null) {
+                //never picked up, the worker skips it
+                finish(job, BackupStatus.CANCELLED);
+            }
+        }
+        logger.info("Cancelling backup job {}", jobId);
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sampler.shutdownNow();
+        jobs.keySet().forEach(this::cancel);
+        workers.shutdown();
+    }
+
+    private void run(BackupJob job, BackupService backupService) {
+        synchronized (job) {
+            if (job.cancelRequested) {
+                return;
+            }
+            job.startTime = LocalDateTime.now();
+        }
+        BackupStatus status;
+        try {
+            BackupResult result = backupService.performBackup(job.request, job.databaseDetails, job.progress);
+            job.result = result;
+            job.errorMessage = result.errorMessage();
+            status = result.backupStatus();
+        } catch (Exception e) {
+            logger.error("Backup job {} failed", job.id, e);
+            job.errorMessage = e.getMessage();
+            status = BackupStatus.FAILED;
+        }
+        synchronized (job) {
+            if (job.cancelRequested && status != BackupStatus.SUCCESS) {
+                status = BackupStatus.CANCELLED;
+                removePartialBackup(job);
+            }
+            job.progress.sample();
+            finish(job, status);
+        }
+        logger.info("Backup job {} ended: {}", job.id, status);
+    }
+
+    /**
+     * The service removes its partial backup when it fails, but workers of an in-process exporter may still have been
+     * closing their files then.
+     */
+    private void removePartialBackup(BackupJob job) {
+        Path backupPath = job.progress.getBackupPath();
+        if (backupPath == null || !Files.exists(backupPath)) {
+            return;
+        }
+        try {
+            BackupUtil.deleteBackupPath(backupPath);
+            manifestBuilder.discard(backupPath);
+        } catch (IOException e) {
+            logger.warn("Unable to remove the partial backup {} of cancelled job {}: {}", backupPath, job.id, e.getMessage());
+        }
+    }
+
+    private void finish(BackupJob job, BackupStatus status) {
+        job.status = status;
+        job.endTime = LocalDateTime.now();
+        synchronized (finished) {
+            finished.addLast(job.id);
+            while (finished.size() > properties.history()) {
+                jobs.remove(finished.removeFirst());
+            }
+        }
+    }
+
+    private void sampleRunning() {
+        for (BackupJob job : jobs.values()) {
+            if (job.startTime != null && job.status == BackupStatus.IN_PROGRESS) {
+                try {
+                    job.progress.sample();
+                } catch (RuntimeException e) {
+                    logger.debug("Unable to measure the progress of backup job {}", job.id, e);
+                }
+            }
+        }
+    }
+
+    private static BackupJobStatus status(BackupJob job) {
+        BackupProgress progress = job.progress;
+        BackupResult result = job.result;
+        long bytesDone = progress.bytesDone();
+        long totalBytes = progress.totalBytes();
+        double bytesPerSecond = job.status == BackupStatus.IN_PROGRESS ? progress.bytesPerSecond() : 0;
+        Duration eta = null;
+        if (totalBytes > bytesDone && bytesPerSecond > 0) {
+            eta = Duration.ofMillis((long) ((totalBytes - bytesDone) / bytesPerSecond * 1000));
+        }
+        return BackupJobStatus.builder()
+                .jobId(job.id)
+                .databaseType(job.databaseType)
+                .databaseName(job.request.databaseName())
+                .backupType(job.request.backupType())
+                .status(job.status)
+                .backupId(progress.getBackupId())
+                .backupPath(progress.getBackupPath())
+                .submitTime(job.submitTime)
+                .startTime(job.startTime)
+                .endTime(job.endTime)
+                .bytesDone(bytesDone)
+                .totalBytes(totalBytes)
+                .bytesPerSecond(bytesPerSecond)
+                .eta(eta)
+                .activity(progress.getActivity())
+                .sizeInBytes(result == null ? 0 : result.sizeInBytes())
+                .errorMessage(job.errorMessage)
+                .build();
+    }
+
+    private static ThreadFactory namedThreads(String prefix, boolean daemon) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.kolade.backt.job;
+
+import com.kolade.backt.common.BackupStatus;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseType;
+import lombok.Builder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Where a backup job stands.
+ *
+ * @param status         IN_PROGRESS while queued or running, then how it ended
+ * @param backupId       id of the backup, once the job has started it
+ * @param startTime      when a worker picked the job up, null while it is queued
+ * @param bytesDone      bytes dumped so far, uncompressed
+ * @param totalBytes     expected size of the dump, reported by the tool or estimated, -1 if unknown
+ * @param bytesPerSecond current dump rate
+ * @param eta            time left at the current rate, null if unknown
+ * @param activity       what the dump tool reported last
+ * @param sizeInBytes    size of the finished backup
+ */
+@Builder
+public record BackupJobStatus(
+        String jobId,
+        DatabaseType databaseType,
+        String databaseName,
+        BackupType backupType,
+        BackupStatus status,
+        String backupId,
+        Path backupPath,
+        LocalDateTime submitTime,
+        LocalDateTime startTime,
+        LocalDateTime endTime,
+        long bytesDone,
+        long totalBytes,
+        double bytesPerSecond,
+        Duration eta,
+        String activity,
+        long sizeInBytes,
+        String errorMessage
+) {
+
+    /**
+     * @return percent done, capped below 100 while the job runs as estimates can be short, or -1 if unknown
+     */
+    public double percentDone() {
+        if (totalBytes <= 0) {
+            return -1;
+        }
+        double percent = bytesDone * 100.0 / totalBytes;
+        return status == BackupStatus.IN_PROGRESS ? Math.min(percent, 99.9) : percent;
+    }
+}
@@ -0,0 +1,170 @@
+package com.kolade.backt.job;
+
+import com.kolade.backt.metrics.PhaseTimings;
+import com.kolade.backt.util.BackupUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Live progress of one backup, filled in by its backup service and read by {@code backup status}.
+ * <p>
+ * Progress comes from the dump tool when it reports its own, as {@code pg_basebackup -P} does, and otherwise from the
+ * bytes counted into the backup files, against the size of the database estimated before the dump. Directories a tool
+ * writes itself, such as a pg_dump directory, are measured on disk instead; the tool compresses them, so their
+ * progress is a lower bound. The rate is taken over the samples of the last {@code rateWindow}, so it follows the
+ * current speed of the dump rather than its average.
+ * <p>
+ * {@link #NONE} is handed to backups nobody watches and ignores everything.
+ */
+public class BackupProgress {
+
+    //pg_basebackup -P: "  123456/4567890 kB (2%), 0/1 tablespace"
+    private static final Pattern BASEBACKUP_PROGRESS = Pattern.compile("(\\d+)/(\\d+) kB \\((\\d+)%\\)");
+    //mongodump: "[###.....................]  orders.items  101000/2000000  (5.1%)"
+    private static final Pattern MONGODUMP_PROGRESS = Pattern.compile("\\[[#.]*]\\s+(\\S+)\\s+(\\d+)/(\\d+)\\s+\\(([\\d.]+)%\\)");
+    private static final int MAX_ACTIVITY_LENGTH = 120;
+
+    public static final BackupProgress NONE = new BackupProgress(Duration.ZERO);
+
+    private final long rateWindowNanos;
+    private volatile String backupId;
+    private volatile Path backupPath;
+    private volatile PhaseTimings timings = PhaseTimings.NONE;
+    private volatile long estimatedBytes = -1;
+    private volatile long toolBytes = -1;
+    private volatile long toolTotalBytes = -1;
+    private volatile String activity;
+    //(nanoTime, bytes) of the samples within the rate window, oldest first, guarded by this
+    private final Deque<long[]> samples = new ArrayDeque<>();
+
+    BackupProgress(Duration rateWindow) {
+        this.rateWindowNanos = rateWindow.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return this != NONE;
+    }
+
+    /**
+     * Called by the backup service once it knows where the backup goes.
+     *
+     * @param timings the timings of the backup, which count the bytes written to its files
+     */
+    public void started(String backupId, Path backupPath, PhaseTimings timings) {
+        if (this == NONE) {
+            return;
+        }
+        this.backupId = backupId;
+        this.backupPath = backupPath;
+        this.timings = timings;
+    }
+
+    /**
+     * @param bytes size of the data the dump will produce, uncompressed, or a negative value if unknown
+     */
+    public void estimate(long bytes) {
+        if (this != NONE) {
+            estimatedBytes = bytes;
+        }
+    }
+
+    /**
+     * Takes a line the dump tool wrote to stderr: progress where the tool reports it, otherwise what it is working on.
+     */
+    public void toolOutput(String line) {
+        if (this == NONE) {
+            return;
+        }
+        Matcher basebackup = BASEBACKUP_PROGRESS.matcher(line);
+        if (basebackup.find()) {
+            toolBytes = Long.parseLong(basebackup.group(1)) * 1024;
+            toolTotalBytes = Long.parseLong(basebackup.group(2)) * 1024;
+            return;
+        }
+        Matcher mongodump = MONGODUMP_PROGRESS.matcher(line);
+        if (mongodump.find()) {
+            //per collection and in documents, so it is shown but not counted
+            activity = mongodump.group(1) + " " + mongodump.group(4) + "%";
+            return;
+        }
+        String message = line.strip();
+        if (!message.isEmpty()) {
+            activity = message.length() > MAX_ACTIVITY_LENGTH ? message.substring(0, MAX_ACTIVITY_LENGTH) : message;
+        }
+    }
+
+    String getBackupId() {
+        return backupId;
+    }
+
+    Path getBackupPath() {
+        return backupPath;
+    }
+
+    String getActivity() {
+        return activity;
+    }
+
+    /**
+     * @return the expected size of the backup, or -1 if unknown
+     */
+    long totalBytes() {
+        return toolTotalBytes >= 0 ? toolTotalBytes : estimatedBytes;
+    }
+
+    /**
+     * @return the bytes done as of the last sample
+     */
+    synchronized long bytesDone() {
+        return samples.isEmpty() ? 0 : samples.peekLast()[1];
+    }
+
+    /**
+     * @return bytes per second over the rate window, 0 until there are two samples
+     */
+    synchronized double bytesPerSecond() {
+        if (samples.size() < 2) {
+            return 0;
+        }
+        long[] first = samples.peekFirst();
+        long[] last = samples.peekLast();
+        return (last[1] - first[1]) * 1e9 / (last[0] - first[0]);
+    }
+
+    /**
+     * Measures the bytes done so far. Called periodically while the backup runs, so a status request never walks a
+     * dump directory itself.
+     */
+    synchronized void sample() {
+        long now = System.nanoTime();
+        samples.addLast(new long[]{now, measure()});
+        while (samples.size() > 2 && now - samples.peekFirst()[0] > rateWindowNanos) {
+            samples.removeFirst();
+        }
+    }
+
+    private long measure() {
+        if (toolBytes >= 0) {
+            return toolBytes;
+        }
+        long counted = timings.bytesTransferred();
+        Path path = backupPath;
+        if (counted > 0 || path == null || !Files.isDirectory(path)) {
+            return counted;
+        }
+        try {
+            return BackupUtil.sizeOf(path);
+        } catch (IOException | UncheckedIOException e) {
+            //files of the tool come and go while it runs, the next sample will do
+            return bytesDone();
+        }
+    }
+}
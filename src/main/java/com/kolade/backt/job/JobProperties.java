@@ -0,0 +1,23 @@
+package com.kolade.backt.job;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Backup jobs started from the shell, bound from {@code backt.jobs.*}.
+ *
+ * @param workers        jobs running at the same time; further jobs wait in line
+ * @param history        finished jobs kept for {@code backup status}, the oldest are dropped first
+ * @param sampleInterval how often the progress of running jobs is measured
+ * @param rateWindow     the dump rate, and the ETA with it, is taken over the samples of this long
+ */
+@ConfigurationProperties(prefix = "backt.jobs")
+public record JobProperties(
+        @DefaultValue("4") int workers,
+        @DefaultValue("100") int history,
+        @DefaultValue("1s") Duration sampleInterval,
+        @DefaultValue("10s") Duration rateWindow
+) {
+}
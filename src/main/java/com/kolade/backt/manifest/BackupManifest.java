@@ -0,0 +1,200 @@
+package com.kolade.backt.manifest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read-only view of a binary backup manifest, memory mapped so that listing or looking up files never reads
+ * more of the manifest than it needs, and never touches the backup itself.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * header    64 bytes  magic, version, entry count, hash table, CRC table and string table offsets,
+ *                     CRC block size, totals
+ * entries   80 bytes each, sorted by path and offset:
+ *           path offset/length, logical object offset/length (into the string table),
+ *           offset, length, compressed length, SHA-256, first CRC index and CRC count
+ * hash      one int per slot: index + 1 of the first entry of a path, 0 when empty (open addressing, FNV-1a)
+ * crcs      one CRC32C per block of every file, in entry order
+ * strings   UTF-8 bytes of every distinct path and logical object
+ * </pre>
+ * Entries are addressed by index in O(1), and the entries of a path are found in O(1) through the hash table.
+ * Version 1 manifests have 72-byte entries and no CRC table, they are still read.
+ */
+public final class BackupManifest {
+
+    public static final String FILE_SUFFIX = ".manifest";
+    //"BKTMANI1"
+    static final long MAGIC = 0x424B544D414E4931L;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int ENTRY_SIZE = 80;
+    static final int V1_ENTRY_SIZE = 72;
+    static final int CHECKSUM_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final int version;
+    private final int entrySize;
+    private final int entryCount;
+    private final int hashTableOffset;
+    private final int hashSlots;
+    private final int crcBlockSize;
+    private final int stringTableOffset;
+    private final int crcTableOffset;
+    private final long totalLength;
+    private final long totalCompressedLength;
+
+    private BackupManifest(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not a backup manifest");
+        }
+        this.version = buffer.getInt(8);
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported manifest version " + version);
+        }
+        this.entrySize = version == 1 ? V1_ENTRY_SIZE : ENTRY_SIZE;
+        this.entryCount = buffer.getInt(12);
+        this.hashTableOffset = (int) buffer.getLong(16);
+        this.hashSlots = buffer.getInt(24);
+        this.crcBlockSize = version == 1 ? 0 : buffer.getInt(28);
+        this.stringTableOffset = (int) buffer.getLong(32);
+        this.totalLength = buffer.getLong(40);
+        this.totalCompressedLength = buffer.getLong(48);
+        this.crcTableOffset = version == 1 ? 0 : (int) buffer.getLong(56);
+    }
+
+    /**
+     * The manifest of a backup is written next to it, as {@code <backup>.manifest}.
+     */
+    public static Path manifestPath(Path backupPath) {
+        return backupPath.resolveSibling(backupPath.getFileName() + FILE_SUFFIX);
+    }
+
+    public static BackupManifest open(Path manifestFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(manifestFile, StandardOpenOption.READ)) {
+            //the mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BackupManifest(mapped);
+        }
+    }
+
+    static BackupManifest wrap(ByteBuffer buffer) throws IOException {
+        return new BackupManifest(buffer);
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    public long totalLength() {
+        return totalLength;
+    }
+
+    public long totalCompressedLength() {
+        return totalCompressedLength;
+    }
+
+    /**
+     * Bytes covered by each block CRC, 0 for a version 1 manifest, which has none.
+     */
+    public int crcBlockSize() {
+        return crcBlockSize;
+    }
+
+    public ManifestEntry entry(int index) {
+        if (index < 0 || index >= entryCount) {
+            throw new IndexOutOfBoundsException("Entry " + index + " of " + entryCount);
+        }
+        int position = HEADER_SIZE + index * entrySize;
+        byte[] checksum = new byte[CHECKSUM_SIZE];
+        buffer.get(position + 40, checksum);
+        int[] blockCrcs = new int[version == 1 ? 0 : buffer.getInt(position + 76)];
+        if (blockCrcs.length > 0) {
+            buffer.slice(crcTableOffset + buffer.getInt(position + 72) * 4, blockCrcs.length * 4).asIntBuffer().get(blockCrcs);
+        }
+        return new ManifestEntry(
+                string(buffer.getInt(position), buffer.getInt(position + 4)),
+                string(buffer.getInt(position + 8), buffer.getInt(position + 12)),
+                buffer.getLong(position + 16),
+                buffer.getLong(position + 24),
+                buffer.getLong(position + 32),
+                checksum,
+                blockCrcs);
+    }
+
+    public List<ManifestEntry> entries() {
+        List<ManifestEntry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            entries.add(entry(i));
+        }
+        return entries;
+    }
+
+    /**
+     * @return the entries of {@code path} in offset order, empty when the manifest does not list it
+     */
+    public List<ManifestEntry> find(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int first = firstEntryOf(key);
+        if (first < 0) {
+            return List.of();
+        }
+        List<ManifestEntry> found = new ArrayList<>();
+        for (int i = first; i < entryCount && pathEquals(i, key); i++) {
+            found.add(entry(i));
+        }
+        return found;
+    }
+
+    private int firstEntryOf(byte[] key) {
+        if (hashSlots == 0) {
+            return -1;
+        }
+        int mask = hashSlots - 1;
+        for (int slot = hash(key) & mask, probes = 0; probes < hashSlots; slot = (slot + 1) & mask, probes++) {
+            int value = buffer.getInt(hashTableOffset + slot * 4);
+            if (value == 0) {
+                return -1;
+            }
+            if (pathEquals(value - 1, key)) {
+                return value - 1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean pathEquals(int index, byte[] key) {
+        int position = HEADER_SIZE + index * entrySize;
+        int length = buffer.getInt(position + 4);
+        if (length != key.length) {
+            return false;
+        }
+        byte[] stored = new byte[length];
+        buffer.get(stringTableOffset + buffer.getInt(position), stored);
+        return Arrays.equals(stored, key);
+    }
+
+    private String string(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(stringTableOffset + offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int hash(byte[] key) {
+        int hash = 0x811C9DC5;
+        for (byte b : key) {
+            hash ^= b & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+}
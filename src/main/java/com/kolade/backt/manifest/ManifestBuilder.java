@@ -0,0 +1,216 @@
+package com.kolade.backt.manifest;
+
+import com.kolade.backt.common.BackupFormat;
+import com.kolade.backt.dedup.ChunkReference;
+import com.kolade.backt.dedup.ChunkStore;
+import com.kolade.backt.pipeline.ChecksumOutputStream;
+import com.kolade.backt.pipeline.ChecksumProperties;
+import com.kolade.backt.pipeline.ChecksumRegistry;
+import com.kolade.backt.pipeline.FileChecksum;
+import com.kolade.backt.storage.BackupStorage;
+import com.kolade.backt.storage.BackupStorages;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes the {@link BackupManifest} of a finished backup.
+ * <p>
+ * Files written by backt itself were checksummed while they were written, their checksums are taken from the
+ * {@link ChecksumRegistry} without reading them again. Files written directly by an external tool, such as a
+ * directory-format pg_dump, are read once to checksum them; gzipped ones are also inflated on the way to record
+ * their logical length. A deduplicated backup lists the chunks of its recipe instead, taken from the recipe
+ * without reading them.
+ * <p>
+ * The manifest is written next to the backup, in the same storage.
+ */
+@Component
+@RequiredArgsConstructor
+public class ManifestBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManifestBuilder.class);
+    private static final String GZIP_SUFFIX = ".gz";
+
+    private final ChunkStore chunkStore;
+    private final ChecksumRegistry checksumRegistry;
+    private final ChecksumProperties checksumProperties;
+    private final BackupStorages storages;
+
+    /**
+     * @param databaseName logical object recorded for single-file backups, which hold the whole database
+     * @return the manifest file and its checksum
+     */
+    public ManifestFile writeManifest(Path backupPath, BackupFormat format, String databaseName) throws IOException {
+        long startTime = System.nanoTime();
+        ManifestWriter writer = new ManifestWriter(checksumProperties.blockSize());
+        BackupStorage storage = storages.storageFor(backupPath);
+        if (format == BackupFormat.RECIPE) {
+            addRecipe(writer, backupPath);
+        } else if (storage.isLocal() && Files.isDirectory(backupPath)) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(backupPath)) {
+                files = walk.filter(Files::isRegularFile).toList();
+            }
+            //files are independent, checksum them in parallel
+            try {
+                files.parallelStream()
+                        .map(file -> entry(storage, file, backupPath.relativize(file).toString(), logicalObject(backupPath.relativize(file), format)))
+                        .toList()
+                        .forEach(writer::add);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            try {
+                writer.add(entry(storage, backupPath, backupPath.getFileName().toString(), databaseName));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        Path manifestFile = BackupManifest.manifestPath(backupPath);
+        byte[] digest;
+        if (storage.isLocal()) {
+            digest = writer.write(manifestFile);
+        } else {
+            try (OutputStream out = storage.create(manifestFile)) {
+                digest = writer.write(out);
+            }
+        }
+        String checksum = HexFormat.of().formatHex(digest);
+        logger.info("Wrote manifest {} in {} ms", manifestFile, (System.nanoTime() - startTime) / 1_000_000);
+        return new ManifestFile(manifestFile, checksum);
+    }
+
+    /**
+     * Drops everything recorded for a backup that failed, including a manifest that was already written.
+     */
+    public void discard(Path backupPath) throws IOException {
+        checksumRegistry.discard(backupPath);
+        storages.storageFor(backupPath).delete(BackupManifest.manifestPath(backupPath));
+    }
+
+    private void addRecipe(ManifestWriter writer, Path recipePath) throws IOException {
+        String path = recipePath.getFileName().toString();
+        long offset = 0;
+        for (ChunkReference chunk : chunkStore.readRecipe(recipePath)) {
+            long storedLength = Files.size(chunkStore.chunkPath(chunk.hash()));
+            writer.add(new ManifestEntry(path, "", offset, chunk.length(), storedLength, HexFormat.of().parseHex(chunk.hash())));
+            offset += chunk.length();
+        }
+    }
+
+    private ManifestEntry entry(BackupStorage storage, Path file, String path, String logicalObject) {
+        try {
+            long size = storage.size(file);
+            FileChecksum checksum = checksumRegistry.take(file)
+                    .filter(recorded -> recorded.length() == size)
+                    .orElseGet(() -> describe(storage, file, path));
+            return new ManifestEntry(path, logicalObject, 0, checksum.logicalLength(), checksum.length(), checksum.sha256(), checksum.blockCrcs());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + file, e);
+        }
+    }
+
+    /**
+     * Checksums a file that was not written through the registry by reading it.
+     */
+    private FileChecksum describe(BackupStorage storage, Path file, String path) {
+        FileChecksum[] checksum = new FileChecksum[1];
+        ChecksumOutputStream checksums = new ChecksumOutputStream(OutputStream.nullOutputStream(), checksumProperties.blockSize(), result -> checksum[0] = result);
+        try (InputStream stored = new TeeInputStream(storage.open(file), checksums)) {
+            if (path.endsWith(GZIP_SUFFIX)) {
+                long length = new GZIPInputStream(stored, 64 * 1024).transferTo(OutputStream.nullOutputStream());
+                checksums.setLogicalLength(() -> length);
+                //whatever the inflater left unread still counts towards the checksum
+                stored.transferTo(OutputStream.nullOutputStream());
+            } else {
+                stored.transferTo(OutputStream.nullOutputStream());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + file, e);
+        }
+        return checksum[0];
+    }
+
+    /**
+     * Table, collection or log a file of a directory backup holds, from the naming used by the exporters.
+     */
+    static String logicalObject(Path relativePath, BackupFormat format) {
+        String name = relativePath.getFileName().toString();
+        if (name.endsWith(GZIP_SUFFIX)) {
+            name = name.substring(0, name.length() - GZIP_SUFFIX.length());
+        }
+        if (format == BackupFormat.BINLOG) {
+            return name;
+        }
+        if (format == BackupFormat.OPLOG) {
+            return "oplog";
+        }
+        Path parent = relativePath.getParent();
+        if (name.endsWith(".bson") || name.endsWith(".metadata.json")) {
+            //mongodump layout: <database>/<collection>.bson
+            String collection = name.substring(0, name.indexOf(name.endsWith(".bson") ? ".bson" : ".metadata.json"));
+            return parent == null ? collection : parent.getFileName() + "." + collection;
+        }
+        for (String suffix : List.of("-schema-create.sql", "-schema.sql", ".sql", ".copy")) {
+            if (name.endsWith(suffix)) {
+                return name.substring(0, name.length() - suffix.length());
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Passes everything read from the file on to its checksums, and closes them with the file.
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream sink;
+
+        TeeInputStream(InputStream in, OutputStream sink) {
+            super(in);
+            this.sink = sink;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                sink.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                sink.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                sink.close();
+            }
+        }
+    }
+}
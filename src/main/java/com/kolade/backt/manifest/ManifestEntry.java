@@ -0,0 +1,26 @@
+package com.kolade.backt.manifest;
+
+import java.util.HexFormat;
+
+/**
+ * One file of a backup, or one chunk of a deduplicated backup, as listed in a {@link BackupManifest}.
+ *
+ * @param path             file name relative to the backup; a single-file backup lists its own file name
+ * @param logicalObject    the table, collection or log the data belongs to, empty when it is not known
+ * @param offset           where the data starts in the logical stream, 0 for whole files
+ * @param length           logical (uncompressed) length in bytes
+ * @param compressedLength bytes stored on disk
+ * @param checksum         SHA-256 of the stored bytes
+ * @param blockCrcs        CRC32C of every block of the stored bytes, see {@link BackupManifest#crcBlockSize()};
+ *                         empty when the file was not checksummed block by block
+ */
+public record ManifestEntry(String path, String logicalObject, long offset, long length, long compressedLength, byte[] checksum, int[] blockCrcs) {
+
+    public ManifestEntry(String path, String logicalObject, long offset, long length, long compressedLength, byte[] checksum) {
+        this(path, logicalObject, offset, length, compressedLength, checksum, new int[0]);
+    }
+
+    public String checksumHex() {
+        return HexFormat.of().formatHex(checksum);
+    }
+}
@@ -0,0 +1,12 @@
+package com.kolade.backt.manifest;
+
+import java.nio.file.Path;
+
+/**
+ * A manifest as written for a backup.
+ *
+ * @param path     the manifest file
+ * @param checksum SHA-256 of the manifest file, hex encoded; recorded with the backup so a verification can trust it
+ */
+public record ManifestFile(Path path, String checksum) {
+}
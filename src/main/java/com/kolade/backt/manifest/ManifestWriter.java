@@ -0,0 +1,162 @@
+package com.kolade.backt.manifest;
+
+import com.kolade.backt.exception.BackupException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects manifest entries and writes them in the {@link BackupManifest} layout.
+ */
+public class ManifestWriter {
+
+    private final int crcBlockSize;
+    private final List<ManifestEntry> entries = new ArrayList<>();
+
+    /**
+     * @param crcBlockSize bytes covered by each block CRC of the entries
+     */
+    public ManifestWriter(int crcBlockSize) {
+        this.crcBlockSize = crcBlockSize;
+    }
+
+    public ManifestWriter add(ManifestEntry entry) {
+        if (entry.checksum().length != BackupManifest.CHECKSUM_SIZE) {
+            throw new IllegalArgumentException("Checksum of " + entry.path() + " is not a SHA-256");
+        }
+        entries.add(entry);
+        return this;
+    }
+
+    /**
+     * Writes the manifest to a temporary file, syncs it and moves it into place.
+     *
+     * @return SHA-256 of the manifest as written
+     */
+    public byte[] write(Path manifestFile) throws IOException {
+        ByteBuffer manifest = toBuffer();
+        MessageDigest digest = sha256();
+        digest.update(manifest.duplicate());
+        Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (manifest.hasRemaining()) {
+                channel.write(manifest);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, manifestFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return digest.digest();
+    }
+
+    /**
+     * Writes the manifest to a stream, for storages that make a file durable as a whole when it is closed.
+     *
+     * @return SHA-256 of the manifest as written
+     */
+    public byte[] write(OutputStream out) throws IOException {
+        ByteBuffer manifest = toBuffer();
+        MessageDigest digest = sha256();
+        digest.update(manifest.duplicate());
+        out.write(manifest.array(), manifest.arrayOffset() + manifest.position(), manifest.remaining());
+        return digest.digest();
+    }
+
+    ByteBuffer toBuffer() {
+        List<ManifestEntry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(ManifestEntry::path).thenComparingLong(ManifestEntry::offset));
+
+        //distinct strings are stored once, chunk entries of a recipe all share one path
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        Map<String, int[]> stringRefs = new HashMap<>();
+        for (ManifestEntry entry : sorted) {
+            addString(entry.path(), strings, stringRefs);
+            addString(entry.logicalObject(), strings, stringRefs);
+        }
+
+        //at most half full, so probes stay short
+        int hashSlots = Integer.highestOneBit(Math.max(1, sorted.size()) * 2 - 1) << 1;
+        int entriesSize = sorted.size() * BackupManifest.ENTRY_SIZE;
+        int hashTableOffset = BackupManifest.HEADER_SIZE + entriesSize;
+        int crcTableOffset = hashTableOffset + hashSlots * 4;
+        int crcCount = sorted.stream().mapToInt(entry -> entry.blockCrcs().length).sum();
+        int stringTableOffset = crcTableOffset + crcCount * 4;
+        ByteBuffer buffer = ByteBuffer.allocate(stringTableOffset + strings.size());
+
+        long totalLength = 0;
+        long totalCompressedLength = 0;
+        int crcIndex = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            ManifestEntry entry = sorted.get(i);
+            int position = BackupManifest.HEADER_SIZE + i * BackupManifest.ENTRY_SIZE;
+            int[] path = stringRefs.get(entry.path());
+            int[] logicalObject = stringRefs.get(entry.logicalObject());
+            buffer.putInt(position, path[0]).putInt(position + 4, path[1])
+                    .putInt(position + 8, logicalObject[0]).putInt(position + 12, logicalObject[1])
+                    .putLong(position + 16, entry.offset())
+                    .putLong(position + 24, entry.length())
+                    .putLong(position + 32, entry.compressedLength())
+                    .put(position + 40, entry.checksum())
+                    .putInt(position + 72, crcIndex)
+                    .putInt(position + 76, entry.blockCrcs().length);
+            for (int crc : entry.blockCrcs()) {
+                buffer.putInt(crcTableOffset + crcIndex++ * 4, crc);
+            }
+            totalLength += entry.length();
+            totalCompressedLength += entry.compressedLength();
+
+            if (i == 0 || !sorted.get(i - 1).path().equals(entry.path())) {
+                int mask = hashSlots - 1;
+                int slot = BackupManifest.hash(entry.path().getBytes(StandardCharsets.UTF_8)) & mask;
+                while (buffer.getInt(hashTableOffset + slot * 4) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                buffer.putInt(hashTableOffset + slot * 4, i + 1);
+            }
+        }
+        buffer.put(stringTableOffset, strings.toByteArray());
+
+        buffer.putLong(0, BackupManifest.MAGIC)
+                .putInt(8, BackupManifest.VERSION)
+                .putInt(12, sorted.size())
+                .putLong(16, hashTableOffset)
+                .putInt(24, hashSlots)
+                .putInt(28, crcBlockSize)
+                .putLong(32, stringTableOffset)
+                .putLong(40, totalLength)
+                .putLong(48, totalCompressedLength)
+                .putLong(56, crcTableOffset);
+        return buffer.rewind();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BackupException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void addString(String value, ByteArrayOutputStream strings, Map<String, int[]> stringRefs) {
+        stringRefs.computeIfAbsent(value, key -> {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            int offset = strings.size();
+            strings.writeBytes(bytes);
+            return new int[]{offset, bytes.length};
+        });
+    }
+}
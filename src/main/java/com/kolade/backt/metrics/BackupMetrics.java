@@ -0,0 +1,223 @@
+package com.kolade.backt.metrics;
+
+import com.kolade.backt.common.BackupPhaseTiming;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.repository.BackupPhaseTimingRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.search.Search;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of running backups and publishes them to the meter registry.
+ * <p>
+ * A backup registers its path when it starts. The streams of the files written under that path look their timings up
+ * by file, the same way their checksums are tracked, so no timing context has to be passed through the dump code.
+ * When the backup finishes, every phase is recorded once in the per-phase histograms
+ * ({@value #DURATION}, {@value #STALL}, {@value #BYTES}, {@value #THROUGHPUT}) and persisted with the catalog record.
+ * Single operations are recorded in {@value #LATENCY} while the backup runs.
+ */
+@Component
+@RequiredArgsConstructor
+public class BackupMetrics {
+
+    public static final String DURATION = "backt.backup.phase.duration";
+    public static final String STALL = "backt.backup.phase.stall";
+    public static final String BYTES = "backt.backup.phase.bytes";
+    public static final String THROUGHPUT = "backt.backup.phase.throughput";
+    public static final String LATENCY = "backt.backup.phase.latency";
+    public static final String BACKUPS = "backt.backups";
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupMetrics.class);
+
+    private final MeterRegistry registry;
+    private final MetricsProperties properties;
+    private final BackupPhaseTimingRepository timingRepository;
+    private final Map<Path, PhaseTimings> running = new ConcurrentHashMap<>();
+
+    /**
+     * Starts timing the backup written to {@code backupPath}, a file or a directory.
+     */
+    public PhaseTimings start(String backupId, DatabaseType databaseType, Path backupPath) {
+        Map<BackupPhase, Timer> latencies = new EnumMap<>(BackupPhase.class);
+        for (BackupPhase phase : BackupPhase.values()) {
+            if (phase != BackupPhase.TOTAL) {
+                latencies.put(phase, timer(LATENCY, databaseType, phase));
+            }
+        }
+        PhaseTimings timings = new PhaseTimings(backupId, databaseType, backupPath, latencies);
+        running.put(key(backupPath), timings);
+        return timings;
+    }
+
+    /**
+     * @return the timings of the running backup {@code file} belongs to, or {@link PhaseTimings#NONE}
+     */
+    public PhaseTimings timingsFor(Path file) {
+        if (running.isEmpty()) {
+            return PhaseTimings.NONE;
+        }
+        for (Path path = key(file); path != null; path = path.getParent()) {
+            PhaseTimings timings = running.get(path);
+            if (timings != null) {
+                return timings;
+            }
+        }
+        return PhaseTimings.NONE;
+    }
+
+    /**
+     * Stops timing a backup that completed, records its phases and saves them with its catalog record.
+     *
+     * @param storedBytes bytes the backup stored, recorded as the bytes of {@link BackupPhase#TOTAL}
+     * @return the timings of every phase, in phase order
+     */
+    public List<PhaseStats> finish(PhaseTimings timings, long storedBytes) {
+        running.remove(key(timings.getBackupPath()));
+        timings.record(BackupPhase.TOTAL, storedBytes, timings.elapsedNanos());
+        List<PhaseStats> phases = timings.snapshot();
+        DatabaseType databaseType = timings.getDatabaseType();
+        for (PhaseStats stats : phases) {
+            timer(DURATION, databaseType, stats.phase()).record(stats.durationNanos(), TimeUnit.NANOSECONDS);
+            timer(STALL, databaseType, stats.phase()).record(stats.stallNanos(), TimeUnit.NANOSECONDS);
+            summary(BYTES, "bytes", databaseType, stats.phase()).record(stats.bytes());
+            if (stats.bytes() > 0) {
+                summary(THROUGHPUT, "megabytes/s", databaseType, stats.phase()).record(stats.throughput());
+            }
+        }
+        registry.counter(BACKUPS, "database", databaseType.name().toLowerCase(), "outcome", "success").increment();
+
+        try {
+            timingRepository.saveAll(phases.stream()
+                    .map(stats -> BackupPhaseTiming.builder()
+                            .backupId(timings.getBackupId())
+                            .phase(stats.phase())
+                            .bytes(stats.bytes())
+                            .durationNanos(stats.durationNanos())
+                            .stallNanos(stats.stallNanos())
+                            .operations(stats.operations())
+                            .build())
+                    .toList());
+        } catch (RuntimeException e) {
+            //the backup itself is complete and cataloged, losing its timings is not worth failing it
+            logger.warn("Could not save phase timings of backup {}", timings.getBackupId(), e);
+        }
+        return phases;
+    }
+
+    /**
+     * Stops timing a backup that failed. Its phases are not recorded, only the failure is counted.
+     */
+    public void abandon(PhaseTimings timings) {
+        running.remove(key(timings.getBackupPath()));
+        registry.counter(BACKUPS, "database", timings.getDatabaseType().name().toLowerCase(), "outcome", "failure").increment();
+    }
+
+    /**
+     * @return the phase timings saved with backup {@code backupId}, in phase order
+     */
+    public List<PhaseStats> findTimings(String backupId) {
+        return timingRepository.findByBackupIdOrderByPhase(backupId).stream()
+                .map(timing -> PhaseStats.builder()
+                        .phase(timing.getPhase())
+                        .bytes(timing.getBytes())
+                        .durationNanos(timing.getDurationNanos())
+                        .stallNanos(timing.getStallNanos())
+                        .operations(timing.getOperations())
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Reads the phase histograms back from the registry.
+     *
+     * @param databaseType only this engine, or every engine if null
+     * @return a summary of every phase recorded since startup, by engine and in phase order
+     */
+    public List<PhaseSummary> summarize(DatabaseType databaseType) {
+        double[] percentiles = properties.percentiles();
+        List<PhaseSummary> summaries = new ArrayList<>();
+        for (DatabaseType type : DatabaseType.values()) {
+            if (databaseType != null && type != databaseType) {
+                continue;
+            }
+            for (BackupPhase phase : BackupPhase.values()) {
+                Timer duration = find(DURATION, type, phase).timer();
+                if (duration == null || duration.count() == 0) {
+                    continue;
+                }
+                Timer stall = find(STALL, type, phase).timer();
+                DistributionSummary throughput = find(THROUGHPUT, type, phase).summary();
+                Timer latency = find(LATENCY, type, phase).timer();
+                summaries.add(PhaseSummary.builder()
+                        .databaseType(type)
+                        .phase(phase)
+                        .backups(duration.count())
+                        .meanSeconds(duration.mean(TimeUnit.SECONDS))
+                        .meanStallSeconds(stall != null ? stall.mean(TimeUnit.SECONDS) : 0)
+                        .percentiles(percentiles)
+                        .throughput(percentileValues(throughput != null ? throughput.takeSnapshot() : null, percentiles, 1))
+                        .latencyMillis(percentileValues(latency != null ? latency.takeSnapshot() : null, percentiles, 1e-6))
+                        .build());
+            }
+        }
+        return summaries;
+    }
+
+    private Search find(String name, DatabaseType databaseType, BackupPhase phase) {
+        return registry.find(name).tags("database", databaseType.name().toLowerCase(), "phase", phase.getDisplayName());
+    }
+
+    /**
+     * Timers report their percentiles in nanoseconds, {@code scale} converts them.
+     */
+    private static double[] percentileValues(HistogramSnapshot snapshot, double[] percentiles, double scale) {
+        double[] values = new double[percentiles.length];
+        if (snapshot == null) {
+            return values;
+        }
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            for (int i = 0; i < percentiles.length; i++) {
+                if (value.percentile() == percentiles[i]) {
+                    values[i] = value.value() * scale;
+                }
+            }
+        }
+        return values;
+    }
+
+    private Timer timer(String name, DatabaseType databaseType, BackupPhase phase) {
+        return Timer.builder(name)
+                .tags("database", databaseType.name().toLowerCase(), "phase", phase.getDisplayName())
+                .publishPercentiles(properties.percentiles())
+                .publishPercentileHistogram(properties.percentileHistogram())
+                .register(registry);
+    }
+
+    private DistributionSummary summary(String name, String baseUnit, DatabaseType databaseType, BackupPhase phase) {
+        return DistributionSummary.builder(name)
+                .baseUnit(baseUnit)
+                .tags("database", databaseType.name().toLowerCase(), "phase", phase.getDisplayName())
+                .publishPercentiles(properties.percentiles())
+                .publishPercentileHistogram(properties.percentileHistogram())
+                .register(registry);
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,38 @@
+package com.kolade.backt.metrics;
+
+/**
+ * The phases a backup is timed in. Phases run concurrently, on several threads, so their durations are busy time
+ * summed over threads and do not add up to the wall time of the backup, which is recorded as {@link #TOTAL}.
+ */
+public enum BackupPhase {
+    //from opening a backup file to the first byte the database or dump tool hands over: connecting, taking the snapshot, starting the query
+    CONNECT("connect"),
+    //time spent waiting on the database or dump tool for data once it started flowing
+    DUMP("dump"),
+    //deflating blocks on the compression pool
+    COMPRESS("compress"),
+    //sealing blocks with AES-GCM on the encryption pool
+    ENCRYPT("encrypt"),
+    //writing to the backup files, checksums included
+    WRITE("write"),
+    //syncing the backup files to disk, or completing their upload, when they are closed
+    FSYNC("fsync"),
+    //checksumming what was not checksummed on the way in and writing the manifest
+    MANIFEST("manifest"),
+    //recording the backup in the catalog
+    METADATA_SAVE("metadata-save"),
+    //wall time of the whole backup, with the bytes it stored
+    TOTAL("total"),
+    //held back by the dump throttle; phases are stored by ordinal, new ones go last
+    THROTTLE("throttle");
+
+    private final String displayName;
+
+    BackupPhase(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
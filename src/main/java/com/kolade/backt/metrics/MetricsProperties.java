@@ -0,0 +1,17 @@
+package com.kolade.backt.metrics;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for backup metrics, bound from {@code backt.metrics.*}.
+ *
+ * @param percentiles         percentiles computed for phase durations, latencies and throughput
+ * @param percentileHistogram whether to also publish histogram buckets, for registries that aggregate percentiles server side
+ */
+@ConfigurationProperties(prefix = "backt.metrics")
+public record MetricsProperties(
+        @DefaultValue({"0.5", "0.95", "0.99"}) double[] percentiles,
+        @DefaultValue("true") boolean percentileHistogram
+) {
+}
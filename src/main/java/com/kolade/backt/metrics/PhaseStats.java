@@ -0,0 +1,28 @@
+package com.kolade.backt.metrics;
+
+import lombok.Builder;
+
+/**
+ * What one phase of a backup took.
+ *
+ * @param bytes        bytes that went through the phase
+ * @param durationNanos time spent in the phase, summed over the threads that ran it
+ * @param stallNanos   time the writing thread was blocked waiting for the phase to catch up
+ * @param operations   blocks, writes or calls the phase was made of
+ */
+@Builder
+public record PhaseStats(
+        BackupPhase phase,
+        long bytes,
+        long durationNanos,
+        long stallNanos,
+        long operations
+) {
+
+    /**
+     * @return megabytes per second of phase time, 0 for phases that move no data
+     */
+    public double throughput() {
+        return durationNanos > 0 ? bytes / 1e6 / (durationNanos / 1e9) : 0;
+    }
+}
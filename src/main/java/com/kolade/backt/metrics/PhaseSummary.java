@@ -0,0 +1,24 @@
+package com.kolade.backt.metrics;
+
+import com.kolade.backt.common.DatabaseType;
+import lombok.Builder;
+
+/**
+ * One phase across the backups of an engine taken since startup, read back from the meter registry.
+ *
+ * @param percentiles      the configured percentiles, which the two arrays below are aligned with
+ * @param throughput       megabytes per second of phase time at each percentile
+ * @param latencyMillis    latency of single operations of the phase, a block or a write call, at each percentile
+ */
+@Builder
+public record PhaseSummary(
+        DatabaseType databaseType,
+        BackupPhase phase,
+        long backups,
+        double meanSeconds,
+        double meanStallSeconds,
+        double[] percentiles,
+        double[] throughput,
+        double[] latencyMillis
+) {
+}
@@ -0,0 +1,138 @@
+package com.kolade.backt.metrics;
+
+import com.kolade.backt.common.DatabaseType;
+import io.micrometer.core.instrument.Timer;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates the phase timings of one running backup. The streams of its files report into it from whichever thread
+ * does the work, so every counter is a {@link LongAdder}. Single operations, a compressed block or a write call, also
+ * go into the latency histogram of their phase as they happen.
+ * <p>
+ * {@link #NONE} is handed to files that do not belong to a running backup and ignores everything.
+ */
+public final class PhaseTimings {
+
+    //declared first, NONE's counters are sized from it
+    private static final BackupPhase[] PHASES = BackupPhase.values();
+
+    public static final PhaseTimings NONE = new PhaseTimings(null, null, null, Map.of());
+
+    private final String backupId;
+    private final DatabaseType databaseType;
+    private final Path backupPath;
+    private final Map<BackupPhase, Timer> latencies;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder[] bytes = adders();
+    private final LongAdder[] durationNanos = adders();
+    private final LongAdder[] stallNanos = adders();
+    private final LongAdder[] operations = adders();
+    private final LongAdder transferred = new LongAdder();
+
+    PhaseTimings(String backupId, DatabaseType databaseType, Path backupPath, Map<BackupPhase, Timer> latencies) {
+        this.backupId = backupId;
+        this.databaseType = databaseType;
+        this.backupPath = backupPath;
+        this.latencies = latencies;
+    }
+
+    public boolean isEnabled() {
+        return this != NONE;
+    }
+
+    /**
+     * Records one operation of {@code phase} that moved {@code bytes} in {@code nanos}.
+     */
+    public void record(BackupPhase phase, long bytes, long nanos) {
+        if (this == NONE) {
+            return;
+        }
+        int i = phase.ordinal();
+        this.bytes[i].add(bytes);
+        durationNanos[i].add(nanos);
+        operations[i].increment();
+        Timer latency = latencies.get(phase);
+        if (latency != null) {
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records time the writing thread spent blocked on {@code phase}.
+     */
+    public void stall(BackupPhase phase, long nanos) {
+        if (this != NONE && nanos > 0) {
+            stallNanos[phase.ordinal()].add(nanos);
+        }
+    }
+
+    /**
+     * Counts bytes handed to the files of the backup, before compression, as they arrive. Unlike the phases, which are
+     * recorded when a file is closed, this is current while the backup runs and is what its progress is read from.
+     */
+    public void transferred(long bytes) {
+        if (this != NONE) {
+            transferred.add(bytes);
+        }
+    }
+
+    public long bytesTransferred() {
+        return transferred.sum();
+    }
+
+    public boolean hasRecorded(BackupPhase phase) {
+        return operations[phase.ordinal()].sum() > 0;
+    }
+
+    public String getBackupId() {
+        return backupId;
+    }
+
+    public DatabaseType getDatabaseType() {
+        return databaseType;
+    }
+
+    public Path getBackupPath() {
+        return backupPath;
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return the phases that were recorded so far, in phase order
+     */
+    public List<PhaseStats> snapshot() {
+        List<PhaseStats> stats = new ArrayList<>();
+        for (BackupPhase phase : PHASES) {
+            int i = phase.ordinal();
+            long count = operations[i].sum();
+            if (count == 0) {
+                continue;
+            }
+            stats.add(PhaseStats.builder()
+                    .phase(phase)
+                    .bytes(bytes[i].sum())
+                    .durationNanos(durationNanos[i].sum())
+                    .stallNanos(stallNanos[i].sum())
+                    .operations(count)
+                    .build());
+        }
+        return stats;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[PHASES.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
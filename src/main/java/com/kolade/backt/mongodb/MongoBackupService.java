@@ -1,26 +1,43 @@
 package com.kolade.backt.mongodb;
 
-import com.kolade.backt.common.BackupMetadataDto;
-import com.kolade.backt.common.BackupType;
-import com.kolade.backt.common.DatabaseDetails;
-import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.common.*;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.exception.BackupException;
 import com.kolade.backt.exception.CustomBacktException;
+import com.kolade.backt.job.BackupProgress;
+import com.kolade.backt.manifest.ManifestBuilder;
+import com.kolade.backt.manifest.ManifestFile;
+import com.kolade.backt.metrics.BackupMetrics;
+import com.kolade.backt.metrics.BackupPhase;
+import com.kolade.backt.metrics.PhaseStats;
+import com.kolade.backt.metrics.PhaseTimings;
+import com.kolade.backt.pipeline.BackupFileWriter;
+import com.kolade.backt.pipeline.BackupSink;
+import com.kolade.backt.process.ProcessRunner;
+import com.kolade.backt.process.ProcessSpec;
+import com.kolade.backt.repository.BackupMetadataRepository;
 import com.kolade.backt.service.BackupService;
 import com.kolade.backt.service.DatabaseDetailsService;
+import com.kolade.backt.storage.BackupStorage;
+import com.kolade.backt.storage.BackupStorages;
+import com.kolade.backt.throttle.DumpThrottle;
+import com.kolade.backt.util.BackupUtil;
+import com.mongodb.client.MongoClient;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.time.LocalDateTime;
-import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service("mongodb")
 @RequiredArgsConstructor
@@ -28,153 +45,300 @@ public class MongoBackupService implements BackupService {
 
     private static final Logger logger = LoggerFactory.getLogger(MongoBackupService.class);
     private final DatabaseDetailsService databaseDetailsService;
+    private final BackupMetadataRepository metadataRepository;
+    private final BackupFileWriter backupFileWriter;
+    private final ProcessRunner processRunner;
+    private final MongoParallelExporter parallelExporter;
+    private final OplogTailer oplogTailer;
+    private final ManifestBuilder manifestBuilder;
+    private final BackupMetrics backupMetrics;
+    private final DumpThrottle dumpThrottle;
+    private final BackupStorages backupStorages;
+    private final ConnectionManager connectionManager;
+    private static final int DEFAULT_EXPORT_PARALLELISM = 4;
+    private static final int DEFAULT_SPLIT_THRESHOLD_DOCS = 10_000_000;
 
+    private record DumpResult(long sizeInBytes, BsonTimestamp oplogTimestamp) {
+    }
+
+    @FunctionalInterface
+    private interface ClientCallback<T> {
+        T apply(MongoClient mongoClient) throws IOException;
+    }
 
-    private void executeCommand(String command) {
+    /**
+     * Runs a MongoDB tool and streams its stdout into the sink.
+     * The password is handed over in a private --config file so it never shows up in argv.
+     * The per-collection progress the tool reports on stderr goes to the backup's progress.
+     *
+     * @return the number of bytes written by the sink
+     */
+    private long executeCommand(List<String> command, DatabaseDetails databaseDetails, BackupRequest request, BackupProgress progress, BackupSink sink, Path target) throws IOException {
+        Path configFile = writeCredentialsConfig(databaseDetails);
         try {
-            ProcessBuilder processBuilder = new ProcessBuilder("bin/bash", "-c", command);
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-
-            try (
-                    BufferedReader stdOut = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                    BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()))
-            ) {
-                stdOut.lines().forEach(logger::info);  //log standard output
-                stdError.lines().forEach(logger::error); //log error output, if any exists
-
-                boolean isFinished = process.waitFor(600, TimeUnit.SECONDS);
-                if (!isFinished) {
-                    process.destroyForcibly();
-                    throw new IOException("Backup process timed out");
-                }
-
-                if (process.exitValue() != 0) {
-                    throw new IOException("Backup process failed with exit code:" + process.exitValue());
-                }
+            List<String> argv = new ArrayList<>(command);
+            if (configFile != null) {
+                argv.add("--config=" + configFile);
+            }
+            return processRunner.run(ProcessSpec.builder()
+                    .command(argv)
+                    .timeout(BackupOptions.getTimeout(request))
+                    .stdoutHandler(stdout -> sink.write(stdout, target))
+                    .stderrListener(progress::toolOutput)
+                    .build()).stdoutBytes();
+        } finally {
+            if (configFile != null) {
+                Files.deleteIfExists(configFile);
             }
-
-        } catch (IOException | InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new CustomBacktException("An error occurred during backup process: ", e);
         }
     }
 
     /**
-     * Performs a full backup of the MongoDB database to the specified directory.
+     * Writes the password into a file only the current user can read, for the {@code --config} option of the tools.
      *
-     * @param backupDirectory The directory path where the backup file will be saved
-     * @return Path to the backup file
+     * @return the file, or null if there is no password
      */
+    static Path writeCredentialsConfig(DatabaseDetails databaseDetails) throws IOException {
+        if (databaseDetails.getPassword() == null || databaseDetails.getPassword().isEmpty()) {
+            return null;
+        }
+        Path configFile = Files.createTempFile("backt-mongo", ".yaml", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        Files.writeString(configFile, "password: '" + databaseDetails.getPassword().replace("'", "''") + "'\n");
+        return configFile;
+    }
+
     @Override
-    public Path performFullBackup(String backupDirectory) {
+    public BackupResult performBackup(BackupRequest backupRequest) throws IOException {
         DatabaseDetails databaseDetails = databaseDetailsService.getActiveDatabaseDetails();
         if (databaseDetails == null) {
             throw new CustomBacktException("No active database connection");
         }
+        return performBackup(backupRequest, databaseDetails);
+    }
 
-        try{
-            String backupFilePath = Paths.get(backupDirectory, "/full_backup_" + databaseDetails.getDatabaseName() + "_" + LocalDateTime.now()).toString();
-
-            String command = String.format("mongodump --host %s --port %d --username %s --password %s --db %s --out %s",
-                    databaseDetails.getHost(),
-                    databaseDetails.getPort(),
-                    databaseDetails.getUsername(),
-                    databaseDetails.getPassword(),
-                    databaseDetails.getDatabaseName(),
-                    backupFilePath);
+    @Override
+    public BackupResult performBackup(BackupRequest backupRequest, DatabaseDetails databaseDetails, BackupProgress progress) throws IOException {
+        validateBackupRequest(backupRequest);
+        var startTime = LocalDateTime.now();
+        var id = BackupUtil.generateBackupId(backupRequest, startTime);
+        BackupStorage storage = backupStorages.forRequest(backupRequest, backupFormat(backupRequest));
+        Path finalBackupPath = BackupUtil.resolveBackupFile(storage, backupRequest.destinationPath(), id, backupFileExtension(backupRequest));
 
-            executeCommand(command);
+        PhaseTimings timings = backupMetrics.start(id, DatabaseType.MONGODB, finalBackupPath);
+        backupStorages.attach(finalBackupPath, storage);
+        dumpThrottle.start(finalBackupPath, DatabaseType.MONGODB, databaseDetails);
+        progress.started(id, finalBackupPath, timings);
+        try {
+            if (progress.isEnabled() && backupRequest.backupType() == BackupType.FULL) {
+                progress.estimate(estimateDumpSize(databaseDetails, backupRequest.databaseName()));
+            }
+            long dumpStartTime = System.nanoTime();
+            DumpResult dumpResult = switch (backupRequest.backupType()) {
+                case FULL -> performFullBackup(backupRequest, databaseDetails, progress, finalBackupPath);
+                case INCREMENTAl -> performIncrementalBackup(backupRequest, databaseDetails, finalBackupPath);
+                case DIFFERENTIAL -> performDifferentialBackup(backupRequest, databaseDetails, finalBackupPath);
+            };
+            if (!timings.hasRecorded(BackupPhase.DUMP)) {
+                //nothing went through the backup file writer, the tool wrote its files itself, so the step is timed as a whole
+                timings.record(BackupPhase.DUMP, dumpResult.sizeInBytes(), System.nanoTime() - dumpStartTime);
+            }
+            long manifestStartTime = System.nanoTime();
+            ManifestFile manifest = manifestBuilder.writeManifest(finalBackupPath, backupFormat(backupRequest), backupRequest.databaseName());
+            timings.record(BackupPhase.MANIFEST, 0, System.nanoTime() - manifestStartTime);
 
-            Path path = Paths.get(backupFilePath);
+            var backupMetadata = BackupMetadata.builder()
+                    .backupId(id)
+                    .databaseType(DatabaseType.MONGODB)
+                    .backupType(backupRequest.backupType())
+                    .databaseName(backupRequest.databaseName())
+                    .backupPath(finalBackupPath.toString())
+                    .storage(storage.name())
+                    .creationTime(startTime)
+                    .backupFormat(backupFormat(backupRequest))
+                    .parallelism(usesNativeExporter(backupRequest) ? BackupOptions.getInt(backupRequest, BackupOptions.PARALLELISM, DEFAULT_EXPORT_PARALLELISM) : null)
+                    .oplogTimestamp(dumpResult.oplogTimestamp() != null ? dumpResult.oplogTimestamp().getValue() : null)
+                    .checksum(manifest.checksum())
+                    .build();
+            long saveStartTime = System.nanoTime();
+            metadataRepository.save(backupMetadata);
+            timings.record(BackupPhase.METADATA_SAVE, 0, System.nanoTime() - saveStartTime);
+            List<PhaseStats> phases = backupMetrics.finish(timings, dumpResult.sizeInBytes());
+            logger.info("Backup created: Type={}, Database_name={}, Path={}, Timestamp: {}", backupRequest.backupType(), backupRequest.databaseName(), finalBackupPath, startTime);
 
-            BackupMetadataDto metadata = BackupMetadataDto.builder()
-                    .dbType(DatabaseType.MONGODB.toString())
-                    .backupFilePath(path)
-                    .backupType(BackupType.FULL)
-                    .dbName(databaseDetails.getDatabaseName())
-                    .timestamp(LocalDateTime.now())
+            return BackupResult.builder()
+                    .backupId(id)
+                    .startTime(startTime)
+                    .backupType(backupRequest.backupType())
+                    .endTime(LocalDateTime.now())
+                    .backupFilePath(finalBackupPath)
+                    .manifestPath(manifest.path())
+                    .backupStatus(BackupStatus.SUCCESS)
+                    .sizeInBytes(dumpResult.sizeInBytes())
+                    .phases(phases)
                     .build();
 
-            getBackupMetadata(metadata);
+        } catch (Exception e) {
+            logger.error("Backup failed", e);
+            backupMetrics.abandon(timings);
+            storage.delete(finalBackupPath);
+            manifestBuilder.discard(finalBackupPath);
+            return BackupResult.builder()
+                    .backupId(id)
+                    .startTime(startTime)
+                    .backupType(backupRequest.backupType())
+                    .endTime(LocalDateTime.now())
+                    .backupFilePath(finalBackupPath)
+                    .backupStatus(BackupStatus.FAILED)
+                    .sizeInBytes(0)
+                    .errorMessage(e.getMessage())
+                    .build();
+        } finally {
+            dumpThrottle.release(finalBackupPath);
+            backupStorages.detach(finalBackupPath);
+        }
+    }
 
-            return path;
-        } catch (Exception e){
-            throw new CustomBacktException("Failed to perform backup operation: ", e);
+    @Override
+    public void validateBackupRequest(BackupRequest request) {
+        if (request.databaseName() == null || request.databaseName().isBlank()) {
+            throw new IllegalArgumentException("Database name is required");
+        }
+        if (request.backupType() == null) {
+            throw new IllegalArgumentException("Backup type is required");
         }
+        if (request.destinationPath() == null) {
+            throw new IllegalArgumentException("Destination path is required");
+        }
+        //rejects an unknown storage, or a backup the storage cannot hold
+        backupStorages.forRequest(request, backupFormat(request));
     }
 
     @Override
-    public Path performIncrementalBackup(String backupDirectory, @Nullable String archiveDirectory, @Nullable String walArchivePath) {
-        // MongoDB's incremental backup uses oplog
-        Optional<BackupMetadataDto> lastBackup = metadataRepository
-                .findLastSuccessfulBackup(request.databaseName());
-
-        ProcessBuilder pb = new ProcessBuilder(
-                "mongodump",
-                "--host", connector.getHost(),
-                "--port", connector.getPort(),
-                "--username", connector.getUsername(),
-                "--password", connector.getPassword(),
-                "--db", request.databaseName(),
-                "--out", tempBackupPath.toString(),
-                "--gzip"
+    public BackupMetadata getBackupMetadata(String backupId) {
+        return metadataRepository.findByBackupId(backupId).orElseThrow(
+                () -> new EntityNotFoundException(String.format("Backup %s not found", backupId))
         );
+    }
 
-        if (lastBackup.isPresent()) {
-            // Add oplog replay from last backup
-            pb.command().addAll(List.of(
-                    "--oplog",
-                    "--query", "{\"ts\": {\"$gt\": {\"$timestamp\": {\"t\": " +
-                            lastBackup.get().creationTime().toEpochSecond() + ", \"i\": 1}}}}"
-            ));
-        }
+    private boolean usesNativeExporter(BackupRequest backupRequest) {
+        return backupRequest.backupType() == BackupType.FULL
+                && BackupOptions.ENGINE_NATIVE.equalsIgnoreCase(BackupOptions.getString(backupRequest, BackupOptions.ENGINE, ""));
+    }
 
-        Process process = pb.start();
-        int exitCode = process.waitFor();
+    private BackupFormat backupFormat(BackupRequest backupRequest) {
+        if (backupRequest.backupType() != BackupType.FULL) {
+            return BackupFormat.OPLOG;
+        }
+        return usesNativeExporter(backupRequest) ? BackupFormat.DIRECTORY : BackupFormat.ARCHIVE;
+    }
 
-        if (exitCode != 0) {
-            throw new BackupException("mongodump failed with exit code: " + exitCode);
+    private String backupFileExtension(BackupRequest backupRequest) {
+        if (usesNativeExporter(backupRequest) || backupRequest.backupType() != BackupType.FULL) {
+            //a mongodump style directory, or a directory of oplog segments
+            return "";
         }
+        return backupRequest.compress() ? ".archive.gz" : ".archive";
     }
 
-    @Override
-    public Path performDifferentialBackup(String backupDirectory) {
-        // For MongoDB, find last full backup and use oplog from there
-        Optional<BackupMetadataDto> lastFullBackup = metadataRepository
-                .findLastFullBackup(request.databaseName());
-
-        if (lastFullBackup.isEmpty()) {
-            performFullBackup(request, tempBackupPath);
-            return;
+    private BackupSink createSink(BackupRequest backupRequest) {
+        //compressing the whole archive stream keeps it readable with mongorestore --archive --gzip
+        int level = BackupOptions.getInt(backupRequest, BackupOptions.COMPRESSION_LEVEL, 0);
+        int workers = BackupOptions.getInt(backupRequest, BackupOptions.COMPRESSION_WORKERS, 0);
+        return (source, target) -> backupFileWriter.write(source, target, backupRequest.compress(), level, workers);
+    }
+
+    /**
+     * Performs a full backup of the MongoDB database. mongodump writes a single archive to stdout,
+     * the native engine writes a mongodump style directory instead.
+     * <p>
+     * The newest oplog entry is read before the dump starts. Replaying the oplog from there over the dump is safe,
+     * as oplog entries are idempotent, so it is recorded as the point the first incremental continues from.
+     *
+     * @param request         The backup request.
+     * @param databaseDetails The server to back up.
+     * @param progress        The progress of the backup.
+     * @param target          The file the backup is written to.
+     * @return The number of bytes written and the oplog position.
+     */
+    private DumpResult performFullBackup(BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress, Path target) {
+        try {
+            BsonTimestamp oplogTimestamp = withClient(databaseDetails, oplogTailer::latestTimestamp);
+            if (usesNativeExporter(request)) {
+                return new DumpResult(performNativeExport(request, databaseDetails, target), oplogTimestamp);
+            }
+            List<String> command = List.of(
+                    "mongodump",
+                    "--host", databaseDetails.getHost(),
+                    "--port", String.valueOf(databaseDetails.getPort()),
+                    "--username", databaseDetails.getUsername(),
+                    "--db", request.databaseName(),
+                    "--archive");
+
+            return new DumpResult(executeCommand(command, databaseDetails, request, progress, createSink(request), target), oplogTimestamp);
+        } catch (Exception e) {
+            throw new CustomBacktException("Failed to perform backup operation: ", e);
         }
+    }
 
-        ProcessBuilder pb = new ProcessBuilder(
-                "mongodump",
-                "--host", connector.getHost(),
-                "--port", connector.getPort(),
-                "--username", connector.getUsername(),
-                "--password", connector.getPassword(),
-                "--db", request.databaseName(),
-                "--out", tempBackupPath.toString(),
-                "--gzip",
-                "--oplog",
-                "--query", "{\"ts\": {\"$gt\": {\"$timestamp\": {\"t\": " +
-                lastFullBackup.get().creationTime().toEpochSecond() + ", \"i\": 1}}}}"
-        );
+    /**
+     * Estimates the size of a dump of the database from the BSON size of its documents, for the progress of the backup.
+     *
+     * @return the size in bytes, or -1 if it cannot be read
+     */
+    private long estimateDumpSize(DatabaseDetails databaseDetails, String databaseName) {
+        try {
+            Document stats = withClient(databaseDetails, mongoClient -> mongoClient.getDatabase(databaseName).runCommand(new Document("dbStats", 1)));
+            return stats.get("dataSize", Number.class).longValue();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read the size of {}, its backup will report no ETA: {}", databaseName, e.getMessage());
+            return -1;
+        }
+    }
 
-        Process process = pb.start();
-        int exitCode = process.waitFor();
+    /**
+     * Exports through the driver with {@link MongoParallelExporter}.
+     */
+    private long performNativeExport(BackupRequest request, DatabaseDetails databaseDetails, Path target) throws IOException {
+        int parallelism = BackupOptions.getInt(request, BackupOptions.PARALLELISM, DEFAULT_EXPORT_PARALLELISM);
+        long splitThreshold = BackupOptions.getInt(request, BackupOptions.SPLIT_THRESHOLD_DOCS, DEFAULT_SPLIT_THRESHOLD_DOCS);
+        return withClient(databaseDetails, mongoClient ->
+                parallelExporter.export(mongoClient, request.databaseName(), target, parallelism, splitThreshold, request.compress()).bytesWritten());
+    }
 
-        if (exitCode != 0) {
-            throw new BackupException("mongodump failed with exit code: " + exitCode);
+    /**
+     * Runs {@code callback} with the shared client of the cluster, the one the shell and other backups of it use.
+     */
+    private <T> T withClient(DatabaseDetails databaseDetails, ClientCallback<T> callback) throws IOException {
+        try (ConnectionManager.MongoLease lease = connectionManager.mongoClient(databaseDetails)) {
+            return callback.apply(lease.client());
         }
     }
+
+    /**
+     * Copies the oplog entries of the database written since the previous full or incremental backup.
+     */
+    private DumpResult performIncrementalBackup(BackupRequest request, DatabaseDetails databaseDetails, Path target) {
+        return copyOplog(request, databaseDetails, target, false);
     }
 
-    @Override
-    public void logBackupMetadata(BackupMetadataDto metadata) {
-        logger.info("Backup created: Type={}, Database_name={}, Path={}, Timestamp: {}", metadata.backupType(), metadata.databaseName(), metadata.backupFilePath().toString(), metadata.timestamp());
+    /**
+     * Copies the oplog entries of the database written since the last full backup.
+     */
+    private DumpResult performDifferentialBackup(BackupRequest request, DatabaseDetails databaseDetails, Path target) {
+        return copyOplog(request, databaseDetails, target, true);
+    }
 
+    private DumpResult copyOplog(BackupRequest request, DatabaseDetails databaseDetails, Path target, boolean sinceFull) {
+        BsonTimestamp from = oplogTailer.resumePoint(request.databaseName(), sinceFull);
+        if (from == null) {
+            throw new BackupException(String.format("No previous backup of %s with an oplog position, take a full backup first", request.databaseName()));
+        }
+        try {
+            OplogTailer.TailResult result = withClient(databaseDetails, mongoClient ->
+                    oplogTailer.copyRange(mongoClient, request.databaseName(), from, target, request.compress()));
+            return new DumpResult(result.bytesWritten(), result.lastTimestamp());
+        } catch (IOException e) {
+            throw new CustomBacktException("Failed to perform backup operation: ", e);
+        }
     }
 }
@@ -3,30 +3,42 @@ package com.kolade.backt.mongodb;
 import com.kolade.backt.common.DatabaseConnection;
 import com.kolade.backt.common.DatabaseDetails;
 import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
 import com.kolade.backt.exception.CustomBacktException;
 import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
 import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Component;
 
 
-@Component("mongodb")
+/**
+ * A MongoDB cluster connected from the shell. It leases the shared client of the cluster while connected, so backups
+ * of the cluster use the same client.
+ */
 public class MongoDBConnection implements DatabaseConnection {
 
     private static final Logger logger = LoggerFactory.getLogger(MongoDBConnection.class);
-    private MongoClient mongoClient;
+    private final ConnectionManager connectionManager;
+    private ConnectionManager.MongoLease lease;
+    private DatabaseDetails databaseDetails;
+
+    public MongoDBConnection(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
 
     @Override
     public void connect(DatabaseDetails databaseDetails) {
-        mongoClient = MongoClients.create(databaseDetails.getConnectionUrl());
+        lease = connectionManager.mongoClient(databaseDetails);
+        this.databaseDetails = databaseDetails;
     }
 
     @Override
     public boolean testConnection() {
+        if (lease == null) {
+            return false;
+        }
         try {
-            mongoClient.listDatabaseNames().first();
+            lease.client().listDatabaseNames().first();
             return true;
         } catch (Exception e) {
             logger.error("Error testing connection: ", e);
@@ -36,9 +48,11 @@ public class MongoDBConnection implements DatabaseConnection {
 
     @Override
     public void disconnect() {
-        if (mongoClient != null) {
+        if (lease != null) {
             try {
-                mongoClient.close();
+                lease.close();
+                connectionManager.release(databaseDetails);
+                lease = null;
             } catch (Exception e) {
                 throw new CustomBacktException("Unable to close connection: ", e);
             }
@@ -53,13 +67,17 @@ public class MongoDBConnection implements DatabaseConnection {
 
     @Override
     public DatabaseDetails getDatabaseDetails() {
-        return null;
+        return databaseDetails;
+    }
+
+    public MongoClient getMongoClient() {
+        return lease == null ? null : lease.client();
     }
 
 
     public String getDatabaseName() {
         try {
-            return mongoClient.listDatabaseNames().first();
+            return getMongoClient().listDatabaseNames().first();
         } catch (Exception e) {
             throw new CustomBacktException("Unable to get database name: ", e);
         }
@@ -67,7 +85,7 @@ public class MongoDBConnection implements DatabaseConnection {
 
     public String getDatabaseVersion() {
         try {
-            Document buildInfo = mongoClient.getDatabase("admin").runCommand(new Document("buildInfo", 1));
+            Document buildInfo = getMongoClient().getDatabase("admin").runCommand(new Document("buildInfo", 1));
             return buildInfo.getString("version");
         } catch (Exception e) {
             throw new CustomBacktException("Unable to get database version: ", e);
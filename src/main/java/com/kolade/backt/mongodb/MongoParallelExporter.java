@@ -0,0 +1,279 @@
+package com.kolade.backt.mongodb;
+
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.pipeline.BackupFileWriter;
+import com.kolade.backt.pipeline.BackupOutputStream;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import lombok.RequiredArgsConstructor;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports a MongoDB database through the driver instead of mongodump.
+ * <p>
+ * Documents are read as {@link RawBsonDocument}, so their bytes go to disk without being decoded and re-encoded.
+ * Collections are exported in parallel, and collections above the split threshold are cut into {@code _id} ranges
+ * that are read concurrently. The output is the mongodump directory layout ({@code <db>/<collection>.bson} plus
+ * {@code .metadata.json}), so it can be loaded with mongorestore.
+ */
+@Component
+@RequiredArgsConstructor
+public class MongoParallelExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoParallelExporter.class);
+    private static final int CURSOR_BATCH_SIZE = 10_000;
+    //documents are written to the shared collection file in blocks of about this size
+    private static final int WRITE_BLOCK_SIZE = 1024 * 1024;
+    //sampled _ids per range when computing split points
+    private static final int SAMPLES_PER_RANGE = 100;
+
+    private final BackupFileWriter backupFileWriter;
+
+    public record ExportResult(Path directory, int collectionCount, long documentCount, long bytesWritten) {
+    }
+
+    /**
+     * One unit of work: a whole collection, or one {@code _id} range of it.
+     */
+    private record ExportTask(CollectionOutput output, Bson filter) {
+    }
+
+    private static class CollectionOutput {
+        private final String name;
+        private final BackupOutputStream out;
+        private final AtomicInteger remainingTasks = new AtomicInteger();
+        private long documents;
+
+        CollectionOutput(String name, BackupOutputStream out) {
+            this.name = name;
+            this.out = out;
+        }
+
+        synchronized void write(byte[] block, int length, long documentCount) throws IOException {
+            out.write(block, 0, length);
+            documents += documentCount;
+        }
+
+        void taskFinished() throws IOException {
+            if (remainingTasks.decrementAndGet() == 0) {
+                synchronized (this) {
+                    out.close();
+                }
+            }
+        }
+
+        /**
+         * Releases the file of a collection whose tasks did not all finish. Its content is discarded with the backup.
+         */
+        synchronized void closeQuietly() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close the export of {}: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param workers             number of collections or ranges read at the same time
+     * @param splitThresholdDocs  collections with more documents than this are split into {@code workers} ranges
+     * @param compress            gzip the output files, as mongodump --gzip does
+     */
+    public ExportResult export(MongoClient mongoClient, String databaseName, Path outputDirectory, int workers, long splitThresholdDocs, boolean compress) throws IOException {
+        MongoDatabase database = mongoClient.getDatabase(databaseName);
+        Path databaseDirectory = outputDirectory.resolve(databaseName);
+        Files.createDirectories(databaseDirectory);
+
+        List<CollectionOutput> outputs = new ArrayList<>();
+        try {
+            List<ExportTask> tasks = new ArrayList<>();
+            for (Document collectionInfo : database.listCollections()) {
+                String name = collectionInfo.getString("name");
+                if (!"collection".equals(collectionInfo.getString("type")) || name.startsWith("system.")) {
+                    continue;
+                }
+                MongoCollection<RawBsonDocument> collection = database.getCollection(name, RawBsonDocument.class);
+                writeMetadata(database, collectionInfo, databaseDirectory, compress);
+
+                String fileName = compress ? name + ".bson.gz" : name + ".bson";
+                CollectionOutput output = new CollectionOutput(name, backupFileWriter.open(databaseDirectory.resolve(fileName), compress, 0, 0));
+                outputs.add(output);
+
+                List<Bson> filters = collection.estimatedDocumentCount() > splitThresholdDocs && workers > 1
+                        ? splitIntoRanges(collection, workers)
+                        : List.of(new Document());
+                output.remainingTasks.set(filters.size());
+                filters.forEach(filter -> tasks.add(new ExportTask(output, filter)));
+            }
+            logger.info("Exporting {} collections of {} as {} tasks with {} workers", outputs.size(), databaseName, tasks.size(), workers);
+
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (ExportTask task : tasks) {
+                    futures.add(executor.submit(() -> {
+                        exportRange(database, task);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new BackupException("Export of " + databaseName + " failed: " + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BackupException("Export of " + databaseName + " was interrupted", e);
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            //a collection whose last task finished is closed already, the others belong to a failed export
+            outputs.forEach(CollectionOutput::closeQuietly);
+        }
+
+        long documents = outputs.stream().mapToLong(output -> output.documents).sum();
+        long bytes = outputs.stream().mapToLong(output -> output.out.getBytesWritten()).sum();
+        return new ExportResult(outputDirectory, outputs.size(), documents, bytes);
+    }
+
+    private void exportRange(MongoDatabase database, ExportTask task) throws IOException {
+        CollectionOutput output = task.output();
+        MongoCollection<RawBsonDocument> collection = database.getCollection(output.name, RawBsonDocument.class);
+        FindIterable<RawBsonDocument> documents = collection.find(task.filter()).batchSize(CURSOR_BATCH_SIZE);
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(WRITE_BLOCK_SIZE + 64 * 1024);
+        long blockDocuments = 0;
+        try (MongoCursor<RawBsonDocument> cursor = documents.cursor()) {
+            while (cursor.hasNext()) {
+                ByteBuffer bytes = cursor.next().getByteBuffer().asNIO();
+                if (bytes.hasArray()) {
+                    block.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                } else {
+                    byte[] copy = new byte[bytes.remaining()];
+                    bytes.get(copy);
+                    block.write(copy, 0, copy.length);
+                }
+                blockDocuments++;
+                if (block.size() >= WRITE_BLOCK_SIZE) {
+                    output.write(block.toByteArray(), block.size(), blockDocuments);
+                    block.reset();
+                    blockDocuments = 0;
+                }
+            }
+        }
+        if (block.size() > 0) {
+            output.write(block.toByteArray(), block.size(), blockDocuments);
+        }
+        output.taskFinished();
+    }
+
+    /**
+     * Splits a collection into {@code _id} ranges from a random sample of ids.
+     * Range filters only match ids of the sampled BSON type, so one more task picks up ids of any other type. Numbers
+     * are the exception: range operators compare int, long, double and decimal ids with each other, so the ranges
+     * hold every numeric id and the last task must leave all of them out, not just the sampled type.
+     */
+    private List<Bson> splitIntoRanges(MongoCollection<RawBsonDocument> collection, int ranges) {
+        List<BsonValue> sample = new ArrayList<>();
+        collection.aggregate(List.of(Aggregates.sample(ranges * SAMPLES_PER_RANGE), Aggregates.project(Projections.include("_id"))))
+                .forEach(document -> sample.add(document.get("_id")));
+        if (sample.isEmpty()) {
+            return List.of(new Document());
+        }
+        BsonType idType = sample.get(0).getBsonType();
+        if (sample.stream().anyMatch(id -> id.getBsonType() != idType) || !isRangeComparable(idType)) {
+            return List.of(new Document());
+        }
+        sample.sort(MongoParallelExporter::compareIds);
+
+        List<BsonValue> boundaries = new ArrayList<>();
+        for (int i = 1; i < ranges; i++) {
+            BsonValue boundary = sample.get(i * sample.size() / ranges);
+            if (boundaries.isEmpty() || compareIds(boundaries.get(boundaries.size() - 1), boundary) < 0) {
+                boundaries.add(boundary);
+            }
+        }
+        if (boundaries.isEmpty()) {
+            return List.of(new Document());
+        }
+
+        List<Bson> filters = new ArrayList<>();
+        BsonValue lower = null;
+        for (BsonValue upper : boundaries) {
+            filters.add(lower == null ? Filters.lt("_id", upper) : Filters.and(Filters.gte("_id", lower), Filters.lt("_id", upper)));
+            lower = upper;
+        }
+        filters.add(Filters.gte("_id", lower));
+        filters.add(isNumeric(idType) ? Filters.not(Filters.type("_id", "number")) : Filters.not(Filters.type("_id", idType)));
+        logger.info("Split {} into {} _id ranges", collection.getNamespace(), filters.size());
+        return filters;
+    }
+
+    private static boolean isRangeComparable(BsonType type) {
+        return type == BsonType.OBJECT_ID || type == BsonType.INT32 || type == BsonType.INT64 || type == BsonType.STRING || type == BsonType.DATE_TIME;
+    }
+
+    private static boolean isNumeric(BsonType type) {
+        return type == BsonType.INT32 || type == BsonType.INT64;
+    }
+
+    private static int compareIds(BsonValue left, BsonValue right) {
+        return switch (left.getBsonType()) {
+            case OBJECT_ID -> left.asObjectId().getValue().compareTo(right.asObjectId().getValue());
+            case INT32 -> Integer.compare(left.asInt32().getValue(), right.asInt32().getValue());
+            case INT64 -> Long.compare(left.asInt64().getValue(), right.asInt64().getValue());
+            case STRING -> left.asString().getValue().compareTo(right.asString().getValue());
+            case DATE_TIME -> Long.compare(left.asDateTime().getValue(), right.asDateTime().getValue());
+            default -> throw new IllegalArgumentException("Unsupported _id type " + left.getBsonType());
+        };
+    }
+
+    /**
+     * Writes {@code <collection>.metadata.json} with options and indexes, the file mongorestore uses to recreate them.
+     */
+    private void writeMetadata(MongoDatabase database, Document collectionInfo, Path databaseDirectory, boolean compress) throws IOException {
+        String name = collectionInfo.getString("name");
+        List<Document> indexes = database.getCollection(name).listIndexes().into(new ArrayList<>());
+        Document metadata = new Document("options", collectionInfo.get("options", new Document()))
+                .append("indexes", indexes)
+                .append("collectionName", name)
+                .append("type", "collection");
+        byte[] json = metadata.toJson(JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build()).getBytes(StandardCharsets.UTF_8);
+
+        String fileName = compress ? name + ".metadata.json.gz" : name + ".metadata.json";
+        try (OutputStream out = backupFileWriter.open(databaseDirectory.resolve(fileName), compress, 0, 1)) {
+            out.write(json);
+        }
+    }
+}
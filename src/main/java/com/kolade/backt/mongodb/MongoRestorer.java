@@ -0,0 +1,207 @@
+package com.kolade.backt.mongodb;
+
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.process.InputFeeder;
+import com.kolade.backt.process.ProcessRunner;
+import com.kolade.backt.process.ProcessSpec;
+import com.kolade.backt.restore.DatabaseRestorer;
+import com.kolade.backt.restore.RestoreRequest;
+import com.kolade.backt.restore.RestoreStreams;
+import com.mongodb.client.MongoDatabase;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Restores MongoDB backups by piping them into mongorestore.
+ * <p>
+ * A mongodump archive is streamed into one mongorestore. An export of the native engine is loaded with one
+ * mongorestore per collection, several at a time, each reading its collection from a pipe. As mongorestore only
+ * reads the data from a pipe, collections are created with their options before the load and indexed after it,
+ * through the driver, from the exported metadata.
+ */
+@Component
+@RequiredArgsConstructor
+public class MongoRestorer implements DatabaseRestorer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoRestorer.class);
+
+    private final ProcessRunner processRunner;
+    private final RestoreStreams restoreStreams;
+    private final ConnectionManager connectionManager;
+
+    private record CollectionFiles(String name, Path data, Path metadata) {
+    }
+
+    @Override
+    public DatabaseType getType() {
+        return DatabaseType.MONGODB;
+    }
+
+    @Override
+    public long restore(BackupMetadata backup, RestoreRequest request, DatabaseDetails target) throws IOException {
+        Path backupPath = Paths.get(backup.getBackupPath());
+        return switch (backup.getBackupFormat()) {
+            case ARCHIVE -> restoreArchive(backup, backupPath, request, target);
+            case DIRECTORY -> restoreExport(backup, backupPath, request, target);
+            default -> throw new BackupException(String.format("Cannot restore a %s backup into MongoDB", backup.getBackupFormat()));
+        };
+    }
+
+    /**
+     * The archive was compressed as a whole by the parallel compressor, so it reaches mongorestore inflated.
+     */
+    private long restoreArchive(BackupMetadata backup, Path archive, RestoreRequest request, DatabaseDetails target) throws IOException {
+        String sourceDatabase = backup.getDatabaseName();
+        List<String> arguments = new ArrayList<>(List.of("--archive", "--drop", "--nsInclude=" + sourceDatabase + ".*"));
+        if (!request.targetDatabase().equals(sourceDatabase)) {
+            arguments.add("--nsFrom=" + sourceDatabase + ".*");
+            arguments.add("--nsTo=" + request.targetDatabase() + ".*");
+        }
+        if (request.jobs() > 0) {
+            arguments.add("--numParallelCollections=" + request.jobs());
+        }
+        LongAdder bytesRestored = new LongAdder();
+        runMongorestore(target, request, arguments, restoreStreams.feeder(List.of(archive), bytesRestored));
+        return bytesRestored.sum();
+    }
+
+    /**
+     * Loads the collections of a native export in parallel, largest first.
+     */
+    private long restoreExport(BackupMetadata backup, Path directory, RestoreRequest request, DatabaseDetails target) throws IOException {
+        List<CollectionFiles> collections = listCollections(directory.resolve(backup.getDatabaseName()));
+        int jobs = request.jobs() > 0 ? request.jobs() : backup.getParallelism() != null ? backup.getParallelism() : Runtime.getRuntime().availableProcessors();
+        LongAdder bytesRestored = new LongAdder();
+
+        try (ConnectionManager.MongoLease lease = connectionManager.mongoClient(target)) {
+            MongoDatabase database = lease.client().getDatabase(request.targetDatabase());
+            List<Document> metadata = new ArrayList<>();
+            for (CollectionFiles collection : collections) {
+                Document collectionMetadata = readMetadata(collection);
+                metadata.add(collectionMetadata);
+                database.getCollection(collection.name()).drop();
+                Document create = new Document("create", collection.name());
+                create.putAll(collectionMetadata.get("options", new Document()));
+                database.runCommand(create);
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs, collections.size())));
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (CollectionFiles collection : collections) {
+                    List<String> arguments = List.of("--db=" + request.targetDatabase(), "--collection=" + collection.name(), "--dir=-");
+                    futures.add(executor.submit(() -> {
+                        runMongorestore(target, request, arguments, restoreStreams.feeder(List.of(collection.data()), bytesRestored));
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new BackupException("Restore of " + request.targetDatabase() + " failed: " + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BackupException("Restore of " + request.targetDatabase() + " was interrupted", e);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            for (int i = 0; i < collections.size(); i++) {
+                createIndexes(database, collections.get(i).name(), metadata.get(i));
+            }
+        }
+        logger.info("Loaded {} collections into {} with {} jobs", collections.size(), request.targetDatabase(), jobs);
+        return bytesRestored.sum();
+    }
+
+    private List<CollectionFiles> listCollections(Path databaseDirectory) throws IOException {
+        List<CollectionFiles> collections = new ArrayList<>();
+        try (Stream<Path> files = Files.list(databaseDirectory)) {
+            for (Path file : files.toList()) {
+                String fileName = file.getFileName().toString();
+                String suffix = fileName.endsWith(".bson.gz") ? ".bson.gz" : fileName.endsWith(".bson") ? ".bson" : null;
+                if (suffix == null) {
+                    continue;
+                }
+                String name = fileName.substring(0, fileName.length() - suffix.length());
+                String metadataName = suffix.endsWith(".gz") ? name + ".metadata.json.gz" : name + ".metadata.json";
+                collections.add(new CollectionFiles(name, file, databaseDirectory.resolve(metadataName)));
+            }
+        }
+        collections.sort(Comparator.comparingLong((CollectionFiles collection) -> collection.data().toFile().length()).reversed());
+        return collections;
+    }
+
+    private Document readMetadata(CollectionFiles collection) throws IOException {
+        if (!Files.exists(collection.metadata())) {
+            return new Document();
+        }
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        restoreStreams.copy(collection.metadata(), json);
+        return Document.parse(json.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Builds the exported indexes once the data is loaded, which is faster than maintaining them during the load.
+     */
+    private void createIndexes(MongoDatabase database, String collection, Document metadata) {
+        List<Document> indexes = new ArrayList<>();
+        for (Document index : metadata.getList("indexes", Document.class, List.of())) {
+            if (!"_id_".equals(index.getString("name"))) {
+                Document spec = new Document(index);
+                spec.remove("ns");
+                indexes.add(spec);
+            }
+        }
+        if (!indexes.isEmpty()) {
+            database.runCommand(new Document("createIndexes", collection).append("indexes", indexes));
+            logger.info("Created {} indexes on {}", indexes.size(), collection);
+        }
+    }
+
+    private void runMongorestore(DatabaseDetails target, RestoreRequest request, List<String> arguments, InputFeeder feeder) throws IOException {
+        Path configFile = MongoBackupService.writeCredentialsConfig(target);
+        try {
+            ProcessSpec.ProcessSpecBuilder spec = ProcessSpec.builder()
+                    .arg("mongorestore")
+                    .arg("--host").arg(target.getHost())
+                    .arg("--port").arg(String.valueOf(target.getPort()))
+                    .arg("--username").arg(target.getUsername())
+                    .command(arguments)
+                    .stdinFeeder(feeder)
+                    .timeout(request.timeout());
+            if (configFile != null) {
+                spec.arg("--config=" + configFile);
+            }
+            processRunner.run(spec.build());
+        } finally {
+            if (configFile != null) {
+                Files.deleteIfExists(configFile);
+            }
+        }
+    }
+}
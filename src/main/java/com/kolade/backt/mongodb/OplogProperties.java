@@ -0,0 +1,21 @@
+package com.kolade.backt.mongodb;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for oplog tailing, bound from {@code backt.oplog.*}.
+ *
+ * @param segmentSize     a segment file is closed once this many oplog bytes have been written to it
+ * @param segmentDuration a segment file is closed once it has been open this long, even if it is not full
+ * @param awaitTime       how long the tailable cursor waits on the server for new entries
+ */
+@ConfigurationProperties(prefix = "backt.oplog")
+public record OplogProperties(
+        @DefaultValue("67108864") long segmentSize,
+        @DefaultValue("5m") Duration segmentDuration,
+        @DefaultValue("1s") Duration awaitTime
+) {
+}
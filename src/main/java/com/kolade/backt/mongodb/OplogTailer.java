@@ -0,0 +1,411 @@
+package com.kolade.backt.mongodb;
+
+import com.kolade.backt.common.BackupFormat;
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.BackupRequest;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.pipeline.BackupFileWriter;
+import com.kolade.backt.pipeline.BackupOutputStream;
+import com.kolade.backt.pipeline.ChecksumRegistry;
+import com.kolade.backt.repository.BackupMetadataRepository;
+import com.kolade.backt.util.BackupUtil;
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Copies oplog entries of one database into segment files, for incremental MongoDB backups.
+ * <p>
+ * Entries are read from {@code local.oplog.rs} as raw BSON and written unchanged, so a segment can be replayed with
+ * {@code mongorestore --oplogReplay} once renamed to {@code oplog.bson}. A segment is closed when it reaches the
+ * configured size or age. Entries are either copied once up to the current end of the oplog, or followed
+ * continuously with a tailable await cursor, recording every closed segment as an incremental backup.
+ * The oplog only exists on replica set members.
+ * <p>
+ * Transactions are logged as {@code applyOps} entries on {@code admin.$cmd}. One that also wrote to other databases
+ * is copied with only the operations of this database, so a replay does not write into the other databases. The
+ * transaction then no longer applies all or nothing with those writes. A transaction too large for one entry is split
+ * into several chained ones, of which those without an operation of this database are not copied; such
+ * transactions only replay correctly when every part has one.
+ */
+@Component
+@RequiredArgsConstructor
+public class OplogTailer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OplogTailer.class);
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    private final BackupFileWriter backupFileWriter;
+    private final ChecksumRegistry checksumRegistry;
+    private final BackupMetadataRepository metadataRepository;
+    private final OplogProperties properties;
+    private final ConnectionManager connectionManager;
+    private final Map<String, TailSession> sessions = new ConcurrentHashMap<>();
+
+    public record Segment(Path file, BsonTimestamp firstTimestamp, BsonTimestamp lastTimestamp, long entryCount, long bytesWritten) {
+    }
+
+    public record TailResult(List<Segment> segments, BsonTimestamp lastTimestamp) {
+
+        public long bytesWritten() {
+            return segments.stream().mapToLong(Segment::bytesWritten).sum();
+        }
+    }
+
+    public record SessionStatus(String name, String databaseName, Path destination, BsonTimestamp lastTimestamp, int segmentCount, String state) {
+    }
+
+    /**
+     * @return the timestamp of the newest oplog entry, or null when the server has no oplog
+     */
+    public BsonTimestamp latestTimestamp(MongoClient mongoClient) {
+        RawBsonDocument newest = oplog(mongoClient).find().sort(Sorts.descending("$natural")).limit(1).first();
+        return newest == null ? null : newest.getTimestamp("ts");
+    }
+
+    /**
+     * The point the next incremental of {@code databaseName} continues from: the latest oplog timestamp of any
+     * backup, or of the latest full backup when {@code sinceFull} is set.
+     */
+    public BsonTimestamp resumePoint(String databaseName, boolean sinceFull) {
+        var previous = sinceFull
+                ? metadataRepository.findFirstByDatabaseTypeAndDatabaseNameAndBackupTypeAndOplogTimestampIsNotNullOrderByOplogTimestampDesc(DatabaseType.MONGODB, databaseName, BackupType.FULL)
+                : metadataRepository.findFirstByDatabaseTypeAndDatabaseNameAndOplogTimestampIsNotNullOrderByOplogTimestampDesc(DatabaseType.MONGODB, databaseName);
+        return previous.map(metadata -> new BsonTimestamp(metadata.getOplogTimestamp())).orElse(null);
+    }
+
+    /**
+     * Copies the entries of {@code databaseName} after {@code from}, up to the newest entry at the time of the call.
+     */
+    public TailResult copyRange(MongoClient mongoClient, String databaseName, BsonTimestamp from, Path directory, boolean compress) throws IOException {
+        BsonTimestamp until = latestTimestamp(mongoClient);
+        if (until == null) {
+            throw new BackupException("The server has no oplog, incremental backups need a replica set");
+        }
+        checkCoverage(mongoClient, from);
+        Files.createDirectories(directory);
+        List<Segment> segments = new ArrayList<>();
+        BsonTimestamp last = copy(mongoClient, databaseName, from, until, directory, compress, () -> false, segments::add);
+        return new TailResult(segments, last);
+    }
+
+    /**
+     * Starts following the oplog of {@code databaseName} in the background, from where the previous backup of it ended.
+     */
+    public void startTailing(String name, DatabaseDetails databaseDetails, String databaseName, Path destination, boolean compress) {
+        TailSession session = new TailSession(name, databaseDetails, databaseName, destination, compress);
+        if (sessions.putIfAbsent(name, session) != null) {
+            throw new BackupException("An oplog tail named " + name + " is already running");
+        }
+        session.thread.start();
+    }
+
+    public boolean stopTailing(String name) {
+        TailSession session = sessions.remove(name);
+        if (session == null) {
+            return false;
+        }
+        session.stopped = true;
+        try {
+            session.thread.join(properties.awaitTime().toMillis() * 5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    public List<SessionStatus> listSessions() {
+        return sessions.values().stream()
+                .map(session -> new SessionStatus(session.name, session.databaseName, session.destination, session.lastTimestamp, session.segmentCount, session.state))
+                .toList();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List.copyOf(sessions.keySet()).forEach(this::stopTailing);
+    }
+
+    private static MongoCollection<RawBsonDocument> oplog(MongoClient mongoClient) {
+        return mongoClient.getDatabase("local").getCollection("oplog.rs", RawBsonDocument.class);
+    }
+
+    /**
+     * Fails when entries after {@code from} have already been dropped from the capped oplog.
+     */
+    private void checkCoverage(MongoClient mongoClient, BsonTimestamp from) {
+        RawBsonDocument oldest = oplog(mongoClient).find().sort(Sorts.ascending("$natural")).limit(1).first();
+        if (oldest != null && oldest.getTimestamp("ts").compareTo(from) > 0) {
+            throw new BackupException(String.format("The oplog no longer reaches back to %s, a new full backup is required", from));
+        }
+    }
+
+    private Bson entriesOf(String databaseName, BsonTimestamp after) {
+        String namespaces = "^" + Pattern.quote(databaseName) + "\\.";
+        //transactions are logged as applyOps on admin.$cmd, only those with an operation of this database are kept;
+        //admin commands of the rest of the server would be replayed by mongorestore --oplogReplay as well.
+        //Operations of other databases in the kept ones are removed by restrictToDatabase
+        return Filters.and(
+                Filters.gt("ts", after),
+                Filters.or(
+                        Filters.regex("ns", namespaces),
+                        Filters.and(Filters.eq("ns", "admin.$cmd"), Filters.regex("o.applyOps.ns", namespaces))));
+    }
+
+    /**
+     * Removes the operations of other databases from a transaction entry. Other entries are returned as they are.
+     */
+    static RawBsonDocument restrictToDatabase(RawBsonDocument entry, String databaseName) {
+        BsonValue namespace = entry.get("ns");
+        BsonValue command = entry.get("o");
+        if (namespace == null || !namespace.isString() || !namespace.asString().getValue().equals("admin.$cmd")
+                || command == null || !command.isDocument()) {
+            return entry;
+        }
+        BsonValue operations = command.asDocument().get("applyOps");
+        if (operations == null || !operations.isArray()) {
+            return entry;
+        }
+        String prefix = databaseName + ".";
+        List<BsonValue> kept = new ArrayList<>();
+        for (BsonValue operation : operations.asArray()) {
+            BsonValue operationNamespace = operation.isDocument() ? operation.asDocument().get("ns") : null;
+            if (operationNamespace != null && operationNamespace.isString() && operationNamespace.asString().getValue().startsWith(prefix)) {
+                kept.add(operation);
+            }
+        }
+        if (kept.size() == operations.asArray().size()) {
+            return entry;
+        }
+        logger.debug("Keeping {} of {} operations of the transaction at {}", kept.size(), operations.asArray().size(), entry.get("ts"));
+        BsonDocument restricted = entry.decode(new BsonDocumentCodec());
+        restricted.getDocument("o").put("applyOps", new BsonArray(kept));
+        return new RawBsonDocument(restricted, new BsonDocumentCodec());
+    }
+
+    /**
+     * Copies entries into rolled segments until {@code until} is reached, or, with no end given, until stopped.
+     *
+     * @return the timestamp of the last entry written, or {@code from} when there was none
+     */
+    private BsonTimestamp copy(MongoClient mongoClient, String databaseName, BsonTimestamp from, BsonTimestamp until, Path directory, boolean compress,
+                               BooleanSupplier stopped, Consumer<Segment> segmentClosed) throws IOException {
+        BsonTimestamp last = from;
+        SegmentWriter writer = null;
+        try {
+            while (!stopped.getAsBoolean()) {
+                Bson filter = until == null ? entriesOf(databaseName, last) : Filters.and(entriesOf(databaseName, last), Filters.lte("ts", until));
+                var find = oplog(mongoClient).find(filter);
+                if (until == null) {
+                    find.cursorType(CursorType.TailableAwait).maxAwaitTime(properties.awaitTime().toMillis(), TimeUnit.MILLISECONDS);
+                }
+                try (MongoCursor<RawBsonDocument> cursor = find.cursor()) {
+                    while (!stopped.getAsBoolean()) {
+                        RawBsonDocument entry = until == null ? cursor.tryNext() : cursor.hasNext() ? cursor.next() : null;
+                        if (entry == null) {
+                            if (until != null || cursor.getServerCursor() == null) {
+                                break;
+                            }
+                        } else {
+                            if (writer == null) {
+                                writer = new SegmentWriter(directory, compress);
+                            }
+                            last = entry.getTimestamp("ts");
+                            writer.write(restrictToDatabase(entry, databaseName), last);
+                        }
+                        if (writer != null && writer.isDue()) {
+                            segmentClosed.accept(writer.close());
+                            writer = null;
+                        }
+                    }
+                }
+                if (until != null) {
+                    break;
+                }
+                //a tailable cursor dies when its query has no results yet, open a new one after a pause
+                sleepQuietly(properties.awaitTime().toMillis());
+            }
+            if (writer != null) {
+                segmentClosed.accept(writer.close());
+                writer = null;
+            }
+            return last;
+        } finally {
+            if (writer != null) {
+                writer.abandon();
+            }
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * An open segment, written under a temporary name and renamed once it is closed and synced.
+     */
+    private class SegmentWriter {
+        private final Path directory;
+        private final boolean compress;
+        private final Path partialFile;
+        private final BackupOutputStream out;
+        private final long openedAt = System.nanoTime();
+        private BsonTimestamp first;
+        private BsonTimestamp last;
+        private long entries;
+        private long oplogBytes;
+
+        SegmentWriter(Path directory, boolean compress) throws IOException {
+            this.directory = directory;
+            this.compress = compress;
+            this.partialFile = Files.createTempFile(directory, "oplog-", PARTIAL_SUFFIX);
+            this.out = backupFileWriter.open(partialFile, compress, 0, 1);
+        }
+
+        void write(RawBsonDocument entry, BsonTimestamp timestamp) throws IOException {
+            ByteBuffer bytes = entry.getByteBuffer().asNIO();
+            byte[] copy = new byte[bytes.remaining()];
+            bytes.get(copy);
+            out.write(copy);
+            if (first == null) {
+                first = timestamp;
+            }
+            last = timestamp;
+            entries++;
+            oplogBytes += copy.length;
+        }
+
+        boolean isDue() {
+            return oplogBytes >= properties.segmentSize() || System.nanoTime() - openedAt >= properties.segmentDuration().toNanos();
+        }
+
+        Segment close() throws IOException {
+            //closing syncs the segment
+            out.close();
+            //recorded under the temporary name, a manifest reads the segment itself
+            checksumRegistry.discard(partialFile);
+            String name = String.format("oplog-%d.%d-%d.%d.bson%s", first.getTime(), first.getInc(), last.getTime(), last.getInc(), compress ? ".gz" : "");
+            Path file = directory.resolve(name);
+            Files.move(partialFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Closed oplog segment {} ({} entries, {} bytes)", file, entries, out.getBytesWritten());
+            return new Segment(file, first, last, entries, out.getBytesWritten());
+        }
+
+        void abandon() {
+            try {
+                out.close();
+                checksumRegistry.discard(partialFile);
+                Files.deleteIfExists(partialFile);
+            } catch (IOException e) {
+                logger.warn("Unable to remove partial oplog segment {}: {}", partialFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A background tail. Every closed segment is recorded as an incremental backup, so the next session or
+     * one-off incremental continues from it.
+     */
+    private class TailSession implements Runnable {
+        private final String name;
+        private final DatabaseDetails databaseDetails;
+        private final String databaseName;
+        private final Path destination;
+        private final boolean compress;
+        private final Thread thread;
+        private volatile boolean stopped;
+        private volatile BsonTimestamp lastTimestamp;
+        private volatile int segmentCount;
+        private volatile String state = "STARTING";
+
+        TailSession(String name, DatabaseDetails databaseDetails, String databaseName, Path destination, boolean compress) {
+            this.name = name;
+            this.databaseDetails = databaseDetails;
+            this.databaseName = databaseName;
+            this.destination = destination;
+            this.compress = compress;
+            this.thread = new Thread(this, "backt-oplog-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            //the lease keeps the shared client open after the shell disconnects
+            try (ConnectionManager.MongoLease lease = connectionManager.mongoClient(databaseDetails)) {
+                MongoClient mongoClient = lease.client();
+                BsonTimestamp from = resumePoint(databaseName, false);
+                if (from == null) {
+                    from = latestTimestamp(mongoClient);
+                    if (from == null) {
+                        throw new BackupException("The server has no oplog, incremental backups need a replica set");
+                    }
+                    logger.warn("No previous backup of {} to continue from, tailing from the current end of the oplog", databaseName);
+                } else {
+                    checkCoverage(mongoClient, from);
+                }
+                lastTimestamp = from;
+                Files.createDirectories(destination);
+                state = "RUNNING";
+                copy(mongoClient, databaseName, from, null, destination, compress, () -> stopped, this::record);
+                state = "STOPPED";
+            } catch (Exception e) {
+                state = "FAILED: " + e.getMessage();
+                logger.error("Oplog tail {} of {} failed", name, databaseName, e);
+            }
+        }
+
+        private void record(Segment segment) {
+            LocalDateTime now = LocalDateTime.now();
+            BackupRequest request = new BackupRequest(databaseName, BackupType.INCREMENTAl, destination, compress, Map.of());
+            metadataRepository.save(BackupMetadata.builder()
+                    .backupId(BackupUtil.generateBackupId(request, now))
+                    .databaseType(DatabaseType.MONGODB)
+                    .backupType(BackupType.INCREMENTAl)
+                    .databaseName(databaseName)
+                    .backupPath(segment.file().toString())
+                    .creationTime(now)
+                    .backupFormat(BackupFormat.OPLOG)
+                    .oplogTimestamp(segment.lastTimestamp().getValue())
+                    .build());
+            lastTimestamp = segment.lastTimestamp();
+            segmentCount++;
+        }
+    }
+}
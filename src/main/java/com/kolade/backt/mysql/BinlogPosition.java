@@ -0,0 +1,9 @@
+package com.kolade.backt.mysql;
+
+/**
+ * A point in the server's binary log. Incremental backups fetch every event after the position of the previous backup.
+ *
+ * @param gtidSet the executed GTID set at this point, or null when GTIDs are off or the set is not known exactly
+ */
+public record BinlogPosition(String file, long position, String gtidSet) {
+}
@@ -0,0 +1,59 @@
+package com.kolade.backt.mysql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a copy of the first part of a mysqldump stream while it passes through, to read the binary log coordinates
+ * that {@code --source-data=2} writes into the header.
+ */
+public class DumpHeaderScanner {
+
+    //the coordinates and GTID_PURGED come before any table data
+    private static final int HEADER_LIMIT = 1024 * 1024;
+    private static final Pattern SOURCE_POSITION = Pattern.compile("(?:SOURCE|MASTER)_LOG_FILE='([^']+)',\\s*(?:SOURCE|MASTER)_LOG_POS=(\\d+)");
+    private static final Pattern GTID_PURGED = Pattern.compile("GTID_PURGED=(?:/\\*!80000 '\\+'\\*/ )?'([^']*)'");
+
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    public InputStream wrap(InputStream source) {
+        return new FilterInputStream(source) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value >= 0 && header.size() < HEADER_LIMIT) {
+                    header.write(value);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0 && header.size() < HEADER_LIMIT) {
+                    header.write(buffer, offset, Math.min(read, HEADER_LIMIT - header.size()));
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * @return the position the dump is consistent with, or null when the header does not contain one
+     */
+    public BinlogPosition binlogPosition() {
+        String text = header.toString(StandardCharsets.UTF_8);
+        Matcher position = SOURCE_POSITION.matcher(text);
+        if (!position.find()) {
+            return null;
+        }
+        Matcher gtid = GTID_PURGED.matcher(text);
+        String gtidSet = gtid.find() ? gtid.group(1).replaceAll("\\s", "") : null;
+        return new BinlogPosition(position.group(1), Long.parseLong(position.group(2)), gtidSet);
+    }
+}
@@ -1,126 +1,291 @@
 package com.kolade.backt.mysql;
 
 import com.kolade.backt.common.*;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.dedup.ChunkStore;
+import com.kolade.backt.crypto.BackupEncryption;
 import com.kolade.backt.exception.BackupException;
 import com.kolade.backt.exception.CustomBacktException;
+import com.kolade.backt.exception.ProcessExecutionException;
+import com.kolade.backt.job.BackupProgress;
+import com.kolade.backt.manifest.ManifestBuilder;
+import com.kolade.backt.manifest.ManifestFile;
+import com.kolade.backt.metrics.BackupMetrics;
+import com.kolade.backt.metrics.BackupPhase;
+import com.kolade.backt.metrics.PhaseStats;
+import com.kolade.backt.metrics.PhaseTimings;
+import com.kolade.backt.pipeline.BackupFileWriter;
+import com.kolade.backt.pipeline.BackupSink;
+import com.kolade.backt.process.ProcessResult;
+import com.kolade.backt.process.ProcessRunner;
+import com.kolade.backt.process.ProcessSpec;
 import com.kolade.backt.repository.BackupMetadataRepository;
+import com.kolade.backt.repository.TableFingerprintRepository;
 import com.kolade.backt.service.BackupService;
 import com.kolade.backt.service.DatabaseDetailsService;
+import com.kolade.backt.storage.BackupStorage;
+import com.kolade.backt.storage.BackupStorages;
+import com.kolade.backt.throttle.DumpThrottle;
 import com.kolade.backt.util.BackupUtil;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service("mysql")
 @RequiredArgsConstructor
 public class MySQLBackupService implements BackupService {
 
     private static final Logger logger = LoggerFactory.getLogger(MySQLBackupService.class);
+    private static final int DEFAULT_EXPORT_PARALLELISM = 4;
+    //dumps of a differential before giving up on tables that keep being written to while they are left out
+    private static final int MAX_DIFFERENTIAL_ATTEMPTS = 3;
+    //"Ver 8.0.36 for Linux" from MySQL 8 clients, "Ver 10.13 Distrib 5.7.44" from older ones
+    private static final Pattern CLIENT_VERSION = Pattern.compile("(?:Ver|Distrib) (\\d+)\\.(\\d+)\\.(\\d+)");
     private final DatabaseDetailsService databaseDetailService;
     private final BackupMetadataRepository metadataRepository;
+    private final BackupFileWriter backupFileWriter;
+    private final BackupEncryption backupEncryption;
+    private final ChunkStore chunkStore;
+    private final ProcessRunner processRunner;
+    private final MySQLParallelExporter parallelExporter;
+    private final MySQLBinlogFetcher binlogFetcher;
+    private final ManifestBuilder manifestBuilder;
+    private final BackupMetrics backupMetrics;
+    private final DumpThrottle dumpThrottle;
+    private final BackupStorages backupStorages;
+    private final MySQLChangeDetector changeDetector;
+    private final TableFingerprintRepository fingerprintRepository;
+    private final ConnectionManager connectionManager;
+    //how the installed mysqldump is asked for the binary log position, found on first use
+    private volatile String sourceDataOption;
+
+    /**
+     * @param fingerprints the tables as they were when the dump started, recorded for differentials to compare against
+     */
+    private record DumpResult(long sizeInBytes, BinlogPosition binlogPosition, List<TableFingerprint> fingerprints) {
+    }
 
-    private void executeCommand(String command) {
-
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder("/bin/bash", "-c", command);
-            processBuilder.redirectErrorStream(true);
-            Process process = processBuilder.start();
-
-            try (
-                    BufferedReader stdOut = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                    BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()))
-            ) {
-
-                //log standard output
-                stdOut.lines().forEach(logger::info);
-
-                //log error output (if any)
-                stdError.lines().forEach(logger::error);
-
-                int exitCode = process.waitFor();
-                if (exitCode != 0) {
-                    process.destroyForcibly();
-                    throw new BackupException("mysqldump failed with exit code: " + exitCode);
-                }
-
-            }
+    /**
+     * Runs a dump tool and streams its stdout into the sink. The password is passed through MYSQL_PWD, never in argv.
+     * What the tool reports on stderr goes to the backup's progress.
+     *
+     * @return the number of bytes written to the target file
+     */
+    private long streamCommand(List<String> command, DatabaseDetails databaseDetails, BackupRequest request, BackupProgress progress, BackupSink sink, Path target) {
+        ProcessResult result = processRunner.run(ProcessSpec.builder()
+                .command(command)
+                .env("MYSQL_PWD", Objects.toString(databaseDetails.getPassword(), ""))
+                .timeout(BackupOptions.getTimeout(request))
+                .stderrListener(progress::toolOutput)
+                .stdoutHandler(stdout -> sink.write(stdout, target))
+                .build());
+        return result.stdoutBytes();
+    }
 
-        } catch (Exception e) {
-            Thread.currentThread().interrupt();
-            throw new CustomBacktException("An error occurred while executing command... \n " + e.getMessage());
+    @Override
+    public BackupResult performBackup(BackupRequest backupRequest) throws IOException {
+        DatabaseDetails databaseDetails = databaseDetailService.getActiveDatabaseDetails();
+        if (databaseDetails == null) {
+            throw new CustomBacktException("No active database connection");
         }
+        return performBackup(backupRequest, databaseDetails);
     }
 
     @Override
-    public BackupResult performBackup(BackupRequest backupRequest) throws IOException {
+    public BackupResult performBackup(BackupRequest backupRequest, DatabaseDetails databaseDetails, BackupProgress progress) throws IOException {
         validateBackupRequest(backupRequest);
         var startTime = LocalDateTime.now();
         var id = BackupUtil.generateBackupId(backupRequest, startTime);
-        Path tempBackupPath = BackupUtil.createTempBackupPath(id);
-
+        BackupStorage storage = backupStorages.forRequest(backupRequest, backupFormat(backupRequest));
+        Path finalBackupPath = BackupUtil.resolveBackupFile(storage, backupRequest.destinationPath(), id, backupFileExtension(backupRequest));
+        //the JDBC exporter and the binlog fetcher write their files in place, there is nothing to stage
+        boolean streaming = BackupOptions.getBoolean(backupRequest, BackupOptions.STREAMING, true) || writesDirectory(backupRequest);
+
+        PhaseTimings timings = backupMetrics.start(id, DatabaseType.MYSQL, finalBackupPath);
+        backupStorages.attach(finalBackupPath, storage);
+        dumpThrottle.start(finalBackupPath, DatabaseType.MYSQL, databaseDetails);
+        progress.started(id, finalBackupPath, timings);
         try {
-            switch (backupRequest.backupType()) {
-                case FULL -> performFullBackup(backupRequest, tempBackupPath);
-                case INCREMENTAl -> performIncrementalBackup(backupRequest, tempBackupPath);
-                case DIFFERENTIAL -> performDifferentialBackup(backupRequest, tempBackupPath);
+            if (progress.isEnabled() && backupRequest.backupType() == BackupType.FULL) {
+                progress.estimate(parallelExporter.estimateSize(databaseDetails, backupRequest.databaseName()));
             }
-
-            //compress if requested
-//            Path finalBackupPath = backupRequest.compress()
-//                    ? //call compression service
-//                    : moveToFinalLocation(tempBackupPath, backupRequest.destinationPath());
-            //save metadata
+            long dumpStartTime = System.nanoTime();
+            //compression, if requested, runs inline on the dump stream
+            DumpResult dumpResult = streaming
+                    ? dump(backupRequest, databaseDetails, progress, id, finalBackupPath)
+                    : dumpThroughTempDirectory(backupRequest, databaseDetails, progress, id, finalBackupPath);
+            if (!timings.hasRecorded(BackupPhase.DUMP)) {
+                //nothing went through the backup file writer, the tool wrote its files itself, so the step is timed as a whole
+                timings.record(BackupPhase.DUMP, dumpResult.sizeInBytes(), System.nanoTime() - dumpStartTime);
+            }
+            BinlogPosition binlogPosition = dumpResult.binlogPosition();
+            long manifestStartTime = System.nanoTime();
+            ManifestFile manifest = manifestBuilder.writeManifest(finalBackupPath, backupFormat(backupRequest), backupRequest.databaseName());
+            timings.record(BackupPhase.MANIFEST, 0, System.nanoTime() - manifestStartTime);
 
             var backupMetadata = BackupMetadata.builder()
                     .backupId(id)
                     .databaseType(DatabaseType.MYSQL)
                     .backupType(backupRequest.backupType())
                     .databaseName(backupRequest.databaseName())
-                    .backupPath(backupRequest.destinationPath().toString()) //edit to finalPath
+                    .backupPath(finalBackupPath.toString())
+                    .storage(storage.name())
                     .creationTime(startTime)
+                    .backupFormat(backupFormat(backupRequest))
+                    .parallelism(usesJdbcExporter(backupRequest) ? BackupOptions.getInt(backupRequest, BackupOptions.PARALLELISM, DEFAULT_EXPORT_PARALLELISM) : null)
+                    .binlogFile(binlogPosition != null ? binlogPosition.file() : null)
+                    .binlogPosition(binlogPosition != null ? binlogPosition.position() : null)
+                    .gtidSet(binlogPosition != null ? binlogPosition.gtidSet() : null)
+                    .checksum(manifest.checksum())
                     .build();
+            long saveStartTime = System.nanoTime();
             metadataRepository.save(backupMetadata);
+            fingerprintRepository.saveAll(dumpResult.fingerprints());
+            timings.record(BackupPhase.METADATA_SAVE, 0, System.nanoTime() - saveStartTime);
+            List<PhaseStats> phases = backupMetrics.finish(timings, dumpResult.sizeInBytes());
 
             return BackupResult.builder()
                     .backupId(id)
                     .startTime(startTime)
                     .backupType(backupRequest.backupType())
                     .endTime(LocalDateTime.now())
-                    .backupFilePath(backupRequest.destinationPath()) //edit to finalPath
+                    .backupFilePath(finalBackupPath)
+                    .manifestPath(manifest.path())
                     .backupStatus(BackupStatus.SUCCESS)
-                    .sizeInBytes(Files.size(backupRequest.destinationPath())) //edit to finalPath
+                    .sizeInBytes(dumpResult.sizeInBytes())
+                    .phases(phases)
                     .build();
 
         } catch (Exception e) {
             logger.error("Backup failed", e);
+            backupMetrics.abandon(timings);
+            storage.delete(finalBackupPath);
+            manifestBuilder.discard(finalBackupPath);
             return BackupResult.builder()
                     .backupId(id)
                     .startTime(startTime)
                     .backupType(backupRequest.backupType())
                     .endTime(LocalDateTime.now())
-                    .backupFilePath(backupRequest.destinationPath()) //edit to finalPath
+                    .backupFilePath(finalBackupPath)
                     .backupStatus(BackupStatus.FAILED)
-                    .sizeInBytes(Files.size(backupRequest.destinationPath())) //edit to finalPath
+                    .sizeInBytes(0)
                     .errorMessage(e.getMessage())
                     .build();
         } finally {
-            BackupUtil.deleteTempBackupPath(tempBackupPath);
+            dumpThrottle.release(finalBackupPath);
+            backupStorages.detach(finalBackupPath);
         }
+    }
 
+    private DumpResult dump(BackupRequest backupRequest, DatabaseDetails databaseDetails, BackupProgress progress, String id, Path target) throws IOException {
+        if (usesJdbcExporter(backupRequest)) {
+            List<TableFingerprint> fingerprints = captureFingerprints(backupRequest, databaseDetails, id);
+            int parallelism = BackupOptions.getInt(backupRequest, BackupOptions.PARALLELISM, DEFAULT_EXPORT_PARALLELISM);
+            MySQLParallelExporter.ExportResult result = parallelExporter.export(databaseDetails, backupRequest.databaseName(), target, parallelism, backupRequest.compress());
+            BinlogPosition position = result.binlogFile() != null ? new BinlogPosition(result.binlogFile(), result.binlogPosition(), result.gtidExecuted()) : null;
+            return new DumpResult(result.bytesWritten(), position, fingerprints);
+        }
+        return switch (backupRequest.backupType()) {
+            case FULL -> performFullBackup(backupRequest, databaseDetails, progress, createSink(backupRequest), id, target);
+            case INCREMENTAl -> performIncrementalBackup(backupRequest, databaseDetails, target);
+            case DIFFERENTIAL -> performDifferentialBackup(backupRequest, databaseDetails, progress, createSink(backupRequest), id, target);
+        };
+    }
+
+    /**
+     * Fingerprints the tables before a full dump starts, so that a table written to in between is dumped again by the
+     * next differential rather than missed. A full backup is still taken without them; differentials then need the next one.
+     */
+    private List<TableFingerprint> captureFingerprints(BackupRequest backupRequest, DatabaseDetails databaseDetails, String id) {
+        try {
+            return changeDetector.capture(databaseDetails, backupRequest.databaseName(), id,
+                    BackupOptions.getBoolean(backupRequest, BackupOptions.TABLE_CHECKSUMS, true));
+        } catch (BackupException e) {
+            logger.warn("No table fingerprints for {}, differential backups will not be possible from it: {}", id, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private BackupSink createSink(BackupRequest backupRequest) {
+        if (BackupOptions.getBoolean(backupRequest, BackupOptions.DEDUPLICATE, false)) {
+            return (source, target) -> chunkStore.store(dumpThrottle.throttle(source, target), target).storedBytes();
+        }
+        int level = BackupOptions.getInt(backupRequest, BackupOptions.COMPRESSION_LEVEL, 0);
+        int workers = BackupOptions.getInt(backupRequest, BackupOptions.COMPRESSION_WORKERS, 0);
+        return (source, target) -> backupFileWriter.write(source, target, backupRequest.compress(), level, workers);
+    }
+
+    private boolean usesJdbcExporter(BackupRequest backupRequest) {
+        return backupRequest.backupType() == BackupType.FULL
+                && BackupOptions.ENGINE_JDBC.equalsIgnoreCase(BackupOptions.getString(backupRequest, BackupOptions.ENGINE, ""));
+    }
+
+    /**
+     * The JDBC exporter and incremental backups produce a directory instead of a single dump file.
+     */
+    private boolean writesDirectory(BackupRequest backupRequest) {
+        return usesJdbcExporter(backupRequest) || backupRequest.backupType() == BackupType.INCREMENTAl;
+    }
 
+    private BackupFormat backupFormat(BackupRequest backupRequest) {
+        if (backupRequest.backupType() == BackupType.INCREMENTAl) {
+            return BackupFormat.BINLOG;
+        }
+        if (usesJdbcExporter(backupRequest)) {
+            return BackupFormat.DIRECTORY;
+        }
+        return BackupOptions.getBoolean(backupRequest, BackupOptions.DEDUPLICATE, false) ? BackupFormat.RECIPE : BackupFormat.SQL;
+    }
+
+    private String backupFileExtension(BackupRequest backupRequest) {
+        if (writesDirectory(backupRequest)) {
+            //one file per table, or one file per binary log
+            return "";
+        }
+        if (BackupOptions.getBoolean(backupRequest, BackupOptions.DEDUPLICATE, false)) {
+            return ".recipe";
+        }
+        return backupRequest.compress() ? ".sql.gz" : ".sql";
+    }
+
+    /**
+     * Legacy mode: the dump lands in a temporary directory first and is then moved to the destination.
+     * Only used when streaming is switched off, as it writes every byte twice across filesystems.
+     */
+    private DumpResult dumpThroughTempDirectory(BackupRequest backupRequest, DatabaseDetails databaseDetails, BackupProgress progress, String id, Path finalBackupPath) throws IOException {
+        Path tempBackupPath = BackupUtil.createTempBackupPath(id);
+        Path tempBackupFile = tempBackupPath.resolve(finalBackupPath.getFileName());
+        try {
+            DumpResult result = dump(backupRequest, databaseDetails, progress, id, tempBackupFile);
+            Files.move(tempBackupFile, finalBackupPath, StandardCopyOption.REPLACE_EXISTING);
+            return new DumpResult(Files.size(finalBackupPath), result.binlogPosition(), result.fingerprints());
+        } finally {
+            Files.deleteIfExists(tempBackupFile);
+            BackupUtil.deleteTempBackupPath(tempBackupPath);
+        }
     }
 
     @Override
@@ -134,6 +299,16 @@ public class MySQLBackupService implements BackupService {
         if (request.destinationPath() == null) {
             throw new IllegalArgumentException("Destination path is required");
         }
+        BackupStorage storage = backupStorages.forRequest(request, backupFormat(request));
+        if (!storage.isLocal() && !BackupOptions.getBoolean(request, BackupOptions.STREAMING, true)) {
+            throw new IllegalArgumentException("Only streamed dumps can be stored in " + storage.name() + ", the legacy mode moves a local file into place");
+        }
+        if (backupEncryption.isEnabled() && backupFormat(request) == BackupFormat.RECIPE) {
+            throw new IllegalArgumentException("Deduplicated backups cannot be encrypted, their chunks are shared between backups");
+        }
+        if (backupEncryption.isEnabled() && backupFormat(request) == BackupFormat.BINLOG && !request.compress()) {
+            throw new IllegalArgumentException("Binary logs are written by mysqlbinlog itself and are only encrypted when they are compressed");
+        }
     }
 
     @Override
@@ -144,24 +319,33 @@ public class MySQLBackupService implements BackupService {
     }
 
 
-    private void performFullBackup(BackupRequest request, Path tempBackupPath) {
-        DatabaseDetails databaseDetails = databaseDetailService.getActiveDatabaseDetails();
-        if (databaseDetails == null) {
-            throw new CustomBacktException("No active database connection");
-        }
-
+    /**
+     * Full dump with mysqldump. {@code --source-data=2} writes the binary log position the dump is consistent with
+     * into the header as a comment; it is read off the stream and recorded as the start of the next incremental.
+     * The option is only passed when the server can give a position, see {@link #canRecordBinlogPosition}.
+     */
+    private DumpResult performFullBackup(BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress, BackupSink sink, String id, Path target) {
+        List<TableFingerprint> fingerprints = captureFingerprints(request, databaseDetails, id);
         try {
+            List<String> command = new ArrayList<>(List.of(
+                    "mysqldump",
+                    "--host=" + databaseDetails.getHost(),
+                    "--port=" + databaseDetails.getPort(),
+                    "--user=" + databaseDetails.getUsername(),
+                    "--single-transaction",
+                    "--quick"));
+            if (canRecordBinlogPosition(databaseDetails, request.databaseName())) {
+                command.add(sourceDataOption());
+            }
+            command.addAll(List.of("--databases", request.databaseName()));
 
-            String command = "mysqldump" +
-                    " --host=" + databaseDetails.getHost() +
-                    " --port=" + databaseDetails.getPort() +
-                    " --user=" + databaseDetails.getUsername() +
-                    " --password=\"" + databaseDetails.getPassword() + "\"" +
-                    " --result-file=" + tempBackupPath +
-                    " --databases \"" +
-                    request.databaseName() + "\"";
-
-            executeCommand(command);
+            DumpHeaderScanner headerScanner = new DumpHeaderScanner();
+            long bytes = streamCommand(command, databaseDetails, request, progress, (source, file) -> sink.write(headerScanner.wrap(source), file), target);
+            BinlogPosition position = headerScanner.binlogPosition();
+            if (position == null) {
+                logger.warn("No binary log position in the dump of {}, incremental backups will not be possible from it", request.databaseName());
+            }
+            return new DumpResult(bytes, position, fingerprints);
 
         } catch (Exception e) {
             throw new BackupException("Failed to perform backup operation: ", e);
@@ -169,37 +353,195 @@ public class MySQLBackupService implements BackupService {
     }
 
 
-    public Path performIncrementalBackup(String backupDirectory, @Nullable String archiveDirectory, @Nullable String walArchivePath) {
+    /**
+     * mysqldump fails outright when asked for the binary log position while binary logging is off, or without the
+     * RELOAD privilege it needs for the read lock and REPLICATION CLIENT to read the position. Such servers still get
+     * a full backup, just without the position incrementals would start from.
+     */
+    private boolean canRecordBinlogPosition(DatabaseDetails databaseDetails, String databaseName) {
+        try (Connection connection = connectionManager.getConnection(databaseDetails);
+             Statement statement = connection.createStatement()) {
+            if (MySQLBinlogFetcher.readStatus(statement) == null) {
+                logger.warn("Binary logging is off, dumping {} without a binary log position", databaseName);
+                return false;
+            }
+            if (!hasReloadPrivilege(statement)) {
+                logger.warn("The backup user lacks the RELOAD privilege, dumping {} without a binary log position", databaseName);
+                return false;
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.warn("Unable to read the binary log status, dumping {} without a binary log position: {}", databaseName, e.getMessage());
+            return false;
+        }
+    }
 
-        DatabaseDetails databaseDetails = databaseDetailService.getActiveDatabaseDetails();
-        if (databaseDetails == null) {
-            throw new CustomBacktException("No active database connection");
+    /**
+     * Looks for RELOAD among the global grants of the current user. Privileges that only come through a role are
+     * not listed and read as missing.
+     */
+    private static boolean hasReloadPrivilege(Statement statement) throws SQLException {
+        try (ResultSet grants = statement.executeQuery("SHOW GRANTS")) {
+            while (grants.next()) {
+                String grant = grants.getString(1).toUpperCase();
+                if (grant.contains(" ON *.* ") && (grant.contains("ALL PRIVILEGES") || grant.matches("GRANT .*\\bRELOAD\\b.* ON \\*\\.\\* .*"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@code --source-data} replaced {@code --master-data} in the MySQL 8.0.26 client. Older clients and MariaDB's
+     * only know the old name, the MySQL 8.4 client only the new one.
+     */
+    private String sourceDataOption() {
+        String option = sourceDataOption;
+        if (option == null) {
+            option = isLegacyClient(mysqldumpVersion()) ? "--master-data=2" : "--source-data=2";
+            sourceDataOption = option;
         }
+        return option;
+    }
 
+    private String mysqldumpVersion() {
+        StringBuilder version = new StringBuilder();
         try {
-            String backupFilePath = Paths.get(backupDirectory, "/incremental_backup_" + databaseDetails.getDatabaseName() + "_" + LocalDateTime.now() + ".sql").toString();
-            String command = String.format("mysqlbinlog --host=%s --port=%d --start-datetime='YYYY-MM-DD HH:MM:SS' > %s", databaseDetails.getHost(), databaseDetails.getPort(), backupFilePath);
-            executeCommand(command);
-            Path path = Paths.get(backupFilePath);
-            BackupMetadataDto metadata = BackupMetadataDto.builder()
-                    .backupFilePath(path)
-                    .backupType(BackupType.INCREMENTAl)
-                    .dbName(databaseDetails.getDatabaseName())
-                    .timestamp(LocalDateTime.now())
-                    .build();
+            processRunner.run(ProcessSpec.builder()
+                    .arg("mysqldump")
+                    .arg("--version")
+                    .stdoutHandler(stdout -> {
+                        byte[] bytes = stdout.readAllBytes();
+                        version.append(new String(bytes, StandardCharsets.UTF_8));
+                        return bytes.length;
+                    })
+                    .build());
+        } catch (ProcessExecutionException e) {
+            logger.warn("Unable to read the mysqldump version, assuming a current client: {}", e.getMessage());
+        }
+        return version.toString();
+    }
 
-            getBackupMetadata(metadata);
+    private static boolean isLegacyClient(String version) {
+        if (version.contains("MariaDB")) {
+            return true;
+        }
+        Matcher matcher = CLIENT_VERSION.matcher(version);
+        if (!matcher.find()) {
+            return false;
+        }
+        int major = Integer.parseInt(matcher.group(1));
+        int minor = Integer.parseInt(matcher.group(2));
+        int patch = Integer.parseInt(matcher.group(3));
+        return major < 8 || major == 8 && minor == 0 && patch < 26;
+    }
 
-            return path;
+    /**
+     * Fetches the binary log events written since the last full or incremental backup of this database.
+     * The binary log is server wide, so the files hold the events of every database on the server.
+     */
+    private DumpResult performIncrementalBackup(BackupRequest request, DatabaseDetails databaseDetails, Path target) {
+        BinlogPosition start = metadataRepository
+                .findFirstByDatabaseTypeAndDatabaseNameAndBinlogFileIsNotNullOrderByCreationTimeDesc(DatabaseType.MYSQL, request.databaseName())
+                .map(previous -> new BinlogPosition(previous.getBinlogFile(), previous.getBinlogPosition(), previous.getGtidSet()))
+                .orElseThrow(() -> new BackupException(String.format("No previous backup of %s with a binary log position, take a full backup first", request.databaseName())));
+        try {
+            int parallelism = BackupOptions.getInt(request, BackupOptions.PARALLELISM, DEFAULT_EXPORT_PARALLELISM);
+            MySQLBinlogFetcher.FetchResult result = binlogFetcher.fetch(databaseDetails, start, target, parallelism, request.compress(), BackupOptions.getTimeout(request));
+            return new DumpResult(result.bytesWritten(), result.endPosition(), List.of());
         } catch (Exception e) {
             throw new CustomBacktException("Failed to perform backup operation: ", e);
         }
     }
 
-    public Path performDifferentialBackup(String backupDirectory) {
-        // For PostgreSQL, differential backup is similar to incremental
-        // as it relies on WAL archiving
-        return performIncrementalBackup(backupDirectory, null, null);
+    /**
+     * Dumps the tables changed since the last full backup, as found by {@link MySQLChangeDetector}. Restored on top of
+     * that full backup, the dump recreates the changed tables and drops the ones dropped since.
+     * <p>
+     * mysqldump takes its snapshot after the tables were compared, so a table left out may have been written to in
+     * between, and the snapshot of the other tables may depend on that write. The tables left out are compared again
+     * once the dump is done, and if any changed the dump is taken again with them. No binary log position is recorded:
+     * the snapshot does not cover the tables left out, so incrementals keep following on from the full backup.
+     */
+    private DumpResult performDifferentialBackup(BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress, BackupSink sink, String id, Path target) {
+        String databaseName = request.databaseName();
+        BackupMetadata full = metadataRepository
+                .findFirstByDatabaseNameAndBackupTypeAndDatabaseTypeOrderByCreationTimeDesc(databaseName, BackupType.FULL, DatabaseType.MYSQL)
+                .orElseThrow(() -> new BackupException(String.format("No full backup of %s, take a full backup first", databaseName)));
+        List<TableFingerprint> baseline = fingerprintRepository.findByBackupId(full.getBackupId());
+        if (baseline.isEmpty()) {
+            throw new BackupException(String.format("Full backup %s of %s has no table fingerprints, take a full backup first", full.getBackupId(), databaseName));
+        }
+        MySQLChangeDetector.Changes changes = changeDetector.detect(databaseDetails, databaseName, id, baseline,
+                BackupOptions.getBoolean(request, BackupOptions.TABLE_CHECKSUMS, true));
+        byte[] header = differentialHeader(databaseName, full.getBackupId(), changes.dropped());
+        Set<String> tables = new TreeSet<>(changes.changed());
+        for (int attempt = 1; ; attempt++) {
+            if (progress.isEnabled()) {
+                progress.estimate(changes.fingerprints().stream()
+                        .filter(fingerprint -> tables.contains(fingerprint.getTableName()))
+                        .mapToLong(TableFingerprint::getDataLength)
+                        .sum());
+            }
+            long bytes = dumpTables(request, databaseDetails, progress, sink, header, tables, target);
+            List<String> skipped = changes.fingerprints().stream()
+                    .map(TableFingerprint::getTableName)
+                    .filter(table -> !tables.contains(table))
+                    .toList();
+            List<String> missed = changeDetector.changedSince(databaseDetails, databaseName, changes.fingerprints(), skipped);
+            if (missed.isEmpty()) {
+                logger.info("Dumped {} of {} tables of {} changed since full backup {}", tables.size(), changes.fingerprints().size(), databaseName, full.getBackupId());
+                return new DumpResult(bytes, null, changes.fingerprints());
+            }
+            if (attempt == MAX_DIFFERENTIAL_ATTEMPTS) {
+                throw new BackupException(String.format("Tables of %s kept changing while the differential was taken, last %s", databaseName, missed));
+            }
+            logger.warn("Tables {} of {} were written to while the differential was taken, dumping again with them", missed, databaseName);
+            tables.addAll(missed);
+        }
+    }
+
+    /**
+     * Dumps {@code tables} behind {@code header}. mysqldump given tables rather than {@code --databases} neither creates
+     * nor selects their database, so the header does, and drops the tables dropped since the full backup.
+     */
+    private long dumpTables(BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress, BackupSink sink, byte[] header, Collection<String> tables, Path target) {
+        try {
+            if (tables.isEmpty()) {
+                //mysqldump given no tables dumps them all
+                return sink.write(new ByteArrayInputStream(header), target);
+            }
+            List<String> command = new ArrayList<>(List.of(
+                    "mysqldump",
+                    "--host=" + databaseDetails.getHost(),
+                    "--port=" + databaseDetails.getPort(),
+                    "--user=" + databaseDetails.getUsername(),
+                    "--single-transaction",
+                    "--quick",
+                    request.databaseName()));
+            command.addAll(tables);
+            return streamCommand(command, databaseDetails, request, progress,
+                    (source, file) -> sink.write(new SequenceInputStream(new ByteArrayInputStream(header), source), file), target);
+        } catch (Exception e) {
+            throw new BackupException("Failed to perform backup operation: ", e);
+        }
+    }
+
+    private static byte[] differentialHeader(String databaseName, String fullBackupId, List<String> dropped) {
+        StringBuilder header = new StringBuilder()
+                .append("-- Differential of ").append(databaseName).append(" against full backup ").append(fullBackupId).append('\n')
+                .append("SET FOREIGN_KEY_CHECKS=0;\n")
+                .append("CREATE DATABASE IF NOT EXISTS ").append(quoteIdentifier(databaseName)).append(";\n")
+                .append("USE ").append(quoteIdentifier(databaseName)).append(";\n");
+        for (String table : dropped) {
+            header.append("DROP TABLE IF EXISTS ").append(quoteIdentifier(table)).append(";\n");
+        }
+        return header.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
     }
 
 }
@@ -0,0 +1,226 @@
+package com.kolade.backt.mysql;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.pipeline.BackupFileWriter;
+import com.kolade.backt.process.ProcessRunner;
+import com.kolade.backt.process.ProcessSpec;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches the binary log events written since a given position, for incremental backups.
+ * <p>
+ * The server's binary log is rotated first, so every file up to the new one is complete and the next incremental
+ * starts exactly at the beginning of the new file. Files are pulled with {@code mysqlbinlog --read-from-remote-server
+ * --raw}, which copies the events byte for byte, several files at once when more than one is outstanding.
+ */
+@Component
+@RequiredArgsConstructor
+public class MySQLBinlogFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MySQLBinlogFetcher.class);
+    public static final String INDEX_FILE = "binlogs";
+    //the first event of every binary log file starts after the 4 byte magic number
+    private static final long FILE_START = 4;
+
+    private final ProcessRunner processRunner;
+    private final BackupFileWriter backupFileWriter;
+    private final ConnectionManager connectionManager;
+
+    public record FetchResult(Path directory, List<String> files, long bytesWritten, BinlogPosition endPosition) {
+    }
+
+    /**
+     * One line of the index: the file name on disk, the server position its events start at, and whether the file
+     * was fetched from that position on. The events of a trimmed file already start there, so its byte offsets no
+     * longer match server positions and the position must not be applied again when it is decoded.
+     */
+    record IndexEntry(String file, long startPosition, boolean trimmed) {
+
+        private static final String TRIMMED = "trimmed";
+        private static final String WHOLE = "whole";
+
+        String format() {
+            return file + '\t' + startPosition + '\t' + (trimmed ? TRIMMED : WHOLE);
+        }
+
+        /**
+         * Indexes written before the third column were always fetched from their start position.
+         */
+        static IndexEntry parse(String line) {
+            String[] fields = line.split("\t");
+            if (fields.length < 2) {
+                throw new BackupException("Corrupt binary log index line: " + line);
+            }
+            boolean trimmed = fields.length < 3 || !fields[2].equals(WHOLE);
+            return new IndexEntry(fields[0], Long.parseLong(fields[1]), trimmed);
+        }
+    }
+
+    /**
+     * Fetches everything after {@code start} into {@code outputDirectory}.
+     *
+     * @param workers  number of files fetched at the same time
+     * @param compress gzip every fetched file
+     * @return the fetched files and the position the next incremental starts from
+     */
+    public FetchResult fetch(DatabaseDetails databaseDetails, BinlogPosition start, Path outputDirectory, int workers, boolean compress, Duration timeout) throws IOException {
+        Files.createDirectories(outputDirectory);
+        List<String> files;
+        String currentFile;
+        try (Connection connection = connectionManager.getConnection(databaseDetails);
+             Statement statement = connection.createStatement()) {
+            statement.execute("FLUSH BINARY LOGS");
+            currentFile = currentBinlogFile(statement);
+            files = outstandingFiles(statement, start.file(), currentFile);
+        } catch (SQLException e) {
+            throw new BackupException("Unable to read binary log status: " + e.getMessage(), e);
+        }
+        logger.info("Fetching {} binary log files from {}:{} with {} workers", files.size(), start.file(), start.position(), workers);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(workers, files.size())));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (String file : files) {
+                long startPosition = file.equals(start.file()) ? start.position() : FILE_START;
+                futures.add(executor.submit(() -> fetchFile(databaseDetails, file, startPosition, outputDirectory, compress, timeout)));
+            }
+            long bytes = 0;
+            for (Future<Long> future : futures) {
+                bytes += future.get();
+            }
+            writeIndex(outputDirectory, files, start, compress);
+            return new FetchResult(outputDirectory, files, bytes, new BinlogPosition(currentFile, FILE_START, null));
+        } catch (ExecutionException e) {
+            throw new BackupException("Binary log fetch failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackupException("Binary log fetch was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String currentBinlogFile(Statement statement) throws SQLException {
+        BinlogPosition position = readStatus(statement);
+        if (position == null) {
+            throw new BackupException("Binary logging is not enabled on the server");
+        }
+        return position.file();
+    }
+
+    /**
+     * Reads where the server is writing its binary log now. MySQL 8.2 renamed SHOW MASTER STATUS to SHOW BINARY LOG
+     * STATUS and 8.4 removed the old name, while older servers and MariaDB only know the old one.
+     *
+     * @return the position, or null if binary logging is off
+     */
+    static BinlogPosition readStatus(Statement statement) throws SQLException {
+        try (ResultSet status = binaryLogStatus(statement)) {
+            if (!status.next()) {
+                return null;
+            }
+            //MariaDB has no GTID column here
+            String gtidSet = status.getMetaData().getColumnCount() >= 5 ? status.getString("Executed_Gtid_Set") : null;
+            return new BinlogPosition(status.getString("File"), status.getLong("Position"), gtidSet);
+        }
+    }
+
+    private static ResultSet binaryLogStatus(Statement statement) throws SQLException {
+        try {
+            return statement.executeQuery("SHOW BINARY LOG STATUS");
+        } catch (SQLException e) {
+            return statement.executeQuery("SHOW MASTER STATUS");
+        }
+    }
+
+    /**
+     * Every file from {@code startFile} up to, but not including, the file the server is writing to now.
+     */
+    private List<String> outstandingFiles(Statement statement, String startFile, String currentFile) throws SQLException {
+        List<String> files = new ArrayList<>();
+        boolean found = false;
+        try (ResultSet logs = statement.executeQuery("SHOW BINARY LOGS")) {
+            while (logs.next()) {
+                String name = logs.getString("Log_name");
+                found |= name.equals(startFile);
+                if (name.equals(currentFile)) {
+                    break;
+                }
+                if (found) {
+                    files.add(name);
+                }
+            }
+        }
+        if (!found) {
+            throw new BackupException(String.format("Binary log %s has been purged from the server, a new full backup is required", startFile));
+        }
+        return files;
+    }
+
+    private long fetchFile(DatabaseDetails databaseDetails, String file, long startPosition, Path directory, boolean compress, Duration timeout) throws IOException {
+        ProcessSpec.ProcessSpecBuilder spec = ProcessSpec.builder()
+                .name("mysqlbinlog " + file)
+                .arg("mysqlbinlog")
+                .arg("--read-from-remote-server")
+                .arg("--raw")
+                .arg("--host=" + databaseDetails.getHost())
+                .arg("--port=" + databaseDetails.getPort())
+                .arg("--user=" + databaseDetails.getUsername())
+                //with --raw the result file is a prefix, the file keeps its server name inside the directory
+                .arg("--result-file=" + directory + "/")
+                .env("MYSQL_PWD", Objects.toString(databaseDetails.getPassword(), ""))
+                .timeout(timeout);
+        if (startPosition > FILE_START) {
+            //the fetched file is cut here, its index entry is marked as trimmed
+            spec.arg("--start-position=" + startPosition);
+        }
+        processRunner.run(spec.arg(file).build());
+
+        Path fetched = directory.resolve(file);
+        if (!compress) {
+            return Files.size(fetched);
+        }
+        Path compressed = directory.resolve(file + ".gz");
+        try (InputStream in = Files.newInputStream(fetched)) {
+            return backupFileWriter.write(in, compressed, true, 0, 1);
+        } finally {
+            Files.deleteIfExists(fetched);
+        }
+    }
+
+    /**
+     * One {@link IndexEntry} per fetched file, in replay order. Only the first file can be trimmed, {@link #fetchFile}
+     * cuts it at the position of the previous backup; the files themselves are replayed whole.
+     */
+    private void writeIndex(Path directory, List<String> files, BinlogPosition start, boolean compress) throws IOException {
+        StringBuilder index = new StringBuilder();
+        for (String file : files) {
+            long startPosition = file.equals(start.file()) ? start.position() : FILE_START;
+            IndexEntry entry = new IndexEntry(compress ? file + ".gz" : file, startPosition, startPosition > FILE_START);
+            index.append(entry.format()).append('\n');
+        }
+        Files.writeString(directory.resolve(INDEX_FILE), index);
+    }
+}
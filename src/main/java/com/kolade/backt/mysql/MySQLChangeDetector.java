@@ -0,0 +1,223 @@
+package com.kolade.backt.mysql;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.TableFingerprint;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.exception.BackupException;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the tables of a MySQL database that changed since its last full backup, from the table statistics the server
+ * keeps in {@code information_schema.TABLES}, without reading the tables.
+ * <p>
+ * A table counts as unchanged when it was not recreated, its data length and row count are the same, and its update
+ * time is the one recorded with the full backup. The update time is not always known: InnoDB keeps it in memory only,
+ * so it is gone after a restart or once the table left the table cache, and some engines never set it. Such tables
+ * are compared by {@code CHECKSUM TABLE} instead, a scan on the server that sends nothing back but one number, against
+ * the checksum taken with the full backup; without one they count as changed. An update time in the current second
+ * is not trusted either, as more writes may follow within that second.
+ */
+@Component
+@RequiredArgsConstructor
+public class MySQLChangeDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(MySQLChangeDetector.class);
+
+    private final ConnectionManager connectionManager;
+
+    /**
+     * @param changed      tables created or changed since the full backup, by name
+     * @param dropped      tables of the full backup that no longer exist
+     * @param fingerprints every table as it is now
+     */
+    public record Changes(List<String> changed, List<String> dropped, List<TableFingerprint> fingerprints) {
+    }
+
+    /**
+     * Statistics of one table. {@code recent} is set when it was written to in the second it was read.
+     */
+    private record TableStats(LocalDateTime createTime, LocalDateTime updateTime, long dataLength, long tableRows, boolean recent) {
+    }
+
+    /**
+     * Fingerprints every table, for a full backup to record.
+     *
+     * @param checksums also checksum the tables without an update time, so differentials can tell whether they changed
+     */
+    public List<TableFingerprint> capture(DatabaseDetails databaseDetails, String databaseName, String backupId, boolean checksums) {
+        try (Connection connection = connectionManager.getConnection(databaseDetails)) {
+            Map<String, TableStats> tables = readStats(connection, databaseName);
+            Map<String, Long> tableChecksums = checksums
+                    ? checksum(connection, databaseName, tables.entrySet().stream().filter(table -> untimed(table.getValue())).map(Map.Entry::getKey).toList())
+                    : Map.of();
+            List<TableFingerprint> fingerprints = new ArrayList<>(tables.size());
+            tables.forEach((table, stats) -> fingerprints.add(fingerprint(backupId, table, stats, tableChecksums.get(table))));
+            return fingerprints;
+        } catch (SQLException e) {
+            throw new BackupException("Unable to read the table statistics of " + databaseName + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compares every table against the fingerprints of the full backup.
+     *
+     * @param checksums checksum tables without an update time whose full backup recorded a checksum, instead of
+     *                  counting them as changed
+     */
+    public Changes detect(DatabaseDetails databaseDetails, String databaseName, String backupId, List<TableFingerprint> full, boolean checksums) {
+        Map<String, TableFingerprint> baseline = full.stream().collect(Collectors.toMap(TableFingerprint::getTableName, fingerprint -> fingerprint));
+        try (Connection connection = connectionManager.getConnection(databaseDetails)) {
+            Map<String, TableStats> tables = readStats(connection, databaseName);
+            List<String> changed = new ArrayList<>();
+            List<String> toChecksum = new ArrayList<>();
+            tables.forEach((table, stats) -> {
+                TableFingerprint base = baseline.get(table);
+                if (base == null || stats.recent() || !sameShape(base, stats)) {
+                    changed.add(table);
+                } else if (stats.updateTime() != null) {
+                    if (!stats.updateTime().equals(base.getUpdateTime())) {
+                        changed.add(table);
+                    }
+                } else if (checksums && base.getChecksum() != null) {
+                    toChecksum.add(table);
+                } else {
+                    changed.add(table);
+                }
+            });
+            Map<String, Long> tableChecksums = checksum(connection, databaseName, toChecksum);
+            for (String table : toChecksum) {
+                if (!Objects.equals(tableChecksums.get(table), baseline.get(table).getChecksum())) {
+                    changed.add(table);
+                }
+            }
+            changed.sort(null);
+            List<String> dropped = baseline.keySet().stream().filter(table -> !tables.containsKey(table)).sorted().toList();
+            List<TableFingerprint> fingerprints = new ArrayList<>(tables.size());
+            tables.forEach((table, stats) -> fingerprints.add(fingerprint(backupId, table, stats, tableChecksums.get(table))));
+            logger.info("{} of {} tables of {} changed since the full backup, {} dropped, {} checksummed",
+                    changed.size(), tables.size(), databaseName, dropped.size(), toChecksum.size());
+            return new Changes(changed, dropped, fingerprints);
+        } catch (SQLException e) {
+            throw new BackupException("Unable to read the table statistics of " + databaseName + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the statistics of {@code tables} again after they were left out of a dump, to find the ones written to
+     * since {@code detected} was taken: the dump may or may not have seen those writes.
+     */
+    public List<String> changedSince(DatabaseDetails databaseDetails, String databaseName, List<TableFingerprint> detected, Collection<String> tables) {
+        Map<String, TableFingerprint> fingerprints = detected.stream().collect(Collectors.toMap(TableFingerprint::getTableName, fingerprint -> fingerprint));
+        try (Connection connection = connectionManager.getConnection(databaseDetails)) {
+            Map<String, TableStats> current = readStats(connection, databaseName);
+            List<String> changed = new ArrayList<>();
+            for (String table : tables) {
+                TableStats stats = current.get(table);
+                TableFingerprint before = fingerprints.get(table);
+                //a table dropped meanwhile is left as the full backup has it
+                if (stats != null && (stats.recent() || !sameShape(before, stats) || !Objects.equals(stats.updateTime(), before.getUpdateTime()))) {
+                    changed.add(table);
+                }
+            }
+            return changed;
+        } catch (SQLException e) {
+            throw new BackupException("Unable to read the table statistics of " + databaseName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean sameShape(TableFingerprint fingerprint, TableStats stats) {
+        return Objects.equals(fingerprint.getCreateTime(), stats.createTime())
+                && fingerprint.getDataLength() == stats.dataLength()
+                && fingerprint.getTableRows() == stats.tableRows();
+    }
+
+    private static boolean untimed(TableStats stats) {
+        return stats.updateTime() == null && !stats.recent();
+    }
+
+    private static TableFingerprint fingerprint(String backupId, String table, TableStats stats, Long checksum) {
+        return TableFingerprint.builder()
+                .backupId(backupId)
+                .tableName(table)
+                .createTime(stats.createTime())
+                //an update time in the second it was read may be followed by more writes in that second
+                .updateTime(stats.recent() ? null : stats.updateTime())
+                .dataLength(stats.dataLength())
+                .tableRows(stats.tableRows())
+                .checksum(checksum)
+                .build();
+    }
+
+    private static Map<String, TableStats> readStats(Connection connection, String databaseName) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            //MySQL 8 serves these statistics from a cache that is refreshed once a day by default
+            statement.execute("SET SESSION information_schema_stats_expiry = 0");
+        } catch (SQLException e) {
+            //MySQL 5.7 has no such cache
+            logger.debug("Unable to disable the statistics cache: {}", e.getMessage());
+        }
+        Map<String, TableStats> tables = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT TABLE_NAME, CREATE_TIME, UPDATE_TIME, COALESCE(DATA_LENGTH, 0), COALESCE(TABLE_ROWS, 0), NOW() " +
+                        "FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE' ORDER BY TABLE_NAME")) {
+            statement.setString(1, databaseName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    LocalDateTime updateTime = resultSet.getObject(3, LocalDateTime.class);
+                    LocalDateTime now = resultSet.getObject(6, LocalDateTime.class);
+                    boolean recent = updateTime != null && !updateTime.isBefore(now.truncatedTo(ChronoUnit.SECONDS));
+                    tables.put(resultSet.getString(1), new TableStats(resultSet.getObject(2, LocalDateTime.class), updateTime,
+                            resultSet.getLong(4), resultSet.getLong(5), recent));
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * @return the checksum of every table that exists, by name
+     */
+    private static Map<String, Long> checksum(Connection connection, String databaseName, List<String> tables) throws SQLException {
+        if (tables.isEmpty()) {
+            return Map.of();
+        }
+        String prefix = databaseName + ".";
+        Map<String, Long> checksums = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("CHECKSUM TABLE " + tables.stream()
+                     .map(table -> quoteIdentifier(databaseName) + "." + quoteIdentifier(table))
+                     .collect(Collectors.joining(", ")))) {
+            while (resultSet.next()) {
+                String table = resultSet.getString(1);
+                long checksum = resultSet.getLong(2);
+                if (!resultSet.wasNull()) {
+                    checksums.put(table.startsWith(prefix) ? table.substring(prefix.length()) : table, checksum);
+                }
+            }
+        }
+        return checksums;
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
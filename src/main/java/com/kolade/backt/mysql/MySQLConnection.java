@@ -4,33 +4,47 @@ package com.kolade.backt.mysql;
 import com.kolade.backt.common.DatabaseConnection;
 import com.kolade.backt.common.DatabaseDetails;
 import com.kolade.backt.common.DatabaseType;
-import org.springframework.stereotype.Component;
+import com.kolade.backt.connection.ConnectionManager;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
-@Component("mysql")
+/**
+ * A MySQL database connected from the shell. Connections are borrowed from the pool of the server, so backups of the
+ * same server reuse them.
+ */
 public class MySQLConnection implements DatabaseConnection {
 
-    private Connection connection;
+    private final ConnectionManager connectionManager;
     private DatabaseDetails databaseDetails;
 
+    public MySQLConnection(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
     @Override
     public void connect(DatabaseDetails databaseDetails) throws SQLException {
-            connection = DriverManager.getConnection(databaseDetails.getConnectionUrl(), databaseDetails.getUsername(), databaseDetails.getPassword());
+        //borrowing a connection proves the details work, and leaves it open in the pool
+        try (Connection connection = connectionManager.getConnection(databaseDetails)) {
             this.databaseDetails = databaseDetails;
+        }
     }
 
     @Override
     public boolean testConnection() throws SQLException {
-            return connection != null && !connection.isClosed() && connection.isValid(5);
+        if (databaseDetails == null) {
+            return false;
+        }
+        try (Connection connection = connectionManager.getConnection(databaseDetails)) {
+            return connection.isValid(5);
+        }
     }
 
     @Override
-    public void disconnect() throws SQLException {
-        if (connection != null) {
-            connection.close();
+    public void disconnect() {
+        if (databaseDetails != null) {
+            connectionManager.release(databaseDetails);
+            databaseDetails = null;
         }
 
     }
@@ -0,0 +1,394 @@
+package com.kolade.backt.mysql;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.pipeline.BackupFileWriter;
+import com.kolade.backt.pipeline.BackupOutputStream;
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports a MySQL database over JDBC with several connections working in parallel, in the style of mydumper.
+ * <p>
+ * All worker connections see the same data: a global read lock is held only while every worker starts a
+ * consistent-snapshot transaction, then released. Workers pull tables from a shared queue, largest first, and
+ * stream rows with an unbuffered result set into one INSERT file per table. Generated columns are left out, MySQL
+ * computes them again on restore and rejects values for them. Connections are borrowed from the pool
+ * of the server, which bounds the number of workers.
+ * <p>
+ * Like mysqldump, workers read in UTC, so TIMESTAMP values do not depend on the time zone of the pooled session and
+ * stay unambiguous across daylight saving changes. Every table file starts by setting UTC and utf8mb4, the encoding
+ * it is written in, so the restoring session reads the values back the same way.
+ */
+@Component
+@RequiredArgsConstructor
+public class MySQLParallelExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MySQLParallelExporter.class);
+    //a multi-row INSERT is closed once it reaches this size, well below the default max_allowed_packet
+    private static final int MAX_STATEMENT_LENGTH = 1024 * 1024;
+    private static final String UTC = "SET time_zone = '+00:00'";
+    private static final String TABLE_FILE_HEADER = "SET NAMES utf8mb4;\n" + UTC + ";\n";
+
+    private final BackupFileWriter backupFileWriter;
+    private final ConnectionManager connectionManager;
+
+    /**
+     * @param binlogFile     binary log file at the snapshot, null if binary logging is off
+     * @param binlogPosition position in that file at the snapshot
+     * @param gtidExecuted   executed GTID set at the snapshot, empty if GTIDs are off
+     */
+    @Builder
+    public record ExportResult(
+            Path directory,
+            int tableCount,
+            long bytesWritten,
+            String binlogFile,
+            long binlogPosition,
+            String gtidExecuted
+    ) {
+    }
+
+    private record TableInfo(String name, long dataLength) {
+    }
+
+    /**
+     * Exports every base table of {@code databaseName} into {@code outputDirectory}.
+     *
+     * @param workers  number of parallel connections
+     * @param compress gzip every output file with the parallel compressor
+     */
+    public ExportResult export(DatabaseDetails databaseDetails, String databaseName, Path outputDirectory, int workers, boolean compress) throws IOException {
+        Files.createDirectories(outputDirectory);
+        int poolWorkers = connectionManager.workerLimit(workers);
+        if (poolWorkers < workers) {
+            logger.warn("Exporting {} with {} instead of {} workers, the connection pool holds {} connections", databaseName, poolWorkers, workers, connectionManager.maxPoolSize());
+            workers = poolWorkers;
+        }
+        List<Connection> connections = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            Connection coordinator = connectionManager.getConnection(databaseDetails);
+            connections.add(coordinator);
+            List<Connection> workerConnections = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                Connection connection = connectionManager.getConnection(databaseDetails);
+                connections.add(connection);
+                workerConnections.add(connection);
+            }
+
+            ExportResult.ExportResultBuilder result = ExportResult.builder().directory(outputDirectory);
+            startConsistentSnapshot(coordinator, workerConnections, result);
+
+            List<TableInfo> tables = listTables(coordinator, databaseName);
+            writeSchemaFiles(coordinator, databaseName, tables, outputDirectory, compress);
+            logger.info("Exporting {} tables of {} with {} workers", tables.size(), databaseName, workers);
+
+            Queue<TableInfo> queue = new ConcurrentLinkedQueue<>(tables);
+            AtomicLong bytesWritten = new AtomicLong();
+            List<Future<?>> futures = new ArrayList<>();
+            for (Connection connection : workerConnections) {
+                futures.add(executor.submit(() -> {
+                    TableInfo table;
+                    while ((table = queue.poll()) != null) {
+                        bytesWritten.addAndGet(exportTable(connection, databaseName, table, outputDirectory, compress));
+                    }
+                    connection.commit();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            ExportResult exportResult = result.tableCount(tables.size()).bytesWritten(bytesWritten.get()).build();
+            writeMetadataFile(exportResult);
+            return exportResult;
+
+        } catch (SQLException e) {
+            throw new BackupException("Parallel export of " + databaseName + " failed: " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new BackupException("Parallel export of " + databaseName + " failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackupException("Parallel export of " + databaseName + " was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+            for (Connection connection : connections) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Estimates the size of a dump of the database from the data length of its tables, for the progress of the backup.
+     * InnoDB only samples it, so this is rough either way.
+     *
+     * @return the estimated size in bytes, or -1 if it cannot be read
+     */
+    public long estimateSize(DatabaseDetails databaseDetails, String databaseName) {
+        try (Connection connection = connectionManager.getConnection(databaseDetails)) {
+            return listTables(connection, databaseName).stream().mapToLong(TableInfo::dataLength).sum();
+        } catch (SQLException e) {
+            logger.warn("Unable to read table sizes of {}, its backup will report no ETA: {}", databaseName, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Takes the global read lock, starts a snapshot transaction on every worker and releases the lock again,
+     * so all workers read the same point in time. The lock is held for milliseconds, not for the export.
+     */
+    private void startConsistentSnapshot(Connection coordinator, List<Connection> workers, ExportResult.ExportResultBuilder result) throws SQLException {
+        try (Statement lock = coordinator.createStatement()) {
+            lock.execute("FLUSH TABLES WITH READ LOCK");
+            try {
+                for (Connection worker : workers) {
+                    //set through JDBC rather than SQL, so the pool resets both when the connection is returned
+                    worker.setAutoCommit(false);
+                    worker.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                    try (Statement statement = worker.createStatement()) {
+                        //Connector/J negotiates the character set itself and must not be sent SET NAMES
+                        statement.execute(UTC);
+                        statement.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+                    }
+                }
+                readBinlogPosition(coordinator, result);
+            } finally {
+                lock.execute("UNLOCK TABLES");
+            }
+        }
+    }
+
+    private void readBinlogPosition(Connection coordinator, ExportResult.ExportResultBuilder result) {
+        try (Statement statement = coordinator.createStatement()) {
+            BinlogPosition position = MySQLBinlogFetcher.readStatus(statement);
+            if (position != null) {
+                result.binlogFile(position.file())
+                        .binlogPosition(position.position())
+                        .gtidExecuted(position.gtidSet());
+            }
+        } catch (SQLException e) {
+            logger.warn("Unable to read binary log position: {}", e.getMessage());
+        }
+    }
+
+    private List<TableInfo> listTables(Connection connection, String databaseName) throws SQLException {
+        List<TableInfo> tables = new ArrayList<>();
+        //largest tables first, so the long exports start early and small ones fill the gaps at the end
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT TABLE_NAME, COALESCE(DATA_LENGTH, 0) FROM information_schema.TABLES " +
+                        "WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE' ORDER BY DATA_LENGTH DESC")) {
+            statement.setString(1, databaseName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    tables.add(new TableInfo(resultSet.getString(1), resultSet.getLong(2)));
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * The columns of a table that hold data, in table order. EXTRA also reads DEFAULT_GENERATED for ordinary columns
+     * with an expression default, so only virtual and stored generated columns are left out.
+     */
+    private List<String> listColumns(Connection connection, String databaseName, String tableName) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT COLUMN_NAME FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? " +
+                        "AND EXTRA NOT LIKE '%VIRTUAL GENERATED%' AND EXTRA NOT LIKE '%STORED GENERATED%' ORDER BY ORDINAL_POSITION")) {
+            statement.setString(1, databaseName);
+            statement.setString(2, tableName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    columns.add(resultSet.getString(1));
+                }
+            }
+        }
+        return columns;
+    }
+
+    private void writeSchemaFiles(Connection connection, String databaseName, List<TableInfo> tables, Path directory, boolean compress) throws SQLException, IOException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SHOW CREATE DATABASE " + quoteIdentifier(databaseName));
+                 Writer writer = openWriter(directory.resolve(databaseName + "-schema-create.sql"), compress, new long[1])) {
+                if (resultSet.next()) {
+                    writer.write(resultSet.getString(2) + ";\n");
+                }
+            }
+            for (TableInfo table : tables) {
+                try (ResultSet resultSet = statement.executeQuery("SHOW CREATE TABLE " + qualifiedName(databaseName, table.name()));
+                     Writer writer = openWriter(directory.resolve(databaseName + "." + table.name() + "-schema.sql"), compress, new long[1])) {
+                    if (resultSet.next()) {
+                        writer.write(resultSet.getString(2) + ";\n");
+                    }
+                }
+            }
+        }
+    }
+
+    private long exportTable(Connection connection, String databaseName, TableInfo table, Path directory, boolean compress) throws SQLException, IOException {
+        long startTime = System.nanoTime();
+        long[] bytesWritten = new long[1];
+        long rows = 0;
+        String qualifiedName = qualifiedName(databaseName, table.name());
+        //named explicitly, so the rows load whatever the column order of the table they are restored into
+        String columns = String.join(", ", listColumns(connection, databaseName, table.name()).stream().map(MySQLParallelExporter::quoteIdentifier).toList());
+
+        try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            //Connector/J streams rows one by one instead of buffering the whole table in memory
+            statement.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet resultSet = statement.executeQuery("SELECT " + columns + " FROM " + qualifiedName);
+                 Writer writer = openWriter(directory.resolve(databaseName + "." + table.name() + ".sql"), compress, bytesWritten)) {
+
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                String insertPrefix = "INSERT INTO " + quoteIdentifier(table.name()) + " (" + columns + ") VALUES\n";
+                StringBuilder statementBuffer = new StringBuilder();
+                writer.write(TABLE_FILE_HEADER);
+
+                while (resultSet.next()) {
+                    statementBuffer.append(statementBuffer.isEmpty() ? insertPrefix : ",\n");
+                    appendRow(statementBuffer, resultSet, metaData, columnCount);
+                    rows++;
+                    if (statementBuffer.length() >= MAX_STATEMENT_LENGTH) {
+                        writer.write(statementBuffer.append(";\n").toString());
+                        statementBuffer.setLength(0);
+                    }
+                }
+                if (!statementBuffer.isEmpty()) {
+                    writer.write(statementBuffer.append(";\n").toString());
+                }
+            }
+        }
+
+        logger.info("Exported {} ({} rows, {} bytes) in {} ms", qualifiedName, rows, bytesWritten[0], (System.nanoTime() - startTime) / 1_000_000);
+        return bytesWritten[0];
+    }
+
+    private void appendRow(StringBuilder buffer, ResultSet resultSet, ResultSetMetaData metaData, int columnCount) throws SQLException {
+        buffer.append('(');
+        for (int column = 1; column <= columnCount; column++) {
+            if (column > 1) {
+                buffer.append(',');
+            }
+            int columnType = metaData.getColumnType(column);
+            //Connector/J reports TINYINT(1) as BIT as well, only a real BIT column holds raw bits
+            if ((columnType == Types.BIT || columnType == Types.BOOLEAN) && !"BIT".equalsIgnoreCase(metaData.getColumnTypeName(column))) {
+                columnType = Types.TINYINT;
+            }
+            switch (columnType) {
+                case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB, Types.BIT -> {
+                    byte[] bytes = resultSet.getBytes(column);
+                    if (bytes == null) {
+                        buffer.append("NULL");
+                    } else if (bytes.length == 0) {
+                        buffer.append("''");
+                    } else {
+                        buffer.append("0x").append(HexFormat.of().formatHex(bytes));
+                    }
+                }
+                case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT, Types.DECIMAL, Types.NUMERIC,
+                     Types.FLOAT, Types.REAL, Types.DOUBLE -> {
+                    String value = resultSet.getString(column);
+                    buffer.append(value == null ? "NULL" : value);
+                }
+                default -> {
+                    String value = resultSet.getString(column);
+                    if (value == null) {
+                        buffer.append("NULL");
+                    } else {
+                        appendQuoted(buffer, value);
+                    }
+                }
+            }
+        }
+        buffer.append(')');
+    }
+
+    private static void appendQuoted(StringBuilder buffer, String value) {
+        buffer.append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\'' -> buffer.append("\\'");
+                case '\\' -> buffer.append("\\\\");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                case '\0' -> buffer.append("\\0");
+                case '\u001a' -> buffer.append("\\Z");
+                default -> buffer.append(c);
+            }
+        }
+        buffer.append('\'');
+    }
+
+    private Writer openWriter(Path file, boolean compress, long[] bytesWritten) throws IOException {
+        Path target = compress ? file.resolveSibling(file.getFileName() + ".gz") : file;
+        BackupOutputStream out = backupFileWriter.open(target, compress, 0, 0);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 256 * 1024) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                bytesWritten[0] = out.getBytesWritten();
+            }
+        };
+    }
+
+    private void writeMetadataFile(ExportResult result) throws IOException {
+        String metadata = String.format("Finished dump at: %s%nTables: %d%nBytes: %d%nLog: %s%nPos: %d%nGTID: %s%n",
+                LocalDateTime.now(), result.tableCount(), result.bytesWritten(),
+                result.binlogFile(), result.binlogPosition(), result.gtidExecuted() == null ? "" : result.gtidExecuted());
+        Files.writeString(result.directory().resolve("metadata"), metadata);
+    }
+
+    private static String qualifiedName(String databaseName, String tableName) {
+        return quoteIdentifier(databaseName) + "." + quoteIdentifier(tableName);
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+
+    /**
+     * Hands the connection back to the pool with the time zone its other users expect.
+     */
+    private static void closeQuietly(Connection connection) {
+        try (connection; Statement statement = connection.createStatement()) {
+            statement.execute("SET time_zone = DEFAULT");
+        } catch (SQLException e) {
+            logger.warn("Unable to close export connection: {}", e.getMessage());
+        }
+    }
+}
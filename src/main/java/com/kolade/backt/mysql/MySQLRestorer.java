@@ -0,0 +1,244 @@
+package com.kolade.backt.mysql;
+
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.process.ProcessRunner;
+import com.kolade.backt.process.ProcessSpec;
+import com.kolade.backt.restore.DatabaseRestorer;
+import com.kolade.backt.restore.RestoreRequest;
+import com.kolade.backt.restore.RestoreStreams;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Restores MySQL backups by piping them into the {@code mysql} client.
+ * <p>
+ * mysqldump files and deduplicated recipes are streamed into one client. Exports of the JDBC exporter are loaded with
+ * one client per table file, several at a time, after the tables have been created. Binary log backups are decoded
+ * by {@code mysqlbinlog} reading from a pipe, and its output is piped on into the client.
+ */
+@Component
+@RequiredArgsConstructor
+public class MySQLRestorer implements DatabaseRestorer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MySQLRestorer.class);
+    //checks are pointless while loading rows that were consistent when they were exported
+    private static final String BULK_LOAD_INIT = "--init-command=SET SESSION foreign_key_checks=0, unique_checks=0";
+    //the exporter writes its files in UTF-8, table files also set it themselves
+    private static final String EXPORT_CHARSET = "--default-character-set=utf8mb4";
+
+    private final ProcessRunner processRunner;
+    private final RestoreStreams restoreStreams;
+
+    @Override
+    public DatabaseType getType() {
+        return DatabaseType.MYSQL;
+    }
+
+    @Override
+    public long restore(BackupMetadata backup, RestoreRequest request, DatabaseDetails target) throws IOException {
+        Path backupPath = Paths.get(backup.getBackupPath());
+        return switch (backup.getBackupFormat()) {
+            case SQL, RECIPE -> restoreDump(backup, backupPath, request, target);
+            case DIRECTORY -> restoreExport(backup, backupPath, request, target);
+            case BINLOG -> replayBinlogs(backup, backupPath, request, target);
+            default -> throw new BackupException(String.format("Cannot restore a %s backup into MySQL", backup.getBackupFormat()));
+        };
+    }
+
+    /**
+     * mysqldump was run with {@code --databases}, so the dump creates and selects its database itself. A differential
+     * does the same in its header, and is restored on top of its full backup.
+     */
+    private long restoreDump(BackupMetadata backup, Path dump, RestoreRequest request, DatabaseDetails target) {
+        if (!request.targetDatabase().equals(backup.getDatabaseName())) {
+            throw new BackupException(String.format("Backup %s selects database %s itself and cannot be restored under another name",
+                    backup.getBackupId(), backup.getDatabaseName()));
+        }
+        LongAdder bytesRestored = new LongAdder();
+        processRunner.run(mysql(request, target)
+                .stdinFeeder(restoreStreams.feeder(List.of(dump), bytesRestored))
+                .build());
+        return bytesRestored.sum();
+    }
+
+    /**
+     * Creates the database and its tables, then loads the table files in parallel, largest first.
+     */
+    private long restoreExport(BackupMetadata backup, Path directory, RestoreRequest request, DatabaseDetails target) throws IOException {
+        String sourceDatabase = backup.getDatabaseName();
+        String targetDatabase = request.targetDatabase();
+        List<Path> schemaFiles = new ArrayList<>();
+        List<Path> dataFiles = new ArrayList<>();
+        Path createDatabaseFile = null;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = stripGzip(file.getFileName().toString());
+                if (name.equals(sourceDatabase + "-schema-create.sql")) {
+                    createDatabaseFile = file;
+                } else if (name.startsWith(sourceDatabase + ".") && name.endsWith("-schema.sql")) {
+                    schemaFiles.add(file);
+                } else if (name.startsWith(sourceDatabase + ".") && name.endsWith(".sql")) {
+                    dataFiles.add(file);
+                }
+            }
+        }
+        dataFiles.sort(Comparator.comparingLong((Path file) -> file.toFile().length()).reversed());
+
+        String createDatabase = createDatabaseStatement(createDatabaseFile, sourceDatabase, targetDatabase);
+        processRunner.run(mysql(request, target)
+                .arg(EXPORT_CHARSET)
+                .stdinFeeder(stdin -> stdin.write(createDatabase.getBytes(StandardCharsets.UTF_8)))
+                .build());
+
+        processRunner.run(mysql(request, target)
+                .arg(EXPORT_CHARSET)
+                .arg(BULK_LOAD_INIT)
+                .arg(targetDatabase)
+                .stdinFeeder(stdin -> {
+                    for (Path schemaFile : schemaFiles) {
+                        String fileName = stripGzip(schemaFile.getFileName().toString());
+                        String table = fileName.substring(sourceDatabase.length() + 1, fileName.length() - "-schema.sql".length());
+                        stdin.write(("DROP TABLE IF EXISTS " + quoteIdentifier(table) + ";\n").getBytes(StandardCharsets.UTF_8));
+                        restoreStreams.copy(schemaFile, stdin);
+                    }
+                })
+                .build());
+
+        LongAdder bytesRestored = new LongAdder();
+        int jobs = request.jobs() > 0 ? request.jobs() : backup.getParallelism() != null ? backup.getParallelism() : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs, dataFiles.size())));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path dataFile : dataFiles) {
+                futures.add(executor.submit(() -> processRunner.run(mysql(request, target)
+                        .name("mysql " + dataFile.getFileName())
+                        .arg(EXPORT_CHARSET)
+                        .arg(BULK_LOAD_INIT)
+                        .arg(targetDatabase)
+                        .stdinFeeder(restoreStreams.feeder(List.of(dataFile), bytesRestored))
+                        .build())));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new BackupException("Restore of " + targetDatabase + " failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackupException("Restore of " + targetDatabase + " was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("Loaded {} tables into {} with {} jobs", dataFiles.size(), targetDatabase, jobs);
+        return bytesRestored.sum();
+    }
+
+    /**
+     * Replays the fetched binary log files in order. Each file is decoded by its own mysqlbinlog, which reads it from
+     * a pipe, and the decoded events are passed on into a single client so they apply in sequence. Only events of
+     * the backed up database are replayed.
+     */
+    private long replayBinlogs(BackupMetadata backup, Path directory, RestoreRequest request, DatabaseDetails target) throws IOException {
+        List<MySQLBinlogFetcher.IndexEntry> index = new ArrayList<>();
+        for (String line : Files.readAllLines(directory.resolve(MySQLBinlogFetcher.INDEX_FILE))) {
+            if (!line.isBlank()) {
+                index.add(MySQLBinlogFetcher.IndexEntry.parse(line));
+            }
+        }
+        String sourceDatabase = backup.getDatabaseName();
+        String targetDatabase = request.targetDatabase();
+        LongAdder bytesRestored = new LongAdder();
+
+        processRunner.run(mysql(request, target)
+                .stdinFeeder(stdin -> {
+                    for (MySQLBinlogFetcher.IndexEntry entry : index) {
+                        processRunner.run(ProcessSpec.builder()
+                                .name("mysqlbinlog " + entry.file())
+                                .command(decoderArgs(entry, sourceDatabase, targetDatabase))
+                                .timeout(request.timeout())
+                                .stdinFeeder(restoreStreams.feeder(List.of(directory.resolve(entry.file())), bytesRestored))
+                                .stdoutHandler(events -> events.transferTo(stdin))
+                                .build());
+                    }
+                })
+                .build());
+        logger.info("Replayed {} binary log files into {}", index.size(), targetDatabase);
+        return bytesRestored.sum();
+    }
+
+    /**
+     * The mysqlbinlog command decoding one fetched file from stdin. A trimmed file already starts at its position, so
+     * the position is only applied to a file fetched whole.
+     */
+    static List<String> decoderArgs(MySQLBinlogFetcher.IndexEntry entry, String sourceDatabase, String targetDatabase) {
+        List<String> args = new ArrayList<>();
+        args.add("mysqlbinlog");
+        if (!entry.trimmed() && entry.startPosition() > 4) {
+            args.add("--start-position=" + entry.startPosition());
+        }
+        if (!targetDatabase.equals(sourceDatabase)) {
+            args.add("--rewrite-db=" + sourceDatabase + "->" + targetDatabase);
+        }
+        //applied after the rewrite
+        args.add("--database=" + targetDatabase);
+        args.add("-");
+        return args;
+    }
+
+    private ProcessSpec.ProcessSpecBuilder mysql(RestoreRequest request, DatabaseDetails target) {
+        return ProcessSpec.builder()
+                .arg("mysql")
+                .arg("--host=" + target.getHost())
+                .arg("--port=" + target.getPort())
+                .arg("--user=" + target.getUsername())
+                .env("MYSQL_PWD", Objects.toString(target.getPassword(), ""))
+                .timeout(request.timeout());
+    }
+
+    /**
+     * Reuses the exported {@code CREATE DATABASE} statement for its character set and collation, under the target name.
+     */
+    private String createDatabaseStatement(Path createDatabaseFile, String sourceDatabase, String targetDatabase) throws IOException {
+        String statement = "CREATE DATABASE IF NOT EXISTS " + quoteIdentifier(targetDatabase);
+        if (createDatabaseFile == null) {
+            return statement + ";\n";
+        }
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        restoreStreams.copy(createDatabaseFile, exported);
+        String prefix = "CREATE DATABASE " + quoteIdentifier(sourceDatabase);
+        String exportedStatement = exported.toString(StandardCharsets.UTF_8).trim();
+        return exportedStatement.startsWith(prefix)
+                ? statement + exportedStatement.substring(prefix.length()) + "\n"
+                : statement + ";\n";
+    }
+
+    private static String stripGzip(String fileName) {
+        return fileName.endsWith(".gz") ? fileName.substring(0, fileName.length() - 3) : fileName;
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "`" + identifier.replace("`", "``") + "`";
+    }
+}
@@ -0,0 +1,114 @@
+package com.kolade.backt.pipeline;
+
+import com.kolade.backt.crypto.BackupEncryption;
+import com.kolade.backt.crypto.EncryptingOutputStream;
+import com.kolade.backt.metrics.BackupMetrics;
+import com.kolade.backt.metrics.BackupPhase;
+import com.kolade.backt.metrics.PhaseTimings;
+import com.kolade.backt.storage.BackupStorages;
+import com.kolade.backt.throttle.DumpThrottle;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Opens the files of a backup. Data written to them is compressed if requested, encrypted if encryption is
+ * enabled, and checksummed on its way to disk, in a single pass:
+ * <pre>
+ * writer -> parallel gzip -> AES-GCM -> CRC32C / SHA-256 -> storage
+ * </pre>
+ * The file is created in the storage of the backup it belongs to, and is synced, or its upload completed, when the
+ * stream is closed. If the file belongs to a running backup, the writer is paced by the backup's throttle, and every
+ * stage reports its time to the backup's {@link PhaseTimings}.
+ */
+@Component
+@RequiredArgsConstructor
+public class BackupFileWriter {
+
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final ParallelCompressor parallelCompressor;
+    private final BackupEncryption encryption;
+    private final ChecksumRegistry checksumRegistry;
+    private final BackupMetrics backupMetrics;
+    private final DumpThrottle dumpThrottle;
+    private final BackupStorages storages;
+
+    /**
+     * @param level   deflate level, or 0 to use the configured default
+     * @param workers the most blocks kept in flight by the compressor, or 0 to use the whole pool
+     */
+    public BackupOutputStream open(Path file, boolean compress, int level, int workers) throws IOException {
+        PhaseTimings timings = backupMetrics.timingsFor(file);
+        OutputStream fileStream = timedClose(storages.storageFor(file).create(file), timings);
+        ChecksumOutputStream stored = checksumRegistry.track(file, new BufferedOutputStream(fileStream, COPY_BUFFER_SIZE));
+        OutputStream out = timings.isEnabled() ? timed(stored, timings) : stored;
+        if (encryption.isEnabled()) {
+            EncryptingOutputStream encrypting = encryption.encrypt(out);
+            encrypting.setTimings(timings);
+            out = encrypting;
+        }
+        if (compress) {
+            ParallelGzipOutputStream gzip = parallelCompressor.gzip(out, level, workers);
+            gzip.setTimings(timings);
+            out = gzip;
+        }
+        return new BackupOutputStream(out, stored, timings, dumpThrottle.throttleFor(file));
+    }
+
+    /**
+     * Writes everything from {@code source} into {@code target}.
+     *
+     * @return the number of bytes written to the target file
+     */
+    public long write(InputStream source, Path target, boolean compress, int level, int workers) throws IOException {
+        BackupOutputStream out = open(target, compress, level, workers);
+        try (out) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int n;
+            while ((n = source.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.getBytesWritten();
+    }
+
+    /**
+     * Times closing the file, which makes it durable, under {@link BackupPhase#FSYNC}.
+     */
+    private static OutputStream timedClose(OutputStream file, PhaseTimings timings) {
+        return new FilterOutputStream(file) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                long startTime = System.nanoTime();
+                out.close();
+                timings.record(BackupPhase.FSYNC, 0, System.nanoTime() - startTime);
+            }
+        };
+    }
+
+    /**
+     * Times the writes of the stored bytes, checksumming included, under {@link BackupPhase#WRITE}.
+     */
+    private static OutputStream timed(OutputStream stored, PhaseTimings timings) {
+        return new FilterOutputStream(stored) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                long startTime = System.nanoTime();
+                out.write(b, off, len);
+                timings.record(BackupPhase.WRITE, len, System.nanoTime() - startTime);
+            }
+        };
+    }
+}
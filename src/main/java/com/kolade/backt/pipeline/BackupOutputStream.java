@@ -0,0 +1,103 @@
+package com.kolade.backt.pipeline;
+
+import com.kolade.backt.metrics.BackupPhase;
+import com.kolade.backt.metrics.PhaseTimings;
+import com.kolade.backt.throttle.Throttle;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A backup file opened by {@link BackupFileWriter}, counting what goes in and what reaches the disk.
+ * <p>
+ * It also times its writer: the time until the first byte is recorded as {@link BackupPhase#CONNECT}, and the time
+ * the writer spends outside of {@code write} afterwards, producing the next bytes, as {@link BackupPhase#DUMP}.
+ * Bytes are taken from the backup's {@link Throttle} before they are passed on, and the time that holds the writer
+ * back is recorded as {@link BackupPhase#THROTTLE}.
+ */
+public class BackupOutputStream extends FilterOutputStream {
+
+    private final ChecksumOutputStream stored;
+    private final PhaseTimings timings;
+    private final Throttle throttle;
+    private final long openTime = System.nanoTime();
+    private long firstWriteTime;
+    private long writeNanos;
+    private long throttleNanos;
+    private long bytesIn;
+    private boolean closed;
+
+    BackupOutputStream(OutputStream out, ChecksumOutputStream stored, PhaseTimings timings, Throttle throttle) {
+        super(out);
+        this.stored = stored;
+        this.timings = timings;
+        this.throttle = throttle;
+        stored.setLogicalLength(this::getBytesIn);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        throttle(1);
+        out.write(b);
+        bytesIn++;
+        timings.transferred(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        long startTime = System.nanoTime();
+        if (firstWriteTime == 0) {
+            firstWriteTime = startTime;
+        }
+        if (throttle.isEnabled()) {
+            throttle(len);
+            startTime = System.nanoTime();
+        }
+        out.write(b, off, len);
+        writeNanos += System.nanoTime() - startTime;
+        bytesIn += len;
+        timings.transferred(len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long closeTime = System.nanoTime();
+        if (firstWriteTime == 0) {
+            timings.record(BackupPhase.CONNECT, 0, closeTime - openTime);
+        } else {
+            timings.record(BackupPhase.CONNECT, 0, firstWriteTime - openTime);
+            timings.record(BackupPhase.DUMP, bytesIn, closeTime - firstWriteTime - writeNanos - throttleNanos);
+        }
+        if (throttle.isEnabled()) {
+            timings.record(BackupPhase.THROTTLE, bytesIn, throttleNanos);
+        }
+        super.close();
+    }
+
+    private void throttle(long bytes) throws IOException {
+        if (throttle.isEnabled()) {
+            long startTime = System.nanoTime();
+            throttle.acquire(bytes);
+            throttleNanos += System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * @return bytes written to this stream, before compression and encryption
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return bytes that reached the file so far, all of them once the stream is closed
+     */
+    public long getBytesWritten() {
+        return stored.getCount();
+    }
+}
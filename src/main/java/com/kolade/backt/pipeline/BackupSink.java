@@ -0,0 +1,17 @@
+package com.kolade.backt.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Final stage of a streaming backup: consumes the dump stream and writes it to the backup file.
+ */
+@FunctionalInterface
+public interface BackupSink {
+
+    /**
+     * @return the number of bytes written to {@code target}
+     */
+    long write(InputStream source, Path target) throws IOException;
+}
@@ -0,0 +1,102 @@
+package com.kolade.backt.pipeline;
+
+import com.kolade.backt.exception.BackupException;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Checksums the bytes passed through to the wrapped stream: a CRC32C per fixed-size block, cheap enough to
+ * verify at disk speed, and a SHA-256 over everything. The checksums are handed to the listener once the stream
+ * has been closed successfully, so a file is never read a second time to checksum it.
+ */
+public class ChecksumOutputStream extends FilterOutputStream {
+
+    private final int blockSize;
+    private final Consumer<FileChecksum> listener;
+    private final MessageDigest sha256;
+    private final CRC32C crc = new CRC32C();
+    private int[] blockCrcs = new int[16];
+    private int blockCount;
+    private int blockFill;
+    private long count;
+    private LongSupplier logicalLength;
+    private boolean closed;
+
+    public ChecksumOutputStream(OutputStream out, int blockSize, Consumer<FileChecksum> listener) {
+        super(out);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.listener = listener;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BackupException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * For a stream that receives compressed data: where to take the uncompressed length from once it is closed.
+     */
+    public void setLogicalLength(LongSupplier logicalLength) {
+        this.logicalLength = logicalLength;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        sha256.update(b, off, len);
+        count += len;
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockFill);
+            crc.update(b, off, n);
+            blockFill += n;
+            off += n;
+            len -= n;
+            if (blockFill == blockSize) {
+                finishBlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        super.close();
+        if (blockFill > 0) {
+            finishBlock();
+        }
+        listener.accept(new FileChecksum(count, logicalLength != null ? logicalLength.getAsLong() : count,
+                sha256.digest(), blockSize, Arrays.copyOf(blockCrcs, blockCount)));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private void finishBlock() {
+        if (blockCount == blockCrcs.length) {
+            blockCrcs = Arrays.copyOf(blockCrcs, blockCount * 2);
+        }
+        blockCrcs[blockCount++] = (int) crc.getValue();
+        crc.reset();
+        blockFill = 0;
+    }
+}
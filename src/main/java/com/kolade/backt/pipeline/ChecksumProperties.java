@@ -0,0 +1,23 @@
+package com.kolade.backt.pipeline;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for backup checksums, bound from {@code backt.checksum.*}.
+ *
+ * @param blockSize      bytes covered by each CRC32C recorded while a backup file is written
+ * @param verifyWorkers  threads verifying backups, 0 means one per available core
+ * @param verifyTaskSize bytes of a file one verification task maps and checks at a time
+ */
+@ConfigurationProperties(prefix = "backt.checksum")
+public record ChecksumProperties(
+        @DefaultValue("1048576") int blockSize,
+        @DefaultValue("0") int verifyWorkers,
+        @DefaultValue("67108864") int verifyTaskSize
+) {
+
+    public int effectiveVerifyWorkers() {
+        return verifyWorkers > 0 ? verifyWorkers : Runtime.getRuntime().availableProcessors();
+    }
+}
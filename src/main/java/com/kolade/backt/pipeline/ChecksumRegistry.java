@@ -0,0 +1,48 @@
+package com.kolade.backt.pipeline;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the checksums of backup files taken while they were written, until the manifest of the backup picks them up.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChecksumRegistry {
+
+    private final ChecksumProperties properties;
+    private final Map<Path, FileChecksum> checksums = new ConcurrentHashMap<>();
+
+    /**
+     * Wraps the stream {@code file} is written through; its checksums are recorded once the stream is closed.
+     */
+    public ChecksumOutputStream track(Path file, OutputStream out) {
+        Path key = key(file);
+        return new ChecksumOutputStream(out, properties.blockSize(), checksum -> checksums.put(key, checksum));
+    }
+
+    /**
+     * Removes and returns the recorded checksums of {@code file}, empty when it was not written through {@link #track}.
+     */
+    public Optional<FileChecksum> take(Path file) {
+        return Optional.ofNullable(checksums.remove(key(file)));
+    }
+
+    /**
+     * Forgets the checksums of {@code backupPath} and of every file below it, for a backup that failed.
+     */
+    public void discard(Path backupPath) {
+        Path prefix = key(backupPath);
+        checksums.keySet().removeIf(file -> file.startsWith(prefix));
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,23 @@
+package com.kolade.backt.pipeline;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Defaults for the block-parallel compression stage, bound from {@code backt.compression.*}.
+ *
+ * @param level     deflate level, 1 (fastest) to 9 (smallest)
+ * @param blockSize size of the independently compressed blocks in bytes
+ * @param workers   size of the shared compression pool, 0 means one worker per available core
+ */
+@ConfigurationProperties(prefix = "backt.compression")
+public record CompressionProperties(
+        @DefaultValue("6") int level,
+        @DefaultValue("1048576") int blockSize,
+        @DefaultValue("0") int workers
+) {
+
+    public int effectiveWorkers() {
+        return workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+}
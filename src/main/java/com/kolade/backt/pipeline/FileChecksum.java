@@ -0,0 +1,13 @@
+package com.kolade.backt.pipeline;
+
+/**
+ * Checksums of a file, taken while it was written.
+ *
+ * @param length        bytes written to the file
+ * @param logicalLength bytes before compression, equal to {@code length} for uncompressed files
+ * @param sha256        SHA-256 of the whole file
+ * @param blockSize     size of the blocks the CRCs cover, the last block may be shorter
+ * @param blockCrcs     CRC32C of every block, in file order
+ */
+public record FileChecksum(long length, long logicalLength, byte[] sha256, int blockSize, int[] blockCrcs) {
+}
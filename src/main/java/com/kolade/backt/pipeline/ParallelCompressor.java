@@ -0,0 +1,63 @@
+package com.kolade.backt.pipeline;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the shared ForkJoin pool used by the block-parallel gzip stages, so concurrent backups and restores
+ * share one set of compression workers instead of each starting their own.
+ */
+@Component
+public class ParallelCompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelCompressor.class);
+    //members this large were not cut into blocks by the compressor, they are inflated sequentially instead
+    private static final int MAX_PARALLEL_MEMBER_SIZE = 64 * 1024 * 1024;
+
+    private final CompressionProperties properties;
+    private final ForkJoinPool pool;
+
+    public ParallelCompressor(CompressionProperties properties) {
+        this.properties = properties;
+        this.pool = new ForkJoinPool(properties.effectiveWorkers());
+        logger.info("Compression pool started with {} workers, block size {} bytes", pool.getParallelism(), properties.blockSize());
+    }
+
+    /**
+     * Wraps {@code target} in a parallel gzip stream.
+     *
+     * @param level   deflate level, or 0 to use the configured default
+     * @param workers the most blocks this stream keeps in flight, or 0 to use the whole pool
+     */
+    public ParallelGzipOutputStream gzip(OutputStream target, int level, int workers) {
+        int effectiveLevel = level > 0 ? level : properties.level();
+        int effectiveWorkers = workers > 0 ? Math.min(workers, pool.getParallelism()) : pool.getParallelism();
+        //two blocks per worker keeps every worker busy while the oldest block is being written out
+        return new ParallelGzipOutputStream(target, pool, effectiveLevel, properties.blockSize(), effectiveWorkers * 2);
+    }
+
+    /**
+     * Wraps {@code source} in a gzip reader that inflates the members of a block-compressed stream in parallel.
+     *
+     * @param workers the most members this stream keeps in flight, or 0 to use the whole pool
+     */
+    public ParallelGunzipInputStream gunzip(InputStream source, int workers) {
+        int effectiveWorkers = workers > 0 ? Math.min(workers, pool.getParallelism()) : pool.getParallelism();
+        return new ParallelGunzipInputStream(source, pool, effectiveWorkers * 2, MAX_PARALLEL_MEMBER_SIZE);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        pool.shutdown();
+        if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.kolade.backt.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads a concatenated gzip stream written by {@link ParallelGzipOutputStream}, inflating several members in parallel.
+ * <p>
+ * The source is cut in front of every occurrence of the fixed member header, and each piece is inflated on the
+ * executor while earlier pieces are being consumed. A header pattern inside compressed data is harmless: the piece
+ * before it does not end its deflate stream, so it is joined with the next piece and inflated again. Members are
+ * checked against their CRC. Streams from other gzip writers are read sequentially, as are members that grow
+ * beyond {@code maxMemberSize}.
+ */
+public class ParallelGunzipInputStream extends InputStream {
+
+    private static final byte[] HEADER = ParallelGzipOutputStream.GZIP_HEADER;
+    private static final int TRAILER_LENGTH = 8;
+    private static final int READ_SIZE = 256 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+    //upper bound for trusting the length in a member trailer when sizing its output buffer
+    private static final int MAX_PRESIZED_OUTPUT = 256 * 1024 * 1024;
+
+    private final InputStream in;
+    private final Executor executor;
+    private final int maxPendingMembers;
+    private final int maxMemberSize;
+    private final Deque<Member> pendingMembers = new ArrayDeque<>();
+
+    //bytes read from the source that are not part of a submitted member yet, from segmentStart, which is always a header
+    private byte[] segment = new byte[2 * READ_SIZE];
+    private int segmentStart;
+    private int segmentLength;
+    private int scanFrom = HEADER.length;
+    private boolean started;
+    private boolean sourceFinished;
+    //set once the rest of the source has to be read sequentially, holds the bytes read ahead of it
+    private byte[] sequentialPrefix;
+    private InputStream sequential;
+
+    private byte[] current = EMPTY;
+    private int position;
+    private boolean closed;
+
+    private record Member(byte[] compressed, CompletableFuture<byte[]> inflated) {
+    }
+
+    public ParallelGunzipInputStream(InputStream in, Executor executor, int maxPendingMembers, int maxMemberSize) {
+        if (maxPendingMembers <= 0 || maxMemberSize <= 0) {
+            throw new IllegalArgumentException("Pending member count and member size must be positive");
+        }
+        this.in = in;
+        this.executor = executor;
+        this.maxPendingMembers = maxPendingMembers;
+        this.maxMemberSize = maxMemberSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pendingMembers.forEach(member -> member.inflated().cancel(false));
+        pendingMembers.clear();
+        in.close();
+    }
+
+    /**
+     * Makes the next inflated block current. The block may be empty.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean nextBlock() throws IOException {
+        fillPending();
+        if (!pendingMembers.isEmpty()) {
+            Member member = pendingMembers.removeFirst();
+            byte[] inflated = await(member);
+            while (inflated == null) {
+                //the member was cut at a header pattern inside its compressed data
+                fillPending();
+                if (pendingMembers.isEmpty()) {
+                    if (sequentialPrefix == null) {
+                        throw new EOFException("Unexpected end of gzip stream");
+                    }
+                    sequentialPrefix = concat(member.compressed(), sequentialPrefix);
+                    inflated = EMPTY;
+                    break;
+                }
+                Member next = pendingMembers.removeFirst();
+                next.inflated().cancel(false);
+                member = new Member(concat(member.compressed(), next.compressed()), null);
+                inflated = inflateMember(member.compressed());
+            }
+            current = inflated;
+            position = 0;
+            fillPending();
+            return true;
+        }
+        if (sequentialPrefix != null) {
+            sequential = new GZIPInputStream(new SequenceInputStream(new ByteArrayInputStream(sequentialPrefix), in), READ_SIZE);
+            sequentialPrefix = null;
+        }
+        if (sequential != null) {
+            byte[] block = sequential.readNBytes(READ_SIZE);
+            current = block;
+            position = 0;
+            return block.length > 0;
+        }
+        return false;
+    }
+
+    /**
+     * Reads from the source and submits members until enough are in flight.
+     */
+    private void fillPending() throws IOException {
+        if (!started) {
+            started = true;
+            byte[] header = in.readNBytes(HEADER.length);
+            if (!Arrays.equals(header, HEADER)) {
+                //not written by the parallel compressor, let GZIPInputStream deal with it
+                sequentialPrefix = header;
+                segment = null;
+                return;
+            }
+            System.arraycopy(header, 0, segment, 0, header.length);
+            segmentLength = header.length;
+        }
+        while (sequentialPrefix == null && sequential == null && !sourceFinished && pendingMembers.size() < maxPendingMembers) {
+            int boundary = findHeader();
+            if (boundary > 0) {
+                submit(Arrays.copyOfRange(segment, segmentStart, boundary));
+                segmentStart = boundary;
+                scanFrom = segmentStart + HEADER.length;
+                continue;
+            }
+            if (segmentLength - segmentStart >= maxMemberSize) {
+                sequentialPrefix = Arrays.copyOfRange(segment, segmentStart, segmentLength);
+                segment = null;
+                return;
+            }
+            if (segment.length - segmentLength < READ_SIZE) {
+                compactSegment();
+            }
+            int n = in.read(segment, segmentLength, READ_SIZE);
+            if (n == -1) {
+                sourceFinished = true;
+                if (segmentLength > segmentStart) {
+                    submit(Arrays.copyOfRange(segment, segmentStart, segmentLength));
+                }
+                segment = null;
+            } else {
+                segmentLength += n;
+            }
+        }
+    }
+
+    /**
+     * Moves the unsubmitted bytes to the front of the buffer, growing it if a read would not fit after them.
+     */
+    private void compactSegment() {
+        int length = segmentLength - segmentStart;
+        byte[] target = segment.length - length < READ_SIZE ? new byte[Math.max(segment.length * 2, length + READ_SIZE)] : segment;
+        System.arraycopy(segment, segmentStart, target, 0, length);
+        segment = target;
+        scanFrom -= segmentStart;
+        segmentStart = 0;
+        segmentLength = length;
+    }
+
+    /**
+     * @return the offset of the next member header after the start of the segment, or -1 if there is none yet
+     */
+    private int findHeader() {
+        int last = segmentLength - HEADER.length;
+        for (int i = scanFrom; i <= last; i++) {
+            if (segment[i] == HEADER[0] && matchesHeader(i)) {
+                return i;
+            }
+        }
+        //a header may still start in the last few bytes
+        scanFrom = Math.max(segmentStart + HEADER.length, last + 1);
+        return -1;
+    }
+
+    private boolean matchesHeader(int offset) {
+        for (int i = 1; i < HEADER.length; i++) {
+            if (segment[offset + i] != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void submit(byte[] compressed) {
+        pendingMembers.addLast(new Member(compressed, CompletableFuture.supplyAsync(() -> {
+            try {
+                return inflateMember(compressed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor)));
+    }
+
+    private static byte[] await(Member member) throws IOException {
+        try {
+            return member.inflated().join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Failed to inflate gzip member", cause);
+        }
+    }
+
+    /**
+     * Inflates one piece of the source.
+     *
+     * @return the inflated bytes, or null if the piece ends before its deflate stream does
+     */
+    static byte[] inflateMember(byte[] member) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, HEADER.length, member.length - HEADER.length);
+            //the trailer holds the inflated length, unless the piece was cut short
+            int expectedLength = member.length >= HEADER.length + TRAILER_LENGTH ? readIntLE(member, member.length - 4) : -1;
+            byte[] out = new byte[expectedLength >= 0 && expectedLength <= MAX_PRESIZED_OUTPUT ? expectedLength : 64 * 1024];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, Math.max(out.length * 2, 64 * 1024));
+                }
+                int n = inflater.inflate(out, length, out.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                length += n;
+            }
+            int remaining = inflater.getRemaining();
+            if (remaining < TRAILER_LENGTH) {
+                return null;
+            }
+            if (remaining > TRAILER_LENGTH) {
+                //more members follow that were written with a different header
+                return inflateSequentially(member);
+            }
+
+            byte[] data = length == out.length ? out : Arrays.copyOf(out, length);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            int trailer = member.length - TRAILER_LENGTH;
+            if (readIntLE(member, trailer) != (int) crc.getValue() || readIntLE(member, trailer + 4) != data.length) {
+                throw new ZipException("Corrupt gzip member: checksum or length mismatch");
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt gzip member: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] inflateSequentially(byte[] members) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(members))) {
+            return gzip.readAllBytes();
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static int readIntLE(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.kolade.backt.pipeline;
+
+import com.kolade.backt.metrics.BackupPhase;
+import com.kolade.backt.metrics.PhaseTimings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Splits the written bytes into fixed-size blocks and deflates them in parallel on the given executor.
+ * Every block becomes a complete gzip member, so the output is a standard concatenated gzip stream
+ * (the layout pigz produces) that gunzip and {@link java.util.zip.GZIPInputStream} read as a single file.
+ * <p>
+ * Compressed blocks are written in submission order. At most {@code maxPendingBlocks} blocks are in flight,
+ * which bounds memory and applies backpressure to the producer when the workers fall behind.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    //every member gets the same header, which the parallel reader relies on to find member boundaries
+    static final byte[] GZIP_HEADER = {
+            (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final OutputStream out;
+    private final Executor executor;
+    private final int level;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final Deque<CompletableFuture<byte[]>> pendingBlocks = new ArrayDeque<>();
+
+    private byte[] buffer;
+    private int count;
+    private long bytesIn;
+    private long bytesOut;
+    private boolean anyBlockWritten;
+    private boolean closed;
+    private PhaseTimings timings = PhaseTimings.NONE;
+
+    public ParallelGzipOutputStream(OutputStream out, Executor executor, int level, int blockSize, int maxPendingBlocks) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9, got: " + level);
+        }
+        if (blockSize <= 0 || maxPendingBlocks <= 0) {
+            throw new IllegalArgumentException("Block size and pending block count must be positive");
+        }
+        this.out = out;
+        this.executor = executor;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.buffer = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte) b;
+        if (count == blockSize) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresses the partially filled block and writes out everything that is pending.
+     * Each flush ends a gzip member, so frequent flushing costs compression ratio.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            submitBlock();
+        }
+        while (!pendingBlocks.isEmpty()) {
+            writeOldestBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (count > 0 || !anyBlockWritten && pendingBlocks.isEmpty()) {
+                //an empty input still has to produce one valid (empty) gzip member
+                submitBlock();
+            }
+            while (!pendingBlocks.isEmpty()) {
+                writeOldestBlock();
+            }
+            out.flush();
+        } finally {
+            closed = true;
+            pendingBlocks.forEach(block -> block.cancel(false));
+            out.close();
+        }
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    /**
+     * Records the time spent compressing blocks, and waiting for them, under {@link BackupPhase#COMPRESS}.
+     */
+    public void setTimings(PhaseTimings timings) {
+        this.timings = timings;
+    }
+
+    private void submitBlock() throws IOException {
+        byte[] block = count == blockSize ? buffer : Arrays.copyOf(buffer, count);
+        int length = count;
+        bytesIn += length;
+        buffer = new byte[blockSize];
+        count = 0;
+
+        PhaseTimings blockTimings = timings;
+        pendingBlocks.addLast(CompletableFuture.supplyAsync(() -> {
+            long startTime = System.nanoTime();
+            byte[] compressed = compressBlock(block, length, level);
+            blockTimings.record(BackupPhase.COMPRESS, length, System.nanoTime() - startTime);
+            return compressed;
+        }, executor));
+        while (pendingBlocks.size() > maxPendingBlocks) {
+            writeOldestBlock();
+        }
+    }
+
+    private void writeOldestBlock() throws IOException {
+        byte[] compressed;
+        long startTime = System.nanoTime();
+        try {
+            compressed = pendingBlocks.removeFirst().join();
+            timings.stall(BackupPhase.COMPRESS, System.nanoTime() - startTime);
+        } catch (CompletionException e) {
+            throw new IOException("Failed to compress block", e.getCause());
+        }
+        out.write(compressed);
+        bytesOut += compressed.length;
+        anyBlockWritten = true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Produces one self-contained gzip member for the given bytes.
+     */
+    static byte[] compressBlock(byte[] data, int length, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+
+            ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+            member.writeBytes(GZIP_HEADER);
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                member.write(chunk, 0, n);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            writeIntLE(member, (int) crc.getValue());
+            writeIntLE(member, length);
+            return member.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+}
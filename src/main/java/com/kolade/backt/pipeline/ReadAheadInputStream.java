@@ -0,0 +1,135 @@
+package com.kolade.backt.pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the source on a background thread, up to {@code depth} blocks ahead of the consumer.
+ * Disk reads then overlap with whatever the consumer does with the previous block, e.g. decompressing it
+ * or pushing it into a restore tool.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    //marks the end of the source, the reader stops after queueing it
+    private static final byte[] END = new byte[0];
+
+    private final InputStream in;
+    private final int blockSize;
+    private final BlockingQueue<byte[]> blocks;
+    private final Future<?> reader;
+    private volatile IOException failure;
+
+    private byte[] current = END;
+    private int position;
+    private boolean finished;
+    private boolean closed;
+
+    public ReadAheadInputStream(InputStream in, ExecutorService executor, int blockSize, int depth) {
+        if (blockSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Block size and read-ahead depth must be positive");
+        }
+        this.in = in;
+        this.blockSize = blockSize;
+        this.blocks = new ArrayBlockingQueue<>(depth);
+        this.reader = executor.submit(this::readAhead);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        reader.cancel(true);
+        blocks.clear();
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (finished) {
+            return false;
+        }
+        byte[] block;
+        try {
+            block = blocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the next block");
+        }
+        if (block == END) {
+            finished = true;
+            if (failure != null) {
+                throw new IOException("Read-ahead failed: " + failure.getMessage(), failure);
+            }
+            return false;
+        }
+        current = block;
+        position = 0;
+        return true;
+    }
+
+    private void readAhead() {
+        try {
+            while (true) {
+                byte[] block = in.readNBytes(blockSize);
+                if (block.length > 0) {
+                    blocks.put(block);
+                }
+                //readNBytes only returns a short block at the end of the source
+                if (block.length < blockSize) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            //closed by the consumer
+            return;
+        }
+        try {
+            blocks.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -1,256 +1,348 @@
 package com.kolade.backt.postgres;
 
-import com.kolade.backt.common.BackupMetadataDto;
-import com.kolade.backt.common.BackupType;
-import com.kolade.backt.common.DatabaseDetails;
-import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.common.*;
+import com.kolade.backt.crypto.BackupEncryption;
 import com.kolade.backt.exception.CustomBacktException;
+import com.kolade.backt.job.BackupProgress;
+import com.kolade.backt.manifest.ManifestBuilder;
+import com.kolade.backt.manifest.ManifestFile;
+import com.kolade.backt.metrics.BackupMetrics;
+import com.kolade.backt.metrics.BackupPhase;
+import com.kolade.backt.metrics.PhaseStats;
+import com.kolade.backt.metrics.PhaseTimings;
+import com.kolade.backt.pipeline.BackupFileWriter;
+import com.kolade.backt.pipeline.BackupSink;
+import com.kolade.backt.process.ProcessRunner;
+import com.kolade.backt.process.ProcessSpec;
+import com.kolade.backt.repository.BackupMetadataRepository;
 import com.kolade.backt.service.BackupService;
 import com.kolade.backt.service.DatabaseDetailsService;
+import com.kolade.backt.storage.BackupStorage;
+import com.kolade.backt.storage.BackupStorages;
+import com.kolade.backt.throttle.DumpThrottle;
+import com.kolade.backt.util.BackupUtil;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.Objects;
 
 @RequiredArgsConstructor
 @Service("postgres")
 public class PostgresBackupService implements BackupService {
 
-    private static final Logger logger = LoggerFactory.getLogger(PostgresConnection.class);
+    private static final Logger logger = LoggerFactory.getLogger(PostgresBackupService.class);
     private final DatabaseDetailsService databaseDetailsService;
+    private final BackupMetadataRepository metadataRepository;
+    private final BackupFileWriter backupFileWriter;
+    private final BackupEncryption backupEncryption;
+    private final ProcessRunner processRunner;
+    private final PostgresJobPlanner jobPlanner;
+    private final PostgresCopyExporter copyExporter;
+    private final WalArchiver walArchiver;
+    private final ManifestBuilder manifestBuilder;
+    private final BackupMetrics backupMetrics;
+    private final DumpThrottle dumpThrottle;
+    private final BackupStorages backupStorages;
 
 
     /**
-     * Executes a command with password authentication by injecting the password as an environment variable.
-     * Logs the output and errors of the command execution.
+     * Runs a PostgreSQL tool with the password injected as the PGPASSWORD environment variable.
+     * If a sink is given, the tool's stdout is streamed into the target file; otherwise it is logged.
+     * What the tool reports on stderr goes to the backup's progress.
      *
-     * @param command    The command to execute, formatted for PostgreSQL tools.
-     * @param dbPassword The password for the database.
+     * @return the number of bytes written by the sink
      */
-    private void executeCommand(String command, String dbPassword) {
-        try {
-            ProcessBuilder processBuilder = new ProcessBuilder("bin/bash", "-c", command);
-            processBuilder.redirectErrorStream(true);
-            processBuilder.environment().put("PGPASSWORD", dbPassword);
-            Process process = processBuilder.start();
-
-            // Log output and errors
-            try (
-                    BufferedReader stdOut = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                    BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()))
-            ) {
-                stdOut.lines().forEach(logger::info);  //log standard output
-                stdError.lines().forEach(logger::error); //log error output, if any
+    private long executeCommand(List<String> command, DatabaseDetails databaseDetails, BackupRequest request, BackupProgress progress, BackupSink sink, Path target) {
+        ProcessSpec.ProcessSpecBuilder spec = ProcessSpec.builder()
+                .command(command)
+                .env("PGPASSWORD", Objects.toString(databaseDetails.getPassword(), ""))
+                .timeout(request == null ? null : BackupOptions.getTimeout(request))
+                .stderrListener(progress::toolOutput);
+        if (sink != null) {
+            spec.stdoutHandler(stdout -> sink.write(stdout, target));
+        }
+        return processRunner.run(spec.build()).stdoutBytes();
+    }
 
-                boolean isFinished = process.waitFor(600, TimeUnit.SECONDS);
-                if (!isFinished) {
-                    process.destroyForcibly();
-                    throw new IOException("Backup process timed out");
-                }
+    @Override
+    public BackupResult performBackup(BackupRequest backupRequest) throws IOException {
+        return performBackup(backupRequest, requireActiveDatabase());
+    }
 
-                if (process.exitValue() != 0) {
-                    throw new IOException("Backup process failed with exit code:" + process.exitValue());
-                }
+    @Override
+    public BackupResult performBackup(BackupRequest backupRequest, DatabaseDetails databaseDetails, BackupProgress progress) throws IOException {
+        validateBackupRequest(backupRequest);
+        var startTime = LocalDateTime.now();
+        var id = BackupUtil.generateBackupId(backupRequest, startTime);
+        BackupFormat backupFormat = backupFormat(backupRequest);
+        BackupStorage storage = backupStorages.forRequest(backupRequest, backupFormat);
+        Path finalBackupPath = BackupUtil.resolveBackupFile(storage, backupRequest.destinationPath(), id, backupFileExtension(backupRequest));
+
+        PhaseTimings timings = backupMetrics.start(id, DatabaseType.POSTGRES, finalBackupPath);
+        backupStorages.attach(finalBackupPath, storage);
+        dumpThrottle.start(finalBackupPath, DatabaseType.POSTGRES, databaseDetails);
+        progress.started(id, finalBackupPath, timings);
+        try {
+            if (progress.isEnabled() && backupRequest.backupType() == BackupType.FULL) {
+                //pg_basebackup reports its own progress
+                progress.estimate(jobPlanner.estimateDumpSize(databaseDetails, backupRequest.databaseName()));
+            }
+            long dumpStartTime = System.nanoTime();
+            Integer jobs = backupFormat == BackupFormat.DIRECTORY || backupFormat == BackupFormat.BINARY_COPY
+                    ? planDumpJobs(backupRequest, databaseDetails)
+                    : null;
+            long sizeInBytes = switch (backupRequest.backupType()) {
+                case FULL -> switch (backupFormat) {
+                    case DIRECTORY -> performParallelBackup(backupRequest, databaseDetails, progress, finalBackupPath, jobs);
+                    case BINARY_COPY -> copyExporter.export(databaseDetails, backupRequest.databaseName(), finalBackupPath, jobs, backupRequest.compress()).bytesWritten();
+                    default -> performFullBackup(backupRequest, databaseDetails, progress, finalBackupPath);
+                };
+                case INCREMENTAl -> performIncrementalBackup(backupRequest, databaseDetails, progress, finalBackupPath);
+                case DIFFERENTIAL -> performDifferentialBackup(backupRequest, finalBackupPath);
+            };
+            if (!timings.hasRecorded(BackupPhase.DUMP)) {
+                //nothing went through the backup file writer, the tool wrote its files itself, so the step is timed as a whole
+                timings.record(BackupPhase.DUMP, sizeInBytes, System.nanoTime() - dumpStartTime);
             }
+            long manifestStartTime = System.nanoTime();
+            ManifestFile manifest = manifestBuilder.writeManifest(finalBackupPath, backupFormat, backupRequest.databaseName());
+            timings.record(BackupPhase.MANIFEST, 0, System.nanoTime() - manifestStartTime);
+
+            var backupMetadata = BackupMetadata.builder()
+                    .backupId(id)
+                    .databaseType(DatabaseType.POSTGRES)
+                    .backupType(backupRequest.backupType())
+                    .databaseName(backupRequest.databaseName())
+                    .backupPath(finalBackupPath.toString())
+                    .storage(storage.name())
+                    .creationTime(startTime)
+                    .backupFormat(backupFormat)
+                    .parallelism(jobs)
+                    .checksum(manifest.checksum())
+                    .build();
+            long saveStartTime = System.nanoTime();
+            metadataRepository.save(backupMetadata);
+            timings.record(BackupPhase.METADATA_SAVE, 0, System.nanoTime() - saveStartTime);
+            List<PhaseStats> phases = backupMetrics.finish(timings, sizeInBytes);
+            logger.info("Backup completed. Type: {}, Database_name: {}, Path: {}, Timestamp: {}", backupRequest.backupType(), backupRequest.databaseName(), finalBackupPath, startTime);
+
+            return BackupResult.builder()
+                    .backupId(id)
+                    .startTime(startTime)
+                    .backupType(backupRequest.backupType())
+                    .endTime(LocalDateTime.now())
+                    .backupFilePath(finalBackupPath)
+                    .manifestPath(manifest.path())
+                    .backupStatus(BackupStatus.SUCCESS)
+                    .sizeInBytes(sizeInBytes)
+                    .phases(phases)
+                    .build();
 
-        } catch (IOException | InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new CustomBacktException("An error occurred during backup process: ", e);
+        } catch (Exception e) {
+            logger.error("Backup failed", e);
+            backupMetrics.abandon(timings);
+            storage.delete(finalBackupPath);
+            manifestBuilder.discard(finalBackupPath);
+            return BackupResult.builder()
+                    .backupId(id)
+                    .startTime(startTime)
+                    .backupType(backupRequest.backupType())
+                    .endTime(LocalDateTime.now())
+                    .backupFilePath(finalBackupPath)
+                    .backupStatus(BackupStatus.FAILED)
+                    .sizeInBytes(0)
+                    .errorMessage(e.getMessage())
+                    .build();
+        } finally {
+            dumpThrottle.release(finalBackupPath);
+            backupStorages.detach(finalBackupPath);
         }
     }
 
-    /**
-     * Performs a full backup of the PostgreSQL database.
-     * Generates a backup file in the specified directory and logs metadata.
-     *
-     * @param backupDirectory The directory path where the backup file will be saved.
-     * @return The path to the generated backup file.
-     */
     @Override
-    public Path performFullBackup(String backupDirectory) {
-        DatabaseDetails databaseDetails = databaseDetailsService.getActiveDatabaseDetails();
-        if (databaseDetails == null){
-            throw new CustomBacktException("No active database connection");
+    public void validateBackupRequest(BackupRequest request) {
+        if (request.databaseName() == null || request.databaseName().isBlank()) {
+            throw new IllegalArgumentException("Database name is required");
         }
-
-        try{
-            String backupFilePath = Paths.get(backupDirectory, "/full_backup_" + databaseDetails.getDatabaseName() + "_" + LocalDateTime.now() + ".sql").toString();
-            String command = String.format("pg_dump -h %s -p %d -U %s -d %s -F c -b -v -f %s",
-                    databaseDetails.getHost(),
-                    databaseDetails.getPort(),
-                    databaseDetails.getUsername(),
-                    databaseDetails.getDatabaseName(),
-                    backupFilePath);
-
-            executeCommand(command, databaseDetails.getPassword());
-
-            Path path = Paths.get(backupFilePath);
-
-            BackupMetadataDto metadata = BackupMetadataDto.builder()
-                    .dbType(DatabaseType.POSTGRES.toString())
-                    .backupFilePath(path)
-                    .backupType(BackupType.FULL)
-                    .dbName(databaseDetails.getDatabaseName())
-                    .timestamp(LocalDateTime.now())
-                    .build();
-
-            getBackupMetadata(metadata);
-
-            return path;
-        } catch (Exception e){
-            throw new CustomBacktException("Failed to perform backup operation: ", e);
+        if (request.backupType() == null) {
+            throw new IllegalArgumentException("Backup type is required");
+        }
+        if (request.destinationPath() == null) {
+            throw new IllegalArgumentException("Destination path is required");
+        }
+        //rejects an unknown storage, or a backup the storage cannot hold
+        backupStorages.forRequest(request, backupFormat(request));
+        if (backupEncryption.isEnabled() && backupFormat(request) == BackupFormat.DIRECTORY) {
+            throw new IllegalArgumentException("Directory-format dumps are written by pg_dump itself and cannot be encrypted, use the custom format or the jdbc engine");
         }
-
     }
 
-    /**
-     * Performs an incremental backup using Base Backups and Write-Ahead Logs (WAL).
-     * Archives WAL files and restores the database for verification.
-     *
-     * @param backupDirectory         The directory path where the base backup will be saved.
-     * @param archiveDirectory        The directory path where WAL files will be archived.
-     * @param postgresWalArchivePath  The source path of PostgreSQL WAL files.
-     * @return The path to the base backup file.
-     */
-    //TODO: give a structure to the file storage behaviour
     @Override
-    public Path performIncrementalBackup(String backupDirectory, String archiveDirectory, String postgresWalArchivePath) {
-        Path baseBackupPath = performBaseBackup(backupDirectory);
-        archiveWALFiles(archiveDirectory, postgresWalArchivePath);
-
-        BackupMetadataDto metadata = BackupMetadataDto.builder()
-                .dbType(DatabaseType.POSTGRES.toString())
-                .backupFilePath(baseBackupPath)
-                .backupType(BackupType.INCREMENTAl)
-                .dbName(databaseDetailsService.getActiveDatabaseDetails().getDatabaseName())
-                .timestamp(LocalDateTime.now())
-                .build();
+    public BackupMetadata getBackupMetadata(String backupId) {
+        return metadataRepository.findByBackupId(backupId).orElseThrow(
+                () -> new EntityNotFoundException(String.format("Backup %s not found", backupId))
+        );
+    }
 
-        restoreDatabase(backupDirectory, archiveDirectory);
+    private BackupFormat backupFormat(BackupRequest backupRequest) {
+        if (backupRequest.backupType() != BackupType.FULL) {
+            return BackupFormat.TAR;
+        }
+        if (BackupOptions.ENGINE_JDBC.equalsIgnoreCase(BackupOptions.getString(backupRequest, BackupOptions.ENGINE, ""))) {
+            return BackupFormat.BINARY_COPY;
+        }
+        return BackupOptions.FORMAT_DIRECTORY.equalsIgnoreCase(BackupOptions.getString(backupRequest, BackupOptions.FORMAT, ""))
+                ? BackupFormat.DIRECTORY
+                : BackupFormat.CUSTOM;
+    }
 
-        getBackupMetadata(metadata);
+    private int planDumpJobs(BackupRequest backupRequest, DatabaseDetails databaseDetails) {
+        int jobs = BackupOptions.getInt(backupRequest, BackupOptions.PARALLELISM, 0);
+        return jobs > 0 ? jobs : jobPlanner.planDumpJobs(databaseDetails, backupRequest.databaseName());
+    }
 
-        return baseBackupPath;
+    private String backupFileExtension(BackupRequest backupRequest) {
+        BackupFormat backupFormat = backupFormat(backupRequest);
+        if (backupFormat == BackupFormat.DIRECTORY || backupFormat == BackupFormat.BINARY_COPY) {
+            //both produce a directory, pg_dump creates it itself
+            return "";
+        }
+        String extension = backupRequest.backupType() == BackupType.FULL ? ".dump" : ".tar";
+        return backupRequest.compress() ? extension + ".gz" : extension;
+    }
 
+    private BackupSink createSink(BackupRequest backupRequest) {
+        int level = BackupOptions.getInt(backupRequest, BackupOptions.COMPRESSION_LEVEL, 0);
+        int workers = BackupOptions.getInt(backupRequest, BackupOptions.COMPRESSION_WORKERS, 0);
+        return (source, target) -> backupFileWriter.write(source, target, backupRequest.compress(), level, workers);
     }
 
-    /**
-     * Performs a base backup of the PostgreSQL database.
-     *
-     * @param backupDirectory The directory path where the base backup will be saved.
-     * @return The path to the base backup file.
-     */
-    private Path performBaseBackup(String backupDirectory) {
+    private DatabaseDetails requireActiveDatabase() {
         DatabaseDetails databaseDetails = databaseDetailsService.getActiveDatabaseDetails();
         if (databaseDetails == null) {
             throw new CustomBacktException("No active database connection");
         }
+        return databaseDetails;
+    }
 
+    /**
+     * Performs a full backup of the PostgreSQL database.
+     * pg_dump writes an uncompressed custom-format archive to stdout, which is compressed in-process if requested.
+     *
+     * @param request         The backup request.
+     * @param databaseDetails The server to back up.
+     * @param progress        The progress of the backup.
+     * @param target          The file the backup is written to.
+     * @return The number of bytes written.
+     */
+    private long performFullBackup(BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress, Path target) {
         try {
-            String backupFilePath = Paths.get(backupDirectory, "base_backup_" + LocalDateTime.now() + ".tar").toString();
-            String command = String.format("pg_basebackup -h %s -p %d -U %s -D %s -Ft -z -P",
-                    databaseDetails.getHost(),
-                    databaseDetails.getPort(),
-                    databaseDetails.getUsername(),
-                    backupFilePath);
-
-            executeCommand(command, databaseDetails.getPassword());
-
-            return Paths.get(backupFilePath);
+            List<String> command = List.of(
+                    "pg_dump",
+                    "-h", databaseDetails.getHost(),
+                    "-p", String.valueOf(databaseDetails.getPort()),
+                    "-U", databaseDetails.getUsername(),
+                    "-d", request.databaseName(),
+                    "-F", "c", "-Z", "0", "-b", "-v");
+
+            return executeCommand(command, databaseDetails, request, progress, createSink(request), target);
         } catch (Exception e) {
-            throw new CustomBacktException("Failed to perform base backup: ", e);
+            throw new CustomBacktException("Failed to perform backup operation: ", e);
         }
+
     }
 
     /**
-     * Archives Write-Ahead Log (WAL) files to a specified directory.
+     * Performs a full backup with pg_dump in directory format, dumping several tables at once.
+     * pg_dump compresses every table file itself, so compression runs in parallel as well.
      *
-     * @param archiveDirectory       The directory where WAL files will be archived.
-     * @param postgresWalArchivePath The source directory of WAL files.
+     * @param request         The backup request.
+     * @param databaseDetails The server to back up.
+     * @param progress        The progress of the backup.
+     * @param target          The directory the backup is written to. It must not exist yet.
+     * @param jobs            The number of parallel dump jobs.
+     * @return The total size of the dump directory.
      */
-    private void archiveWALFiles(String archiveDirectory, String postgresWalArchivePath) {
-        DatabaseDetails databaseDetails = databaseDetailsService.getActiveDatabaseDetails();
-        if (databaseDetails == null) {
-            throw new CustomBacktException("No active database connection");
-        }
-
+    private long performParallelBackup(BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress, Path target, int jobs) {
         try {
-            String archiveCommand = String.format("cp %s/* %s", postgresWalArchivePath, archiveDirectory);
-            executeCommand(archiveCommand, databaseDetails.getPassword());
-            logger.info("Archived WAL files to {}", archiveDirectory);
+            int level = request.compress() ? BackupOptions.getInt(request, BackupOptions.COMPRESSION_LEVEL, 6) : 0;
+            List<String> command = List.of(
+                    "pg_dump",
+                    "-h", databaseDetails.getHost(),
+                    "-p", String.valueOf(databaseDetails.getPort()),
+                    "-U", databaseDetails.getUsername(),
+                    "-d", request.databaseName(),
+                    "-F", "d", "-j", String.valueOf(jobs), "-Z", String.valueOf(level), "-b", "-v",
+                    "-f", target.toString());
+
+            executeCommand(command, databaseDetails, request, progress, null, null);
+            return BackupUtil.sizeOf(target);
         } catch (Exception e) {
-            throw new CustomBacktException("Failed to archive WAL files: ", e);
+            throw new CustomBacktException("Failed to perform parallel backup operation: ", e);
         }
     }
 
-
     /**
-     * Restores the database from a base backup and replays WAL files.
+     * Performs an incremental backup using Base Backups and Write-Ahead Logs (WAL).
+     * When WAL source and archive directories are given in the request options, the segments written since the
+     * previous run are archived as well.
      *
-     * @param baseBackupPath The path to the base backup file.
-     * @param walDirectory   The directory containing the WAL files.
+     * @param request         The backup request.
+     * @param databaseDetails The server to back up.
+     * @param progress        The progress of the backup.
+     * @param target          The file the base backup is written to.
+     * @return The number of bytes written for the base backup.
      */
-    public void restoreDatabase(String baseBackupPath, String walDirectory) {
-        DatabaseDetails databaseDetails = databaseDetailsService.getActiveDatabaseDetails();
-        if (databaseDetails == null) {
-            throw new CustomBacktException("No active database connection");
+    //TODO: give a structure to the file storage behaviour
+    private long performIncrementalBackup(BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress, Path target) {
+        long size = performBaseBackup(request, databaseDetails, progress, target);
+
+        String walSourcePath = BackupOptions.getString(request, BackupOptions.WAL_SOURCE_PATH, null);
+        String walArchivePath = BackupOptions.getString(request, BackupOptions.WAL_ARCHIVE_PATH, null);
+        if (walSourcePath != null && walArchivePath != null) {
+            try {
+                walArchiver.archive(Paths.get(walSourcePath), Paths.get(walArchivePath));
+            } catch (IOException e) {
+                throw new CustomBacktException("Failed to archive WAL files: ", e);
+            }
         }
+        return size;
+    }
 
+    /**
+     * Performs a base backup of the PostgreSQL cluster, streamed as a tar archive over stdout.
+     *
+     * @param request         The backup request.
+     * @param databaseDetails The server to back up.
+     * @param progress        The progress of the backup, which pg_basebackup -P reports.
+     * @param target          The file the base backup is written to.
+     * @return The number of bytes written.
+     */
+    private long performBaseBackup(BackupRequest request, DatabaseDetails databaseDetails, BackupProgress progress, Path target) {
         try {
-            // Restore base backup
-            String restoreCommand = String.format("pg_restore -h %s -p %d -U %s -d %s -c %s",
-                    databaseDetails.getHost(),
-                    databaseDetails.getPort(),
-                    databaseDetails.getUsername(),
-                    databaseDetails.getDatabaseName(),
-                    baseBackupPath);
-
-            executeCommand(restoreCommand, databaseDetails.getPassword());
-
-            // Apply WAL files
-            String walReplayCommand = String.format("pg_waldump %s | pg_rewind -h %s -p %d -U %s -D %s",
-                    walDirectory,
-                    databaseDetails.getHost(),
-                    databaseDetails.getPort(),
-                    databaseDetails.getUsername(),
-                    databaseDetails.getDatabaseName());
-
-            executeCommand(walReplayCommand, databaseDetails.getPassword());
-            logger.info("Database restored using base backup and WAL files from {}", walDirectory);
-
+            //WAL needed for consistency is fetched into the tar, as streaming it is not possible when writing to stdout
+            List<String> command = List.of(
+                    "pg_basebackup",
+                    "-h", databaseDetails.getHost(),
+                    "-p", String.valueOf(databaseDetails.getPort()),
+                    "-U", databaseDetails.getUsername(),
+                    "-D", "-", "-F", "t", "-X", "fetch", "-P");
+
+            return executeCommand(command, databaseDetails, request, progress, createSink(request), target);
         } catch (Exception e) {
-            throw new CustomBacktException("Failed to restore database: ", e);
+            throw new CustomBacktException("Failed to perform base backup: ", e);
         }
     }
 
-
-
-
-    @Override
-    public Path performDifferentialBackup(String backupDirectory) {
+    private long performDifferentialBackup(BackupRequest request, Path target) {
         throw new UnsupportedOperationException("Differential backup is not supported natively for Postgres.");
     }
-
-    @Override
-    public void getBackupMetadata(BackupMetadataDto metadata) {
-        logger.info("Backup completed. Type: {}, Database_name: {}, Path: {}, Timestamp: {}", metadata.backupType(), metadata.dbName(), metadata.backupFilePath(), metadata.timestamp());
-
-        String jsonMetadata = String.format("{\"backupType\": \"%s\", \"dbName\": \"%s\", \"filePath\": \"%s\", \"timestamp\": \"%s\"}\n", metadata.backupType(), metadata.dbName(), metadata.backupFilePath().toString(), metadata.timestamp());
-
-        try {
-            Files.writeString(Paths.get("backup_metadata.json"), jsonMetadata, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            logger.error("Failed to write backup metadata", e);
-        }
-    }
 }
@@ -3,29 +3,35 @@ package com.kolade.backt.postgres;
 import com.kolade.backt.common.DatabaseConnection;
 import com.kolade.backt.common.DatabaseDetails;
 import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
 import com.kolade.backt.exception.CustomBacktException;
 import com.kolade.backt.exception.DatabaseConnectionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Component;
 
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
-@Component("postgres")
+/**
+ * A PostgreSQL database connected from the shell. Connections are borrowed from the pool of the server, so backups of
+ * the same server reuse them.
+ */
 public class PostgresConnection implements DatabaseConnection {
 
     private static final Logger logger = LoggerFactory.getLogger(PostgresConnection.class);
 
-    private Connection connection;
+    private final ConnectionManager connectionManager;
+    private DatabaseDetails databaseDetails;
 
+    public PostgresConnection(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
 
     @Override
     public void connect(DatabaseDetails databaseDetails) {
-        try {
-            connection = DriverManager.getConnection(databaseDetails.getConnectionUrl(), databaseDetails.getUsername(), databaseDetails.getPassword());
+        //borrowing a connection proves the details work, and leaves it open in the pool
+        try (Connection connection = connectionManager.getConnection(databaseDetails)) {
+            this.databaseDetails = databaseDetails;
         } catch (SQLException e) {
             throw new DatabaseConnectionException("Unable to connect to the PostgreSQL database", e, databaseDetails.getConnectionUrl());
         }
@@ -35,8 +41,11 @@ public class PostgresConnection implements DatabaseConnection {
 
     @Override
     public boolean testConnection() {
-        try {
-            return connection != null && !connection.isClosed() && connection.isValid(2);
+        if (databaseDetails == null) {
+            return false;
+        }
+        try (Connection connection = connectionManager.getConnection(databaseDetails)) {
+            return connection.isValid(2);
         } catch (SQLException e) {
             logger.error("Error testing connection", e);
             return false;
@@ -45,12 +54,9 @@ public class PostgresConnection implements DatabaseConnection {
 
     @Override
     public void disconnect() {
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                throw new CustomBacktException("Unable to close connection", e);
-            }
+        if (databaseDetails != null) {
+            connectionManager.release(databaseDetails);
+            databaseDetails = null;
         }
 
     }
@@ -61,9 +67,13 @@ public class PostgresConnection implements DatabaseConnection {
     }
 
     @Override
+    public DatabaseDetails getDatabaseDetails() {
+        return databaseDetails;
+    }
+
     public String getDatabaseName() {
-        if (connection != null) {
-            try {
+        if (databaseDetails != null) {
+            try (Connection connection = connectionManager.getConnection(databaseDetails)) {
                 return connection.getCatalog();
             } catch (SQLException e) {
                 throw new CustomBacktException("unable to get database name", e);
@@ -73,13 +83,11 @@ public class PostgresConnection implements DatabaseConnection {
     }
 
 
-    @Override
     public String getDatabaseVersion() {
-        if (connection != null) {
-            try{
-                DatabaseMetaData metaData = connection.getMetaData();
-                return metaData.getDatabaseProductVersion();
-            }catch (SQLException e){
+        if (databaseDetails != null) {
+            try (Connection connection = connectionManager.getConnection(databaseDetails)) {
+                return connection.getMetaData().getDatabaseProductVersion();
+            } catch (SQLException e) {
                 throw new CustomBacktException("unable to get database version", e);
             }
         }
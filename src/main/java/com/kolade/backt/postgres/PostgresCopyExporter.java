@@ -0,0 +1,240 @@
+package com.kolade.backt.postgres;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.pipeline.BackupFileWriter;
+import com.kolade.backt.pipeline.BackupOutputStream;
+import com.kolade.backt.process.ProcessRunner;
+import com.kolade.backt.process.ProcessSpec;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports a PostgreSQL database in-process with the PgJDBC {@link CopyManager}.
+ * <p>
+ * A coordinator transaction exports its snapshot with {@code pg_export_snapshot()}; every worker connection imports it
+ * with {@code SET TRANSACTION SNAPSHOT}, so all tables are read at the same point in time. Each table is streamed with
+ * {@code COPY ... TO STDOUT (FORMAT binary)} into its own file, through the same compression stage as the dump tools.
+ * The schema is dumped by pg_dump from the same snapshot.
+ */
+@Component
+@RequiredArgsConstructor
+public class PostgresCopyExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresCopyExporter.class);
+    public static final String SCHEMA_FILE = "schema.dump";
+    public static final String TABLE_LIST_FILE = "tables";
+
+    private final BackupFileWriter backupFileWriter;
+    private final ProcessRunner processRunner;
+    private final ConnectionManager connectionManager;
+
+    public record ExportResult(Path directory, String snapshotId, int tableCount, long rowCount, long bytesWritten) {
+    }
+
+    private record TableInfo(String schema, String name) {
+
+        String qualifiedName() {
+            return quoteIdentifier(schema) + "." + quoteIdentifier(name);
+        }
+
+        String fileName() {
+            return schema + "." + name + ".copy";
+        }
+    }
+
+    private record TableExport(TableInfo table, String fileName, long rows, long bytes) {
+    }
+
+    /**
+     * Exports every table of {@code databaseName} into {@code outputDirectory}.
+     *
+     * @param workers  number of parallel worker connections
+     * @param compress gzip every table file with the parallel compressor
+     */
+    public ExportResult export(DatabaseDetails databaseDetails, String databaseName, Path outputDirectory, int workers, boolean compress) throws IOException {
+        Files.createDirectories(outputDirectory);
+        List<Connection> connections = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            Connection coordinator = open(databaseDetails, databaseName);
+            connections.add(coordinator);
+            String snapshotId = exportSnapshot(coordinator);
+            logger.info("Exported snapshot {} for {}", snapshotId, databaseName);
+
+            List<TableInfo> tables = listTables(coordinator);
+            List<Connection> workerConnections = new ArrayList<>();
+            int poolWorkers = connectionManager.workerLimit(workers);
+            if (poolWorkers < workers) {
+                logger.warn("Exporting {} with {} instead of {} workers, the connection pool holds {} connections", databaseName, poolWorkers, workers, connectionManager.maxPoolSize());
+            }
+            for (int i = 0; i < Math.min(poolWorkers, Math.max(1, tables.size())); i++) {
+                Connection connection = open(databaseDetails, databaseName);
+                connections.add(connection);
+                importSnapshot(connection, snapshotId);
+                workerConnections.add(connection);
+            }
+
+            dumpSchema(databaseDetails, databaseName, snapshotId, outputDirectory);
+
+            Queue<TableInfo> queue = new ConcurrentLinkedQueue<>(tables);
+            List<Future<List<TableExport>>> futures = new ArrayList<>();
+            for (Connection connection : workerConnections) {
+                futures.add(executor.submit(() -> {
+                    CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+                    List<TableExport> exported = new ArrayList<>();
+                    TableInfo table;
+                    while ((table = queue.poll()) != null) {
+                        exported.add(exportTable(copyManager, table, outputDirectory, compress));
+                    }
+                    connection.commit();
+                    return exported;
+                }));
+            }
+
+            List<TableExport> exports = new ArrayList<>();
+            for (Future<List<TableExport>> future : futures) {
+                exports.addAll(future.get());
+            }
+            coordinator.commit();
+
+            writeTableList(outputDirectory, exports);
+            long rows = exports.stream().mapToLong(TableExport::rows).sum();
+            long bytes = exports.stream().mapToLong(TableExport::bytes).sum();
+            return new ExportResult(outputDirectory, snapshotId, exports.size(), rows, bytes);
+
+        } catch (SQLException e) {
+            throw new BackupException("COPY export of " + databaseName + " failed: " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new BackupException("COPY export of " + databaseName + " failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackupException("COPY export of " + databaseName + " was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+            for (Connection connection : connections) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private Connection open(DatabaseDetails databaseDetails, String databaseName) throws SQLException {
+        String url = String.format("jdbc:postgresql://%s:%d/%s", databaseDetails.getHost(), databaseDetails.getPort(), databaseName);
+        Connection connection = connectionManager.getConnection(url, databaseDetails);
+        //the pool rolls back and resets both when the connection is returned
+        connection.setAutoCommit(false);
+        connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        return connection;
+    }
+
+    /**
+     * The snapshot stays importable for as long as the coordinator transaction is open.
+     */
+    private String exportSnapshot(Connection coordinator) throws SQLException {
+        try (Statement statement = coordinator.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT pg_export_snapshot()")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    private void importSnapshot(Connection worker, String snapshotId) throws SQLException {
+        //must be the first statement of the worker's transaction
+        try (Statement statement = worker.createStatement()) {
+            statement.execute("SET TRANSACTION SNAPSHOT '" + snapshotId.replace("'", "''") + "'");
+        }
+    }
+
+    private List<TableInfo> listTables(Connection connection) throws SQLException {
+        List<TableInfo> tables = new ArrayList<>();
+        //largest first, so the long copies start early and small tables fill the gaps at the end
+        String query = """
+                SELECT n.nspname, c.relname
+                FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE c.relkind = 'r' AND n.nspname NOT IN ('pg_catalog', 'information_schema') AND n.nspname NOT LIKE 'pg_toast%'
+                ORDER BY pg_table_size(c.oid) DESC
+                """;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(query)) {
+            while (resultSet.next()) {
+                tables.add(new TableInfo(resultSet.getString(1), resultSet.getString(2)));
+            }
+        }
+        return tables;
+    }
+
+    private void dumpSchema(DatabaseDetails databaseDetails, String databaseName, String snapshotId, Path outputDirectory) {
+        processRunner.run(ProcessSpec.builder()
+                .arg("pg_dump")
+                .arg("-h").arg(databaseDetails.getHost())
+                .arg("-p").arg(String.valueOf(databaseDetails.getPort()))
+                .arg("-U").arg(databaseDetails.getUsername())
+                .arg("-d").arg(databaseName)
+                .arg("--snapshot=" + snapshotId)
+                .arg("--schema-only")
+                .arg("-F").arg("c")
+                .arg("-f").arg(outputDirectory.resolve(SCHEMA_FILE).toString())
+                .env("PGPASSWORD", Objects.toString(databaseDetails.getPassword(), ""))
+                .build());
+    }
+
+    private TableExport exportTable(CopyManager copyManager, TableInfo table, Path directory, boolean compress) throws SQLException, IOException {
+        long startTime = System.nanoTime();
+        String fileName = compress ? table.fileName() + ".gz" : table.fileName();
+        BackupOutputStream out = backupFileWriter.open(directory.resolve(fileName), compress, 0, 0);
+        long rows;
+        try (out) {
+            rows = copyManager.copyOut("COPY " + table.qualifiedName() + " TO STDOUT (FORMAT binary)", out);
+        }
+        logger.info("Copied {} ({} rows, {} bytes) in {} ms", table.qualifiedName(), rows, out.getBytesWritten(), (System.nanoTime() - startTime) / 1_000_000);
+        return new TableExport(table, fileName, rows, out.getBytesWritten());
+    }
+
+    /**
+     * One line per table: schema, table, data file and row count, tab separated. Read back on restore.
+     */
+    private void writeTableList(Path directory, List<TableExport> exports) throws IOException {
+        StringBuilder tableList = new StringBuilder();
+        for (TableExport export : exports) {
+            tableList.append(export.table().schema()).append('\t')
+                    .append(export.table().name()).append('\t')
+                    .append(export.fileName()).append('\t')
+                    .append(export.rows()).append('\n');
+        }
+        Files.writeString(directory.resolve(TABLE_LIST_FILE), tableList);
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Unable to close export connection: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.kolade.backt.postgres;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.connection.ConnectionManager;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+
+/**
+ * Picks the number of parallel pg_dump / pg_restore jobs.
+ * <p>
+ * Tables are the unit of parallelism, so the largest table bounds the run time no matter how many jobs are used.
+ * Jobs beyond {@code total size / largest table} only sit idle, as do jobs beyond the core count or the table count.
+ */
+@Component
+@RequiredArgsConstructor
+public class PostgresJobPlanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresJobPlanner.class);
+    private static final String TABLE_SIZES_QUERY = """
+            SELECT COALESCE(SUM(pg_table_size(c.oid)), 0), COALESCE(MAX(pg_table_size(c.oid)), 0), COUNT(*)
+            FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+            WHERE c.relkind IN ('r', 'm') AND n.nspname NOT IN ('pg_catalog', 'information_schema') AND n.nspname NOT LIKE 'pg_toast%'
+            """;
+
+    private final ConnectionManager connectionManager;
+
+    /**
+     * Plans dump jobs from the table sizes of the live database. Falls back to the core count if they cannot be read.
+     */
+    public int planDumpJobs(DatabaseDetails databaseDetails, String databaseName) {
+        String url = String.format("jdbc:postgresql://%s:%d/%s", databaseDetails.getHost(), databaseDetails.getPort(), databaseName);
+        try (Connection connection = connectionManager.getConnection(url, databaseDetails);
+             PreparedStatement statement = connection.prepareStatement(TABLE_SIZES_QUERY);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            int jobs = plan(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3));
+            logger.info("Planned {} dump jobs for {} ({} tables, {} bytes, largest {} bytes)", jobs, databaseName, resultSet.getLong(3), resultSet.getLong(1), resultSet.getLong(2));
+            return jobs;
+        } catch (SQLException e) {
+            logger.warn("Unable to read table sizes of {}, using one job per core: {}", databaseName, e.getMessage());
+            return availableCores();
+        }
+    }
+
+    /**
+     * Estimates the size of a dump of the database from its table sizes, for the progress of the backup.
+     *
+     * @return the size of the user tables in bytes, or -1 if it cannot be read
+     */
+    public long estimateDumpSize(DatabaseDetails databaseDetails, String databaseName) {
+        String url = String.format("jdbc:postgresql://%s:%d/%s", databaseDetails.getHost(), databaseDetails.getPort(), databaseName);
+        try (Connection connection = connectionManager.getConnection(url, databaseDetails);
+             PreparedStatement statement = connection.prepareStatement(TABLE_SIZES_QUERY);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            logger.warn("Unable to read table sizes of {}, its backup will report no ETA: {}", databaseName, e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Plans restore jobs from the per-table data files of a directory-format dump.
+     * A single-file custom-format dump carries no size distribution, so it gets one job per core.
+     */
+    public int planRestoreJobs(Path dumpPath) {
+        if (!Files.isDirectory(dumpPath)) {
+            return availableCores();
+        }
+        try (Stream<Path> files = Files.list(dumpPath)) {
+            long[] sizes = files
+                    .filter(file -> file.getFileName().toString().matches("\\d+\\.dat(\\.gz)?"))
+                    .mapToLong(file -> file.toFile().length())
+                    .toArray();
+            long total = 0;
+            long largest = 0;
+            for (long size : sizes) {
+                total += size;
+                largest = Math.max(largest, size);
+            }
+            return plan(total, largest, sizes.length);
+        } catch (IOException e) {
+            logger.warn("Unable to inspect {}, using one job per core: {}", dumpPath, e.getMessage());
+            return availableCores();
+        }
+    }
+
+    static int plan(long totalBytes, long largestBytes, long tableCount) {
+        int cores = availableCores();
+        if (tableCount <= 1 || largestBytes <= 0) {
+            return 1;
+        }
+        long useful = (totalBytes + largestBytes - 1) / largestBytes;
+        return (int) Math.max(1, Math.min(useful, Math.min(cores, tableCount)));
+    }
+
+    private static int availableCores() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,244 @@
+package com.kolade.backt.postgres;
+
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
+import com.kolade.backt.crypto.BackupEncryption;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.process.ProcessRunner;
+import com.kolade.backt.process.ProcessSpec;
+import com.kolade.backt.restore.DatabaseRestorer;
+import com.kolade.backt.restore.RestoreRequest;
+import com.kolade.backt.restore.RestoreStreams;
+import com.kolade.backt.util.BackupUtil;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Restores PostgreSQL backups.
+ * <p>
+ * Compressed archives are inflated in parallel and piped into pg_restore. Binary COPY exports are loaded table by
+ * table over several connections, each reading its file through the same pipeline, with indexes and constraints
+ * created afterwards. Physical base backups are extracted with tar into an empty data directory.
+ */
+@Component
+@RequiredArgsConstructor
+public class PostgresRestorer implements DatabaseRestorer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresRestorer.class);
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final ProcessRunner processRunner;
+    private final RestoreStreams restoreStreams;
+    private final PostgresJobPlanner jobPlanner;
+    private final ConnectionManager connectionManager;
+
+    private record TableFile(String schema, String name, Path file) {
+
+        String qualifiedName() {
+            return quoteIdentifier(schema) + "." + quoteIdentifier(name);
+        }
+    }
+
+    @Override
+    public DatabaseType getType() {
+        return DatabaseType.POSTGRES;
+    }
+
+    @Override
+    public long restore(BackupMetadata backup, RestoreRequest request, DatabaseDetails target) throws IOException {
+        Path backupPath = Paths.get(backup.getBackupPath());
+        return switch (backup.getBackupFormat()) {
+            case CUSTOM -> restoreArchive(backupPath, request, target);
+            case DIRECTORY -> restoreDirectory(backupPath, request, target);
+            case BINARY_COPY -> restoreBinaryCopy(backupPath, request, target);
+            case TAR -> restoreBaseBackup(backupPath, request);
+            default -> throw new BackupException(String.format("Cannot restore a %s backup into PostgreSQL", backup.getBackupFormat()));
+        };
+    }
+
+    /**
+     * A compressed or encrypted custom-format archive is decoded in parallel and piped into pg_restore, which
+     * restores it sequentially as it cannot seek in a pipe, and so is an archive kept in object storage. A plain local
+     * archive is handed over as a file instead, so pg_restore can run parallel jobs itself.
+     */
+    private long restoreArchive(Path archive, RestoreRequest request, DatabaseDetails target) throws IOException {
+        if (restoreStreams.isLocal(archive) && !archive.getFileName().toString().endsWith(".gz") && !BackupEncryption.isEncrypted(archive)) {
+            int jobs = request.jobs() > 0 ? request.jobs() : jobPlanner.planRestoreJobs(archive);
+            processRunner.run(pgRestore(request, target).arg("-j").arg(String.valueOf(jobs)).arg(archive.toString()).build());
+            return Files.size(archive);
+        }
+        LongAdder bytesRestored = new LongAdder();
+        processRunner.run(pgRestore(request, target)
+                .stdinFeeder(restoreStreams.feeder(List.of(archive), bytesRestored))
+                .build());
+        return bytesRestored.sum();
+    }
+
+    /**
+     * pg_restore reads the table files of a directory-format dump with its own parallel jobs.
+     */
+    private long restoreDirectory(Path directory, RestoreRequest request, DatabaseDetails target) throws IOException {
+        int jobs = request.jobs() > 0 ? request.jobs() : jobPlanner.planRestoreJobs(directory);
+        processRunner.run(pgRestore(request, target).arg("-j").arg(String.valueOf(jobs)).arg(directory.toString()).build());
+        return BackupUtil.sizeOf(directory);
+    }
+
+    /**
+     * Creates the tables from the schema dump, loads every table file with {@code COPY ... FROM STDIN (FORMAT binary)}
+     * over parallel connections, largest first, and then creates indexes, constraints and triggers.
+     */
+    private long restoreBinaryCopy(Path directory, RestoreRequest request, DatabaseDetails target) throws IOException {
+        Path schema = directory.resolve(PostgresCopyExporter.SCHEMA_FILE);
+        List<TableFile> tables = readTableList(directory);
+        int jobs = request.jobs() > 0 ? request.jobs() : Runtime.getRuntime().availableProcessors();
+
+        processRunner.run(pgRestore(request, target).arg("--section=pre-data").arg(schema.toString()).build());
+
+        LongAdder bytesRestored = new LongAdder();
+        Queue<TableFile> queue = new ConcurrentLinkedQueue<>(tables);
+        int workers = Math.max(1, Math.min(connectionManager.workerLimit(jobs), tables.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> {
+                    try (Connection connection = open(target, request.targetDatabase())) {
+                        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+                        TableFile table;
+                        while ((table = queue.poll()) != null) {
+                            bytesRestored.add(loadTable(copyManager, table));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new BackupException("COPY restore into " + request.targetDatabase() + " failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackupException("COPY restore into " + request.targetDatabase() + " was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        processRunner.run(pgRestore(request, target)
+                .arg("--section=post-data")
+                .arg("-j").arg(String.valueOf(jobs))
+                .arg(schema.toString())
+                .build());
+        return bytesRestored.sum();
+    }
+
+    private long loadTable(CopyManager copyManager, TableFile table) throws SQLException, IOException {
+        long startTime = System.nanoTime();
+        CopyIn copyIn = copyManager.copyIn("COPY " + table.qualifiedName() + " FROM STDIN (FORMAT binary)");
+        long bytes = 0;
+        try (InputStream in = restoreStreams.open(table.file())) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                copyIn.writeToCopy(buffer, 0, n);
+                bytes += n;
+            }
+            long rows = copyIn.endCopy();
+            logger.info("Loaded {} ({} rows, {} bytes) in {} ms", table.qualifiedName(), rows, bytes, (System.nanoTime() - startTime) / 1_000_000);
+            return bytes;
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Extracts a base backup tar into an empty data directory. Replaying archived WAL on startup is left to
+     * the server's restore_command.
+     */
+    private long restoreBaseBackup(Path archive, RestoreRequest request) throws IOException {
+        Path dataDirectory = request.targetDirectory();
+        if (dataDirectory == null) {
+            throw new BackupException("Base backups are extracted into a data directory, a target directory is required");
+        }
+        Files.createDirectories(dataDirectory);
+        try (Stream<Path> entries = Files.list(dataDirectory)) {
+            if (entries.findAny().isPresent()) {
+                throw new BackupException(String.format("Target directory %s is not empty", dataDirectory));
+            }
+        }
+        LongAdder bytesRestored = new LongAdder();
+        processRunner.run(ProcessSpec.builder()
+                .arg("tar").arg("-x").arg("-f").arg("-").arg("-C").arg(dataDirectory.toString())
+                .stdinFeeder(restoreStreams.feeder(List.of(archive), bytesRestored))
+                .timeout(request.timeout())
+                .build());
+        logger.info("Extracted base backup {} into {}", archive, dataDirectory);
+        return bytesRestored.sum();
+    }
+
+    private ProcessSpec.ProcessSpecBuilder pgRestore(RestoreRequest request, DatabaseDetails target) {
+        return ProcessSpec.builder()
+                .arg("pg_restore")
+                .arg("-h").arg(target.getHost())
+                .arg("-p").arg(String.valueOf(target.getPort()))
+                .arg("-U").arg(target.getUsername())
+                .arg("-d").arg(request.targetDatabase())
+                .arg("--clean").arg("--if-exists")
+                .env("PGPASSWORD", Objects.toString(target.getPassword(), ""))
+                .timeout(request.timeout());
+    }
+
+    /**
+     * Reads the table list written by {@link PostgresCopyExporter}, largest file first.
+     */
+    private List<TableFile> readTableList(Path directory) throws IOException {
+        List<TableFile> tables = new ArrayList<>();
+        for (String line : Files.readAllLines(directory.resolve(PostgresCopyExporter.TABLE_LIST_FILE))) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            tables.add(new TableFile(fields[0], fields[1], directory.resolve(fields[2])));
+        }
+        tables.sort(Comparator.comparingLong((TableFile table) -> table.file().toFile().length()).reversed());
+        return tables;
+    }
+
+    private Connection open(DatabaseDetails target, String databaseName) throws SQLException {
+        String url = String.format("jdbc:postgresql://%s:%d/%s", target.getHost(), target.getPort(), databaseName);
+        return connectionManager.getConnection(url, target);
+    }
+
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
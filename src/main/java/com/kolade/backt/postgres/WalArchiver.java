@@ -0,0 +1,336 @@
+package com.kolade.backt.postgres;
+
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.pipeline.ParallelCompressor;
+import com.kolade.backt.pipeline.ParallelGzipOutputStream;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Copies new WAL segments from a source directory into a compressed archive.
+ * <p>
+ * The name of the last archived segment is kept in the archive, so every run only picks up segments that came after
+ * it. Segments are gzipped in parallel and synced to disk a batch at a time, and a SHA-256 of every segment is
+ * appended to {@value #CHECKSUM_FILE} in {@code sha256sum} format.
+ * <p>
+ * The source is either a staging directory filled by {@code archive_command} or {@code pg_wal} itself. For
+ * {@code pg_wal} only segments that have an {@code archive_status} entry are taken, since the others are still being
+ * written or are recycled ones. An {@code archive_command} writing to a staging directory should copy to a temporary
+ * name and rename, e.g. {@code cp %p /staging/%f.tmp && mv /staging/%f.tmp /staging/%f}. Staged segments are also
+ * only taken once they have a valid segment size and have settled, and never past one that has not, so the last
+ * archived segment never skips over a gap. Source files are never modified or removed.
+ */
+@Component
+public class WalArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(WalArchiver.class);
+    public static final String STATE_FILE = "last-archived";
+    public static final String CHECKSUM_FILE = "SHA256SUMS";
+    private static final String ARCHIVE_STATUS = "archive_status";
+    //wal_segment_size is a power of two of at least 1 MiB
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    //a staged segment is only taken once it has not been touched for this long
+    private static final long SETTLE_MILLIS = 2000;
+    private static final Pattern SEGMENT = Pattern.compile("[0-9A-F]{24}");
+    //timeline history, backup labels and the partial segment left behind by a promotion
+    private static final Pattern AUXILIARY = Pattern.compile("[0-9A-F]{8}\\.history|[0-9A-F]{24}\\.partial|[0-9A-F]{24}\\.[0-9A-F]{8}\\.backup");
+
+    private final ParallelCompressor parallelCompressor;
+    private final WalArchiverProperties properties;
+    private final ExecutorService workers;
+    private final Map<Path, Object> archiveLocks = new ConcurrentHashMap<>();
+    private final Map<Path, Watch> watches = new ConcurrentHashMap<>();
+
+    public record ArchiveResult(int filesArchived, long bytesIn, long bytesOut, String lastSegment) {
+    }
+
+    private record ArchivedFile(String name, Path tempFile, Path archiveFile, String sha256, long bytesIn, long bytesOut) {
+    }
+
+    private record Watch(Path sourceDirectory, Path archiveDirectory, WatchService watchService, Thread thread) {
+    }
+
+    public WalArchiver(ParallelCompressor parallelCompressor, WalArchiverProperties properties) {
+        this.parallelCompressor = parallelCompressor;
+        this.properties = properties;
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(properties.workers(), runnable -> new Thread(runnable, "backt-wal-" + counter.incrementAndGet()));
+    }
+
+    /**
+     * Archives every segment that is newer than the last archived one, plus history and backup label files
+     * that are not in the archive yet.
+     */
+    public ArchiveResult archive(Path sourceDirectory, Path archiveDirectory) throws IOException {
+        Path archive = archiveDirectory.toAbsolutePath().normalize();
+        synchronized (archiveLocks.computeIfAbsent(archive, key -> new Object())) {
+            Files.createDirectories(archive);
+            String lastSegment = readState(archive);
+            List<String> pending = pendingFiles(sourceDirectory, archive, lastSegment);
+
+            int archived = 0;
+            long bytesIn = 0;
+            long bytesOut = 0;
+            for (int start = 0; start < pending.size(); start += properties.batchSize()) {
+                List<ArchivedFile> batch = compressBatch(sourceDirectory, archive, pending.subList(start, Math.min(pending.size(), start + properties.batchSize())));
+                lastSegment = commitBatch(archive, batch, lastSegment);
+                archived += batch.size();
+                bytesIn += batch.stream().mapToLong(ArchivedFile::bytesIn).sum();
+                bytesOut += batch.stream().mapToLong(ArchivedFile::bytesOut).sum();
+            }
+            if (archived > 0) {
+                logger.info("Archived {} WAL files into {} ({} bytes, {} compressed), last segment {}", archived, archive, bytesIn, bytesOut, lastSegment);
+            }
+            return new ArchiveResult(archived, bytesIn, bytesOut, lastSegment);
+        }
+    }
+
+    /**
+     * Watches {@code sourceDirectory} and archives new segments as they appear. The directory is rescanned every
+     * poll interval as well, as not every filesystem delivers change events.
+     */
+    public void startWatching(Path sourceDirectory, Path archiveDirectory) throws IOException {
+        Path source = sourceDirectory.toAbsolutePath().normalize();
+        if (watches.containsKey(source)) {
+            throw new BackupException("Already archiving WAL from " + source);
+        }
+        Path statusDirectory = source.resolve(ARCHIVE_STATUS);
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        (Files.isDirectory(statusDirectory) ? statusDirectory : source).register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(() -> watch(source, archiveDirectory, watchService), "backt-wal-watch-" + source.getFileName());
+        thread.setDaemon(true);
+        watches.put(source, new Watch(source, archiveDirectory, watchService, thread));
+        thread.start();
+        logger.info("Watching {} for WAL segments, archiving into {}", source, archiveDirectory);
+    }
+
+    public boolean stopWatching(Path sourceDirectory) {
+        Watch watch = watches.remove(sourceDirectory.toAbsolutePath().normalize());
+        if (watch == null) {
+            return false;
+        }
+        try {
+            watch.watchService().close();
+        } catch (IOException e) {
+            logger.warn("Unable to close WAL watch on {}: {}", watch.sourceDirectory(), e.getMessage());
+        }
+        watch.thread().interrupt();
+        return true;
+    }
+
+    /**
+     * @return the watched source directories and the archive each one is written to
+     */
+    public Map<Path, Path> watchedDirectories() {
+        Map<Path, Path> watched = new ConcurrentHashMap<>();
+        watches.values().forEach(watch -> watched.put(watch.sourceDirectory(), watch.archiveDirectory()));
+        return watched;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        List.copyOf(watches.keySet()).forEach(this::stopWatching);
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    private void watch(Path sourceDirectory, Path archiveDirectory, WatchService watchService) {
+        long pollMillis = properties.pollInterval().toMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                archive(sourceDirectory, archiveDirectory);
+                WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                //keep watching, the failed files are retried on the next pass
+                logger.error("WAL archiving from {} failed: {}", sourceDirectory, e.getMessage(), e);
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        logger.info("Stopped watching {}", sourceDirectory);
+    }
+
+    private List<String> pendingFiles(Path sourceDirectory, Path archiveDirectory, String lastSegment) throws IOException {
+        boolean walDirectory = Files.isDirectory(sourceDirectory.resolve(ARCHIVE_STATUS));
+        TreeSet<String> pending = new TreeSet<>();
+        for (String name : completeFiles(sourceDirectory, walDirectory)) {
+            if (SEGMENT.matcher(name).matches()) {
+                if (lastSegment == null || name.compareTo(lastSegment) > 0) {
+                    pending.add(name);
+                }
+            } else if (AUXILIARY.matcher(name).matches() && !Files.exists(archiveDirectory.resolve(name + ".gz"))) {
+                pending.add(name);
+            }
+        }
+        if (!walDirectory) {
+            for (String name : pending) {
+                if (SEGMENT.matcher(name).matches() && !isSettled(sourceDirectory.resolve(name))) {
+                    //everything from here on waits for the next pass
+                    return new ArrayList<>(pending.headSet(name));
+                }
+            }
+        }
+        return new ArrayList<>(pending);
+    }
+
+    private static boolean isSettled(Path segment) throws IOException {
+        long size = Files.size(segment);
+        return size >= MIN_SEGMENT_SIZE && Long.bitCount(size) == 1
+                && Files.getLastModifiedTime(segment).toMillis() < System.currentTimeMillis() - SETTLE_MILLIS;
+    }
+
+    /**
+     * Files that are safe to copy: those with a .ready or .done status in pg_wal, or everything in a staging directory.
+     */
+    private List<String> completeFiles(Path sourceDirectory, boolean walDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(walDirectory ? sourceDirectory.resolve(ARCHIVE_STATUS) : sourceDirectory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> !walDirectory || name.endsWith(".ready") || name.endsWith(".done"))
+                    .map(name -> walDirectory ? name.substring(0, name.lastIndexOf('.')) : name)
+                    .toList();
+        }
+    }
+
+    private List<ArchivedFile> compressBatch(Path sourceDirectory, Path archiveDirectory, List<String> names) throws IOException {
+        List<Future<ArchivedFile>> futures = new ArrayList<>();
+        for (String name : names) {
+            futures.add(workers.submit(() -> compressFile(sourceDirectory.resolve(name), archiveDirectory, name)));
+        }
+        List<ArchivedFile> batch = new ArrayList<>();
+        try {
+            for (Future<ArchivedFile> future : futures) {
+                batch.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new BackupException("Failed to archive WAL: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackupException("WAL archiving was interrupted", e);
+        }
+        return batch;
+    }
+
+    /**
+     * Compresses one file into a temporary name in the archive. It is not synced here, that happens for the whole batch.
+     */
+    private ArchivedFile compressFile(Path source, Path archiveDirectory, String name) throws IOException {
+        MessageDigest digest = sha256();
+        Path tempFile = archiveDirectory.resolve(name + ".gz.tmp");
+        ParallelGzipOutputStream gzip = parallelCompressor.gzip(new BufferedOutputStream(Files.newOutputStream(tempFile), 256 * 1024), 0, 1);
+        try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest); gzip) {
+            in.transferTo(gzip);
+        }
+        return new ArchivedFile(name, tempFile, archiveDirectory.resolve(name + ".gz"), HexFormat.of().formatHex(digest.digest()), gzip.getBytesIn(), gzip.getBytesOut());
+    }
+
+    /**
+     * Makes a batch durable with one pass of syncs: the files, their checksums, the new state and finally the
+     * directory, which covers all the renames.
+     *
+     * @return the last archived segment after this batch
+     */
+    private String commitBatch(Path archiveDirectory, List<ArchivedFile> batch, String lastSegment) throws IOException {
+        for (ArchivedFile file : batch) {
+            try (FileChannel channel = FileChannel.open(file.tempFile(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        StringBuilder checksums = new StringBuilder();
+        for (ArchivedFile file : batch) {
+            Files.move(file.tempFile(), file.archiveFile(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            checksums.append(file.sha256()).append("  ").append(file.name()).append('\n');
+            if (SEGMENT.matcher(file.name()).matches() && (lastSegment == null || file.name().compareTo(lastSegment) > 0)) {
+                lastSegment = file.name();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(archiveDirectory.resolve(CHECKSUM_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(checksums.toString().getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        if (lastSegment != null) {
+            writeState(archiveDirectory, lastSegment);
+        }
+        syncDirectory(archiveDirectory);
+        return lastSegment;
+    }
+
+    private String readState(Path archiveDirectory) throws IOException {
+        Path stateFile = archiveDirectory.resolve(STATE_FILE);
+        return Files.exists(stateFile) ? Files.readString(stateFile).trim() : null;
+    }
+
+    private void writeState(Path archiveDirectory, String lastSegment) throws IOException {
+        Path tempFile = archiveDirectory.resolve(STATE_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap((lastSegment + "\n").getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(tempFile, archiveDirectory.resolve(STATE_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            //not every platform can sync a directory
+            logger.debug("Unable to sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BackupException("SHA-256 is not available", e);
+        }
+    }
+}
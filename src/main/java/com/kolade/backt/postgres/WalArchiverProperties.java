@@ -0,0 +1,21 @@
+package com.kolade.backt.postgres;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the WAL archiver, bound from {@code backt.wal.*}.
+ *
+ * @param workers      number of segments compressed at the same time
+ * @param batchSize    segments written before they are synced to disk together
+ * @param pollInterval how often the watcher rescans the source directory, in case a filesystem event was missed
+ */
+@ConfigurationProperties(prefix = "backt.wal")
+public record WalArchiverProperties(
+        @DefaultValue("4") int workers,
+        @DefaultValue("64") int batchSize,
+        @DefaultValue("10s") Duration pollInterval
+) {
+}
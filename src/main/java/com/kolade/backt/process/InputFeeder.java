@@ -0,0 +1,14 @@
+package com.kolade.backt.process;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the stdin of a child process, e.g. a backup stream fed into a restore tool.
+ * The stream is closed by the {@link ProcessRunner} once this returns.
+ */
+@FunctionalInterface
+public interface InputFeeder {
+
+    void feed(OutputStream stdin) throws IOException;
+}
@@ -0,0 +1,34 @@
+package com.kolade.backt.process;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Consumes the stdout of a child process. Runs on a drainer thread of the {@link ProcessRunner}.
+ */
+@FunctionalInterface
+public interface OutputHandler {
+
+    /**
+     * @return the number of bytes consumed from the stream
+     */
+    long handle(InputStream stdout) throws IOException;
+
+    static OutputHandler logLines(Logger logger) {
+        return stdout -> {
+            long consumed = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stdout))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    logger.info(line);
+                    consumed += line.length() + 1;
+                }
+            }
+            return consumed;
+        };
+    }
+}
@@ -0,0 +1,19 @@
+package com.kolade.backt.process;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a successful process run.
+ *
+ * @param stdoutBytes bytes consumed by the stdout handler
+ * @param stderrTail  the last lines written to stderr
+ */
+public record ProcessResult(
+        String name,
+        int exitCode,
+        long stdoutBytes,
+        Duration elapsed,
+        List<String> stderrTail
+) {
+}
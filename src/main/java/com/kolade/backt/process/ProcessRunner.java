@@ -0,0 +1,191 @@
+package com.kolade.backt.process;
+
+import com.kolade.backt.exception.ProcessExecutionException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs external tools (pg_dump, mysqldump, mongodump, ...) for all backup services.
+ * <p>
+ * stdin, stdout and stderr of every child are serviced on their own threads, so a full pipe never stalls the child,
+ * and the exit status is mapped when the process exits rather than on the caller's thread.
+ * Many processes can run at once; each is killed on timeout, cancellation or shutdown.
+ */
+@Component
+public class ProcessRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessRunner.class);
+    private static final int STDERR_TAIL_LINES = 20;
+
+    private final ExecutorService ioThreads = Executors.newCachedThreadPool(daemonThreads("backt-process-io-"));
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("backt-process-timeout-"));
+    private final Set<RunningProcess> activeProcesses = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Starts the process and returns immediately.
+     */
+    public RunningProcess start(ProcessSpec spec) {
+        String name = spec.displayName();
+        ProcessBuilder processBuilder = new ProcessBuilder(spec.command());
+        processBuilder.environment().putAll(spec.environment());
+        if (spec.workingDirectory() != null) {
+            processBuilder.directory(spec.workingDirectory().toFile());
+        }
+
+        Instant startTime = Instant.now();
+        Process process;
+        try {
+            process = processBuilder.start();
+        } catch (IOException e) {
+            throw new ProcessExecutionException(name, "Unable to start " + name + ": " + e.getMessage(), e);
+        }
+        logger.info("Started {} (pid {})", name, process.pid());
+
+        RunningProcess running = new RunningProcess(spec, process);
+        Deque<String> stderrTail = new ArrayDeque<>(STDERR_TAIL_LINES);
+
+        CompletableFuture<Void> stdin = CompletableFuture.runAsync(() -> feedStdin(spec, process), ioThreads);
+        CompletableFuture<Long> stdout = CompletableFuture.supplyAsync(() -> drainStdout(spec, process), ioThreads);
+        CompletableFuture<Void> stderr = CompletableFuture.runAsync(() -> drainStderr(spec, process, stderrTail), ioThreads);
+
+        CompletableFuture<ProcessResult> result = CompletableFuture.allOf(process.onExit(), stdin, stdout, stderr)
+                .handle((ignored, error) -> mapExitStatus(running, process, startTime, stdout, stderrTail, error));
+        running.setResult(result);
+        activeProcesses.add(running);
+        result.whenComplete((r, e) -> activeProcesses.remove(running));
+
+        if (spec.timeout() != null) {
+            ScheduledFuture<?> timeout = timeoutScheduler.schedule(
+                    () -> running.terminate(ProcessExecutionException.Reason.TIMED_OUT),
+                    spec.timeout().toMillis(), TimeUnit.MILLISECONDS);
+            result.whenComplete((r, e) -> timeout.cancel(false));
+        }
+        return running;
+    }
+
+    /**
+     * Starts the process and blocks until it has finished.
+     *
+     * @throws ProcessExecutionException if the process failed, timed out or was cancelled
+     */
+    public ProcessResult run(ProcessSpec spec) {
+        return start(spec).await();
+    }
+
+    public int activeProcessCount() {
+        return activeProcesses.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        activeProcesses.forEach(RunningProcess::cancel);
+        timeoutScheduler.shutdownNow();
+        ioThreads.shutdown();
+    }
+
+    private ProcessResult mapExitStatus(RunningProcess running, Process process, Instant startTime,
+                                        CompletableFuture<Long> stdout, Deque<String> stderrTail, Throwable error) {
+        String name = running.name();
+        Duration elapsed = Duration.between(startTime, Instant.now());
+        int exitCode = process.exitValue();
+        List<String> tail;
+        synchronized (stderrTail) {
+            tail = List.copyOf(stderrTail);
+        }
+
+        ProcessExecutionException.Reason reason = running.terminationReason();
+        if (reason == ProcessExecutionException.Reason.TIMED_OUT) {
+            throw new ProcessExecutionException(name, exitCode, reason, String.format("%s timed out after %s", name, elapsed));
+        }
+        if (reason == ProcessExecutionException.Reason.CANCELLED) {
+            throw new ProcessExecutionException(name, exitCode, reason, name + " was cancelled");
+        }
+        if (error != null) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            throw new ProcessExecutionException(name, name + " failed while handling its streams: " + cause.getMessage(), cause);
+        }
+        if (exitCode != 0) {
+            throw new ProcessExecutionException(name, exitCode, ProcessExecutionException.Reason.FAILED,
+                    String.format("%s failed with exit code %d%s", name, exitCode, tail.isEmpty() ? "" : ": " + String.join("\n", tail)));
+        }
+
+        logger.info("{} finished in {}", name, elapsed);
+        return new ProcessResult(name, exitCode, stdout.join(), elapsed, tail);
+    }
+
+    private void feedStdin(ProcessSpec spec, Process process) {
+        try (OutputStream stdin = process.getOutputStream()) {
+            if (spec.stdinFeeder() != null) {
+                spec.stdinFeeder().feed(stdin);
+            }
+        } catch (IOException e) {
+            //the child is of no use without its input, so do not leave it waiting
+            process.destroyForcibly();
+            throw new UncheckedIOException("Unable to write stdin of " + spec.displayName(), e);
+        }
+    }
+
+    private long drainStdout(ProcessSpec spec, Process process) {
+        OutputHandler handler = spec.stdoutHandler() != null ? spec.stdoutHandler() : OutputHandler.logLines(logger);
+        try (InputStream stdout = process.getInputStream()) {
+            return handler.handle(stdout);
+        } catch (IOException | RuntimeException e) {
+            //nobody reads stdout any more, the child would block on the full pipe
+            process.destroyForcibly();
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+    }
+
+    private void drainStderr(ProcessSpec spec, Process process, Deque<String> stderrTail) {
+        try (BufferedReader stderr = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+            String line;
+            while ((line = stderr.readLine()) != null) {
+                logger.info("[{}] {}", spec.displayName(), line);
+                synchronized (stderrTail) {
+                    if (stderrTail.size() == STDERR_TAIL_LINES) {
+                        stderrTail.removeFirst();
+                    }
+                    stderrTail.addLast(line);
+                }
+                if (spec.stderrListener() != null) {
+                    spec.stderrListener().accept(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read stderr of " + spec.displayName(), e);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
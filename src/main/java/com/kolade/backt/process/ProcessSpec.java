@@ -0,0 +1,39 @@
+package com.kolade.backt.process;
+
+import lombok.Builder;
+import lombok.Singular;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Describes one external tool invocation. The command is passed to the OS as an argv list, never through a shell.
+ *
+ * @param name             short name used for logging and error messages, defaults to the executable
+ * @param command          executable followed by its arguments
+ * @param environment      extra environment variables, e.g. credentials that must not appear in argv
+ * @param workingDirectory working directory of the child, or null to inherit
+ * @param timeout          the process is killed once this elapses, or null for no limit
+ * @param stdoutHandler    consumer of stdout, or null to log it line by line
+ * @param stderrListener   receives every stderr line in addition to the log, e.g. for progress parsing
+ * @param stdinFeeder      producer of stdin, or null to close stdin right away
+ */
+@Builder
+public record ProcessSpec(
+        String name,
+        @Singular("arg") List<String> command,
+        @Singular("env") Map<String, String> environment,
+        Path workingDirectory,
+        Duration timeout,
+        OutputHandler stdoutHandler,
+        Consumer<String> stderrListener,
+        InputFeeder stdinFeeder
+) {
+
+    public String displayName() {
+        return name != null ? name : command.get(0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.kolade.backt.process;
+
+import com.kolade.backt.exception.ProcessExecutionException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Handle to a child process started by the {@link ProcessRunner}.
+ * The result future completes once the process has exited and both output streams are drained,
+ * independently of the thread that started it.
+ */
+public class RunningProcess {
+
+    private final ProcessSpec spec;
+    private final Process process;
+    private final AtomicReference<ProcessExecutionException.Reason> terminationReason = new AtomicReference<>();
+    private CompletableFuture<ProcessResult> result;
+
+    RunningProcess(ProcessSpec spec, Process process) {
+        this.spec = spec;
+        this.process = process;
+    }
+
+    void setResult(CompletableFuture<ProcessResult> result) {
+        this.result = result;
+    }
+
+    public String name() {
+        return spec.displayName();
+    }
+
+    public long pid() {
+        return process.pid();
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    public CompletableFuture<ProcessResult> result() {
+        return result;
+    }
+
+    /**
+     * Kills the process and everything it spawned. The result completes with a CANCELLED {@link ProcessExecutionException}.
+     */
+    public void cancel() {
+        terminate(ProcessExecutionException.Reason.CANCELLED);
+    }
+
+    /**
+     * Blocks until the process has finished. An interrupt of the waiting thread cancels the process, and returns once
+     * its output has been drained, so the caller can remove what it wrote.
+     *
+     * @throws ProcessExecutionException if the process failed, timed out or was cancelled
+     */
+    public ProcessResult await() {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            cancel();
+            //the drainers stop once the killed process has closed its pipes
+            result.exceptionally(error -> null).join();
+            Thread.currentThread().interrupt();
+            throw new ProcessExecutionException(name(), "Interrupted while waiting for " + name(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ProcessExecutionException processException) {
+                throw processException;
+            }
+            throw new ProcessExecutionException(name(), name() + " failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    ProcessExecutionException.Reason terminationReason() {
+        return terminationReason.get();
+    }
+
+    void terminate(ProcessExecutionException.Reason reason) {
+        if (terminationReason.compareAndSet(null, reason)) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+}
@@ -1,12 +1,57 @@
 package com.kolade.backt.repository;
 
+import com.kolade.backt.common.BackupFormat;
 import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface BackupMetadataRepository extends JpaRepository<BackupMetadata, Long> {
     Optional<BackupMetadata> findByBackupId(String backupId);
+
+    Optional<BackupMetadata> findFirstByDatabaseTypeAndDatabaseNameAndBinlogFileIsNotNullOrderByCreationTimeDesc(DatabaseType databaseType, String databaseName);
+
+    Optional<BackupMetadata> findFirstByDatabaseTypeAndDatabaseNameAndOplogTimestampIsNotNullOrderByOplogTimestampDesc(DatabaseType databaseType, String databaseName);
+
+    Optional<BackupMetadata> findFirstByDatabaseTypeAndDatabaseNameAndBackupTypeAndOplogTimestampIsNotNullOrderByOplogTimestampDesc(DatabaseType databaseType, String databaseName, BackupType backupType);
+
+    //latest backup of a type, e.g. the latest full; served by the (database_name, backup_type, creation_time) index
+    Optional<BackupMetadata> findFirstByDatabaseNameAndBackupTypeAndDatabaseTypeOrderByCreationTimeDesc(String databaseName, BackupType backupType, DatabaseType databaseType);
+
+    Optional<BackupMetadata> findFirstByDatabaseNameAndDatabaseTypeOrderByCreationTimeDesc(String databaseName, DatabaseType databaseType);
+
+    Optional<BackupMetadata> findFirstByDatabaseNameAndBackupTypeAndDatabaseTypeAndCreationTimeAfterOrderByCreationTimeAsc(String databaseName, BackupType backupType, DatabaseType databaseType, LocalDateTime after);
+
+    List<BackupMetadata> findByDatabaseNameAndDatabaseTypeAndCreationTimeGreaterThanEqualAndCreationTimeBeforeOrderByCreationTimeAsc(String databaseName, DatabaseType databaseType, LocalDateTime from, LocalDateTime before);
+
+    List<BackupMetadata> findByDatabaseNameAndDatabaseTypeAndCreationTimeGreaterThanEqualOrderByCreationTimeAsc(String databaseName, DatabaseType databaseType, LocalDateTime from);
+
+    //catalog listings, newest first, paged by (creation_time, id) keyset instead of offsets
+    Window<BackupSummary> findByOrderByCreationTimeDescIdDesc(ScrollPosition position, Limit limit);
+
+    Window<BackupSummary> findByDatabaseTypeOrderByCreationTimeDescIdDesc(DatabaseType databaseType, ScrollPosition position, Limit limit);
+
+    Window<BackupSummary> findByDatabaseNameOrderByCreationTimeDescIdDesc(String databaseName, ScrollPosition position, Limit limit);
+
+    Window<BackupSummary> findByDatabaseTypeAndDatabaseNameOrderByCreationTimeDescIdDesc(DatabaseType databaseType, String databaseName, ScrollPosition position, Limit limit);
+
+    //recipes still referring to chunks of the deduplicating repository
+    List<BackupSummary> findByBackupFormat(BackupFormat backupFormat);
+
+    //the whole catalog grouped by database, oldest first, in one pass over the (database_type, database_name, creation_time) index
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<BackupSummary> streamByOrderByDatabaseTypeAscDatabaseNameAscCreationTimeAscIdAsc();
 }
@@ -0,0 +1,32 @@
+package com.kolade.backt.repository;
+
+import com.kolade.backt.common.BackupFormat;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection of {@link com.kolade.backt.common.BackupMetadata} with the columns a catalog listing shows.
+ * The id and creation time are the keyset the listings are paged by.
+ */
+public interface BackupSummary {
+
+    Long getId();
+
+    String getBackupId();
+
+    DatabaseType getDatabaseType();
+
+    String getDatabaseName();
+
+    BackupType getBackupType();
+
+    BackupFormat getBackupFormat();
+
+    LocalDateTime getCreationTime();
+
+    String getBackupPath();
+
+    String getStorage();
+}
@@ -0,0 +1,21 @@
+package com.kolade.backt.repository;
+
+import com.kolade.backt.common.TableFingerprint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TableFingerprintRepository extends JpaRepository<TableFingerprint, Long> {
+    List<TableFingerprint> findByBackupId(String backupId);
+
+    //a single DELETE, where a derived delete would load and remove the rows one by one
+    @Modifying
+    @Query("delete from TableFingerprint fingerprint where fingerprint.backupId in :backupIds")
+    int deleteByBackupIds(@Param("backupIds") Collection<String> backupIds);
+}
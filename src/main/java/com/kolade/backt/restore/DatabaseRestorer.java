@@ -0,0 +1,22 @@
+package com.kolade.backt.restore;
+
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+
+import java.io.IOException;
+
+/**
+ * Restores the backups of one database type. Implementations are picked up by the {@link RestoreService}.
+ */
+public interface DatabaseRestorer {
+
+    DatabaseType getType();
+
+    /**
+     * Restores {@code backup} into {@code request.targetDatabase()} on the given server.
+     *
+     * @return the number of bytes fed to the restore tools, after decompression
+     */
+    long restore(BackupMetadata backup, RestoreRequest request, DatabaseDetails target) throws IOException;
+}
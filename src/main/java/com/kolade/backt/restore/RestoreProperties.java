@@ -0,0 +1,21 @@
+package com.kolade.backt.restore;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for the restore pipeline, bound from {@code backt.restore.*}.
+ *
+ * @param readAheadBlockSize   size of the blocks read ahead from the backup files, in bytes
+ * @param readAheadBlocks      blocks read ahead per open backup file
+ * @param decompressionWorkers gzip members inflated at the same time per stream, 0 means the whole compression pool
+ * @param jobs                 restore tools or connections loading at the same time, 0 to decide per backup
+ */
+@ConfigurationProperties(prefix = "backt.restore")
+public record RestoreProperties(
+        @DefaultValue("1048576") int readAheadBlockSize,
+        @DefaultValue("8") int readAheadBlocks,
+        @DefaultValue("0") int decompressionWorkers,
+        @DefaultValue("0") int jobs
+) {
+}
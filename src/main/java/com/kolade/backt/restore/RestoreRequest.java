@@ -0,0 +1,23 @@
+package com.kolade.backt.restore;
+
+import lombok.Builder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * @param backupId        the backup to restore
+ * @param targetDatabase  database to restore into, null for the database the backup was taken of
+ * @param jobs            restore tools or connections loading at the same time, 0 to decide per backup
+ * @param targetDirectory empty data directory a physical base backup is extracted into
+ * @param timeout         every restore tool is killed once this elapses, or null for no limit
+ */
+@Builder(toBuilder = true)
+public record RestoreRequest(
+        String backupId,
+        String targetDatabase,
+        int jobs,
+        Path targetDirectory,
+        Duration timeout
+) {
+}
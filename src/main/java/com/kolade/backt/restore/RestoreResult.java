@@ -0,0 +1,18 @@
+package com.kolade.backt.restore;
+
+import lombok.Builder;
+
+import java.time.LocalDateTime;
+
+/**
+ * @param bytesRestored bytes fed to the restore tools, after decompression
+ */
+@Builder
+public record RestoreResult(
+        String backupId,
+        String databaseName,
+        LocalDateTime startTime,
+        LocalDateTime endTime,
+        long bytesRestored
+) {
+}
@@ -0,0 +1,101 @@
+package com.kolade.backt.restore;
+
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.DatabaseConnection;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.exception.CustomBacktException;
+import com.kolade.backt.repository.BackupMetadataRepository;
+import com.kolade.backt.service.DatabaseDetailsService;
+import com.kolade.backt.storage.BackupStorage;
+import com.kolade.backt.storage.BackupStorages;
+import jakarta.persistence.EntityNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Restores backups from the catalog into the database of the active connection.
+ */
+@Service
+public class RestoreService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RestoreService.class);
+
+    private final BackupMetadataRepository metadataRepository;
+    private final DatabaseDetailsService databaseDetailsService;
+    private final RestoreProperties properties;
+    private final BackupStorages storages;
+    private final Map<DatabaseType, DatabaseRestorer> restorers = new EnumMap<>(DatabaseType.class);
+
+    public RestoreService(BackupMetadataRepository metadataRepository, DatabaseDetailsService databaseDetailsService,
+                          RestoreProperties properties, BackupStorages storages, List<DatabaseRestorer> restorers) {
+        this.metadataRepository = metadataRepository;
+        this.databaseDetailsService = databaseDetailsService;
+        this.properties = properties;
+        this.storages = storages;
+        restorers.forEach(restorer -> this.restorers.put(restorer.getType(), restorer));
+    }
+
+    public RestoreResult restore(RestoreRequest request) throws IOException {
+        BackupMetadata backup = metadataRepository.findByBackupId(request.backupId()).orElseThrow(
+                () -> new EntityNotFoundException(String.format("Backup %s not found", request.backupId()))
+        );
+        DatabaseConnection connection = databaseDetailsService.getActiveDatabaseConnection();
+        DatabaseDetails target = databaseDetailsService.getActiveDatabaseDetails();
+        if (connection == null || target == null) {
+            throw new CustomBacktException("No active database connection");
+        }
+        if (connection.getType() != backup.getDatabaseType()) {
+            throw new BackupException(String.format("Backup %s is a %s backup, the active connection is %s",
+                    backup.getBackupId(), backup.getDatabaseType().getDisplayName(), connection.getType().getDisplayName()));
+        }
+        if (backup.getBackupFormat() == null) {
+            throw new BackupException(String.format("Backup %s has no recorded format and cannot be restored automatically", backup.getBackupId()));
+        }
+        BackupStorage storage = storages.get(backup.getStorage());
+        Path backupPath = Paths.get(backup.getBackupPath());
+        if (!storage.exists(backupPath)) {
+            throw new BackupException(String.format("Files of backup %s are missing: %s", backup.getBackupId(), backup.getBackupPath()));
+        }
+        DatabaseRestorer restorer = restorers.get(backup.getDatabaseType());
+        if (restorer == null) {
+            throw new BackupException("Restore is not supported for " + backup.getDatabaseType().getDisplayName());
+        }
+
+        RestoreRequest resolved = request.toBuilder()
+                .targetDatabase(request.targetDatabase() != null ? request.targetDatabase() : backup.getDatabaseName())
+                .jobs(request.jobs() > 0 ? request.jobs() : properties.jobs())
+                .build();
+        LocalDateTime startTime = LocalDateTime.now();
+        logger.info("Restoring {} ({} {}) into {}", backup.getBackupId(), backup.getBackupType(), backup.getBackupFormat(), resolved.targetDatabase());
+        //the restore streams read the backup from its storage
+        storages.attach(backupPath, storage);
+        long bytesRestored;
+        try {
+            bytesRestored = restorer.restore(backup, resolved, target);
+        } finally {
+            storages.detach(backupPath);
+        }
+        LocalDateTime endTime = LocalDateTime.now();
+        logger.info("Restored {} into {}: {} bytes in {}", backup.getBackupId(), resolved.targetDatabase(), bytesRestored, Duration.between(startTime, endTime));
+
+        return RestoreResult.builder()
+                .backupId(backup.getBackupId())
+                .databaseName(resolved.targetDatabase())
+                .startTime(startTime)
+                .endTime(endTime)
+                .bytesRestored(bytesRestored)
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.kolade.backt.restore;
+
+import com.kolade.backt.crypto.BackupEncryption;
+import com.kolade.backt.dedup.ChunkStore;
+import com.kolade.backt.pipeline.ParallelCompressor;
+import com.kolade.backt.pipeline.ReadAheadInputStream;
+import com.kolade.backt.process.InputFeeder;
+import com.kolade.backt.storage.BackupStorages;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opens backup files as the plain streams they were made from, for the restore tools to read.
+ * <p>
+ * Every file is read ahead on its own thread, reassembled from the chunk repository if it is a recipe, decrypted on
+ * the encryption pool if it was written encrypted, and inflated on the shared compression pool if it is gzip
+ * compressed, so the next blocks are being read, decrypted and decompressed while the restore tool ingests the
+ * current one. Nothing is extracted to disk.
+ */
+@Component
+@RequiredArgsConstructor
+public class RestoreStreams {
+
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final ParallelCompressor parallelCompressor;
+    private final BackupEncryption encryption;
+    private final ChunkStore chunkStore;
+    private final RestoreProperties properties;
+    private final BackupStorages storages;
+    private final ExecutorService readers = Executors.newCachedThreadPool(daemonThreads("backt-restore-read-"));
+
+    public InputStream open(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        boolean recipe = name.endsWith(".recipe");
+        InputStream source = recipe ? chunkStore.openRecipe(file) : storages.storageFor(file).open(file);
+        //the header tells whether the file is encrypted, read off the stream so it is opened once
+        PushbackInputStream readAhead = BackupEncryption.peekable(new ReadAheadInputStream(source, readers, properties.readAheadBlockSize(), properties.readAheadBlocks()));
+        InputStream plain = !recipe && BackupEncryption.isEncrypted(readAhead) ? encryption.decrypt(readAhead) : readAhead;
+        return name.endsWith(".gz") ? parallelCompressor.gunzip(plain, properties.decompressionWorkers()) : plain;
+    }
+
+    /**
+     * @return whether {@code file} is on the local filesystem, where a restore tool can read it itself
+     */
+    public boolean isLocal(Path file) {
+        return storages.storageFor(file).isLocal();
+    }
+
+    /**
+     * Copies the plain content of {@code file} into {@code out}.
+     *
+     * @return the number of bytes copied
+     */
+    public long copy(Path file, OutputStream out) throws IOException {
+        try (InputStream in = open(file)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long copied = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                copied += n;
+            }
+            return copied;
+        }
+    }
+
+    /**
+     * Feeds the given files, one after another, into the stdin of a restore tool.
+     *
+     * @param bytesRestored incremented with every byte written
+     */
+    public InputFeeder feeder(List<Path> files, LongAdder bytesRestored) {
+        return stdin -> {
+            for (Path file : files) {
+                bytesRestored.add(copy(file, stdin));
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        readers.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,132 @@
+package com.kolade.backt.retention;
+
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.repository.BackupSummary;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a {@link RetentionPolicy} to the backups of one database.
+ * <p>
+ * The policy picks backups newest first. The picks are then closed over their chains, a full backup and the
+ * incremental and differential backups taken after it up to the next full backup: a kept incremental keeps everything
+ * before it in its chain, as each incremental builds on the backup before it, and a kept differential keeps the full
+ * backup it builds on. Restoring a kept backup never needs a deleted one.
+ */
+final class RetentionPlanner {
+
+    private final RetentionPolicy policy;
+
+    /**
+     * @param expired      backups to delete, oldest first
+     * @param kept         backups kept
+     * @param keptForChain of the kept backups, those kept only because a kept backup builds on them
+     */
+    record Plan(List<BackupSummary> expired, int kept, int keptForChain) {
+    }
+
+    RetentionPlanner(RetentionPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @param backups every backup of one database, oldest first
+     */
+    Plan plan(List<BackupSummary> backups) {
+        int count = backups.size();
+        boolean[] keep = new boolean[count];
+        pickByPolicy(backups, keep);
+        int keptForChain = closeChains(backups, keep);
+
+        List<BackupSummary> expired = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (!keep[i]) {
+                expired.add(backups.get(i));
+            }
+        }
+        return new Plan(expired, count - expired.size(), keptForChain);
+    }
+
+    private void pickByPolicy(List<BackupSummary> backups, boolean[] keep) {
+        LocalDate lastDay = null;
+        int lastWeek = -1;
+        YearMonth lastMonth = null;
+        int days = 0;
+        int weeks = 0;
+        int months = 0;
+        for (int i = backups.size() - 1; i >= 0; i--) {
+            BackupSummary backup = backups.get(i);
+            LocalDate day = backup.getCreationTime().toLocalDate();
+            if (days < policy.keepDaily() && !day.equals(lastDay)) {
+                keep[i] = true;
+                lastDay = day;
+                days++;
+            }
+            if (backup.getBackupType() != BackupType.FULL) {
+                continue;
+            }
+            int week = day.get(IsoFields.WEEK_BASED_YEAR) * 100 + day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            if (weeks < policy.keepWeekly() && week != lastWeek) {
+                keep[i] = true;
+                lastWeek = week;
+                weeks++;
+            }
+            YearMonth month = YearMonth.from(day);
+            if (months < policy.keepMonthly() && !month.equals(lastMonth)) {
+                keep[i] = true;
+                lastMonth = month;
+                months++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of backups kept for a chain that the policy did not pick
+     */
+    private int closeChains(List<BackupSummary> backups, boolean[] keep) {
+        int keptForChain = 0;
+        int chainStart = 0;
+        for (int i = 1; i <= backups.size(); i++) {
+            if (i == backups.size() || backups.get(i).getBackupType() == BackupType.FULL) {
+                keptForChain += closeChain(backups, keep, chainStart, i);
+                chainStart = i;
+            }
+        }
+        return keptForChain;
+    }
+
+    /**
+     * Closes the chain from {@code start}, its full backup unless backups were taken before the first full backup,
+     * to {@code end}, exclusive.
+     */
+    private int closeChain(List<BackupSummary> backups, boolean[] keep, int start, int end) {
+        int lastIncremental = -1;
+        boolean anyKept = false;
+        for (int i = start; i < end; i++) {
+            if (keep[i]) {
+                anyKept = true;
+                if (backups.get(i).getBackupType() == BackupType.INCREMENTAl) {
+                    lastIncremental = i;
+                }
+            }
+        }
+        if (!anyKept) {
+            return 0;
+        }
+        int added = 0;
+        //the full backup, or everything up to the last kept incremental. Before the first full backup there is no
+        //full backup to keep
+        int last = backups.get(start).getBackupType() == BackupType.FULL ? Math.max(start, lastIncremental) : lastIncremental;
+        for (int i = start; i <= last; i++) {
+            if (!keep[i]) {
+                keep[i] = true;
+                added++;
+            }
+        }
+        return added;
+    }
+}
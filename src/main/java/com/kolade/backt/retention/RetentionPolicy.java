@@ -0,0 +1,37 @@
+package com.kolade.backt.retention;
+
+import lombok.Builder;
+
+/**
+ * Grandfather-father-son retention: the latest backup of each of the last {@code keepDaily} days that have backups,
+ * and the latest full backup of each of the last {@code keepWeekly} weeks and {@code keepMonthly} months. Weeks and
+ * months keep full backups so they can be restored on their own. Counts apply per database.
+ */
+@Builder
+public record RetentionPolicy(
+        int keepDaily,
+        int keepWeekly,
+        int keepMonthly
+) {
+
+    public static RetentionPolicy from(RetentionProperties properties) {
+        return new RetentionPolicy(properties.keepDaily(), properties.keepWeekly(), properties.keepMonthly());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the policy is negative or would delete every backup
+     */
+    public void validate() {
+        if (keepDaily < 0 || keepWeekly < 0 || keepMonthly < 0) {
+            throw new IllegalArgumentException("Retention counts cannot be negative");
+        }
+        if (keepDaily + keepWeekly + keepMonthly == 0) {
+            throw new IllegalArgumentException("A retention policy that keeps nothing would delete every backup");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d daily, %d weekly, %d monthly", keepDaily, keepWeekly, keepMonthly);
+    }
+}
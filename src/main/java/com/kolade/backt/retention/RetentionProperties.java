@@ -0,0 +1,23 @@
+package com.kolade.backt.retention;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Default retention policy and pruning limits, bound from {@code backt.retention.*}.
+ *
+ * @param keepDaily     days, newest first, whose latest backup is kept
+ * @param keepWeekly    weeks, newest first, whose latest full backup is kept
+ * @param keepMonthly   months, newest first, whose latest full backup is kept
+ * @param deleteWorkers backups whose files are deleted at the same time
+ * @param batchSize     catalog rows removed per transaction
+ */
+@ConfigurationProperties(prefix = "backt.retention")
+public record RetentionProperties(
+        @DefaultValue("7") int keepDaily,
+        @DefaultValue("4") int keepWeekly,
+        @DefaultValue("12") int keepMonthly,
+        @DefaultValue("8") int deleteWorkers,
+        @DefaultValue("500") int batchSize
+) {
+}
@@ -0,0 +1,33 @@
+package com.kolade.backt.retention;
+
+import com.kolade.backt.repository.BackupSummary;
+import lombok.Builder;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @param scanned      backups in the catalog the policy was applied to
+ * @param kept         backups the policy keeps, including those kept for their chains
+ * @param keptForChain backups kept only because a kept incremental or differential builds on them
+ * @param expired      backups the policy deletes, oldest first per database
+ * @param deleted      expired backups whose files and catalog rows were removed, 0 on a dry run
+ * @param failures     expired backups that could not be removed, with the reason
+ * @param chunks       chunks of the deduplicating repository deleted because no kept backup refers to them
+ * @param chunkBytes   bytes freed by deleting those chunks
+ */
+@Builder
+public record RetentionReport(
+        RetentionPolicy policy,
+        boolean dryRun,
+        int scanned,
+        int kept,
+        int keptForChain,
+        List<BackupSummary> expired,
+        int deleted,
+        List<String> failures,
+        long chunks,
+        long chunkBytes,
+        Duration elapsed
+) {
+}
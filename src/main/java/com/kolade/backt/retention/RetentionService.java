@@ -0,0 +1,250 @@
+package com.kolade.backt.retention;
+
+import com.kolade.backt.common.BackupFormat;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.dedup.ChunkStore;
+import com.kolade.backt.manifest.BackupManifest;
+import com.kolade.backt.repository.BackupMetadataRepository;
+import com.kolade.backt.repository.BackupPhaseTimingRepository;
+import com.kolade.backt.repository.BackupSummary;
+import com.kolade.backt.repository.TableFingerprintRepository;
+import com.kolade.backt.storage.BackupStorage;
+import com.kolade.backt.storage.BackupStorages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Deletes the backups a {@link RetentionPolicy} no longer keeps, files and catalog rows.
+ * <p>
+ * The deletion set is computed in one pass over the catalog, read database by database in creation order from its
+ * index, with each database planned by {@link RetentionPlanner} as soon as its rows are read. Files are then deleted
+ * on a bounded pool, from the storage each backup was written to, and the catalog rows of the backups whose files are
+ * gone are removed in batches, one transaction per batch, while the pool carries on with the next files. A backup
+ * whose files cannot be deleted keeps its row, so the next run retries it.
+ * <p>
+ * Deleting a deduplicated backup only deletes its recipe, its chunks may be shared with other backups. Once such
+ * backups are gone, the {@link ChunkStore} deletes the chunks that no recipe left in the catalog refers to.
+ */
+@Service
+public class RetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetentionService.class);
+
+    private final BackupMetadataRepository metadataRepository;
+    private final BackupPhaseTimingRepository timingRepository;
+    private final TableFingerprintRepository fingerprintRepository;
+    private final RetentionProperties properties;
+    private final BackupStorages storages;
+    private final ChunkStore chunkStore;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    private record Deletion(BackupSummary backup, String error) {
+    }
+
+    public RetentionService(BackupMetadataRepository metadataRepository, BackupPhaseTimingRepository timingRepository,
+                            TableFingerprintRepository fingerprintRepository, RetentionProperties properties, BackupStorages storages,
+                            ChunkStore chunkStore, PlatformTransactionManager transactionManager) {
+        this.metadataRepository = metadataRepository;
+        this.timingRepository = timingRepository;
+        this.fingerprintRepository = fingerprintRepository;
+        this.properties = properties;
+        this.storages = storages;
+        this.chunkStore = chunkStore;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    public RetentionPolicy defaultPolicy() {
+        return RetentionPolicy.from(properties);
+    }
+
+    /**
+     * Applies {@code policy} to every database in the catalog, or only to those matching the filters.
+     *
+     * @param databaseType only backups of this engine, or null for all
+     * @param databaseName only backups of this database, or null for all
+     * @param dryRun       only report what would be deleted
+     */
+    public RetentionReport prune(RetentionPolicy policy, DatabaseType databaseType, String databaseName, boolean dryRun) {
+        policy.validate();
+        long startTime = System.nanoTime();
+        RetentionReport.RetentionReportBuilder report = RetentionReport.builder().policy(policy).dryRun(dryRun);
+        List<BackupSummary> expired = plan(new RetentionPlanner(policy), databaseType, databaseName, report);
+        report.expired(expired);
+
+        if (dryRun || expired.isEmpty()) {
+            return report.deleted(0).failures(List.of()).elapsed(Duration.ofNanos(System.nanoTime() - startTime)).build();
+        }
+        List<String> failures = new ArrayList<>();
+        int deleted = delete(expired, failures);
+        if (expired.stream().anyMatch(backup -> backup.getBackupFormat() == BackupFormat.RECIPE)) {
+            collectChunks(report, failures);
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startTime);
+        logger.info("Pruned {} of {} expired backups in {} ({} failed)", deleted, expired.size(), elapsed, failures.size());
+        return report.deleted(deleted).failures(failures).elapsed(elapsed).build();
+    }
+
+    /**
+     * Deletes the chunks no deduplicated backup left in the catalog refers to. A recipe whose deletion failed is still
+     * in the catalog and keeps its chunks.
+     */
+    private void collectChunks(RetentionReport.RetentionReportBuilder report, List<String> failures) {
+        try {
+            List<Path> liveRecipes = metadataRepository.findByBackupFormat(BackupFormat.RECIPE).stream()
+                    .map(BackupSummary::getBackupPath)
+                    .filter(Objects::nonNull)
+                    .map(Paths::get)
+                    .toList();
+            ChunkStore.CollectedGarbage garbage = chunkStore.collectGarbage(liveRecipes);
+            report.chunks(garbage.chunks()).chunkBytes(garbage.bytes());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to delete unreferenced chunks: {}", e.getMessage());
+            failures.add("Unreferenced chunks not deleted: " + e.getMessage());
+        }
+    }
+
+    private List<BackupSummary> plan(RetentionPlanner planner, DatabaseType databaseType, String databaseName, RetentionReport.RetentionReportBuilder report) {
+        List<BackupSummary> expired = new ArrayList<>();
+        int[] totals = new int[3];
+        readTransaction.executeWithoutResult(status -> {
+            try (Stream<BackupSummary> catalog = metadataRepository.streamByOrderByDatabaseTypeAscDatabaseNameAscCreationTimeAscIdAsc()) {
+                List<BackupSummary> group = new ArrayList<>();
+                Iterator<BackupSummary> rows = catalog
+                        .filter(backup -> databaseType == null || backup.getDatabaseType() == databaseType)
+                        .filter(backup -> databaseName == null || databaseName.equals(backup.getDatabaseName()))
+                        .iterator();
+                while (rows.hasNext()) {
+                    BackupSummary backup = rows.next();
+                    if (!group.isEmpty() && !sameDatabase(group.get(0), backup)) {
+                        planGroup(planner, group, expired, totals);
+                        group = new ArrayList<>();
+                    }
+                    group.add(backup);
+                }
+                if (!group.isEmpty()) {
+                    planGroup(planner, group, expired, totals);
+                }
+            }
+        });
+        report.scanned(totals[0]).kept(totals[1]).keptForChain(totals[2]);
+        return expired;
+    }
+
+    private static void planGroup(RetentionPlanner planner, List<BackupSummary> group, List<BackupSummary> expired, int[] totals) {
+        RetentionPlanner.Plan plan = planner.plan(group);
+        expired.addAll(plan.expired());
+        totals[0] += group.size();
+        totals[1] += plan.kept();
+        totals[2] += plan.keptForChain();
+    }
+
+    private static boolean sameDatabase(BackupSummary first, BackupSummary second) {
+        return first.getDatabaseType() == second.getDatabaseType() && Objects.equals(first.getDatabaseName(), second.getDatabaseName());
+    }
+
+    /**
+     * @return the number of backups whose files and rows were removed
+     */
+    private int delete(List<BackupSummary> expired, List<String> failures) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(properties.deleteWorkers(), expired.size())), namedThreads("backt-prune-"));
+        CompletionService<Deletion> deletions = new ExecutorCompletionService<>(pool);
+        try {
+            for (BackupSummary backup : expired) {
+                deletions.submit(() -> deleteFiles(backup));
+            }
+            int deleted = 0;
+            List<BackupSummary> batch = new ArrayList<>();
+            for (int i = 0; i < expired.size(); i++) {
+                Deletion deletion = deletions.take().get();
+                if (deletion.error() != null) {
+                    failures.add(deletion.backup().getBackupId() + ": " + deletion.error());
+                    continue;
+                }
+                batch.add(deletion.backup());
+                if (batch.size() >= properties.batchSize()) {
+                    deleted += removeRows(batch, failures);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                deleted += removeRows(batch, failures);
+            }
+            return deleted;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.add("Pruning was interrupted");
+            return 0;
+        } catch (ExecutionException e) {
+            //deleteFiles reports its errors in the result
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Deletion deleteFiles(BackupSummary backup) {
+        if (backup.getBackupPath() == null) {
+            return new Deletion(backup, null);
+        }
+        try {
+            BackupStorage storage = storages.get(backup.getStorage());
+            Path backupPath = Paths.get(backup.getBackupPath());
+            storage.delete(backupPath);
+            storage.delete(BackupManifest.manifestPath(backupPath));
+            return new Deletion(backup, null);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to delete the files of backup {}: {}", backup.getBackupId(), e.getMessage());
+            return new Deletion(backup, e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the catalog rows, phase timings and table fingerprints of a batch of backups in one transaction.
+     */
+    private int removeRows(List<BackupSummary> batch, List<String> failures) {
+        List<Long> ids = batch.stream().map(BackupSummary::getId).toList();
+        List<String> backupIds = batch.stream().map(BackupSummary::getBackupId).toList();
+        try {
+            writeTransaction.executeWithoutResult(status -> {
+                timingRepository.deleteByBackupIds(backupIds);
+                fingerprintRepository.deleteByBackupIds(backupIds);
+                metadataRepository.deleteAllByIdInBatch(ids);
+            });
+            return batch.size();
+        } catch (DataAccessException e) {
+            //the files are gone, the next run removes the rows
+            logger.error("Unable to remove {} backups from the catalog: {}", batch.size(), e.getMessage());
+            failures.add(String.format("%d backups from %s on: catalog rows not removed: %s", batch.size(), batch.get(0).getBackupId(), e.getMessage()));
+            return 0;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + counter.incrementAndGet());
+    }
+}
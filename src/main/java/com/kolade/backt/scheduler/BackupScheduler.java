@@ -0,0 +1,235 @@
+package com.kolade.backt.scheduler;
+
+import com.kolade.backt.common.BackupResult;
+import com.kolade.backt.common.BackupStatus;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.factory.BackupServiceFactory;
+import com.kolade.backt.service.BackupService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs backups of many registered targets concurrently.
+ * <p>
+ * Due backups go into a priority queue and are dispatched onto a bounded worker pool, but only while the
+ * target's host and engine are below their concurrency caps. A queued backup whose host is busy does not hold up
+ * backups of other hosts. When the queue is full, due backups stay due and are retried on the next poll.
+ */
+@Component
+public class BackupScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupScheduler.class);
+
+    //highest priority first, then first come first served
+    private static final Comparator<QueuedBackup> QUEUE_ORDER = Comparator
+            .comparingInt((QueuedBackup queued) -> -queued.priority())
+            .thenComparingLong(QueuedBackup::sequence);
+
+    private final BackupServiceFactory backupServiceFactory;
+    private final SchedulerProperties properties;
+    private final Map<String, RegisteredTarget> targets = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService clock;
+
+    //guarded by this
+    private final TreeSet<QueuedBackup> pending = new TreeSet<>(QUEUE_ORDER);
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Map<DatabaseType, Integer> runningPerEngine = new EnumMap<>(DatabaseType.class);
+    private int running;
+
+    private record QueuedBackup(RegisteredTarget target, int priority, long sequence) {
+    }
+
+    private static class RegisteredTarget {
+        private final BackupTarget target;
+        private volatile LocalDateTime nextRun;
+        private volatile TargetStatus.State state = TargetStatus.State.IDLE;
+        private volatile BackupResult lastResult;
+
+        RegisteredTarget(BackupTarget target) {
+            this.target = target;
+            this.nextRun = target.schedule() == null ? null : target.schedule().next(LocalDateTime.now());
+        }
+    }
+
+    public BackupScheduler(BackupServiceFactory backupServiceFactory, SchedulerProperties properties) {
+        this.backupServiceFactory = backupServiceFactory;
+        this.properties = properties;
+        this.workers = Executors.newFixedThreadPool(properties.maxWorkers(), namedThreads("backt-backup-"));
+        this.clock = Executors.newSingleThreadScheduledExecutor(namedThreads("backt-scheduler-"));
+        long poll = properties.pollInterval().toMillis();
+        clock.scheduleWithFixedDelay(this::enqueueDueTargets, poll, poll, TimeUnit.MILLISECONDS);
+    }
+
+    public void register(BackupTarget target) {
+        if (targets.putIfAbsent(target.name(), new RegisteredTarget(target)) != null) {
+            throw new IllegalArgumentException("A target named " + target.name() + " is already registered");
+        }
+        logger.info("Registered backup target {} ({} at {})", target.name(), target.databaseType(), target.hostKey());
+    }
+
+    /**
+     * Removes the target from the registry and the queue. A backup that is already running is not interrupted.
+     */
+    public boolean unregister(String name) {
+        RegisteredTarget removed = targets.remove(name);
+        if (removed == null) {
+            return false;
+        }
+        synchronized (this) {
+            pending.removeIf(queued -> queued.target() == removed);
+        }
+        return true;
+    }
+
+    /**
+     * Queues a backup of the target right away, regardless of its schedule.
+     *
+     * @throws BackupException if the queue is full
+     */
+    public void runNow(String name) {
+        RegisteredTarget registered = targets.get(name);
+        if (registered == null) {
+            throw new IllegalArgumentException("No target named " + name);
+        }
+        if (!enqueue(registered)) {
+            throw new BackupException("Backup queue is full or " + name + " is already queued, try again later");
+        }
+    }
+
+    public List<TargetStatus> listTargets() {
+        return targets.values().stream()
+                .map(registered -> {
+                    BackupTarget target = registered.target;
+                    BackupResult lastResult = registered.lastResult;
+                    return new TargetStatus(
+                            target.name(),
+                            target.databaseType(),
+                            target.hostKey(),
+                            target.schedule() == null ? "manual" : target.schedule().toString(),
+                            target.priority(),
+                            registered.state,
+                            registered.nextRun,
+                            lastResult == null ? null : lastResult.backupStatus(),
+                            lastResult == null ? null : lastResult.startTime());
+                })
+                .sorted(Comparator.comparing(TargetStatus::name))
+                .toList();
+    }
+
+    public synchronized int queuedCount() {
+        return pending.size();
+    }
+
+    public synchronized int runningCount() {
+        return running;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clock.shutdownNow();
+        workers.shutdown();
+    }
+
+    void enqueueDueTargets() {
+        LocalDateTime now = LocalDateTime.now();
+        for (RegisteredTarget registered : targets.values()) {
+            LocalDateTime nextRun = registered.nextRun;
+            if (nextRun == null || nextRun.isAfter(now)) {
+                continue;
+            }
+            if (enqueue(registered)) {
+                registered.nextRun = registered.target.schedule().next(now);
+            } else if (registered.state == TargetStatus.State.IDLE) {
+                logger.warn("Backup queue is full, deferring due backup of {}", registered.target.name());
+            }
+        }
+    }
+
+    private boolean enqueue(RegisteredTarget registered) {
+        synchronized (this) {
+            //one queued or running backup per target; a late backup is not stacked behind itself
+            if (registered.state != TargetStatus.State.IDLE || pending.size() >= properties.queueCapacity()) {
+                return false;
+            }
+            pending.add(new QueuedBackup(registered, registered.target.priority(), sequence.incrementAndGet()));
+            registered.state = TargetStatus.State.QUEUED;
+        }
+        dispatch();
+        return true;
+    }
+
+    private synchronized void dispatch() {
+        Iterator<QueuedBackup> queue = pending.iterator();
+        while (running < properties.maxWorkers() && queue.hasNext()) {
+            QueuedBackup next = queue.next();
+            BackupTarget target = next.target().target;
+            if (runningPerHost.getOrDefault(target.hostKey(), 0) >= properties.maxPerHost()
+                    || runningPerEngine.getOrDefault(target.databaseType(), 0) >= properties.engineLimit(target.databaseType())) {
+                continue;
+            }
+            queue.remove();
+            running++;
+            runningPerHost.merge(target.hostKey(), 1, Integer::sum);
+            runningPerEngine.merge(target.databaseType(), 1, Integer::sum);
+            next.target().state = TargetStatus.State.RUNNING;
+            workers.execute(() -> runBackup(next.target()));
+        }
+    }
+
+    private void runBackup(RegisteredTarget registered) {
+        BackupTarget target = registered.target;
+        try {
+            BackupService backupService = backupServiceFactory.getBackupService(target.databaseType().getDisplayName());
+            BackupResult result = backupService.performBackup(target.toBackupRequest(), target.databaseDetails());
+            registered.lastResult = result;
+            if (result.backupStatus() == BackupStatus.SUCCESS) {
+                logger.info("Scheduled backup of {} finished: {} ({} bytes)", target.name(), result.backupId(), result.sizeInBytes());
+            } else {
+                logger.error("Scheduled backup of {} failed: {}", target.name(), result.errorMessage());
+            }
+        } catch (Exception e) {
+            logger.error("Scheduled backup of {} failed", target.name(), e);
+            registered.lastResult = BackupResult.builder()
+                    .backupType(target.backupType())
+                    .startTime(LocalDateTime.now())
+                    .backupStatus(BackupStatus.FAILED)
+                    .errorMessage(e.getMessage())
+                    .build();
+        } finally {
+            synchronized (this) {
+                running--;
+                runningPerHost.merge(target.hostKey(), -1, Integer::sum);
+                runningPerEngine.merge(target.databaseType(), -1, Integer::sum);
+                registered.state = TargetStatus.State.IDLE;
+            }
+            dispatch();
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + counter.incrementAndGet());
+    }
+}
@@ -0,0 +1,40 @@
+package com.kolade.backt.scheduler;
+
+import com.kolade.backt.common.BackupRequest;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import lombok.Builder;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * A database registered with the {@link BackupScheduler}.
+ *
+ * @param name     unique name of the target
+ * @param schedule when the target is backed up, in Spring cron syntax (seconds first)
+ * @param priority higher priorities are dispatched first when workers are scarce
+ */
+@Builder
+public record BackupTarget(
+        String name,
+        DatabaseType databaseType,
+        DatabaseDetails databaseDetails,
+        BackupType backupType,
+        Path destinationPath,
+        boolean compress,
+        Map<String, String> options,
+        CronExpression schedule,
+        int priority
+) {
+
+    public String hostKey() {
+        return databaseDetails.getHost() + ":" + databaseDetails.getPort();
+    }
+
+    public BackupRequest toBackupRequest() {
+        return new BackupRequest(databaseDetails.getDatabaseName(), backupType, destinationPath, compress, options == null ? Map.of() : options);
+    }
+}
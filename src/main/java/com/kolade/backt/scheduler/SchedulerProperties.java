@@ -0,0 +1,34 @@
+package com.kolade.backt.scheduler;
+
+import com.kolade.backt.common.DatabaseType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Limits of the backup scheduler, bound from {@code backt.scheduler.*}.
+ *
+ * @param maxWorkers    backups running at the same time across all targets
+ * @param maxPerHost    backups running at the same time against one database server
+ * @param maxPerEngine  backups running at the same time per database engine, unlimited for engines not listed
+ * @param queueCapacity backups waiting for a worker; further due backups are deferred until there is room
+ * @param pollInterval  how often schedules are checked for due backups
+ */
+@ConfigurationProperties(prefix = "backt.scheduler")
+public record SchedulerProperties(
+        @DefaultValue("8") int maxWorkers,
+        @DefaultValue("1") int maxPerHost,
+        Map<DatabaseType, Integer> maxPerEngine,
+        @DefaultValue("500") int queueCapacity,
+        @DefaultValue("30s") Duration pollInterval
+) {
+
+    public int engineLimit(DatabaseType databaseType) {
+        if (maxPerEngine == null) {
+            return maxWorkers;
+        }
+        return maxPerEngine.getOrDefault(databaseType, maxWorkers);
+    }
+}
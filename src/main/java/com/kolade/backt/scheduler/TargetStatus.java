@@ -0,0 +1,25 @@
+package com.kolade.backt.scheduler;
+
+import com.kolade.backt.common.BackupStatus;
+import com.kolade.backt.common.DatabaseType;
+
+import java.time.LocalDateTime;
+
+public record TargetStatus(
+        String name,
+        DatabaseType databaseType,
+        String host,
+        String schedule,
+        int priority,
+        State state,
+        LocalDateTime nextRun,
+        BackupStatus lastStatus,
+        LocalDateTime lastRun
+) {
+
+    public enum State {
+        IDLE,
+        QUEUED,
+        RUNNING
+    }
+}
@@ -0,0 +1,109 @@
+package com.kolade.backt.service;
+
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.repository.BackupMetadataRepository;
+import com.kolade.backt.repository.BackupSummary;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read side of the backup catalog: lookups used to plan incrementals and the paged listings shown in the shell.
+ */
+@Service
+@RequiredArgsConstructor
+public class BackupCatalogService {
+
+    private static final String CURSOR_SEPARATOR = "/";
+    private final BackupMetadataRepository metadataRepository;
+
+    /**
+     * @param nextCursor pass to {@link #list} to get the following page, null on the last page
+     */
+    public record CatalogPage(List<BackupSummary> backups, String nextCursor) {
+    }
+
+    public Optional<BackupMetadata> findBackup(String backupId) {
+        return metadataRepository.findByBackupId(backupId);
+    }
+
+    public Optional<BackupMetadata> latestFull(DatabaseType databaseType, String databaseName) {
+        return metadataRepository.findFirstByDatabaseNameAndBackupTypeAndDatabaseTypeOrderByCreationTimeDesc(databaseName, BackupType.FULL, databaseType);
+    }
+
+    public Optional<BackupMetadata> latest(DatabaseType databaseType, String databaseName) {
+        return metadataRepository.findFirstByDatabaseNameAndDatabaseTypeOrderByCreationTimeDesc(databaseName, databaseType);
+    }
+
+    /**
+     * The full backup and every backup of the same database taken after it, up to the next full backup, oldest first.
+     */
+    public List<BackupMetadata> chainSince(String fullBackupId) {
+        BackupMetadata full = metadataRepository.findByBackupId(fullBackupId).orElseThrow(
+                () -> new EntityNotFoundException(String.format("Backup %s not found", fullBackupId)));
+        if (full.getBackupType() != BackupType.FULL) {
+            throw new IllegalArgumentException(String.format("Backup %s is a %s backup, a chain starts at a full backup", fullBackupId, full.getBackupType()));
+        }
+        return metadataRepository.findFirstByDatabaseNameAndBackupTypeAndDatabaseTypeAndCreationTimeAfterOrderByCreationTimeAsc(
+                        full.getDatabaseName(), BackupType.FULL, full.getDatabaseType(), full.getCreationTime())
+                .map(nextFull -> metadataRepository.findByDatabaseNameAndDatabaseTypeAndCreationTimeGreaterThanEqualAndCreationTimeBeforeOrderByCreationTimeAsc(
+                        full.getDatabaseName(), full.getDatabaseType(), full.getCreationTime(), nextFull.getCreationTime()))
+                .orElseGet(() -> metadataRepository.findByDatabaseNameAndDatabaseTypeAndCreationTimeGreaterThanEqualOrderByCreationTimeAsc(
+                        full.getDatabaseName(), full.getDatabaseType(), full.getCreationTime()));
+    }
+
+    /**
+     * One page of the catalog, newest first.
+     *
+     * @param databaseType only this engine, or null for all
+     * @param databaseName only this database, or null for all
+     * @param cursor       the {@link CatalogPage#nextCursor()} of the previous page, or null for the first page
+     */
+    public CatalogPage list(DatabaseType databaseType, String databaseName, int limit, String cursor) {
+        ScrollPosition position = decodeCursor(cursor);
+        Limit pageSize = Limit.of(limit);
+        Window<BackupSummary> window;
+        if (databaseType != null && databaseName != null) {
+            window = metadataRepository.findByDatabaseTypeAndDatabaseNameOrderByCreationTimeDescIdDesc(databaseType, databaseName, position, pageSize);
+        } else if (databaseType != null) {
+            window = metadataRepository.findByDatabaseTypeOrderByCreationTimeDescIdDesc(databaseType, position, pageSize);
+        } else if (databaseName != null) {
+            window = metadataRepository.findByDatabaseNameOrderByCreationTimeDescIdDesc(databaseName, position, pageSize);
+        } else {
+            window = metadataRepository.findByOrderByCreationTimeDescIdDesc(position, pageSize);
+        }
+
+        List<BackupSummary> backups = window.getContent();
+        String nextCursor = window.hasNext() && !backups.isEmpty() ? encodeCursor(backups.get(backups.size() - 1)) : null;
+        return new CatalogPage(backups, nextCursor);
+    }
+
+    private static String encodeCursor(BackupSummary last) {
+        return last.getCreationTime() + CURSOR_SEPARATOR + last.getId();
+    }
+
+    private static ScrollPosition decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+        int separator = cursor.lastIndexOf(CURSOR_SEPARATOR);
+        try {
+            LocalDateTime creationTime = LocalDateTime.parse(cursor.substring(0, separator));
+            long id = Long.parseLong(cursor.substring(separator + 1));
+            return ScrollPosition.forward(Map.of("creationTime", creationTime, "id", id));
+        } catch (DateTimeParseException | NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -1,16 +1,33 @@
 package com.kolade.backt.service;
 
 import com.kolade.backt.common.BackupMetadata;
-import com.kolade.backt.common.BackupMetadataDto;
 import com.kolade.backt.common.BackupRequest;
 import com.kolade.backt.common.BackupResult;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.job.BackupProgress;
 
 import java.io.IOException;
 
 public interface BackupService {
 
+    /**
+     * Backs up the database of the active connection.
+     */
     BackupResult performBackup(BackupRequest backupRequest) throws IOException;
 
+    /**
+     * Backs up a database on the given server, independent of the active connection.
+     */
+    default BackupResult performBackup(BackupRequest backupRequest, DatabaseDetails databaseDetails) throws IOException {
+        return performBackup(backupRequest, databaseDetails, BackupProgress.NONE);
+    }
+
+    /**
+     * Backs up a database on the given server and reports how far it got as it goes. An interrupt stops the backup
+     * and removes what was written of it.
+     */
+    BackupResult performBackup(BackupRequest backupRequest, DatabaseDetails databaseDetails, BackupProgress progress) throws IOException;
+
     void validateBackupRequest(BackupRequest request);
 
     BackupMetadata getBackupMetadata(String backupId);
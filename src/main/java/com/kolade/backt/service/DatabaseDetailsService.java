@@ -2,22 +2,82 @@ package com.kolade.backt.service;
 
 import com.kolade.backt.common.DatabaseConnection;
 import com.kolade.backt.common.DatabaseDetails;
-import lombok.Getter;
-import lombok.Setter;
+import com.kolade.backt.connection.ConnectionManager;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
-@Getter
-@Setter
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The databases connected from the shell, each registered with the {@link ConnectionManager} under its name. One of
+ * them is active at a time, and is the one backups and restores started from the shell go to.
+ */
 @Service
+@RequiredArgsConstructor
 public class DatabaseDetailsService {
 
-    private DatabaseDetails activeDatabaseDetails;
-    private DatabaseConnection activeDatabaseConnection;
+    private final ConnectionManager connectionManager;
+    //guarded by this
+    private final Map<String, DatabaseConnection> connections = new LinkedHashMap<>();
+    private String activeName;
+
+    public synchronized DatabaseDetails getActiveDatabaseDetails() {
+        DatabaseConnection connection = getActiveDatabaseConnection();
+        return connection == null ? null : connection.getDatabaseDetails();
+    }
+
+    public synchronized DatabaseConnection getActiveDatabaseConnection() {
+        return activeName == null ? null : connections.get(activeName);
+    }
+
+    public synchronized String getActiveName() {
+        return activeName;
+    }
+
+    public synchronized boolean hasActiveConnection() {
+        return getActiveDatabaseConnection() != null;
+    }
+
+    /**
+     * Adds a connected database under {@code name} and makes it the active one.
+     *
+     * @return the connection previously added under the name, for the caller to disconnect, or null
+     */
+    public synchronized DatabaseConnection add(String name, DatabaseConnection connection) {
+        connectionManager.register(name, connection.getType(), connection.getDatabaseDetails());
+        DatabaseConnection previous = connections.put(name, connection);
+        activeName = name;
+        return previous;
+    }
 
-    public boolean hasActiveConnection() {
-        return activeDatabaseConnection != null;
+    /**
+     * Makes the database connected under {@code name} the active one.
+     */
+    public synchronized DatabaseConnection use(String name) {
+        DatabaseConnection connection = connections.get(name);
+        if (connection == null) {
+            throw new IllegalArgumentException("No database connected under the name " + name);
+        }
+        activeName = name;
+        return connection;
     }
-    public void clearActiveDatabase() {
-        setActiveDatabaseDetails(null);
+
+    /**
+     * Removes the database connected under {@code name}. If it was the active one, no database is active afterwards.
+     *
+     * @return the removed connection, for the caller to disconnect, or null
+     */
+    public synchronized DatabaseConnection remove(String name) {
+        DatabaseConnection removed = connections.remove(name);
+        connectionManager.unregister(name);
+        if (name.equals(activeName)) {
+            activeName = null;
+        }
+        return removed;
+    }
+
+    public synchronized Map<String, DatabaseConnection> getConnections() {
+        return new LinkedHashMap<>(connections);
     }
 }
@@ -0,0 +1,8 @@
+package com.kolade.backt.shell;
+
+public interface BackupCatalogCommands {
+
+    String listBackups(String databaseName, String type, int limit, String after);
+
+    String showBackup(String backupId, boolean chain);
+}
@@ -0,0 +1,97 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.repository.BackupSummary;
+import com.kolade.backt.service.BackupCatalogService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.util.List;
+import java.util.Optional;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class BackupCatalogCommandsImpl implements BackupCatalogCommands {
+
+    private final BackupCatalogService catalogService;
+
+    @ShellMethod(value = "List backups in the catalog, newest first\n Example use case: list-backups --dbname \"orders\" --type \"mysql\" --limit 20\n ", key = "list-backups")
+    @Override
+    public String listBackups(
+            @ShellOption(help = "only backups of this database", defaultValue = ShellOption.NULL) String dbname,
+            @ShellOption(help = "only backups of this database type: postgres, mysql or mongodb", defaultValue = ShellOption.NULL) String type,
+            @ShellOption(help = "number of backups per page", defaultValue = "20") int limit,
+            @ShellOption(help = "cursor printed at the end of the previous page", defaultValue = ShellOption.NULL) String after
+    ) {
+        if (type != null && !DatabaseType.isTypeValid(type)) {
+            return "Unsupported database type: " + type;
+        }
+        try {
+            BackupCatalogService.CatalogPage page = catalogService.list(type == null ? null : DatabaseType.valueOf(type.toUpperCase()), dbname, limit, after);
+            if (page.backups().isEmpty()) {
+                return "No backups found.";
+            }
+            StringBuilder output = new StringBuilder();
+            for (BackupSummary backup : page.backups()) {
+                output.append(String.format("%-45s %-8s %-20s %-12s %-11s %s %s%n",
+                        backup.getBackupId(), backup.getDatabaseType(), backup.getDatabaseName(), backup.getBackupType(),
+                        backup.getBackupFormat(), backup.getCreationTime(), backup.getBackupPath()));
+            }
+            if (page.nextCursor() != null) {
+                output.append("More backups: list-backups --after ").append(page.nextCursor()).append(System.lineSeparator());
+            }
+            return output.toString();
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    @ShellMethod(value = "Show the details of a backup\n Example use case: show-backup --id \"ORDERS_FULL_...\" --chain\n ", key = "show-backup")
+    @Override
+    public String showBackup(
+            @ShellOption(help = "the backup id") String id,
+            @ShellOption(help = "also list the backups that build on this full backup", defaultValue = "false") boolean chain
+    ) {
+        Optional<BackupMetadata> found = catalogService.findBackup(id);
+        if (found.isEmpty()) {
+            return "Backup " + id + " not found.";
+        }
+        BackupMetadata backup = found.get();
+        StringBuilder output = new StringBuilder();
+        appendField(output, "Backup id", backup.getBackupId());
+        appendField(output, "Database type", backup.getDatabaseType());
+        appendField(output, "Database", backup.getDatabaseName());
+        appendField(output, "Backup type", backup.getBackupType());
+        appendField(output, "Format", backup.getBackupFormat());
+        appendField(output, "Created", backup.getCreationTime());
+        appendField(output, "Path", backup.getBackupPath());
+        appendField(output, "Storage", backup.getStorage());
+        appendField(output, "Parallelism", backup.getParallelism());
+        appendField(output, "Binlog position", backup.getBinlogFile() == null ? null : backup.getBinlogFile() + ":" + backup.getBinlogPosition());
+        appendField(output, "GTID set", backup.getGtidSet());
+        appendField(output, "Oplog timestamp", backup.getOplogTimestamp() == null ? null : (backup.getOplogTimestamp() >>> 32) + "." + (backup.getOplogTimestamp() & 0xFFFFFFFFL));
+        appendField(output, "Manifest checksum", backup.getChecksum());
+
+        if (chain) {
+            try {
+                List<BackupMetadata> backups = catalogService.chainSince(id);
+                output.append(String.format("Chain (%d backups):%n", backups.size()));
+                for (BackupMetadata link : backups) {
+                    output.append(String.format("  %-45s %-12s %s%n", link.getBackupId(), link.getBackupType(), link.getCreationTime()));
+                }
+            } catch (IllegalArgumentException e) {
+                output.append(e.getMessage()).append(System.lineSeparator());
+            }
+        }
+        return output.toString();
+    }
+
+    private static void appendField(StringBuilder output, String name, Object value) {
+        if (value != null) {
+            output.append(String.format("%-16s %s%n", name + ":", value));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.kolade.backt.shell;
+
+public interface BackupJobCommands {
+
+    String startBackup(String connection, String dbname, String backupType, String destination, boolean compress, String options);
+
+    String backupStatus(String id);
+
+    String cancelBackup(String id);
+}
@@ -0,0 +1,143 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.common.BackupRequest;
+import com.kolade.backt.common.BackupStatus;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseConnection;
+import com.kolade.backt.job.BackupJobService;
+import com.kolade.backt.job.BackupJobStatus;
+import com.kolade.backt.service.DatabaseDetailsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class BackupJobCommandsImpl implements BackupJobCommands {
+
+    private final BackupJobService backupJobService;
+    private final DatabaseDetailsService databaseDetailsService;
+
+    @ShellMethod(value = "Start a backup of a connected database in the background and print its job id\n Example use case: backup start --dbname \"orders\" --destination \"/backups/orders\" --compress --options \"engine=jdbc,parallelism=8\"\n ", key = "backup start")
+    @Override
+    public String startBackup(
+            @ShellOption(help = "name of the connection, the active one if not given", defaultValue = ShellOption.NULL) String connection,
+            @ShellOption(help = "name of database, the one of the connection if not given", defaultValue = ShellOption.NULL) String dbname,
+            @ShellOption(help = "FULL, INCREMENTAl or DIFFERENTIAL", defaultValue = "FULL") String backupType,
+            @ShellOption(help = "directory the backup is written to") String destination,
+            @ShellOption(help = "compress the backup", defaultValue = "false") boolean compress,
+            @ShellOption(help = "further backup options as key=value pairs separated by commas, e.g. \"engine=jdbc,parallelism=8\"", defaultValue = ShellOption.NULL) String options
+    ) {
+        DatabaseConnection databaseConnection = connection == null
+                ? databaseDetailsService.getActiveDatabaseConnection()
+                : databaseDetailsService.getConnections().get(connection);
+        if (databaseConnection == null) {
+            return connection == null ? "No active database connection" : "No database connected under the name " + connection;
+        }
+        try {
+            String databaseName = dbname != null ? dbname : databaseConnection.getDatabaseDetails().getDatabaseName();
+            BackupRequest request = new BackupRequest(databaseName, BackupType.valueOf(backupType), Paths.get(destination), compress, parseOptions(options));
+            String jobId = backupJobService.start(databaseConnection.getType(), request, databaseConnection.getDatabaseDetails());
+            return "Started backup job " + jobId + ", follow it with: backup status --id " + jobId;
+        } catch (IllegalArgumentException e) {
+            return "Unable to start backup: " + e.getMessage();
+        }
+    }
+
+    @ShellMethod(value = "Show the progress of a backup job, or list the running and recent jobs\n Example use case: backup status --id \"3f2a9c1e\"\n ", key = "backup status")
+    @Override
+    public String backupStatus(@ShellOption(help = "the job id, every job if not given", defaultValue = ShellOption.NULL) String id) {
+        if (id != null) {
+            Optional<BackupJobStatus> status = backupJobService.status(id);
+            return status.map(BackupJobCommandsImpl::describe).orElse("No backup job " + id);
+        }
+        List<BackupJobStatus> jobs = backupJobService.list();
+        if (jobs.isEmpty()) {
+            return "No backup jobs.";
+        }
+        StringBuilder output = new StringBuilder();
+        for (BackupJobStatus job : jobs) {
+            output.append(String.format("%-8s %-11s %-8s %-20s %-12s %10.1f MB %6s %10s %8s%n", job.jobId(), job.status(),
+                    job.databaseType().getDisplayName(), job.databaseName(), job.backupType(), job.bytesDone() / 1e6,
+                    percent(job), job.status() == BackupStatus.IN_PROGRESS ? String.format("%.1f MB/s", job.bytesPerSecond() / 1e6) : "",
+                    job.status() == BackupStatus.IN_PROGRESS ? eta(job.eta()) : ""));
+        }
+        return output.toString();
+    }
+
+    @ShellMethod(value = "Cancel a backup job; the dump is stopped and its partial output removed\n Example use case: backup cancel --id \"3f2a9c1e\"\n ", key = "backup cancel")
+    @Override
+    public String cancelBackup(@ShellOption(help = "the job id") String id) {
+        try {
+            return backupJobService.cancel(id) ? "Cancelling backup job " + id : "Backup job " + id + " has already finished";
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String describe(BackupJobStatus job) {
+        StringBuilder output = new StringBuilder();
+        appendField(output, "Job", job.jobId());
+        appendField(output, "Status", job.startTime() == null && job.status() == BackupStatus.IN_PROGRESS ? "QUEUED" : job.status());
+        appendField(output, "Database", job.databaseType().getDisplayName() + " " + job.databaseName());
+        appendField(output, "Backup type", job.backupType());
+        appendField(output, "Backup id", job.backupId());
+        appendField(output, "Path", job.backupPath());
+        appendField(output, "Submitted", job.submitTime());
+        appendField(output, "Started", job.startTime());
+        appendField(output, "Ended", job.endTime());
+        if (job.status() == BackupStatus.IN_PROGRESS && job.startTime() != null) {
+            appendField(output, "Progress", String.format("%.1f MB of %s (%s)", job.bytesDone() / 1e6,
+                    job.totalBytes() > 0 ? String.format("%.1f MB", job.totalBytes() / 1e6) : "unknown", percent(job)));
+            appendField(output, "Rate", String.format("%.1f MB/s", job.bytesPerSecond() / 1e6));
+            appendField(output, "ETA", eta(job.eta()));
+            appendField(output, "Activity", job.activity());
+        }
+        if (job.status() == BackupStatus.SUCCESS) {
+            appendField(output, "Size", String.format("%.1f MB", job.sizeInBytes() / 1e6));
+        }
+        appendField(output, "Error", job.errorMessage());
+        return output.toString();
+    }
+
+    private static String percent(BackupJobStatus job) {
+        double percent = job.percentDone();
+        return percent < 0 ? "?" : String.format("%.1f%%", percent);
+    }
+
+    private static String eta(Duration eta) {
+        if (eta == null) {
+            return "unknown";
+        }
+        return String.format("%d:%02d:%02d", eta.toHours(), eta.toMinutesPart(), eta.toSecondsPart());
+    }
+
+    private static Map<String, String> parseOptions(String options) {
+        Map<String, String> parsed = new LinkedHashMap<>();
+        if (options == null || options.isBlank()) {
+            return parsed;
+        }
+        for (String option : options.split(",")) {
+            int separator = option.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Options must be key=value pairs, got: " + option);
+            }
+            parsed.put(option.substring(0, separator).trim(), option.substring(separator + 1).trim());
+        }
+        return parsed;
+    }
+
+    private static void appendField(StringBuilder output, String name, Object value) {
+        if (value != null) {
+            output.append(String.format("%-16s %s%n", name + ":", value));
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.kolade.backt.shell;
+
+public interface BackupStatsCommands {
+
+    String backupStats(String backupId, String type);
+}
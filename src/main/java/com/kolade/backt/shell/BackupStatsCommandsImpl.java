@@ -0,0 +1,82 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.metrics.BackupMetrics;
+import com.kolade.backt.metrics.PhaseStats;
+import com.kolade.backt.metrics.PhaseSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.util.List;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class BackupStatsCommandsImpl implements BackupStatsCommands {
+
+    private final BackupMetrics backupMetrics;
+
+    @ShellMethod(value = "Show where backups spend their time, per phase: of one backup, or percentiles over the backups taken since startup\n Example use case: backup-stats --type \"mysql\"\n ", key = "backup-stats")
+    @Override
+    public String backupStats(
+            @ShellOption(help = "the backup id, the timings saved with that backup", defaultValue = ShellOption.NULL) String id,
+            @ShellOption(help = "only backups of this database type: postgres, mysql or mongodb", defaultValue = ShellOption.NULL) String type
+    ) {
+        if (id != null) {
+            return backupTimings(id);
+        }
+        if (type != null && !DatabaseType.isTypeValid(type)) {
+            return "Unsupported database type: " + type;
+        }
+        List<PhaseSummary> summaries = backupMetrics.summarize(type == null ? null : DatabaseType.valueOf(type.toUpperCase()));
+        if (summaries.isEmpty()) {
+            return "No backups completed since startup.";
+        }
+        StringBuilder output = new StringBuilder();
+        DatabaseType current = null;
+        for (PhaseSummary summary : summaries) {
+            if (summary.databaseType() != current) {
+                current = summary.databaseType();
+                output.append(String.format("%s%n%-14s %8s %10s %10s", current.getDisplayName(), "phase", "backups", "mean s", "stall s"));
+                for (double percentile : summary.percentiles()) {
+                    output.append(String.format(" %11s", "p" + percentileLabel(percentile) + " MB/s"));
+                }
+                for (double percentile : summary.percentiles()) {
+                    output.append(String.format(" %11s", "p" + percentileLabel(percentile) + " ms"));
+                }
+                output.append(System.lineSeparator());
+            }
+            output.append(String.format("%-14s %8d %10.2f %10.2f", summary.phase().getDisplayName(), summary.backups(),
+                    summary.meanSeconds(), summary.meanStallSeconds()));
+            for (double throughput : summary.throughput()) {
+                output.append(String.format(" %11.1f", throughput));
+            }
+            for (double latency : summary.latencyMillis()) {
+                output.append(String.format(" %11.2f", latency));
+            }
+            output.append(System.lineSeparator());
+        }
+        return output.toString();
+    }
+
+    private String backupTimings(String backupId) {
+        List<PhaseStats> phases = backupMetrics.findTimings(backupId);
+        if (phases.isEmpty()) {
+            return "No timings recorded for backup " + backupId + ".";
+        }
+        StringBuilder output = new StringBuilder(String.format("%-14s %12s %10s %10s %10s %10s%n", "phase", "MB", "time s", "MB/s", "stall s", "operations"));
+        for (PhaseStats stats : phases) {
+            output.append(String.format("%-14s %12.1f %10.2f %10.1f %10.2f %10d%n", stats.phase().getDisplayName(), stats.bytes() / 1e6,
+                    stats.durationNanos() / 1e9, stats.throughput(), stats.stallNanos() / 1e9, stats.operations()));
+        }
+        output.append("Phases overlap and their times are summed over threads, so only total is wall time.").append(System.lineSeparator());
+        return output.toString();
+    }
+
+    private static String percentileLabel(double percentile) {
+        //0.5 -> 50, 0.999 -> 99.9
+        String label = String.valueOf(percentile * 100);
+        return label.endsWith(".0") ? label.substring(0, label.length() - 2) : label;
+    }
+}
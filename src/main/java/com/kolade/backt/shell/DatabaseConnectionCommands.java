@@ -2,9 +2,13 @@ package com.kolade.backt.shell;
 
 public interface DatabaseConnectionCommands {
 
-    String connectToDatabase(String type, String url, String username, String password, String hostname, int port, String databaseName);
+    String connectToDatabase(String name, String type, String url, String username, String password, String hostname, int port, String databaseName);
 
-    String testConnection();
+    String testConnection(String name);
 
-    String disconnectDatabase();
+    String disconnectDatabase(String name);
+
+    String useDatabase(String name);
+
+    String listDatabases();
 }
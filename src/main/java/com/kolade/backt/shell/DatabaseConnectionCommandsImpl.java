@@ -3,6 +3,7 @@ package com.kolade.backt.shell;
 import com.kolade.backt.common.DatabaseConnection;
 import com.kolade.backt.common.DatabaseDetails;
 import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
 import com.kolade.backt.exception.DatabaseConnectionException;
 import com.kolade.backt.factory.DatabaseConnectionFactory;
 import com.kolade.backt.service.DatabaseDetailsService;
@@ -15,14 +16,16 @@ import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
 
 import java.sql.SQLException;
+import java.util.Map;
 
 @ShellComponent
 @RequiredArgsConstructor
 public class DatabaseConnectionCommandsImpl implements DatabaseConnectionCommands {
 
+    private static final String DEFAULT_NAME = "default";
     private final DatabaseConnectionFactory databaseConnectionFactory;
-    private DatabaseConnection activeConnection;
     private final DatabaseDetailsService databaseDetailsService;
+    private final ConnectionManager connectionManager;
     private static final Logger logger = LoggerFactory.getLogger(DatabaseConnectionCommandsImpl.class);
 
     @PostConstruct
@@ -34,15 +37,17 @@ public class DatabaseConnectionCommandsImpl implements DatabaseConnectionCommand
                         
                         Quick Tutorial:
                         Use 'connect-db' to connect to a database, 'test-db' to check the connection, \n and 'disconnect-db' to disconnect. \n
+                        Connect several databases under different --name values and switch with 'use-db'. \n
                         Type 'help' to see available commands.
                         --hostname "localhost" --port 3306 --dbname "demoDatabase"
                         """
         );
     }
 
-    @ShellMethod(value = "Connect to a database\n Example use case: connect-db --type \"postgresql\" --url \"jdbc:postgresql://localhost:5432/dbname\" --username \"postgres\" --password \"postgres\"  --host \"localhost\" --port 3306 --dbname \"demoDatabase\"\n ", key = "connect-db")
+    @ShellMethod(value = "Connect to a database\n Example use case: connect-db --name \"orders\" --type \"postgresql\" --url \"jdbc:postgresql://localhost:5432/dbname\" --username \"postgres\" --password \"postgres\"  --host \"localhost\" --port 3306 --dbname \"demoDatabase\"\n ", key = "connect-db")
     @Override
     public String connectToDatabase(
+            @ShellOption(help = "name to refer to the database by; connecting again under a name replaces its database", defaultValue = DEFAULT_NAME) String name,
             @ShellOption(help = "Supported database types are postgres, mysql and mongodb --- use the names as written") String type,
             @ShellOption(help = "The JDBC URL or connection string for the database(in case of mongodb)") String url,
             @ShellOption(help = "username for database login") String username,
@@ -64,31 +69,33 @@ public class DatabaseConnectionCommandsImpl implements DatabaseConnectionCommand
                     .build();
 
             connection.connect(databaseDetails);
-            activeConnection = connection;
-            databaseDetailsService.setActiveDatabaseDetails(databaseDetails);
-            databaseDetailsService.setActiveDatabaseConnection(activeConnection);
+            DatabaseConnection previous = databaseDetailsService.add(name, connection);
+            if (previous != null) {
+                previous.disconnect();
+            }
 
-            logger.info("Successfully connected to the {} database at {}", type, url);
-            return "Successfully connected to " + type + " database at " + url;
+            logger.info("Successfully connected to the {} database at {} as {}", type, url, name);
+            return "Successfully connected to " + type + " database at " + url + " as " + name;
         } catch (SQLException | DatabaseConnectionException e) {
             logger.error("Failed to connect to the {} database: {}", type, e.getMessage());
             return "An error occurred while connection to database... Please check the details and try again. " + e.getMessage();
         }
     }
 
-    @ShellMethod(value = "Test the current database connection\n", key = "test-db")
+    @ShellMethod(value = "Test a database connection\n Example use case: test-db --name \"orders\"\n ", key = "test-db")
     @Override
-    public String testConnection() {
-        if (activeConnection == null) {
+    public String testConnection(@ShellOption(help = "name of the connected database, the active one if omitted", defaultValue = ShellOption.NULL) String name) {
+        DatabaseConnection connection = resolve(name);
+        if (connection == null) {
             return "No active database connection. Connect to a database";
         }
         try {
-            if (activeConnection.testConnection()) {
-                logger.info("Connection to the {} is active!.", activeConnection.getType());
-                return "Connection to " + activeConnection.getType() + "database is active!";
+            if (connection.testConnection()) {
+                logger.info("Connection to the {} is active!.", connection.getType());
+                return "Connection to " + connection.getType() + "database is active!";
             } else {
-                logger.warn("Connection to {} database is inactive.", activeConnection.getType());
-                return "Connection to " + activeConnection.getType() + " database is inactive.";
+                logger.warn("Connection to {} database is inactive.", connection.getType());
+                return "Connection to " + connection.getType() + " database is inactive.";
             }
 
         } catch (Exception e) {
@@ -98,23 +105,58 @@ public class DatabaseConnectionCommandsImpl implements DatabaseConnectionCommand
     }
 
 
-    @ShellMethod(value = "Disconnect from the current database\n", key = "disconnect-db")
+    @ShellMethod(value = "Disconnect from a database\n Example use case: disconnect-db --name \"orders\"\n ", key = "disconnect-db")
     @Override
-    public String disconnectDatabase() {
-        if (activeConnection == null) {
+    public String disconnectDatabase(@ShellOption(help = "name of the connected database, the active one if omitted", defaultValue = ShellOption.NULL) String name) {
+        String resolvedName = name != null ? name : databaseDetailsService.getActiveName();
+        if (resolvedName == null || resolve(resolvedName) == null) {
             return "No active connection to disconnect.";
         }
 
         try {
-            activeConnection.disconnect();
-            databaseDetailsService.clearActiveDatabase();
-            DatabaseType dbType = activeConnection.getType();
-            activeConnection = null;
+            DatabaseConnection connection = databaseDetailsService.remove(resolvedName);
+            connection.disconnect();
+            DatabaseType dbType = connection.getType();
             logger.info("Successfully disconnected from the {} database.", dbType);
-            return "Successfully disconnected from the " + dbType + " database.";
+            return "Successfully disconnected from the " + dbType + " database " + resolvedName + ".";
         } catch (Exception e) {
             logger.error("Failed to disconnect from the database: {}", e.getMessage());
             return "Error: Unable to disconnect from the database. " + e.getMessage();
         }
     }
+
+    @ShellMethod(value = "Make a connected database the one backups and restores go to\n Example use case: use-db --name \"orders\"\n ", key = "use-db")
+    @Override
+    public String useDatabase(@ShellOption(help = "name of the connected database") String name) {
+        try {
+            DatabaseConnection connection = databaseDetailsService.use(name);
+            return "Using the " + connection.getType() + " database " + name;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    @ShellMethod(value = "List connected databases and their connection pools\n", key = "list-db")
+    @Override
+    public String listDatabases() {
+        Map<String, DatabaseConnection> connections = databaseDetailsService.getConnections();
+        if (connections.isEmpty()) {
+            return "No databases connected.";
+        }
+        String activeName = databaseDetailsService.getActiveName();
+        StringBuilder output = new StringBuilder();
+        connections.forEach((name, connection) -> {
+            DatabaseDetails details = connection.getDatabaseDetails();
+            String pool = connectionManager.poolStatus(connection.getType(), details)
+                    .map(status -> String.format("active=%d idle=%d waiting=%d", status.active(), status.idle(), status.waiting()))
+                    .orElse("no pool");
+            output.append(String.format("%s %-20s %-8s %-25s %-20s %s%n", name.equals(activeName) ? "*" : " ",
+                    name, connection.getType(), details.getHost() + ":" + details.getPort(), details.getDatabaseName(), pool));
+        });
+        return output.toString();
+    }
+
+    private DatabaseConnection resolve(String name) {
+        return name == null ? databaseDetailsService.getActiveDatabaseConnection() : databaseDetailsService.getConnections().get(name);
+    }
 }
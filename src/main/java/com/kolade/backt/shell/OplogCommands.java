@@ -0,0 +1,10 @@
+package com.kolade.backt.shell;
+
+public interface OplogCommands {
+
+    String startTailing(String name, String databaseName, String destination, boolean compress);
+
+    String stopTailing(String name);
+
+    String listTails();
+}
@@ -0,0 +1,64 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.mongodb.OplogTailer;
+import com.kolade.backt.service.DatabaseDetailsService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class OplogCommandsImpl implements OplogCommands {
+
+    private static final Logger logger = LoggerFactory.getLogger(OplogCommandsImpl.class);
+    private final OplogTailer oplogTailer;
+    private final DatabaseDetailsService databaseDetailsService;
+
+    @ShellMethod(value = "Continuously back up the oplog of a database on the connected MongoDB replica set\n Example use case: oplog-tail-start --name \"orders\" --dbname \"orders\" --destination \"/backups/orders/oplog\"\n ", key = "oplog-tail-start")
+    @Override
+    public String startTailing(
+            @ShellOption(help = "unique name of the tail") String name,
+            @ShellOption(help = "name of database") String dbname,
+            @ShellOption(help = "directory the oplog segments are written to") String destination,
+            @ShellOption(help = "compress the segments", defaultValue = "false") boolean compress
+    ) {
+        if (!databaseDetailsService.hasActiveConnection() || databaseDetailsService.getActiveDatabaseConnection().getType() != DatabaseType.MONGODB) {
+            return "Connect to a MongoDB database first.";
+        }
+        try {
+            oplogTailer.startTailing(name, databaseDetailsService.getActiveDatabaseDetails(), dbname, Paths.get(destination), compress);
+            return "Tailing the oplog of " + dbname;
+        } catch (Exception e) {
+            logger.error("Failed to start oplog tail {}: {}", name, e.getMessage());
+            return "Unable to start tailing: " + e.getMessage();
+        }
+    }
+
+    @ShellMethod(value = "Stop a running oplog tail\n", key = "oplog-tail-stop")
+    @Override
+    public String stopTailing(@ShellOption(help = "name of the tail") String name) {
+        return oplogTailer.stopTailing(name) ? "Stopped " + name : "No oplog tail named " + name;
+    }
+
+    @ShellMethod(value = "List running oplog tails\n", key = "oplog-tail-list")
+    @Override
+    public String listTails() {
+        List<OplogTailer.SessionStatus> sessions = oplogTailer.listSessions();
+        if (sessions.isEmpty()) {
+            return "No oplog tails running.";
+        }
+        StringBuilder output = new StringBuilder();
+        for (OplogTailer.SessionStatus session : sessions) {
+            output.append(String.format("%-20s %-20s %-10s segments=%d last=%s destination=%s%n",
+                    session.name(), session.databaseName(), session.state(), session.segmentCount(), session.lastTimestamp(), session.destination()));
+        }
+        return output.toString();
+    }
+}
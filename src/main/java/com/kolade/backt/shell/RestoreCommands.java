@@ -0,0 +1,6 @@
+package com.kolade.backt.shell;
+
+public interface RestoreCommands {
+
+    String restore(String backupId, String databaseName, int jobs, String targetDir, long timeoutMinutes);
+}
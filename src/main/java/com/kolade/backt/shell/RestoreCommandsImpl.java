@@ -0,0 +1,47 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.restore.RestoreRequest;
+import com.kolade.backt.restore.RestoreResult;
+import com.kolade.backt.restore.RestoreService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class RestoreCommandsImpl implements RestoreCommands {
+
+    private static final Logger logger = LoggerFactory.getLogger(RestoreCommandsImpl.class);
+    private final RestoreService restoreService;
+
+    @ShellMethod(value = "Restore a backup from the catalog into the connected database\n Example use case: restore --id \"ORDERS_FULL_...\" --dbname \"orders_copy\" --jobs 8\n ", key = "restore")
+    @Override
+    public String restore(
+            @ShellOption(help = "the backup id") String id,
+            @ShellOption(help = "database to restore into, the backed up database if not given", defaultValue = ShellOption.NULL) String dbname,
+            @ShellOption(help = "number of tables or collections loaded at the same time, 0 to decide from the backup", defaultValue = "0") int jobs,
+            @ShellOption(help = "empty data directory a PostgreSQL base backup is extracted into", defaultValue = ShellOption.NULL) String targetDir,
+            @ShellOption(help = "kill restore tools running longer than this many minutes, 0 for no limit", defaultValue = "0") long timeout
+    ) {
+        try {
+            RestoreResult result = restoreService.restore(RestoreRequest.builder()
+                    .backupId(id)
+                    .targetDatabase(dbname)
+                    .jobs(jobs)
+                    .targetDirectory(targetDir == null ? null : Paths.get(targetDir))
+                    .timeout(timeout > 0 ? Duration.ofMinutes(timeout) : null)
+                    .build());
+            Duration elapsed = Duration.between(result.startTime(), result.endTime());
+            return String.format("Restored %s into %s: %d bytes in %d s", result.backupId(), result.databaseName(), result.bytesRestored(), elapsed.toSeconds());
+        } catch (Exception e) {
+            logger.error("Restore of {} failed", id, e);
+            return "Restore failed: " + e.getMessage();
+        }
+    }
+}
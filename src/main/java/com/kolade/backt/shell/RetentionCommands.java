@@ -0,0 +1,6 @@
+package com.kolade.backt.shell;
+
+public interface RetentionCommands {
+
+    String pruneBackups(int daily, int weekly, int monthly, String type, String dbName, boolean dryRun, int limit);
+}
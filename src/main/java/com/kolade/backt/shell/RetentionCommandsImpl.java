@@ -0,0 +1,73 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.repository.BackupSummary;
+import com.kolade.backt.retention.RetentionPolicy;
+import com.kolade.backt.retention.RetentionReport;
+import com.kolade.backt.retention.RetentionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class RetentionCommandsImpl implements RetentionCommands {
+
+    private final RetentionService retentionService;
+
+    @ShellMethod(value = "Delete the backups the retention policy no longer keeps, files and catalog entries; the backups a kept backup builds on are always kept\n Example use case: prune-backups --daily 7 --weekly 4 --monthly 12 --dry-run\n ", key = "prune-backups")
+    @Override
+    public String pruneBackups(
+            @ShellOption(help = "keep the newest backup of each of the last N days with backups, default from backt.retention", defaultValue = "-1") int daily,
+            @ShellOption(help = "keep the newest full backup of each of the last N weeks with one, default from backt.retention", defaultValue = "-1") int weekly,
+            @ShellOption(help = "keep the newest full backup of each of the last N months with one, default from backt.retention", defaultValue = "-1") int monthly,
+            @ShellOption(help = "only backups of this database type: postgres, mysql or mongodb", defaultValue = ShellOption.NULL) String type,
+            @ShellOption(help = "only backups of this database", defaultValue = ShellOption.NULL) String dbName,
+            @ShellOption(help = "only list what would be deleted", defaultValue = "false") boolean dryRun,
+            @ShellOption(help = "backups listed at most", defaultValue = "50") int limit
+    ) {
+        if (type != null && !DatabaseType.isTypeValid(type)) {
+            return "Unsupported database type: " + type;
+        }
+        RetentionPolicy defaults = retentionService.defaultPolicy();
+        RetentionPolicy policy = RetentionPolicy.builder()
+                .keepDaily(daily < 0 ? defaults.keepDaily() : daily)
+                .keepWeekly(weekly < 0 ? defaults.keepWeekly() : weekly)
+                .keepMonthly(monthly < 0 ? defaults.keepMonthly() : monthly)
+                .build();
+
+        RetentionReport report;
+        try {
+            report = retentionService.prune(policy, type == null ? null : DatabaseType.valueOf(type.toUpperCase()), dbName, dryRun);
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+
+        StringBuilder output = new StringBuilder();
+        if (report.dryRun()) {
+            output.append(String.format("Keeping %s: would delete %d of %d backups, keeping %d (%d for their chains).%n",
+                    policy, report.expired().size(), report.scanned(), report.kept(), report.keptForChain()));
+        } else {
+            output.append(String.format("Keeping %s: deleted %d of %d expired backups in %.1fs, keeping %d of %d (%d for their chains).%n",
+                    policy, report.deleted(), report.expired().size(), report.elapsed().toMillis() / 1000.0,
+                    report.kept(), report.scanned(), report.keptForChain()));
+            if (report.chunks() > 0) {
+                output.append(String.format("Deleted %d unreferenced chunks, freeing %d bytes.%n", report.chunks(), report.chunkBytes()));
+            }
+        }
+        int listed = Math.min(Math.max(limit, 0), report.expired().size());
+        for (BackupSummary backup : report.expired().subList(0, listed)) {
+            output.append(String.format("%-36s %-10s %-20s %-12s %s%n", backup.getBackupId(), backup.getDatabaseType().getDisplayName(),
+                    backup.getDatabaseName(), backup.getBackupType(), backup.getCreationTime()));
+        }
+        if (listed < report.expired().size()) {
+            output.append(String.format("... and %d more%n", report.expired().size() - listed));
+        }
+        if (!report.failures().isEmpty()) {
+            output.append(String.format("%d failed, kept in the catalog for the next run:%n", report.failures().size()));
+            report.failures().forEach(failure -> output.append("  ").append(failure).append(System.lineSeparator()));
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.kolade.backt.shell;
+
+public interface SchedulerCommands {
+
+    String addTarget(String name, String type, String url, String username, String password, String host, int port, String databaseName,
+                     String cron, String backupType, String destination, boolean compress, int priority);
+
+    String removeTarget(String name);
+
+    String runTarget(String name);
+
+    String listTargets();
+}
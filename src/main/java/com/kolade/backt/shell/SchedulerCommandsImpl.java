@@ -0,0 +1,108 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.scheduler.BackupScheduler;
+import com.kolade.backt.scheduler.BackupTarget;
+import com.kolade.backt.scheduler.TargetStatus;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class SchedulerCommandsImpl implements SchedulerCommands {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchedulerCommandsImpl.class);
+    private final BackupScheduler backupScheduler;
+
+    @ShellMethod(value = "Register a database for scheduled backups\n Example use case: schedule-add --name \"orders\" --type \"mysql\" --url \"jdbc:mysql://db1:3306/orders\" --username \"backup\" --password \"secret\" --host \"db1\" --port 3306 --dbname \"orders\" --cron \"0 0 2 * * *\" --destination \"/backups/orders\"\n ", key = "schedule-add")
+    @Override
+    public String addTarget(
+            @ShellOption(help = "unique name of the target") String name,
+            @ShellOption(help = "Supported database types are postgres, mysql and mongodb --- use the names as written") String type,
+            @ShellOption(help = "The JDBC URL or connection string for the database(in case of mongodb)") String url,
+            @ShellOption(help = "username for database login") String username,
+            @ShellOption(help = "password for database login") String password,
+            @ShellOption(help = "database host name (could also be the host IP address", defaultValue = "localhost") String host,
+            @ShellOption(help = "database port") int port,
+            @ShellOption(help = "name of database") String dbname,
+            @ShellOption(help = "cron schedule with seconds, e.g. \"0 0 2 * * *\" for 02:00 daily; \"manual\" to only run on demand", defaultValue = "manual") String cron,
+            @ShellOption(help = "FULL, INCREMENTAl or DIFFERENTIAL", defaultValue = "FULL") String backupType,
+            @ShellOption(help = "directory the backups are written to") String destination,
+            @ShellOption(help = "compress the backups", defaultValue = "false") boolean compress,
+            @ShellOption(help = "higher priorities are dispatched first", defaultValue = "0") int priority
+    ) {
+        if (!DatabaseType.isTypeValid(type)) {
+            return "Unsupported database type: " + type;
+        }
+        try {
+            var databaseDetails = DatabaseDetails.builder()
+                    .connectionUrl(url)
+                    .username(username)
+                    .password(password)
+                    .host(host)
+                    .port(port)
+                    .databaseName(dbname)
+                    .build();
+
+            backupScheduler.register(BackupTarget.builder()
+                    .name(name)
+                    .databaseType(DatabaseType.valueOf(type.toUpperCase()))
+                    .databaseDetails(databaseDetails)
+                    .backupType(BackupType.valueOf(backupType))
+                    .destinationPath(Paths.get(destination))
+                    .compress(compress)
+                    .options(Map.of())
+                    .schedule("manual".equalsIgnoreCase(cron) ? null : CronExpression.parse(cron))
+                    .priority(priority)
+                    .build());
+            return "Registered " + name;
+        } catch (IllegalArgumentException e) {
+            logger.error("Failed to register target {}: {}", name, e.getMessage());
+            return "Unable to register target: " + e.getMessage();
+        }
+    }
+
+    @ShellMethod(value = "Remove a database from scheduled backups\n", key = "schedule-remove")
+    @Override
+    public String removeTarget(@ShellOption(help = "name of the target") String name) {
+        return backupScheduler.unregister(name) ? "Removed " + name : "No target named " + name;
+    }
+
+    @ShellMethod(value = "Queue a backup of a registered database now\n", key = "schedule-run")
+    @Override
+    public String runTarget(@ShellOption(help = "name of the target") String name) {
+        try {
+            backupScheduler.runNow(name);
+            return "Queued backup of " + name;
+        } catch (Exception e) {
+            return "Unable to queue backup: " + e.getMessage();
+        }
+    }
+
+    @ShellMethod(value = "List databases registered for scheduled backups\n", key = "schedule-list")
+    @Override
+    public String listTargets() {
+        List<TargetStatus> targets = backupScheduler.listTargets();
+        if (targets.isEmpty()) {
+            return "No targets registered.";
+        }
+        StringBuilder output = new StringBuilder(String.format("%d running, %d queued%n", backupScheduler.runningCount(), backupScheduler.queuedCount()));
+        for (TargetStatus target : targets) {
+            output.append(String.format("%-20s %-8s %-25s %-8s next=%s last=%s (%s) schedule=\"%s\" priority=%d%n",
+                    target.name(), target.databaseType(), target.host(), target.state(), target.nextRun(),
+                    target.lastStatus(), target.lastRun(), target.schedule(), target.priority()));
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,6 @@
+package com.kolade.backt.shell;
+
+public interface VerifyBackupCommands {
+
+    String verifyBackup(String backupId, String databaseName, String type, boolean full, int workers);
+}
@@ -0,0 +1,91 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.repository.BackupSummary;
+import com.kolade.backt.service.BackupCatalogService;
+import com.kolade.backt.verify.BackupVerifier;
+import com.kolade.backt.verify.VerificationResult;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class VerifyBackupCommandsImpl implements VerifyBackupCommands {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerifyBackupCommandsImpl.class);
+    private static final int CATALOG_PAGE_SIZE = 100;
+    //problems printed per backup, the rest are only counted
+    private static final int MAX_PROBLEMS_SHOWN = 10;
+
+    private final BackupCatalogService catalogService;
+    private final BackupVerifier backupVerifier;
+
+    @ShellMethod(value = "Verify backups against the checksums taken when they were written\n Example use case: verify-backup --dbname \"orders\" --type \"mysql\" --workers 16\n ", key = "verify-backup")
+    @Override
+    public String verifyBackup(
+            @ShellOption(help = "the backup id, all backups matching the filters if not given", defaultValue = ShellOption.NULL) String id,
+            @ShellOption(help = "only backups of this database", defaultValue = ShellOption.NULL) String dbname,
+            @ShellOption(help = "only backups of this database type: postgres, mysql or mongodb", defaultValue = ShellOption.NULL) String type,
+            @ShellOption(help = "recompute the SHA-256 of every file instead of comparing block CRCs", defaultValue = "false") boolean full,
+            @ShellOption(help = "threads reading the backups, 0 for the configured number", defaultValue = "0") int workers
+    ) {
+        if (type != null && !DatabaseType.isTypeValid(type)) {
+            return "Unsupported database type: " + type;
+        }
+        try {
+            List<BackupMetadata> backups = id != null
+                    ? catalogService.findBackup(id).map(List::of).orElse(List.of())
+                    : findBackups(type == null ? null : DatabaseType.valueOf(type.toUpperCase()), dbname);
+            if (backups.isEmpty()) {
+                return "No backups found.";
+            }
+
+            long startTime = System.nanoTime();
+            List<VerificationResult> results = backupVerifier.verify(backups, full, workers);
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+
+            StringBuilder output = new StringBuilder();
+            long bytesVerified = 0;
+            int failed = 0;
+            for (VerificationResult result : results) {
+                bytesVerified += result.bytesVerified();
+                output.append(String.format("%-7s %-45s %6d files %10.1f MB %8.1f MB/s%n", result.intact() ? "OK" : "FAILED",
+                        result.backupId(), result.files(), result.bytesVerified() / 1e6, result.throughput()));
+                if (!result.intact()) {
+                    failed++;
+                    result.problems().stream().limit(MAX_PROBLEMS_SHOWN).forEach(problem -> output.append("        ").append(problem).append(System.lineSeparator()));
+                    if (result.problems().size() > MAX_PROBLEMS_SHOWN) {
+                        output.append(String.format("        ... %d more problems%n", result.problems().size() - MAX_PROBLEMS_SHOWN));
+                    }
+                }
+            }
+            output.append(String.format("Verified %d backups, %.1f MB in %.1f s (%.1f MB/s), %d failed%n",
+                    results.size(), bytesVerified / 1e6, seconds, seconds > 0 ? bytesVerified / 1e6 / seconds : 0, failed));
+            return output.toString();
+        } catch (Exception e) {
+            logger.error("Verification failed", e);
+            return "Verification failed: " + e.getMessage();
+        }
+    }
+
+    private List<BackupMetadata> findBackups(DatabaseType databaseType, String databaseName) {
+        List<BackupMetadata> backups = new ArrayList<>();
+        String cursor = null;
+        do {
+            BackupCatalogService.CatalogPage page = catalogService.list(databaseType, databaseName, CATALOG_PAGE_SIZE, cursor);
+            for (BackupSummary summary : page.backups()) {
+                catalogService.findBackup(summary.getBackupId()).ifPresent(backups::add);
+            }
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return backups;
+    }
+}
@@ -0,0 +1,12 @@
+package com.kolade.backt.shell;
+
+public interface WalArchiverCommands {
+
+    String archiveOnce(String source, String archive);
+
+    String startWatching(String source, String archive);
+
+    String stopWatching(String source);
+
+    String listWatches();
+}
@@ -0,0 +1,69 @@
+package com.kolade.backt.shell;
+
+import com.kolade.backt.postgres.WalArchiver;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+@ShellComponent
+@RequiredArgsConstructor
+public class WalArchiverCommandsImpl implements WalArchiverCommands {
+
+    private static final Logger logger = LoggerFactory.getLogger(WalArchiverCommandsImpl.class);
+    private final WalArchiver walArchiver;
+
+    @ShellMethod(value = "Archive the WAL segments written since the last run\n Example use case: wal-archive --source \"/var/lib/postgresql/16/main/pg_wal\" --archive \"/backups/wal\"\n ", key = "wal-archive")
+    @Override
+    public String archiveOnce(
+            @ShellOption(help = "pg_wal, or the staging directory archive_command copies segments into") String source,
+            @ShellOption(help = "directory the compressed segments are archived into") String archive
+    ) {
+        try {
+            WalArchiver.ArchiveResult result = walArchiver.archive(Paths.get(source), Paths.get(archive));
+            return String.format("Archived %d files (%d bytes, %d compressed), last segment %s",
+                    result.filesArchived(), result.bytesIn(), result.bytesOut(), result.lastSegment());
+        } catch (Exception e) {
+            logger.error("WAL archiving failed", e);
+            return "Unable to archive WAL: " + e.getMessage();
+        }
+    }
+
+    @ShellMethod(value = "Keep archiving new WAL segments as they appear\n Example use case: wal-watch-start --source \"/var/lib/postgresql/16/main/pg_wal\" --archive \"/backups/wal\"\n ", key = "wal-watch-start")
+    @Override
+    public String startWatching(
+            @ShellOption(help = "pg_wal, or the staging directory archive_command copies segments into") String source,
+            @ShellOption(help = "directory the compressed segments are archived into") String archive
+    ) {
+        try {
+            walArchiver.startWatching(Paths.get(source), Paths.get(archive));
+            return "Watching " + source;
+        } catch (Exception e) {
+            return "Unable to watch " + source + ": " + e.getMessage();
+        }
+    }
+
+    @ShellMethod(value = "Stop archiving WAL from a directory\n", key = "wal-watch-stop")
+    @Override
+    public String stopWatching(@ShellOption(help = "the watched source directory") String source) {
+        return walArchiver.stopWatching(Paths.get(source)) ? "Stopped watching " + source : "Not watching " + source;
+    }
+
+    @ShellMethod(value = "List the directories WAL is being archived from\n", key = "wal-watch-list")
+    @Override
+    public String listWatches() {
+        Map<Path, Path> watched = walArchiver.watchedDirectories();
+        if (watched.isEmpty()) {
+            return "No WAL directories watched.";
+        }
+        StringBuilder output = new StringBuilder();
+        watched.forEach((source, archive) -> output.append(source).append(" -> ").append(archive).append(System.lineSeparator()));
+        return output.toString();
+    }
+}
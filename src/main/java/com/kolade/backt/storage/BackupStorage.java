@@ -0,0 +1,44 @@
+package com.kolade.backt.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Where the files of a backup are kept. Backups are always addressed by the path recorded in the catalog; a storage
+ * maps that path onto a file of the local filesystem or an object of a bucket.
+ */
+public interface BackupStorage {
+
+    /**
+     * @return the name the storage is selected by and recorded under in the catalog
+     */
+    String name();
+
+    /**
+     * @return whether the files are on the local filesystem, where dump tools can write and read them directly
+     */
+    boolean isLocal();
+
+    /**
+     * Prepares the directory backups are written into. Object stores have no directories and do nothing.
+     */
+    void createDirectories(Path directory) throws IOException;
+
+    /**
+     * Creates or replaces a file. The file is durable once the stream is closed, and not before.
+     */
+    OutputStream create(Path file) throws IOException;
+
+    InputStream open(Path file) throws IOException;
+
+    long size(Path file) throws IOException;
+
+    boolean exists(Path path) throws IOException;
+
+    /**
+     * Deletes a file, or a directory with everything in it. Deleting what does not exist does nothing.
+     */
+    void delete(Path path) throws IOException;
+}
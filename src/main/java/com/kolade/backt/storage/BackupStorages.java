@@ -0,0 +1,118 @@
+package com.kolade.backt.storage;
+
+import com.kolade.backt.common.BackupFormat;
+import com.kolade.backt.common.BackupOptions;
+import com.kolade.backt.common.BackupRequest;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The storages backups can be written to, and which one the files of a running backup or restore are in.
+ * <p>
+ * Backups go to the local filesystem unless their {@link BackupOptions#STORAGE} option names another storage. The
+ * pipeline only sees paths, so a backup or restore that uses another storage attaches its path while it runs, and the
+ * writers and readers look the storage of a file up from there, the way they look up its timings and throttle.
+ * Paths that are not attached are local.
+ */
+@Component
+public class BackupStorages {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupStorages.class);
+
+    /**
+     * Formats streamed into a single file by backt itself. Everything else is a directory, a recipe whose chunks go
+     * to the chunk repository, or written by the dump tool itself, and needs the local filesystem.
+     */
+    private static final Set<BackupFormat> SINGLE_FILE_FORMATS = EnumSet.of(BackupFormat.SQL, BackupFormat.CUSTOM, BackupFormat.TAR, BackupFormat.ARCHIVE);
+
+    private final LocalStorage local = new LocalStorage();
+    private final S3Storage s3;
+    private final Map<Path, BackupStorage> attached = new ConcurrentHashMap<>();
+
+    public BackupStorages(S3Properties s3Properties) {
+        this.s3 = s3Properties.enabled() ? new S3Storage(s3Properties) : null;
+        if (s3 != null) {
+            logger.info("S3 storage enabled: bucket {} at {}", s3Properties.bucket(),
+                    s3Properties.endpoint().isBlank() ? s3Properties.region() : s3Properties.endpoint());
+        }
+    }
+
+    /**
+     * @param name a storage name as recorded in the catalog, null for backups taken before storages existed
+     * @throws IllegalArgumentException if there is no such storage, or it is not enabled
+     */
+    public BackupStorage get(String name) {
+        if (name == null || name.isBlank() || LocalStorage.NAME.equalsIgnoreCase(name)) {
+            return local;
+        }
+        if (S3Storage.NAME.equalsIgnoreCase(name)) {
+            if (s3 == null) {
+                throw new IllegalArgumentException("S3 storage is not enabled, configure backt.storage.s3");
+            }
+            return s3;
+        }
+        throw new IllegalArgumentException(String.format("Unknown storage %s, use %s or %s", name, LocalStorage.NAME, S3Storage.NAME));
+    }
+
+    /**
+     * The storage a backup is written to.
+     *
+     * @param format the format the backup is written in
+     * @throws IllegalArgumentException if the storage is unknown, or the backup cannot be written to it
+     */
+    public BackupStorage forRequest(BackupRequest request, BackupFormat format) {
+        BackupStorage storage = get(BackupOptions.getString(request, BackupOptions.STORAGE, LocalStorage.NAME));
+        if (!storage.isLocal() && !SINGLE_FILE_FORMATS.contains(format)) {
+            throw new IllegalArgumentException(String.format("%s backups are not written as a single stream and can only be stored locally", format));
+        }
+        return storage;
+    }
+
+    /**
+     * Routes the files under {@code backupPath} to {@code storage} until {@link #detach(Path)}.
+     */
+    public void attach(Path backupPath, BackupStorage storage) {
+        if (!storage.isLocal()) {
+            attached.put(key(backupPath), storage);
+        }
+    }
+
+    public void detach(Path backupPath) {
+        attached.remove(key(backupPath));
+    }
+
+    /**
+     * @return the storage of the running backup or restore {@code file} belongs to, or the local filesystem
+     */
+    public BackupStorage storageFor(Path file) {
+        if (attached.isEmpty()) {
+            return local;
+        }
+        for (Path path = key(file); path != null; path = path.getParent()) {
+            BackupStorage storage = attached.get(path);
+            if (storage != null) {
+                return storage;
+            }
+        }
+        return local;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (s3 != null) {
+            s3.shutdown();
+        }
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
@@ -0,0 +1,242 @@
+package com.kolade.backt.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.AbortedException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Streams a file into an S3 multipart upload.
+ * <p>
+ * Written bytes fill a part buffer; a full buffer is handed to the upload pool and the writer carries on with the
+ * next one. Buffers are taken from a pool of {@code maxPartsInFlight + 1}, so at most {@code maxPartsInFlight} parts
+ * are uploaded at once and the writer blocks, and with it the dump, while they are all taken. A part that fails is
+ * retried on its own, with a growing backoff, from the buffer it is still held in.
+ * <p>
+ * The upload is only started once the first part is full; smaller files are sent with a single request on close.
+ * Closing waits for the parts and completes the upload, which makes the object appear. If a part fails for good or
+ * the writer is interrupted, the upload is aborted instead and the object never appears.
+ */
+class S3MultipartOutputStream extends OutputStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3MultipartOutputStream.class);
+    private static final int MAX_PARTS = 10_000;
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final S3Client client;
+    private final S3Properties properties;
+    private final ExecutorService uploads;
+    private final String key;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final List<Future<CompletedPart>> parts = new ArrayList<>();
+    private int buffersAllocated;
+    private byte[] buffer;
+    private int count;
+    private String uploadId;
+    private boolean closed;
+    //the first part that failed for good, set by the upload pool
+    private volatile IOException failure;
+
+    S3MultipartOutputStream(S3Client client, S3Properties properties, ExecutorService uploads, String key) {
+        this.client = client;
+        this.properties = properties;
+        this.uploads = uploads;
+        this.key = key;
+        this.freeBuffers = new ArrayBlockingQueue<>(properties.maxPartsInFlight() + 1);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Upload of " + key + " is closed");
+        }
+        while (len > 0) {
+            if (buffer == null) {
+                buffer = takeBuffer();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == buffer.length) {
+                uploadPart();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (uploadId == null) {
+            //everything fit into the first part
+            int length = count;
+            byte[] data = buffer == null ? new byte[0] : buffer;
+            withRetries("upload of " + key, () -> client.putObject(request -> request.bucket(properties.bucket()).key(key),
+                    RequestBody.fromContentProvider(() -> new ByteArrayInputStream(data, 0, length), length, CONTENT_TYPE)));
+            return;
+        }
+        try {
+            if (count > 0) {
+                uploadPart();
+            }
+            List<CompletedPart> completed = new ArrayList<>(parts.size());
+            for (Future<CompletedPart> part : parts) {
+                completed.add(part.get());
+            }
+            withRetries("completion of " + key, () -> client.completeMultipartUpload(request -> request
+                    .bucket(properties.bucket()).key(key).uploadId(uploadId)
+                    .multipartUpload(upload -> upload.parts(completed))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new InterruptedIOException("Upload of " + key + " was interrupted");
+        } catch (ExecutionException e) {
+            abort();
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException io ? io : new IOException("Upload of " + key + " failed: " + cause.getMessage(), cause);
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        } finally {
+            buffer = null;
+            freeBuffers.clear();
+        }
+    }
+
+    /**
+     * Waits for a free buffer while the most parts are in flight, and gives up early if one of them failed.
+     */
+    private byte[] takeBuffer() throws IOException {
+        byte[] free = freeBuffers.poll();
+        if (free == null && buffersAllocated < properties.maxPartsInFlight() + 1) {
+            buffersAllocated++;
+            free = new byte[properties.partSize()];
+        }
+        try {
+            if (free == null) {
+                //a failed part hands its buffer back as well, so this wakes up for it
+                free = freeBuffers.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+            abort();
+            throw new InterruptedIOException("Upload of " + key + " was interrupted");
+        }
+        IOException partFailure = failure;
+        if (partFailure != null) {
+            closed = true;
+            abort();
+            throw new IOException("Upload of " + key + " failed: " + partFailure.getMessage(), partFailure);
+        }
+        return free;
+    }
+
+    private void uploadPart() throws IOException {
+        if (parts.size() == MAX_PARTS) {
+            closed = true;
+            abort();
+            throw new IOException(String.format("%s needs more than %d parts, increase backt.storage.s3.part-size", key, MAX_PARTS));
+        }
+        if (uploadId == null) {
+            uploadId = withRetries("start of the upload of " + key,
+                    () -> client.createMultipartUpload(request -> request.bucket(properties.bucket()).key(key).contentType(CONTENT_TYPE)).uploadId());
+        }
+        int partNumber = parts.size() + 1;
+        byte[] data = buffer;
+        int length = count;
+        buffer = null;
+        count = 0;
+        parts.add(uploads.submit(() -> {
+            try {
+                String etag = withRetries("part " + partNumber + " of " + key, () -> client.uploadPart(
+                        request -> request.bucket(properties.bucket()).key(key).uploadId(uploadId).partNumber(partNumber).contentLength((long) length),
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(data, 0, length), length, CONTENT_TYPE)).eTag());
+                return CompletedPart.builder().partNumber(partNumber).eTag(etag).build();
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            } finally {
+                freeBuffers.offer(data);
+            }
+        }));
+    }
+
+    /**
+     * Cancels the parts still in flight and drops the parts already uploaded. Best effort: a bucket should expire
+     * incomplete multipart uploads anyway.
+     */
+    private void abort() {
+        parts.forEach(part -> part.cancel(true));
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            client.abortMultipartUpload(request -> request.bucket(properties.bucket()).key(key).uploadId(uploadId));
+        } catch (SdkException e) {
+            logger.warn("Unable to abort the upload of {}, its parts stay in the bucket until it expires them: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a request, retrying network errors, throttling and server errors with an exponential backoff.
+     */
+    private <T> T withRetries(String what, Callable<T> request) throws IOException {
+        long backoff = properties.retryBackoff().toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return request.call();
+            } catch (AbortedException e) {
+                throw new InterruptedIOException("The " + what + " was interrupted");
+            } catch (SdkException e) {
+                if (attempt >= properties.maxAttempts() || !isRetryable(e)) {
+                    throw new IOException(String.format("The %s failed after %d attempts: %s", what, attempt, e.getMessage()), e);
+                }
+                logger.warn("The {} failed, attempt {} of {}, retrying in {} ms: {}", what, attempt, properties.maxAttempts(), backoff, e.getMessage());
+            } catch (Exception e) {
+                throw new IOException("The " + what + " failed: " + e.getMessage(), e);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("The " + what + " was interrupted");
+            }
+            backoff *= 2;
+        }
+    }
+
+    private static boolean isRetryable(SdkException e) {
+        if (e instanceof S3Exception s3) {
+            return s3.statusCode() >= 500 || s3.statusCode() == 429;
+        }
+        return e instanceof SdkClientException;
+    }
+}
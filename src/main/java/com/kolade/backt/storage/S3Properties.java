@@ -0,0 +1,41 @@
+package com.kolade.backt.storage;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * The S3-compatible object store backups can be shipped to, bound from {@code backt.storage.s3.*}.
+ *
+ * @param enabled          make the {@code s3} storage available to backups
+ * @param endpoint         URL of the store, e.g. a MinIO server; empty for AWS S3 itself
+ * @param region           region of the bucket, any value for stores that have none
+ * @param bucket           bucket the backups are written to
+ * @param prefix           prepended to the path of every backup to form its object key
+ * @param accessKey        access key, empty to use the default AWS credential chain
+ * @param secretKey        secret key that goes with the access key
+ * @param pathStyle        address the bucket in the path rather than the host name, as MinIO expects
+ * @param partSize         bytes uploaded as one part of a multipart upload, at least 5 MB; a backup can have at
+ *                         most 10000 parts
+ * @param maxPartsInFlight parts of one backup buffered and uploaded at once; the dump waits while they are all taken,
+ *                         so a backup holds at most one part more than this in memory
+ * @param maxAttempts      attempts at uploading one part before the backup fails
+ * @param retryBackoff     wait before the second attempt, doubled for every further one
+ */
+@ConfigurationProperties(prefix = "backt.storage.s3")
+public record S3Properties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("") String endpoint,
+        @DefaultValue("us-east-1") String region,
+        @DefaultValue("") String bucket,
+        @DefaultValue("") String prefix,
+        @DefaultValue("") String accessKey,
+        @DefaultValue("") String secretKey,
+        @DefaultValue("true") boolean pathStyle,
+        @DefaultValue("16777216") int partSize,
+        @DefaultValue("4") int maxPartsInFlight,
+        @DefaultValue("4") int maxAttempts,
+        @DefaultValue("500ms") Duration retryBackoff
+) {
+}
@@ -0,0 +1,166 @@
+package com.kolade.backt.storage;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps backups as objects of an S3-compatible bucket. The object key is the configured prefix followed by the path
+ * of the backup.
+ * <p>
+ * Files are streamed into a multipart upload as they are written, see {@link S3MultipartOutputStream}, so a backup
+ * never touches the local disk. The client does not retry by itself: the upload retries failed parts on its own, and
+ * everything else fails at once.
+ */
+public class S3Storage implements BackupStorage {
+
+    public static final String NAME = "s3";
+    //S3 rejects smaller parts except for the last one
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Properties properties;
+    private final S3Client client;
+    private final ExecutorService uploads = Executors.newCachedThreadPool(daemonThreads("backt-s3-upload-"));
+
+    public S3Storage(S3Properties properties) {
+        if (properties.bucket().isBlank()) {
+            throw new IllegalStateException("backt.storage.s3.bucket is required when S3 storage is enabled");
+        }
+        if (properties.partSize() < MIN_PART_SIZE) {
+            throw new IllegalStateException("backt.storage.s3.part-size must be at least " + MIN_PART_SIZE);
+        }
+        if (properties.maxPartsInFlight() < 1 || properties.maxAttempts() < 1) {
+            throw new IllegalStateException("backt.storage.s3.max-parts-in-flight and max-attempts must be at least 1");
+        }
+        this.properties = properties;
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(properties.region()))
+                .forcePathStyle(properties.pathStyle())
+                .credentialsProvider(credentials(properties))
+                .overrideConfiguration(o -> o.retryStrategy(AwsRetryStrategy.doNotRetry()));
+        if (!properties.endpoint().isBlank()) {
+            builder.endpointOverride(URI.create(properties.endpoint()));
+        }
+        this.client = builder.build();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+
+    @Override
+    public void createDirectories(Path directory) {
+        //keys are created with their objects
+    }
+
+    @Override
+    public OutputStream create(Path file) {
+        return new S3MultipartOutputStream(client, properties, uploads, key(file));
+    }
+
+    @Override
+    public InputStream open(Path file) throws IOException {
+        try {
+            return client.getObject(request -> request.bucket(properties.bucket()).key(key(file)), ResponseTransformer.toInputStream());
+        } catch (SdkException e) {
+            throw new IOException("Unable to read " + describe(file) + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public long size(Path file) throws IOException {
+        try {
+            return client.headObject(request -> request.bucket(properties.bucket()).key(key(file))).contentLength();
+        } catch (SdkException e) {
+            throw new IOException("Unable to read the size of " + describe(file) + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean exists(Path path) throws IOException {
+        try {
+            client.headObject(request -> request.bucket(properties.bucket()).key(key(path)));
+            return true;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw new IOException("Unable to look up " + describe(path) + ": " + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("Unable to look up " + describe(path) + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Backups in S3 are single objects, so this deletes one object.
+     */
+    @Override
+    public void delete(Path path) throws IOException {
+        try {
+            client.deleteObject(request -> request.bucket(properties.bucket()).key(key(path)));
+        } catch (SdkException e) {
+            throw new IOException("Unable to delete " + describe(path) + ": " + e.getMessage(), e);
+        }
+    }
+
+    public void shutdown() {
+        uploads.shutdownNow();
+        client.close();
+    }
+
+    String key(Path path) {
+        String key = path.normalize().toString().replace('\\', '/');
+        while (key.startsWith("/")) {
+            key = key.substring(1);
+        }
+        String prefix = properties.prefix();
+        if (prefix.isBlank()) {
+            return key;
+        }
+        return prefix.endsWith("/") ? prefix + key : prefix + "/" + key;
+    }
+
+    private String describe(Path path) {
+        return "s3://" + properties.bucket() + "/" + key(path);
+    }
+
+    private static AwsCredentialsProvider credentials(S3Properties properties) {
+        if (properties.accessKey().isBlank()) {
+            return DefaultCredentialsProvider.create();
+        }
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create(properties.accessKey(), properties.secretKey()));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,289 @@
+package com.kolade.backt.throttle;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how fast backups pull data out of their databases, so a dump does not hurt the latency of the queries the
+ * server is there for.
+ * <p>
+ * Every byte a backup file takes is paced by a token bucket of its database server and by a global one. A backup
+ * registers its path when it starts, and its files find their throttle by path, like their checksums and timings.
+ * With {@code adaptive} on, the server's latency is probed on a pooled connection while backups run against it.
+ * The lowest latency seen is the baseline. When a probe comes back well above it, the server's limit is halved down
+ * to the current dump rate, and every healthy probe adds a step back up to the configured limit. When no limit is
+ * configured, the limit is lifted again once it no longer holds the dump back.
+ * <p>
+ * Files written by the dump tools themselves, such as a pg_dump directory, do not pass through backt and cannot be
+ * throttled.
+ */
+@Component
+public class DumpThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(DumpThrottle.class);
+    private static final int BASELINE_PROBES = 3;
+
+    private final ThrottleProperties properties;
+    private final ConnectionManager connectionManager;
+    private final TokenBucket global;
+    private final ScheduledExecutorService prober;
+    //guarded by this
+    private final Map<String, TargetThrottle> targets = new HashMap<>();
+    private final Map<Path, TargetThrottle> running = new ConcurrentHashMap<>();
+
+    public DumpThrottle(ThrottleProperties properties, ConnectionManager connectionManager) {
+        this.properties = properties;
+        this.connectionManager = connectionManager;
+        this.global = new TokenBucket(properties.globalBytesPerSecond());
+        this.prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "backt-throttle-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts throttling the files written under {@code backupPath}, a file or a directory, against the server of
+     * {@code databaseDetails}.
+     */
+    public synchronized void start(Path backupPath, DatabaseType databaseType, DatabaseDetails databaseDetails) {
+        if (!properties.enabled()) {
+            return;
+        }
+        String target = databaseDetails.getHost() + ":" + databaseDetails.getPort();
+        TargetThrottle throttle = targets.computeIfAbsent(target, key -> new TargetThrottle(key, properties.targetLimit(key)));
+        if (throttle.backups++ == 0 && properties.adaptive()) {
+            throttle.startProbing(databaseType, databaseDetails);
+        }
+        running.put(key(backupPath), throttle);
+    }
+
+    /**
+     * Stops throttling the backup written to {@code backupPath}. Does nothing if it was not throttled.
+     */
+    public synchronized void release(Path backupPath) {
+        TargetThrottle throttle = running.remove(key(backupPath));
+        if (throttle != null && --throttle.backups == 0) {
+            throttle.stopProbing();
+            targets.remove(throttle.target);
+        }
+    }
+
+    /**
+     * @return the throttle of the running backup {@code file} belongs to, or {@link Throttle#NONE}
+     */
+    public Throttle throttleFor(Path file) {
+        if (running.isEmpty()) {
+            return Throttle.NONE;
+        }
+        for (Path path = key(file); path != null; path = path.getParent()) {
+            TargetThrottle throttle = running.get(path);
+            if (throttle != null) {
+                return throttle;
+            }
+        }
+        return Throttle.NONE;
+    }
+
+    /**
+     * Throttles the reads from a dump stream that is not written through a backup file, e.g. into the chunk store.
+     */
+    public InputStream throttle(InputStream source, Path file) {
+        Throttle throttle = throttleFor(file);
+        if (!throttle.isEnabled()) {
+            return source;
+        }
+        return new FilterInputStream(source) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b != -1) {
+                    throttle.acquire(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0) {
+                    throttle.acquire(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        targets.values().forEach(TargetThrottle::stopProbing);
+        prober.shutdownNow();
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * The limit of one database server, shared by the backups running against it.
+     */
+    private final class TargetThrottle implements Throttle {
+
+        private final String target;
+        //the configured limit, 0 if none
+        private final long ceiling;
+        private final TokenBucket bucket;
+        private final LongAdder bytesTaken = new LongAdder();
+        //guarded by DumpThrottle.this
+        private int backups;
+        private boolean stopped;
+        private ScheduledFuture<?> probing;
+        private volatile LatencyProbe probe;
+        //only touched by the probe thread
+        private long baselineNanos = Long.MAX_VALUE;
+        private long lastProbeTime;
+
+        TargetThrottle(String target, long ceiling) {
+            this.target = target;
+            this.ceiling = ceiling;
+            this.bucket = new TokenBucket(ceiling);
+        }
+
+        @Override
+        public void acquire(long bytes) throws InterruptedIOException {
+            bytesTaken.add(bytes);
+            TokenBucket.sleep(Math.max(global.reserve(bytes), bucket.reserve(bytes)));
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        /**
+         * Opens the probe and takes the baseline on the probe thread, so a slow server does not hold up the backups
+         * starting and finishing meanwhile.
+         */
+        void startProbing(DatabaseType databaseType, DatabaseDetails databaseDetails) {
+            probing = prober.schedule(() -> openProbe(databaseType, databaseDetails), 0, TimeUnit.NANOSECONDS);
+        }
+
+        private void openProbe(DatabaseType databaseType, DatabaseDetails databaseDetails) {
+            LatencyProbe opened = null;
+            try {
+                opened = LatencyProbe.open(connectionManager, databaseType, databaseDetails, properties.probeTimeout());
+                for (int i = 0; i < BASELINE_PROBES; i++) {
+                    baselineNanos = Math.min(baselineNanos, opened.probe());
+                }
+            } catch (Exception e) {
+                logger.warn("Cannot probe the latency of {}, its dumps are throttled to the configured limits only: {}", target, e.getMessage());
+                close(opened);
+                return;
+            }
+            synchronized (DumpThrottle.this) {
+                //the last backup against the target finished while the baseline was taken
+                if (stopped) {
+                    close(opened);
+                    return;
+                }
+                probe = opened;
+                lastProbeTime = System.nanoTime();
+                bytesTaken.reset();
+                long interval = properties.probeInterval().toNanos();
+                probing = prober.scheduleWithFixedDelay(this::adapt, interval, interval, TimeUnit.NANOSECONDS);
+            }
+            logger.info("Probing {} every {} during backups, baseline latency {} ms", target, properties.probeInterval(), String.format("%.2f", baselineNanos / 1e6));
+        }
+
+        void stopProbing() {
+            stopped = true;
+            if (probing != null) {
+                probing.cancel(false);
+                probing = null;
+            }
+            LatencyProbe openProbe = probe;
+            probe = null;
+            close(openProbe);
+            bucket.setRate(ceiling);
+        }
+
+        private void close(LatencyProbe openProbe) {
+            if (openProbe != null) {
+                try {
+                    openProbe.close();
+                } catch (Exception e) {
+                    logger.debug("Closing the latency probe of {} failed", target, e);
+                }
+            }
+        }
+
+        /**
+         * Probes the server once and moves the limit: multiplicatively down when congested, a step up when not.
+         */
+        private void adapt() {
+            LatencyProbe currentProbe = probe;
+            if (currentProbe == null) {
+                return;
+            }
+            long latency;
+            try {
+                latency = currentProbe.probe();
+            } catch (Exception e) {
+                //an unanswered probe is the strongest sign of an overloaded server
+                logger.debug("Latency probe of {} failed", target, e);
+                latency = properties.probeTimeout().toNanos();
+            }
+            long now = System.nanoTime();
+            long dumpRate = (long) (bytesTaken.sumThenReset() * 1e9 / Math.max(1, now - lastProbeTime));
+            lastProbeTime = now;
+            baselineNanos = Math.min(baselineNanos, latency);
+
+            long threshold = Math.max((long) (baselineNanos * properties.latencyFactor()), baselineNanos + properties.latencySlack().toNanos());
+            long maxLatency = properties.maxLatency().toNanos();
+            boolean congested = latency > threshold || maxLatency > 0 && latency > maxLatency;
+            long floor = ceiling > 0 ? Math.min(properties.minBytesPerSecond(), ceiling) : properties.minBytesPerSecond();
+
+            long rate = bucket.getRate();
+            long newRate = rate;
+            if (congested) {
+                long current = rate > 0 && dumpRate > 0 ? Math.min(rate, dumpRate) : Math.max(rate, dumpRate);
+                if (current > 0) {
+                    newRate = Math.max(floor, (long) (current * properties.backoffFactor()));
+                }
+            } else if (rate > 0) {
+                newRate = rate + (long) (Math.max(ceiling > 0 ? ceiling : rate, floor) * properties.recoveryStep());
+                if (ceiling > 0) {
+                    newRate = Math.min(newRate, ceiling);
+                } else if (newRate > 2 * dumpRate) {
+                    //the limit no longer holds the dump back
+                    newRate = 0;
+                }
+            }
+            if (newRate != rate) {
+                bucket.setRate(newRate);
+                logger.info("{} dumps from {}: latency {} ms (baseline {} ms), limit {}", congested ? "Slowing" : "Speeding up", target,
+                        String.format("%.2f", latency / 1e6), String.format("%.2f", baselineNanos / 1e6),
+                        newRate > 0 ? String.format("%.1f MB/s", newRate / 1e6) : "lifted");
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.kolade.backt.throttle;
+
+import com.kolade.backt.common.DatabaseDetails;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.connection.ConnectionManager;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Measures how long the database takes to answer a trivial request. It makes the same check as
+ * {@link com.kolade.backt.common.DatabaseConnection#testConnection()}: {@code Connection.isValid} for the JDBC
+ * engines, which pings the server, and a {@code ping} command for MongoDB. A JDBC probe keeps one connection of the
+ * server's pool borrowed while it is open, so it never waits behind the dump for a free one. A MongoDB probe leases
+ * the shared client of the cluster, whose own timeouts bound an unanswered ping.
+ */
+interface LatencyProbe extends AutoCloseable {
+
+    /**
+     * @return the round trip in nanoseconds, or the timeout if the server did not answer within it
+     */
+    long probe() throws Exception;
+
+    @Override
+    void close() throws Exception;
+
+    static LatencyProbe open(ConnectionManager connectionManager, DatabaseType databaseType, DatabaseDetails databaseDetails, Duration timeout) throws Exception {
+        return databaseType == DatabaseType.MONGODB ? mongo(connectionManager, databaseDetails) : jdbc(connectionManager, databaseDetails, timeout);
+    }
+
+    private static LatencyProbe jdbc(ConnectionManager connectionManager, DatabaseDetails databaseDetails, Duration timeout) throws SQLException {
+        Connection connection = connectionManager.getConnection(databaseDetails);
+        int timeoutSeconds = (int) Math.max(1, (timeout.toMillis() + 999) / 1000);
+        return new LatencyProbe() {
+            @Override
+            public long probe() throws SQLException {
+                long startTime = System.nanoTime();
+                boolean valid = connection.isValid(timeoutSeconds);
+                return valid ? System.nanoTime() - startTime : timeout.toNanos();
+            }
+
+            @Override
+            public void close() throws SQLException {
+                connection.close();
+            }
+        };
+    }
+
+    private static LatencyProbe mongo(ConnectionManager connectionManager, DatabaseDetails databaseDetails) {
+        ConnectionManager.MongoLease lease = connectionManager.mongoClient(databaseDetails);
+        MongoDatabase admin = lease.client().getDatabase("admin");
+        Document ping = new Document("ping", 1);
+        return new LatencyProbe() {
+            @Override
+            public long probe() {
+                long startTime = System.nanoTime();
+                admin.runCommand(ping);
+                return System.nanoTime() - startTime;
+            }
+
+            @Override
+            public void close() {
+                lease.close();
+            }
+        };
+    }
+}
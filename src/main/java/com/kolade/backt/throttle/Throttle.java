@@ -0,0 +1,27 @@
+package com.kolade.backt.throttle;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Rate limit on the bytes a backup file takes from its database, handed out by {@link DumpThrottle}.
+ */
+public interface Throttle {
+
+    Throttle NONE = new Throttle() {
+        @Override
+        public void acquire(long bytes) {
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * Blocks until {@code bytes} more may be taken.
+     */
+    void acquire(long bytes) throws InterruptedIOException;
+
+    boolean isEnabled();
+}
@@ -0,0 +1,50 @@
+package com.kolade.backt.throttle;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Limits on how fast backups pull data from a database, bound from {@code backt.throttle.*}. Rates are in bytes per
+ * second of dump output, before compression; 0 means unlimited.
+ *
+ * @param enabled              whether dumps are throttled at all
+ * @param globalBytesPerSecond limit shared by every backup running at once
+ * @param targetBytesPerSecond limit per database server, for servers not listed in {@code targets}
+ * @param targets              limits of single database servers, keyed by {@code host:port}
+ * @param adaptive             whether to probe the server's latency during the dump and back off when it rises
+ * @param minBytesPerSecond    floor the adaptive limit never backs off below, so a backup always finishes
+ * @param probeInterval        how often the server's latency is probed
+ * @param probeTimeout         a probe taking longer counts as congested
+ * @param latencyFactor        latency above the baseline times this factor counts as congested
+ * @param latencySlack         latency also has to exceed the baseline by this much, so noise on a fast server does not
+ * @param maxLatency           latency above this counts as congested whatever the baseline, 0 to disable
+ * @param backoffFactor        the limit is multiplied by this when the server is congested
+ * @param recoveryStep         fraction of the limit added back after every healthy probe
+ */
+@ConfigurationProperties(prefix = "backt.throttle")
+public record ThrottleProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("0") long globalBytesPerSecond,
+        @DefaultValue("0") long targetBytesPerSecond,
+        Map<String, Long> targets,
+        @DefaultValue("true") boolean adaptive,
+        @DefaultValue("4194304") long minBytesPerSecond,
+        @DefaultValue("2s") Duration probeInterval,
+        @DefaultValue("5s") Duration probeTimeout,
+        @DefaultValue("2.0") double latencyFactor,
+        @DefaultValue("2ms") Duration latencySlack,
+        @DefaultValue("0ms") Duration maxLatency,
+        @DefaultValue("0.5") double backoffFactor,
+        @DefaultValue("0.1") double recoveryStep
+) {
+
+    public long targetLimit(String target) {
+        if (targets == null) {
+            return targetBytesPerSecond;
+        }
+        return targets.getOrDefault(target, targetBytesPerSecond);
+    }
+}
@@ -0,0 +1,70 @@
+package com.kolade.backt.throttle;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces a byte stream to a rate. Tokens accumulate at the rate up to a quarter second's worth, so short bursts pass
+ * unpaced. A take larger than the tokens available goes into debt and the caller sleeps it off, which keeps the long
+ * term rate exact for writes of any size. The rate can be changed while bytes are flowing; 0 means unlimited.
+ */
+final class TokenBucket {
+
+    private static final double BURST_SECONDS = 0.25;
+
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    TokenBucket(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    synchronized long getRate() {
+        return bytesPerSecond;
+    }
+
+    synchronized void setRate(long bytesPerSecond) {
+        refill();
+        this.bytesPerSecond = bytesPerSecond;
+        tokens = Math.min(tokens, capacity());
+    }
+
+    /**
+     * Takes {@code bytes} tokens.
+     *
+     * @return nanoseconds the caller has to wait before the bytes are due
+     */
+    synchronized long reserve(long bytes) {
+        if (bytesPerSecond <= 0) {
+            return 0;
+        }
+        refill();
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+    }
+
+    static void sleep(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(capacity(), tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+        }
+        lastRefill = now;
+    }
+
+    private double capacity() {
+        return bytesPerSecond * BURST_SECONDS;
+    }
+}
@@ -1,12 +1,15 @@
 package com.kolade.backt.util;
 
 import com.kolade.backt.common.BackupRequest;
+import com.kolade.backt.storage.BackupStorage;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public class BackupUtil {
 
@@ -39,4 +42,32 @@ public class BackupUtil {
     public static void deleteTempBackupPath(Path filePath) throws IOException {
         Files.deleteIfExists(filePath);
     }
+
+    /**
+     * Deletes a backup file, or a backup directory with everything in it.
+     */
+    public static void deleteBackupPath(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Size of a backup file, or the total size of all files in a backup directory.
+     */
+    public static long sizeOf(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            return paths.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    public static Path resolveBackupFile(BackupStorage storage, Path destinationDirectory, String backupId, String extension) throws IOException {
+        storage.createDirectories(destinationDirectory);
+        return destinationDirectory.resolve(backupId + extension);
+    }
 }
@@ -0,0 +1,259 @@
+package com.kolade.backt.verify;
+
+import com.kolade.backt.common.BackupFormat;
+import com.kolade.backt.common.BackupMetadata;
+import com.kolade.backt.dedup.ChunkStore;
+import com.kolade.backt.exception.BackupException;
+import com.kolade.backt.manifest.BackupManifest;
+import com.kolade.backt.manifest.ManifestEntry;
+import com.kolade.backt.pipeline.ChecksumProperties;
+import com.kolade.backt.storage.LocalStorage;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Checks backups against their manifests.
+ * <p>
+ * The manifest is checked against the checksum recorded in the catalog first, then every file is memory mapped
+ * and checked in parallel: files are cut into tasks of {@code backt.checksum.verify-task-size} bytes whose blocks
+ * are compared with the CRC32C recorded when they were written, so even a single large archive is read by all
+ * workers at once. A full verification recomputes the SHA-256 of every file instead, one file per worker.
+ * Chunks of a deduplicated backup are named by their SHA-256 and are always checked against it.
+ */
+@Service
+@RequiredArgsConstructor
+public class BackupVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackupVerifier.class);
+    //chunks are small, checking a batch per task keeps the task overhead down
+    private static final int CHUNKS_PER_TASK = 64;
+
+    private final ChunkStore chunkStore;
+    private final ChecksumProperties properties;
+
+    /**
+     * Verifies the backups one after the other, each with all workers.
+     *
+     * @param full    recompute SHA-256 checksums instead of comparing block CRCs
+     * @param workers threads reading the files, 0 to use the configured number
+     */
+    public List<VerificationResult> verify(List<BackupMetadata> backups, boolean full, int workers) {
+        int threads = workers > 0 ? workers : properties.effectiveVerifyWorkers();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<VerificationResult> results = new ArrayList<>();
+            for (BackupMetadata backup : backups) {
+                results.add(verify(backup, full, executor));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private VerificationResult verify(BackupMetadata backup, boolean full, ExecutorService executor) {
+        long startTime = System.nanoTime();
+        Queue<String> problems = new ConcurrentLinkedQueue<>();
+        LongAdder bytesVerified = new LongAdder();
+        int files = 0;
+        try {
+            Path backupPath = Paths.get(backup.getBackupPath());
+            BackupManifest manifest = openManifest(backup, backupPath, problems);
+            if (manifest != null) {
+                List<Callable<Void>> tasks = new ArrayList<>();
+                files = backup.getBackupFormat() == BackupFormat.RECIPE
+                        ? planChunks(manifest, tasks, problems, bytesVerified)
+                        : planFiles(manifest, backupPath, full, tasks, problems, bytesVerified);
+                for (Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            }
+        } catch (IOException e) {
+            problems.add(e.getMessage());
+        } catch (ExecutionException e) {
+            problems.add(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackupException("Verification of " + backup.getBackupId() + " was interrupted", e);
+        }
+        VerificationResult result = VerificationResult.builder()
+                .backupId(backup.getBackupId())
+                .files(files)
+                .bytesVerified(bytesVerified.sum())
+                .elapsed(Duration.ofNanos(System.nanoTime() - startTime))
+                .problems(List.copyOf(problems))
+                .build();
+        logger.info("Verified {}: {} files, {} bytes at {} MB/s, {} problems", backup.getBackupId(), result.files(),
+                result.bytesVerified(), Math.round(result.throughput()), result.problems().size());
+        return result;
+    }
+
+    /**
+     * @return the manifest, or null when it is missing or cannot be trusted
+     */
+    private BackupManifest openManifest(BackupMetadata backup, Path backupPath, Queue<String> problems) throws IOException {
+        if (backup.getStorage() != null && !LocalStorage.NAME.equals(backup.getStorage())) {
+            //blocks are read with positioned reads from local files
+            problems.add("Backups kept in " + backup.getStorage() + " storage cannot be verified");
+            return null;
+        }
+        if (!Files.exists(backupPath)) {
+            problems.add("Backup files are missing: " + backupPath);
+            return null;
+        }
+        Path manifestFile = BackupManifest.manifestPath(backupPath);
+        if (!Files.exists(manifestFile)) {
+            problems.add("Manifest is missing: " + manifestFile);
+            return null;
+        }
+        if (backup.getChecksum() != null) {
+            MessageDigest digest = sha256();
+            try (FileChannel channel = FileChannel.open(manifestFile, StandardOpenOption.READ)) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            if (!HexFormat.of().formatHex(digest.digest()).equalsIgnoreCase(backup.getChecksum())) {
+                problems.add("Manifest does not match the checksum recorded in the catalog: " + manifestFile);
+                return null;
+            }
+        }
+        return BackupManifest.open(manifestFile);
+    }
+
+    private int planFiles(BackupManifest manifest, Path backupPath, boolean full, List<Callable<Void>> tasks,
+                          Queue<String> problems, LongAdder bytesVerified) {
+        boolean directory = Files.isDirectory(backupPath);
+        int blockSize = manifest.crcBlockSize();
+        long taskBlocks = blockSize > 0 ? Math.max(1, properties.verifyTaskSize() / blockSize) : 0;
+        for (int i = 0; i < manifest.size(); i++) {
+            ManifestEntry entry = manifest.entry(i);
+            Path file = directory ? backupPath.resolve(entry.path()) : backupPath;
+            long size = file.toFile().length();
+            if (!Files.isRegularFile(file)) {
+                problems.add(entry.path() + ": missing");
+            } else if (size != entry.compressedLength()) {
+                problems.add(String.format("%s: %d bytes, %d expected", entry.path(), size, entry.compressedLength()));
+            } else if (full || entry.blockCrcs().length == 0) {
+                tasks.add(() -> {
+                    checkDigest(file, entry.path(), entry.checksum(), problems, bytesVerified);
+                    return null;
+                });
+            } else {
+                for (long first = 0; first < entry.blockCrcs().length; first += taskBlocks) {
+                    int firstBlock = (int) first;
+                    int blocks = (int) Math.min(taskBlocks, entry.blockCrcs().length - first);
+                    tasks.add(() -> {
+                        checkBlocks(file, entry, blockSize, firstBlock, blocks, problems, bytesVerified);
+                        return null;
+                    });
+                }
+            }
+        }
+        return manifest.size();
+    }
+
+    private int planChunks(BackupManifest manifest, List<Callable<Void>> tasks, Queue<String> problems, LongAdder bytesVerified) {
+        //a chunk referenced several times is checked once
+        Set<String> hashes = new LinkedHashSet<>();
+        for (int i = 0; i < manifest.size(); i++) {
+            hashes.add(manifest.entry(i).checksumHex());
+        }
+        List<String> chunks = new ArrayList<>(hashes);
+        for (int from = 0; from < chunks.size(); from += CHUNKS_PER_TASK) {
+            List<String> batch = chunks.subList(from, Math.min(from + CHUNKS_PER_TASK, chunks.size()));
+            tasks.add(() -> {
+                for (String hash : batch) {
+                    Path chunk = chunkStore.chunkPath(hash);
+                    if (!Files.isRegularFile(chunk)) {
+                        problems.add("chunk " + hash + ": missing");
+                    } else {
+                        checkDigest(chunk, "chunk " + hash, HexFormat.of().parseHex(hash), problems, bytesVerified);
+                    }
+                }
+                return null;
+            });
+        }
+        return chunks.size();
+    }
+
+    /**
+     * Compares {@code blocks} consecutive blocks of a file, starting at {@code firstBlock}, with their recorded CRCs.
+     */
+    private static void checkBlocks(Path file, ManifestEntry entry, int blockSize, int firstBlock, int blocks,
+                                    Queue<String> problems, LongAdder bytesVerified) {
+        long position = (long) firstBlock * blockSize;
+        long length = Math.min((long) blocks * blockSize, entry.compressedLength() - position);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            CRC32C crc = new CRC32C();
+            for (int block = 0; block < blocks; block++) {
+                int offset = block * blockSize;
+                crc.reset();
+                crc.update(mapped.slice(offset, (int) Math.min(blockSize, length - offset)));
+                if ((int) crc.getValue() != entry.blockCrcs()[firstBlock + block]) {
+                    problems.add(String.format("%s: block at offset %d is corrupt", entry.path(), position + offset));
+                }
+            }
+            bytesVerified.add(length);
+        } catch (IOException e) {
+            problems.add(entry.path() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Recomputes the SHA-256 of a whole file, mapping it a window at a time.
+     */
+    private void checkDigest(Path file, String name, byte[] expected, Queue<String> problems, LongAdder bytesVerified) {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += properties.verifyTaskSize()) {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(properties.verifyTaskSize(), size - position));
+                digest.update(window);
+            }
+            bytesVerified.add(size);
+        } catch (IOException e) {
+            problems.add(name + ": " + e.getMessage());
+            return;
+        }
+        if (!Arrays.equals(digest.digest(), expected)) {
+            problems.add(name + ": SHA-256 mismatch");
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BackupException("SHA-256 is not available", e);
+        }
+    }
+}
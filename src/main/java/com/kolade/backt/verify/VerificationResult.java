@@ -0,0 +1,32 @@
+package com.kolade.backt.verify;
+
+import lombok.Builder;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @param files         files, or chunks of a deduplicated backup, that were checked
+ * @param bytesVerified bytes read from disk
+ * @param problems      everything found wrong, empty when the backup is intact
+ */
+@Builder
+public record VerificationResult(
+        String backupId,
+        int files,
+        long bytesVerified,
+        Duration elapsed,
+        List<String> problems
+) {
+
+    public boolean intact() {
+        return problems.isEmpty();
+    }
+
+    /**
+     * @return MB/s read from disk
+     */
+    public double throughput() {
+        return elapsed.toNanos() == 0 ? 0 : bytesVerified / 1e6 / (elapsed.toNanos() / 1e9);
+    }
+}
@@ -0,0 +1,147 @@
+package com.kolade.backt.crypto;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EncryptingOutputStreamTests {
+
+	private static final int BLOCK_SIZE = 1024;
+	private static final String ALIAS = "test-key";
+	private static final byte[] WRAPPED_KEY = {1, 2, 3, 4};
+	private static final int BLOCK_LENGTH = EncryptingOutputStream.BLOCK_HEADER_SIZE + BLOCK_SIZE + EncryptingOutputStream.TAG_LENGTH;
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	private final SecretKey key = newKey();
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void encryptedBlocksDecryptToOriginalBytes() throws IOException {
+		byte[] original = random(5 * BLOCK_SIZE + 123);
+
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		try (EncryptingOutputStream out = encrypting(encrypted)) {
+			out.write(original, 0, 100);
+			out.write(original, 100, original.length - 100);
+		}
+
+		assertThat(decrypt(encrypted.toByteArray())).isEqualTo(original);
+	}
+
+	@Test
+	void emptyInputIsStillACompleteFile() throws IOException {
+		byte[] encrypted = encrypt(new byte[0]);
+
+		assertThat(encrypted.length).isEqualTo(headerLength() + EncryptingOutputStream.BLOCK_HEADER_SIZE + EncryptingOutputStream.TAG_LENGTH);
+		assertThat(decrypt(encrypted)).isEmpty();
+	}
+
+	@Test
+	void inputOfWholeBlocksEndsWithAFullLastBlock() throws IOException {
+		byte[] original = random(3 * BLOCK_SIZE);
+
+		byte[] encrypted = encrypt(original);
+
+		assertThat(encrypted.length).isEqualTo(headerLength() + 3 * BLOCK_LENGTH);
+		assertThat(decrypt(encrypted)).isEqualTo(original);
+	}
+
+	@Test
+	void flippedCiphertextByteFailsAuthentication() throws IOException {
+		byte[] encrypted = encrypt(random(3 * BLOCK_SIZE + 10));
+		encrypted[headerLength() + BLOCK_LENGTH + EncryptingOutputStream.BLOCK_HEADER_SIZE + 7] ^= 1;
+
+		assertThatThrownBy(() -> decrypt(encrypted))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("block 1 failed authentication");
+	}
+
+	@Test
+	void reorderedBlocksAreRejected() throws IOException {
+		byte[] encrypted = encrypt(random(3 * BLOCK_SIZE + 10));
+		int first = headerLength();
+		byte[] block = Arrays.copyOfRange(encrypted, first, first + BLOCK_LENGTH);
+		System.arraycopy(encrypted, first + BLOCK_LENGTH, encrypted, first, BLOCK_LENGTH);
+		System.arraycopy(block, 0, encrypted, first + BLOCK_LENGTH, BLOCK_LENGTH);
+
+		assertThatThrownBy(() -> decrypt(encrypted))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("failed authentication");
+	}
+
+	@Test
+	void fileCutAfterANonLastBlockIsRejected() throws IOException {
+		byte[] encrypted = encrypt(random(3 * BLOCK_SIZE + 10));
+		byte[] truncated = Arrays.copyOf(encrypted, headerLength() + 2 * BLOCK_LENGTH);
+
+		assertThatThrownBy(() -> decrypt(truncated))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("truncated after block 2");
+	}
+
+	@Test
+	void dataAfterTheLastBlockIsRejected() throws IOException {
+		byte[] encrypted = encrypt(random(2 * BLOCK_SIZE + 10));
+		byte[] extended = Arrays.copyOf(encrypted, encrypted.length + 1);
+
+		assertThatThrownBy(() -> decrypt(extended))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("after the last encrypted block");
+	}
+
+	private EncryptingOutputStream encrypting(ByteArrayOutputStream encrypted) throws IOException {
+		return new EncryptingOutputStream(encrypted, executor, key, ALIAS, WRAPPED_KEY, BLOCK_SIZE, 4);
+	}
+
+	private byte[] encrypt(byte[] original) throws IOException {
+		ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+		try (EncryptingOutputStream out = encrypting(encrypted)) {
+			out.write(original);
+		}
+		return encrypted.toByteArray();
+	}
+
+	private byte[] decrypt(byte[] encrypted) throws IOException {
+		try (DecryptingInputStream in = new DecryptingInputStream(new ByteArrayInputStream(encrypted), executor,
+				(alias, wrappedKey) -> key, 4)) {
+			return in.readAllBytes();
+		}
+	}
+
+	private static int headerLength() throws IOException {
+		return EncryptingOutputStream.header(ALIAS, WRAPPED_KEY, BLOCK_SIZE).length;
+	}
+
+	private static byte[] random(int length) {
+		byte[] bytes = new byte[length];
+		new Random(42).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static SecretKey newKey() {
+		try {
+			KeyGenerator generator = KeyGenerator.getInstance("AES");
+			generator.init(256);
+			return generator.generateKey();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.kolade.backt.dedup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkStoreTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void chunksOnlyADeletedRecipeReferredToAreDeleted() throws IOException {
+		ChunkStore store = store();
+		byte[] first = random(1, 300_000);
+		byte[] second = Arrays.copyOf(first, 400_000);
+		System.arraycopy(random(2, 200_000), 0, second, 200_000, 200_000);
+		Path firstRecipe = directory.resolve("first.recipe");
+		Path secondRecipe = directory.resolve("second.recipe");
+		store.store(new ByteArrayInputStream(first), firstRecipe);
+		store.store(new ByteArrayInputStream(second), secondRecipe);
+		Set<String> kept = hashes(store, secondRecipe);
+		Set<String> onlyFirst = hashes(store, firstRecipe);
+		onlyFirst.removeAll(kept);
+		Files.delete(firstRecipe);
+
+		ChunkStore.CollectedGarbage garbage = store.collectGarbage(List.of(secondRecipe));
+
+		assertThat(onlyFirst).isNotEmpty();
+		assertThat(garbage.chunks()).isEqualTo((long) onlyFirst.size());
+		assertThat(onlyFirst.stream().noneMatch(hash -> Files.exists(store.chunkPath(hash)))).isTrue();
+		assertThat(kept.stream().allMatch(hash -> Files.exists(store.chunkPath(hash)))).isTrue();
+		assertThat(restore(store, secondRecipe)).isEqualTo(second);
+	}
+
+	@Test
+	void recipeNotYetInTheCatalogKeepsItsChunks() throws IOException {
+		ChunkStore store = store();
+		byte[] data = random(3, 100_000);
+		Path recipe = directory.resolve("pending.recipe");
+		store.store(new ByteArrayInputStream(data), recipe);
+
+		ChunkStore.CollectedGarbage garbage = store.collectGarbage(List.of());
+
+		assertThat(garbage.chunks()).isEqualTo(0L);
+		assertThat(restore(store, recipe)).isEqualTo(data);
+	}
+
+	@Test
+	void leftoverTemporaryFilesAreDeletedAndOtherFilesKept() throws IOException {
+		ChunkStore store = store();
+		store.store(new ByteArrayInputStream(random(4, 50_000)), directory.resolve("backup.recipe"));
+		String hash = "ab".repeat(32);
+		Path leftover = store.chunkPath(hash).resolveSibling(hash + "123456.tmp");
+		Files.createDirectories(leftover.getParent());
+		Files.write(leftover, new byte[10]);
+		Path notes = directory.resolve("chunks").resolve("README");
+		Files.writeString(notes, "chunks");
+
+		ChunkStore.CollectedGarbage garbage = store.collectGarbage(List.of(directory.resolve("backup.recipe")));
+
+		assertThat(garbage.chunks()).isEqualTo(0L);
+		assertThat(Files.exists(leftover)).isFalse();
+		assertThat(Files.exists(notes)).isTrue();
+	}
+
+	private ChunkStore store() {
+		return new ChunkStore(new DedupProperties(directory.resolve("chunks"), 2 * 1024, 8 * 1024, 32 * 1024));
+	}
+
+	private static Set<String> hashes(ChunkStore store, Path recipe) throws IOException {
+		return store.readRecipe(recipe).stream().map(ChunkReference::hash).collect(Collectors.toSet());
+	}
+
+	private static byte[] restore(ChunkStore store, Path recipe) throws IOException {
+		try (InputStream in = store.openRecipe(recipe)) {
+			return in.readAllBytes();
+		}
+	}
+
+	private static byte[] random(long seed, int length) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+}
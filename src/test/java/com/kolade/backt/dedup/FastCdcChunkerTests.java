@@ -0,0 +1,104 @@
+package com.kolade.backt.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FastCdcChunkerTests {
+
+	private static final int MIN_SIZE = 2 * 1024;
+	private static final int AVG_SIZE = 8 * 1024;
+	private static final int MAX_SIZE = 32 * 1024;
+
+	private final FastCdcChunker chunker = new FastCdcChunker(MIN_SIZE, AVG_SIZE, MAX_SIZE);
+
+	@Test
+	void chunksStayWithinSizeBounds() throws IOException {
+		List<Integer> sizes = new ArrayList<>();
+		chunker.chunk(new ByteArrayInputStream(randomBytes(4 * 1024 * 1024, 1)), (buffer, offset, length) -> sizes.add(length));
+
+		assertThat(sizes).hasSizeGreaterThan(1);
+		//only the last chunk may be shorter than the minimum
+		assertThat(sizes.subList(0, sizes.size() - 1)).allSatisfy(size -> assertThat(size).isBetween(MIN_SIZE, MAX_SIZE));
+		assertThat(sizes.get(sizes.size() - 1)).isBetween(1, MAX_SIZE);
+	}
+
+	@Test
+	void uniformInputIsCutAtMaxSize() throws IOException {
+		List<Integer> sizes = new ArrayList<>();
+		chunker.chunk(new ByteArrayInputStream(new byte[10 * MAX_SIZE + 5]), (buffer, offset, length) -> sizes.add(length));
+
+		//no content to cut at, so every chunk but the rest is as long as allowed
+		assertThat(sizes).hasSize(11);
+		assertThat(sizes.subList(0, 10)).containsOnly(MAX_SIZE);
+		assertThat(sizes.get(10)).isEqualTo(5);
+	}
+
+	@Test
+	void chunksReassembleToInput() throws IOException {
+		byte[] original = randomBytes(3 * 1024 * 1024 + 17, 2);
+		ByteArrayOutputStream reassembled = new ByteArrayOutputStream();
+		chunker.chunk(new ByteArrayInputStream(original), reassembled::write);
+
+		assertThat(reassembled.toByteArray()).isEqualTo(original);
+	}
+
+	@Test
+	void emptyInputHasNoChunks() throws IOException {
+		List<Integer> sizes = new ArrayList<>();
+		chunker.chunk(new ByteArrayInputStream(new byte[0]), (buffer, offset, length) -> sizes.add(length));
+
+		assertThat(sizes).isEmpty();
+	}
+
+	@Test
+	void insertNearStartLeavesLaterChunksUnchanged() throws IOException {
+		byte[] original = randomBytes(4 * 1024 * 1024, 3);
+		byte[] inserted = randomBytes(100, 4);
+		byte[] modified = new byte[original.length + inserted.length];
+		System.arraycopy(original, 0, modified, 0, 1000);
+		System.arraycopy(inserted, 0, modified, 1000, inserted.length);
+		System.arraycopy(original, 1000, modified, 1000 + inserted.length, original.length - 1000);
+
+		List<String> before = chunkHashes(original);
+		List<String> after = chunkHashes(modified);
+
+		//the boundaries resynchronize within the first chunks, everything after is the same chunks
+		int unchanged = before.size() - 3;
+		assertThat(after.subList(after.size() - unchanged, after.size())).isEqualTo(before.subList(before.size() - unchanged, before.size()));
+	}
+
+	private List<String> chunkHashes(byte[] data) throws IOException {
+		List<String> hashes = new ArrayList<>();
+		chunker.chunk(new ByteArrayInputStream(data), (buffer, offset, length) -> {
+			MessageDigest digest = sha256();
+			digest.update(buffer, offset, length);
+			hashes.add(HexFormat.of().formatHex(digest.digest()));
+		});
+		return hashes;
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] randomBytes(int length, long seed) {
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+}
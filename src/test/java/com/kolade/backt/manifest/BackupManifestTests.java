@@ -0,0 +1,126 @@
+package com.kolade.backt.manifest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BackupManifestTests {
+
+	@Test
+	void entriesOfOnePathAreFoundInOffsetOrder() throws IOException {
+		ManifestWriter writer = new ManifestWriter(4096)
+				.add(entry("dump.recipe", "chunk", 2048, 1024, new int[]{3}))
+				.add(entry("dump.recipe", "chunk", 0, 1024, new int[]{1}))
+				.add(entry("dump.recipe", "chunk", 1024, 1024, new int[]{2}))
+				.add(entry("schema.sql", "", 0, 10, new int[0]));
+
+		BackupManifest manifest = BackupManifest.wrap(writer.toBuffer());
+
+		List<ManifestEntry> chunks = manifest.find("dump.recipe");
+		assertThat(chunks).hasSize(3);
+		assertThat(chunks.stream().map(ManifestEntry::offset).toList()).containsExactly(0L, 1024L, 2048L);
+		assertThat(chunks.stream().map(ManifestEntry::logicalObject).toList()).containsOnly("chunk");
+		assertThat(manifest.find("schema.sql")).hasSize(1);
+		assertThat(manifest.size()).isEqualTo(4);
+		assertThat(manifest.totalLength()).isEqualTo(3 * 1024 + 10);
+		assertThat(manifest.crcBlockSize()).isEqualTo(4096);
+	}
+
+	@Test
+	void pathThatIsNotListedIsNotFound() throws IOException {
+		BackupManifest manifest = BackupManifest.wrap(new ManifestWriter(4096)
+				.add(entry("users.bson", "users", 0, 100, new int[0]))
+				.add(entry("orders.bson", "orders", 0, 200, new int[0]))
+				.toBuffer());
+
+		assertThat(manifest.find("missing.bson")).isEmpty();
+		assertThat(manifest.find("users")).isEmpty();
+		assertThat(manifest.find("users.bson")).hasSize(1);
+	}
+
+	@Test
+	void emptyManifestHasNoEntries() throws IOException {
+		BackupManifest manifest = BackupManifest.wrap(new ManifestWriter(4096).toBuffer());
+
+		assertThat(manifest.size()).isEqualTo(0);
+		assertThat(manifest.entries()).isEmpty();
+		assertThat(manifest.find("anything")).isEmpty();
+		assertThat(manifest.totalLength()).isEqualTo(0L);
+	}
+
+	@Test
+	void everyEntryReadsBackItsOwnBlockCrcs() throws IOException {
+		byte[] checksum = new byte[BackupManifest.CHECKSUM_SIZE];
+		Arrays.fill(checksum, (byte) 7);
+		BackupManifest manifest = BackupManifest.wrap(new ManifestWriter(1024)
+				.add(new ManifestEntry("b.sql", "b", 0, 3000, 2500, checksum, new int[]{10, 11, 12}))
+				.add(new ManifestEntry("a.sql", "a", 0, 1000, 900, checksum, new int[]{20}))
+				.add(new ManifestEntry("c.sql", "c", 0, 0, 0, checksum, new int[0]))
+				.toBuffer());
+
+		ManifestEntry a = manifest.find("a.sql").get(0);
+		ManifestEntry b = manifest.find("b.sql").get(0);
+		ManifestEntry c = manifest.find("c.sql").get(0);
+		assertThat(a.blockCrcs()).containsExactly(20);
+		assertThat(b.blockCrcs()).containsExactly(10, 11, 12);
+		assertThat(c.blockCrcs()).isEmpty();
+		assertThat(b.checksum()).isEqualTo(checksum);
+		assertThat(b.compressedLength()).isEqualTo(2500L);
+		assertThat(manifest.entries().stream().map(ManifestEntry::path).toList()).containsExactly("a.sql", "b.sql", "c.sql");
+	}
+
+	@Test
+	void versionOneManifestIsStillRead() throws IOException {
+		BackupManifest manifest = BackupManifest.wrap(versionOne("events.bin", "events", 100, 80));
+
+		assertThat(manifest.crcBlockSize()).isEqualTo(0);
+		List<ManifestEntry> found = manifest.find("events.bin");
+		assertThat(found).hasSize(1);
+		ManifestEntry entry = found.get(0);
+		assertThat(entry.logicalObject()).isEqualTo("events");
+		assertThat(entry.length()).isEqualTo(100L);
+		assertThat(entry.compressedLength()).isEqualTo(80L);
+		assertThat(entry.blockCrcs()).isEmpty();
+		assertThat(manifest.find("other.bin")).isEmpty();
+	}
+
+	/**
+	 * A single-entry manifest in the version 1 layout: 72-byte entries and no CRC table.
+	 */
+	private static ByteBuffer versionOne(String path, String logicalObject, long length, long compressedLength) {
+		byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+		byte[] logicalObjectBytes = logicalObject.getBytes(StandardCharsets.UTF_8);
+		int hashSlots = 2;
+		int hashTableOffset = BackupManifest.HEADER_SIZE + BackupManifest.V1_ENTRY_SIZE;
+		int stringTableOffset = hashTableOffset + hashSlots * 4;
+		ByteBuffer buffer = ByteBuffer.allocate(stringTableOffset + pathBytes.length + logicalObjectBytes.length);
+		buffer.putLong(0, BackupManifest.MAGIC)
+				.putInt(8, 1)
+				.putInt(12, 1)
+				.putLong(16, hashTableOffset)
+				.putInt(24, hashSlots)
+				.putLong(32, stringTableOffset)
+				.putLong(40, length)
+				.putLong(48, compressedLength);
+		int position = BackupManifest.HEADER_SIZE;
+		buffer.putInt(position, 0).putInt(position + 4, pathBytes.length)
+				.putInt(position + 8, pathBytes.length).putInt(position + 12, logicalObjectBytes.length)
+				.putLong(position + 16, 0)
+				.putLong(position + 24, length)
+				.putLong(position + 32, compressedLength)
+				.put(position + 40, new byte[BackupManifest.CHECKSUM_SIZE]);
+		buffer.putInt(hashTableOffset + (BackupManifest.hash(pathBytes) & (hashSlots - 1)) * 4, 1);
+		buffer.put(stringTableOffset, pathBytes).put(stringTableOffset + pathBytes.length, logicalObjectBytes);
+		return buffer;
+	}
+
+	private static ManifestEntry entry(String path, String logicalObject, long offset, long length, int[] blockCrcs) {
+		return new ManifestEntry(path, logicalObject, offset, length, length, new byte[BackupManifest.CHECKSUM_SIZE], blockCrcs);
+	}
+}
@@ -0,0 +1,76 @@
+package com.kolade.backt.mongodb;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OplogTailerTests {
+
+	@Test
+	void transactionAcrossDatabasesKeepsOnlyOperationsOfTheBackedUpDatabase() {
+		RawBsonDocument entry = transaction(insert("shop.orders", 1), insert("billing.invoices", 2), insert("shop.items", 3));
+
+		RawBsonDocument restricted = OplogTailer.restrictToDatabase(entry, "shop");
+
+		assertThat(namespaces(restricted)).containsExactly("shop.orders", "shop.items");
+		assertThat(restricted.getTimestamp("ts")).isEqualTo(entry.getTimestamp("ts"));
+		assertThat(restricted.getInt64("txnNumber")).isEqualTo(entry.getInt64("txnNumber"));
+	}
+
+	@Test
+	void transactionOfOnlyTheBackedUpDatabaseIsCopiedUnchanged() {
+		RawBsonDocument entry = transaction(insert("shop.orders", 1), insert("shop.items", 2));
+
+		assertThat(OplogTailer.restrictToDatabase(entry, "shop")).isSameAs(entry);
+	}
+
+	@Test
+	void databaseWhoseNameIsAPrefixOfAnotherIsNotMixedUp() {
+		RawBsonDocument entry = transaction(insert("shop.orders", 1), insert("shop2.orders", 2));
+
+		assertThat(namespaces(OplogTailer.restrictToDatabase(entry, "shop"))).containsExactly("shop.orders");
+	}
+
+	@Test
+	void plainOperationIsCopiedUnchanged() {
+		RawBsonDocument entry = raw(insert("shop.orders", 1).append("ts", new BsonTimestamp(100, 1)));
+
+		assertThat(OplogTailer.restrictToDatabase(entry, "shop")).isSameAs(entry);
+	}
+
+	private static BsonDocument insert(String namespace, int id) {
+		return new BsonDocument("op", new BsonString("i"))
+				.append("ns", new BsonString(namespace))
+				.append("o", new BsonDocument("_id", new BsonInt32(id)));
+	}
+
+	private static RawBsonDocument transaction(BsonDocument... operations) {
+		return raw(new BsonDocument("op", new BsonString("c"))
+				.append("ns", new BsonString("admin.$cmd"))
+				.append("o", new BsonDocument("applyOps", new BsonArray(List.of(operations))))
+				.append("ts", new BsonTimestamp(100, 1))
+				.append("txnNumber", new BsonInt64(7)));
+	}
+
+	private static RawBsonDocument raw(BsonDocument document) {
+		return new RawBsonDocument(document, new BsonDocumentCodec());
+	}
+
+	private static List<String> namespaces(RawBsonDocument entry) {
+		return entry.getDocument("o").getArray("applyOps").stream()
+				.map(BsonValue::asDocument)
+				.map(operation -> operation.getString("ns").getValue())
+				.toList();
+	}
+}
@@ -0,0 +1,56 @@
+package com.kolade.backt.mysql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MySQLRestorerTests {
+
+	@Test
+	void trimmedFileIsDecodedFromItsFirstByte() {
+		List<String> args = decoderArgs("binlog.000042.gz\t1234\ttrimmed", "shop", "shop");
+
+		assertThat(args).containsExactly("mysqlbinlog", "--database=shop", "-");
+	}
+
+	@Test
+	void fileFetchedWholeIsDecodedFromItsStartPosition() {
+		List<String> args = decoderArgs("binlog.000042\t1234\twhole", "shop", "shop");
+
+		assertThat(args).containsExactly("mysqlbinlog", "--start-position=1234", "--database=shop", "-");
+	}
+
+	@Test
+	void fileStartingAtTheFirstEventIsDecodedWhole() {
+		List<String> args = decoderArgs("binlog.000043\t4\twhole", "shop", "shop");
+
+		assertThat(args).containsExactly("mysqlbinlog", "--database=shop", "-");
+	}
+
+	@Test
+	void indexWithoutTrimColumnWasTrimmed() {
+		List<String> args = decoderArgs("binlog.000042\t1234", "shop", "shop");
+
+		assertThat(args).containsExactly("mysqlbinlog", "--database=shop", "-");
+	}
+
+	@Test
+	void restoreUnderAnotherNameRewritesTheDatabase() {
+		List<String> args = decoderArgs("binlog.000042\t1234\ttrimmed", "shop", "shop_copy");
+
+		assertThat(args).containsExactly("mysqlbinlog", "--rewrite-db=shop->shop_copy", "--database=shop_copy", "-");
+	}
+
+	@Test
+	void indexEntryReadsBackAsWritten() {
+		MySQLBinlogFetcher.IndexEntry entry = new MySQLBinlogFetcher.IndexEntry("binlog.000042.gz", 1234, true);
+
+		assertThat(MySQLBinlogFetcher.IndexEntry.parse(entry.format())).isEqualTo(entry);
+	}
+
+	private static List<String> decoderArgs(String indexLine, String sourceDatabase, String targetDatabase) {
+		return MySQLRestorer.decoderArgs(MySQLBinlogFetcher.IndexEntry.parse(indexLine), sourceDatabase, targetDatabase);
+	}
+}
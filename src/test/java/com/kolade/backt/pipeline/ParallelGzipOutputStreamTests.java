@@ -0,0 +1,71 @@
+package com.kolade.backt.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelGzipOutputStreamTests {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void concatenatedMembersDecompressToOriginalBytes() throws IOException {
+		byte[] original = new byte[5 * 1024 * 1024 + 123];
+		new Random(42).nextBytes(original);
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed, executor, 6, 64 * 1024, 8)) {
+			gzip.write(original, 0, 1000);
+			gzip.write(original, 1000, original.length - 1000);
+		}
+
+		assertThat(gunzip(compressed.toByteArray())).isEqualTo(original);
+	}
+
+	@Test
+	void emptyInputProducesValidGzip() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelGzipOutputStream(compressed, executor, 1, 1024, 2).close();
+
+		assertThat(gunzip(compressed.toByteArray())).isEmpty();
+	}
+
+	@Test
+	void parallelReaderRestoresBlocksWithHeaderPatternsInside() throws IOException {
+		byte[] original = new byte[3 * 1024 * 1024];
+		new Random(7).nextBytes(original);
+		//stored uncompressed by the deflater, so the member header shows up inside the compressed data
+		for (int offset = 1000; offset < original.length - 16; offset += 50_000) {
+			System.arraycopy(ParallelGzipOutputStream.GZIP_HEADER, 0, original, offset, ParallelGzipOutputStream.GZIP_HEADER.length);
+		}
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(compressed, executor, 1, 256 * 1024, 8)) {
+			gzip.write(original);
+		}
+
+		try (ParallelGunzipInputStream in = new ParallelGunzipInputStream(new ByteArrayInputStream(compressed.toByteArray()), executor, 4, 16 * 1024 * 1024)) {
+			assertThat(in.readAllBytes()).isEqualTo(original);
+		}
+	}
+
+	private static byte[] gunzip(byte[] data) throws IOException {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			return in.readAllBytes();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.kolade.backt.retention;
+
+import com.kolade.backt.common.BackupFormat;
+import com.kolade.backt.common.BackupType;
+import com.kolade.backt.common.DatabaseType;
+import com.kolade.backt.repository.BackupSummary;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetentionPlannerTests {
+
+	@Test
+	void keptIncrementalKeepsItsChainBackToTheFull() {
+		RetentionPlanner.Plan plan = plan(new RetentionPolicy(1, 0, 0),
+				backup("f1", BackupType.FULL, "2024-03-01"),
+				backup("i1", BackupType.INCREMENTAl, "2024-03-02"),
+				backup("f2", BackupType.FULL, "2024-03-03"),
+				backup("i2", BackupType.INCREMENTAl, "2024-03-04"),
+				backup("i3", BackupType.INCREMENTAl, "2024-03-05"),
+				backup("i4", BackupType.INCREMENTAl, "2024-03-06"));
+
+		assertThat(ids(plan)).containsExactly("f1", "i1");
+		assertThat(plan.kept()).isEqualTo(4);
+		assertThat(plan.keptForChain()).isEqualTo(3);
+	}
+
+	@Test
+	void keptDifferentialKeepsOnlyItsFull() {
+		RetentionPlanner.Plan plan = plan(new RetentionPolicy(1, 0, 0),
+				backup("f1", BackupType.FULL, "2024-03-01"),
+				backup("d1", BackupType.DIFFERENTIAL, "2024-03-02"),
+				backup("d2", BackupType.DIFFERENTIAL, "2024-03-03"),
+				backup("d3", BackupType.DIFFERENTIAL, "2024-03-04"));
+
+		assertThat(ids(plan)).containsExactly("d1", "d2");
+		assertThat(plan.kept()).isEqualTo(2);
+		assertThat(plan.keptForChain()).isEqualTo(1);
+	}
+
+	@Test
+	void backupsBeforeTheFirstFullKeepNoFull() {
+		RetentionPlanner.Plan plan = plan(new RetentionPolicy(2, 0, 0),
+				backup("i1", BackupType.INCREMENTAl, "2024-03-01"),
+				backup("d1", BackupType.DIFFERENTIAL, "2024-03-02"),
+				backup("f1", BackupType.FULL, "2024-03-03"));
+
+		assertThat(ids(plan)).containsExactly("i1");
+		assertThat(plan.keptForChain()).isEqualTo(0);
+	}
+
+	@Test
+	void incrementalBeforeTheFirstFullKeepsWhatItBuildsOn() {
+		RetentionPlanner.Plan plan = plan(new RetentionPolicy(2, 0, 0),
+				backup("d1", BackupType.DIFFERENTIAL, "2024-03-01"),
+				backup("i1", BackupType.INCREMENTAl, "2024-03-02"),
+				backup("i2", BackupType.INCREMENTAl, "2024-03-03"),
+				backup("f1", BackupType.FULL, "2024-03-04"));
+
+		assertThat(ids(plan)).isEmpty();
+		assertThat(plan.keptForChain()).isEqualTo(2);
+	}
+
+	@Test
+	void weeklyPicksCountOnlyFullBackups() {
+		RetentionPlanner.Plan plan = plan(new RetentionPolicy(0, 2, 0),
+				backup("f1", BackupType.FULL, "2024-03-04"),
+				backup("f2", BackupType.FULL, "2024-03-11"),
+				backup("i1", BackupType.INCREMENTAl, "2024-03-12"),
+				backup("f3", BackupType.FULL, "2024-03-18"),
+				backup("i2", BackupType.INCREMENTAl, "2024-03-19"),
+				backup("d1", BackupType.DIFFERENTIAL, "2024-03-26"));
+
+		assertThat(ids(plan)).containsExactly("f1", "i1", "i2", "d1");
+		assertThat(plan.kept()).isEqualTo(2);
+	}
+
+	@Test
+	void monthlyPicksCountOnlyFullBackups() {
+		RetentionPlanner.Plan plan = plan(new RetentionPolicy(0, 0, 2),
+				backup("f1", BackupType.FULL, "2024-01-10"),
+				backup("f2", BackupType.FULL, "2024-02-05"),
+				backup("f3", BackupType.FULL, "2024-02-12"),
+				backup("d1", BackupType.DIFFERENTIAL, "2024-02-20"),
+				backup("f4", BackupType.FULL, "2024-03-01"),
+				backup("i1", BackupType.INCREMENTAl, "2024-03-15"),
+				backup("i2", BackupType.INCREMENTAl, "2024-04-02"));
+
+		assertThat(ids(plan)).containsExactly("f1", "f2", "d1", "i1", "i2");
+		assertThat(plan.kept()).isEqualTo(2);
+		assertThat(plan.keptForChain()).isEqualTo(0);
+	}
+
+	@Test
+	void lastDaysOfTheYearCanBelongToTheNextYearsFirstWeek() {
+		//2024-12-30 is the Monday of week 1 of 2025
+		RetentionPlanner.Plan plan = plan(new RetentionPolicy(0, 2, 0),
+				backup("f1", BackupType.FULL, "2024-12-28"),
+				backup("f2", BackupType.FULL, "2024-12-30"),
+				backup("f3", BackupType.FULL, "2025-01-02"));
+
+		assertThat(ids(plan)).containsExactly("f2");
+	}
+
+	@Test
+	void firstDaysOfTheYearCanBelongToThePreviousYearsLastWeek() {
+		//2021-01-03 is the Sunday of week 53 of 2020
+		RetentionPlanner.Plan plan = plan(new RetentionPolicy(0, 2, 0),
+				backup("f1", BackupType.FULL, "2020-12-31"),
+				backup("f2", BackupType.FULL, "2021-01-03"),
+				backup("f3", BackupType.FULL, "2021-01-04"));
+
+		assertThat(ids(plan)).containsExactly("f1");
+	}
+
+	private static RetentionPlanner.Plan plan(RetentionPolicy policy, BackupSummary... backups) {
+		return new RetentionPlanner(policy).plan(List.of(backups));
+	}
+
+	private static List<String> ids(RetentionPlanner.Plan plan) {
+		return plan.expired().stream().map(BackupSummary::getBackupId).toList();
+	}
+
+	private static BackupSummary backup(String backupId, BackupType backupType, String day) {
+		return new Summary(backupId, backupType, LocalDate.parse(day).atTime(2, 0));
+	}
+
+	private record Summary(String backupId, BackupType backupType, LocalDateTime creationTime) implements BackupSummary {
+
+		@Override
+		public Long getId() {
+			return null;
+		}
+
+		@Override
+		public String getBackupId() {
+			return backupId;
+		}
+
+		@Override
+		public DatabaseType getDatabaseType() {
+			return DatabaseType.MYSQL;
+		}
+
+		@Override
+		public String getDatabaseName() {
+			return "shop";
+		}
+
+		@Override
+		public BackupType getBackupType() {
+			return backupType;
+		}
+
+		@Override
+		public BackupFormat getBackupFormat() {
+			return null;
+		}
+
+		@Override
+		public LocalDateTime getCreationTime() {
+			return creationTime;
+		}
+
+		@Override
+		public String getBackupPath() {
+			return null;
+		}
+
+		@Override
+		public String getStorage() {
+			return null;
+		}
+	}
+}